@@ -109,6 +109,7 @@ public class AdbHelper implements AndroidDevicesHelper {
   private final Supplier<ExecutionContext> contextSupplier;
   private final boolean restartAdbOnFailure;
   private final ImmutableList<String> rapidInstallTypes;
+  private final int installConnections;
   private final Supplier<ImmutableList<AndroidDevice>> devicesSupplier;
 
   @Nullable private ListeningExecutorService executorService = null;
@@ -119,13 +120,15 @@ public class AdbHelper implements AndroidDevicesHelper {
       ToolchainProvider toolchainProvider,
       Supplier<ExecutionContext> contextSupplier,
       boolean restartAdbOnFailure,
-      ImmutableList<String> rapidInstallTypes) {
+      ImmutableList<String> rapidInstallTypes,
+      int installConnections) {
     this.options = adbOptions;
     this.deviceOptions = deviceOptions;
     this.toolchainProvider = toolchainProvider;
     this.contextSupplier = contextSupplier;
     this.restartAdbOnFailure = restartAdbOnFailure;
     this.rapidInstallTypes = rapidInstallTypes;
+    this.installConnections = installConnections;
     this.devicesSupplier = MoreSuppliers.memoize(this::getDevicesImpl);
   }
 
@@ -531,7 +534,8 @@ public class AdbHelper implements AndroidDevicesHelper {
         getConsole(),
         getApkFilePathFromProperties().orElse(null),
         nextAgentPort.incrementAndGet(),
-        rapidInstallTypes);
+        rapidInstallTypes,
+        installConnections);
   }
 
   private static boolean isAdbInitialized(AndroidDebugBridge adb) {
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A content-addressed store of dx/d8 outputs that outlives individual builds.
+ *
+ * <p>{@link SmartDexingStep} already skips outputs whose inputs are unchanged, but that check is
+ * keyed on the output path. Whenever pre-dexed libraries are regrouped, a group index shifts, the
+ * output directory is cleaned or the user switches back to an older revision, the same inputs end
+ * up dexed again. This cache is keyed on the hash of the inputs and the dexing options instead, so
+ * any of those cases turn into a file copy.
+ *
+ * <p>Each entry is a directory holding the output file and, for dex stores that have one, its
+ * {@code .meta} file. Entries are published with an atomic rename, so concurrent builds never
+ * observe a partial entry. The least recently used entries are removed once the cache holds more
+ * than {@code maxEntries}. Entries are counted as they are stored, so the directory is only listed
+ * once the count crosses that bound, and is then trimmed well below it.
+ */
+final class DexOutputCache {
+  private static final Logger LOG = Logger.get(DexOutputCache.class);
+
+  private static final String CACHE_DIR_NAME = "dex_outputs";
+  private static final int DEFAULT_MAX_ENTRIES = 2_000;
+  private static final String OUTPUT_FILE = "output";
+  private static final String META_FILE = "meta";
+
+  /**
+   * The number of entries in each cache directory, as last listed by this process plus the entries
+   * it stored since. Other processes may store entries too, so this only tells when to list the
+   * directory again.
+   */
+  private static final ConcurrentMap<Path, AtomicInteger> ENTRY_COUNTS = new ConcurrentHashMap<>();
+
+  private final ProjectFilesystem filesystem;
+  private final Path cacheDir;
+  private final int maxEntries;
+
+  @VisibleForTesting
+  DexOutputCache(ProjectFilesystem filesystem, Path cacheDir, int maxEntries) {
+    this.filesystem = filesystem;
+    this.cacheDir = cacheDir;
+    this.maxEntries = maxEntries;
+  }
+
+  /** Returns the cache stored under the {@code buck-out} cache directory of {@code filesystem}. */
+  static DexOutputCache forFilesystem(ProjectFilesystem filesystem) {
+    return new DexOutputCache(
+        filesystem,
+        filesystem.getBuckPaths().getCacheDir().resolve(CACHE_DIR_NAME),
+        DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Copies the outputs stored under {@code key} to {@code outputPath} and {@code metaPath}.
+   *
+   * @return whether the cache contained an entry for {@code key}.
+   */
+  boolean fetch(String key, Path outputPath, Optional<Path> metaPath) throws IOException {
+    Path entry = cacheDir.resolve(key);
+    Path cachedOutput = entry.resolve(OUTPUT_FILE);
+    if (!filesystem.exists(cachedOutput)
+        || (metaPath.isPresent() && !filesystem.exists(entry.resolve(META_FILE)))) {
+      return false;
+    }
+
+    filesystem.createParentDirs(outputPath);
+    filesystem.copyFile(cachedOutput, outputPath);
+    if (metaPath.isPresent()) {
+      filesystem.copyFile(entry.resolve(META_FILE), metaPath.get());
+    }
+    // The directory's modification time doubles as the entry's last access time.
+    filesystem.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    return true;
+  }
+
+  /** Stores the outputs at {@code outputPath} and {@code metaPath} under {@code key}. */
+  void store(String key, Path outputPath, Optional<Path> metaPath) throws IOException {
+    Path entry = cacheDir.resolve(key);
+    if (filesystem.exists(entry)) {
+      return;
+    }
+
+    Path tmpEntry = cacheDir.resolve(key + "." + UUID.randomUUID() + ".tmp");
+    filesystem.mkdirs(tmpEntry);
+    try {
+      filesystem.copyFile(outputPath, tmpEntry.resolve(OUTPUT_FILE));
+      if (metaPath.isPresent()) {
+        filesystem.copyFile(metaPath.get(), tmpEntry.resolve(META_FILE));
+      }
+      filesystem.move(tmpEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // Losing the race against another build storing the same outputs is fine.
+      if (!filesystem.exists(entry)) {
+        throw e;
+      }
+      return;
+    } finally {
+      filesystem.deleteRecursivelyIfExists(tmpEntry);
+    }
+
+    AtomicInteger entryCount =
+        ENTRY_COUNTS.computeIfAbsent(
+            filesystem.resolve(cacheDir), dir -> new AtomicInteger(listEntries().size() - 1));
+    if (entryCount.incrementAndGet() > maxEntries) {
+      trim(entryCount);
+    }
+  }
+
+  /** Removes the least recently used entries, leaving room for a tenth of the maximum. */
+  private void trim(AtomicInteger entryCount) throws IOException {
+    synchronized (entryCount) {
+      ImmutableList<Path> entries = listEntries();
+      int entriesToKeep = maxEntries - maxEntries / 10;
+      if (entries.size() > entriesToKeep) {
+        List<Path> byLastAccess = new ArrayList<>(entries);
+        byLastAccess.sort(Comparator.comparing(this::getLastAccessTime));
+        for (Path entry : byLastAccess.subList(0, entries.size() - entriesToKeep)) {
+          LOG.verbose("Evicting %s from the dex output cache.", entry);
+          filesystem.deleteRecursivelyIfExists(entry);
+        }
+      }
+      entryCount.set(Math.min(entries.size(), entriesToKeep));
+    }
+  }
+
+  private ImmutableList<Path> listEntries() {
+    try {
+      return filesystem.getDirectoryContents(cacheDir).stream()
+          .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+          .collect(ImmutableList.toImmutableList());
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to list the dex output cache.");
+      return ImmutableList.of();
+    }
+  }
+
+  private FileTime getLastAccessTime(Path entry) {
+    try {
+      return filesystem.getLastModifiedTime(entry);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+}
@@ -30,7 +30,6 @@ import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
-import com.facebook.buck.util.ThrowingPrintWriter;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.annotations.VisibleForTesting;
@@ -216,19 +215,13 @@ public class MergeAndroidResourcesStep implements Step {
         uberRDotTxtIds = Optional.empty();
       } else {
         // re-assign Ids
-        ImmutableSet.Builder<RDotTxtEntry> uberRdotTxtEntries = ImmutableSet.builder();
-        uberRDotTxt.forEach(
-            rDot -> {
-              try {
-                RDotTxtEntry.readResources(filesystem, rDot).forEach(uberRdotTxtEntries::add);
-              } catch (IOException e) {
-                throw new RuntimeException(e);
-              }
-            });
-        uberRDotTxtIds =
-            Optional.of(
-                uberRdotTxtEntries.build().stream()
-                    .collect(ImmutableMap.toImmutableMap(input -> input, input -> input.idValue)));
+        Map<RDotTxtEntry, String> uberRDotTxtEntries = new HashMap<>();
+        for (Path rDot : uberRDotTxt) {
+          for (RDotTxtEntry entry : RDotTxtSymbolsCache.getInstance().read(filesystem, rDot)) {
+            uberRDotTxtEntries.putIfAbsent(entry, entry.idValue);
+          }
+        }
+        uberRDotTxtIds = Optional.of(ImmutableMap.copyOf(uberRDotTxtEntries));
       }
       ImmutableMap<Path, String> symbolsFileToRDotJavaPackage = rDotTxtToPackage.build();
 
@@ -323,81 +316,93 @@ public class MergeAndroidResourcesStep implements Step {
   private void writeEmptyRDotJavaForPackages(
       Set<String> rDotJavaPackages, ProjectFilesystem filesystem) throws IOException {
     for (String rDotJavaPackage : rDotJavaPackages) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      filesystem.writeContentsToPath(
-          String.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName), outputFile);
+      writeRDotJava(
+          filesystem,
+          getPathToRDotJava(rDotJavaPackage),
+          String.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName));
     }
   }
 
+  private static void writeRDotJava(ProjectFilesystem filesystem, Path outputFile, String contents)
+      throws IOException {
+    filesystem.mkdirs(outputFile.getParent());
+    filesystem.writeContentsToPath(contents, outputFile);
+  }
+
   @VisibleForTesting
   void writePerPackageRDotJava(
       SortedSetMultimap<String, RDotTxtEntry> packageToResources, ProjectFilesystem filesystem)
       throws IOException {
+    String modifiers = forceFinalResourceIds ? " final " : " ";
+    StringBuilder builder = new StringBuilder();
     for (String rDotJavaPackage : packageToResources.keySet()) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      try (ThrowingPrintWriter writer =
-          new ThrowingPrintWriter(filesystem.newFileOutputStream(outputFile))) {
-        writer.format("package %s;\n\n", rDotJavaPackage);
-        writer.format("public class %s {\n", rName);
-
-        ImmutableList.Builder<String> customDrawablesBuilder = ImmutableList.builder();
-        ImmutableList.Builder<String> grayscaleImagesBuilder = ImmutableList.builder();
-        RType lastType = null;
-
-        for (RDotTxtEntry res : packageToResources.get(rDotJavaPackage)) {
-          RType type = res.type;
-          if (!type.equals(lastType)) {
-            // If the previous type needs to be closed, close it.
-            if (lastType != null) {
-              writer.println("  }\n");
-            }
-
-            // Now start the block for the new type.
-            writer.format("  public static class %s {\n", type);
-            lastType = type;
+      builder.setLength(0);
+      builder.append("package ").append(rDotJavaPackage).append(";\n\n");
+      builder.append("public class ").append(rName).append(" {\n");
+
+      ImmutableList.Builder<String> customDrawablesBuilder = ImmutableList.builder();
+      ImmutableList.Builder<String> grayscaleImagesBuilder = ImmutableList.builder();
+      RType lastType = null;
+
+      for (RDotTxtEntry res : packageToResources.get(rDotJavaPackage)) {
+        RType type = res.type;
+        if (!type.equals(lastType)) {
+          // If the previous type needs to be closed, close it.
+          if (lastType != null) {
+            builder.append("  }\n\n");
           }
 
-          // Write out the resource.
-          // Write as an int.
-          writer.format(
-              "    public static%s%s %s=%s;\n",
-              forceFinalResourceIds ? " final " : " ", res.idType, res.name, res.idValue);
-
-          if (type == RType.DRAWABLE && res.customType == RDotTxtEntry.CustomDrawableType.CUSTOM) {
-            customDrawablesBuilder.add(res.idValue);
-          } else if (type == RType.DRAWABLE
-              && res.customType == RDotTxtEntry.CustomDrawableType.GRAYSCALE_IMAGE) {
-            grayscaleImagesBuilder.add(res.idValue);
-          }
+          // Now start the block for the new type.
+          builder.append("  public static class ").append(type).append(" {\n");
+          lastType = type;
         }
 
-        // If some type was written (e.g., the for loop was entered), then the last type needs to be
-        // closed.
-        if (lastType != null) {
-          writer.println("  }\n");
+        // Write out the resource.
+        // Write as an int.
+        builder
+            .append("    public static")
+            .append(modifiers)
+            .append(res.idType)
+            .append(' ')
+            .append(res.name)
+            .append('=')
+            .append(res.idValue)
+            .append(";\n");
+
+        if (type == RType.DRAWABLE && res.customType == RDotTxtEntry.CustomDrawableType.CUSTOM) {
+          customDrawablesBuilder.add(res.idValue);
+        } else if (type == RType.DRAWABLE
+            && res.customType == RDotTxtEntry.CustomDrawableType.GRAYSCALE_IMAGE) {
+          grayscaleImagesBuilder.add(res.idValue);
         }
+      }
 
-        ImmutableList<String> customDrawables = customDrawablesBuilder.build();
-        if (customDrawables.size() > 0) {
-          // Add a new field for the custom drawables.
-          writer.format("  public static final int[] custom_drawables = ");
-          writer.format("{ %s };\n", Joiner.on(",").join(customDrawables));
-          writer.format("\n");
-        }
+      // If some type was written (e.g., the for loop was entered), then the last type needs to be
+      // closed.
+      if (lastType != null) {
+        builder.append("  }\n\n");
+      }
 
-        ImmutableList<String> grayscaleImages = grayscaleImagesBuilder.build();
-        if (grayscaleImages.size() > 0) {
-          // Add a new field for the custom drawables.
-          writer.format("  public static final int[] grayscale_images = ");
-          writer.format("{ %s };\n", Joiner.on(",").join(grayscaleImages));
-          writer.format("\n");
-        }
+      ImmutableList<String> customDrawables = customDrawablesBuilder.build();
+      if (customDrawables.size() > 0) {
+        // Add a new field for the custom drawables.
+        builder.append("  public static final int[] custom_drawables = ");
+        builder.append("{ ").append(Joiner.on(",").join(customDrawables)).append(" };\n");
+        builder.append("\n");
+      }
 
-        // Close the class definition.
-        writer.println("}");
+      ImmutableList<String> grayscaleImages = grayscaleImagesBuilder.build();
+      if (grayscaleImages.size() > 0) {
+        // Add a new field for the custom drawables.
+        builder.append("  public static final int[] grayscale_images = ");
+        builder.append("{ ").append(Joiner.on(",").join(grayscaleImages)).append(" };\n");
+        builder.append("\n");
       }
+
+      // Close the class definition.
+      builder.append("}\n");
+
+      writeRDotJava(filesystem, getPathToRDotJava(rDotJavaPackage), builder.toString());
     }
   }
 
@@ -450,10 +455,7 @@ public class MergeAndroidResourcesStep implements Step {
       List<RDotTxtEntry> linesInSymbolsFile;
       try {
         linesInSymbolsFile =
-            filesystem.readLines(symbolsFile).stream()
-                .filter(input -> !Strings.isNullOrEmpty(input))
-                .map(MergeAndroidResourcesStep::parseEntryOrThrow)
-                .collect(Collectors.toList());
+            new ArrayList<>(RDotTxtSymbolsCache.getInstance().read(filesystem, symbolsFile));
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CharSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Process-wide cache of parsed {@code R.txt} files, keyed by their contents.
+ *
+ * <p>Parsing every symbol with {@link RDotTxtEntry#parse(String)} dominates reading the symbol
+ * tables of a large app, yet most {@code R.txt} files are unchanged from one build to the next.
+ * Keying on a hash of the contents rather than the path keeps the cache correct without any
+ * invalidation.
+ */
+final class RDotTxtSymbolsCache {
+
+  /** Upper bound on the number of symbols kept alive by the shared cache. */
+  private static final long MAX_SYMBOLS = 2_000_000;
+
+  private static final RDotTxtSymbolsCache INSTANCE = new RDotTxtSymbolsCache(MAX_SYMBOLS);
+
+  private final Cache<HashCode, ImmutableList<RDotTxtEntry>> cache;
+
+  @VisibleForTesting
+  RDotTxtSymbolsCache(long maxSymbols) {
+    this.cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxSymbols)
+            .<HashCode, ImmutableList<RDotTxtEntry>>weigher((hash, symbols) -> 1 + symbols.size())
+            .build();
+  }
+
+  static RDotTxtSymbolsCache getInstance() {
+    return INSTANCE;
+  }
+
+  /** Returns the non-empty lines of {@code rDotTxt}, parsed as {@link RDotTxtEntry}s. */
+  ImmutableList<RDotTxtEntry> read(ProjectFilesystem filesystem, Path rDotTxt)
+      throws IOException {
+    String contents =
+        filesystem
+            .readFileIfItExists(rDotTxt)
+            .orElseThrow(() -> new NoSuchFileException(rDotTxt.toString()));
+
+    HashCode hash = Hashing.murmur3_128().hashString(contents, StandardCharsets.UTF_8);
+    ImmutableList<RDotTxtEntry> symbols = cache.getIfPresent(hash);
+    if (symbols == null) {
+      symbols =
+          CharSource.wrap(contents).readLines().stream()
+              .filter(line -> !Strings.isNullOrEmpty(line))
+              .map(RDotTxtEntry.TO_ENTRY)
+              .collect(ImmutableList.toImmutableList());
+      cache.put(hash, symbols);
+    }
+    return symbols;
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.android;
 
+import com.android.tools.r8.Version;
 import com.facebook.buck.android.DxStep.Option;
 import com.facebook.buck.android.toolchain.AndroidPlatformTarget;
 import com.facebook.buck.core.build.context.BuildContext;
@@ -24,6 +25,7 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.BuildCellRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.rules.keys.config.impl.BuckVersion;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
@@ -113,6 +115,7 @@ public class SmartDexingStep implements Step {
   private final Optional<Set<Path>> additonalDesugarDeps;
   private final BuildTarget buildTarget;
   private final Optional<Integer> minSdkVersion;
+  private final DexOutputCache dexOutputCache;
 
   /**
    * @param primaryOutputPath Path for the primary dex artifact.
@@ -177,6 +180,7 @@ public class SmartDexingStep implements Step {
     this.additonalDesugarDeps = additonalDesugarDeps;
     this.buildTarget = buildTarget;
     this.minSdkVersion = minSdkVersion;
+    this.dexOutputCache = DexOutputCache.forFilesystem(filesystem);
   }
 
   /**
@@ -305,17 +309,15 @@ public class SmartDexingStep implements Step {
       throws StepFailedException, InterruptedException {
     // Invoke dx commands in parallel for maximum thread utilization.  In testing, dx revealed
     // itself to be CPU (and not I/O) bound making it a good candidate for parallelization.
-    Stream<ImmutableList<Step>> dxSteps = generateDxCommands(filesystem, outputToInputs);
+    Stream<DxPseudoRule> dxPseudoRules = generateDxPseudoRules(filesystem, outputToInputs);
 
     ImmutableList<Callable<Unit>> callables =
-        dxSteps
+        dxPseudoRules
             .map(
-                steps ->
+                dxPseudoRule ->
                     (Callable<Unit>)
                         () -> {
-                          for (Step step : steps) {
-                            StepRunner.runStep(context, step, Optional.of(buildTarget));
-                          }
+                          runDxPseudoRule(context, dxPseudoRule);
                           return Unit.UNIT;
                         })
             .collect(ImmutableList.toImmutableList());
@@ -331,6 +333,45 @@ public class SmartDexingStep implements Step {
     }
   }
 
+  /**
+   * Runs the dx steps of a single pseudo rule, unless its outputs can be copied from the {@link
+   * DexOutputCache}.
+   */
+  private void runDxPseudoRule(ExecutionContext context, DxPseudoRule dxPseudoRule)
+      throws StepFailedException, InterruptedException {
+    Optional<String> cacheKey = dxPseudoRule.getCacheKey();
+    Path outputPath = dxPseudoRule.outputPath;
+    Optional<Path> metaPath = getDexMetaPath(outputPath);
+
+    boolean fetched = false;
+    if (cacheKey.isPresent()) {
+      try {
+        fetched = dexOutputCache.fetch(cacheKey.get(), outputPath, metaPath);
+      } catch (IOException e) {
+        log.warn(e, "Failed to fetch %s from the dex output cache.", outputPath);
+      }
+    }
+
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    if (fetched) {
+      log.debug("Fetched %s from the dex output cache.", outputPath);
+    } else {
+      dxPseudoRule.buildInternal(steps);
+    }
+    steps.add(dxPseudoRule.createWriteInputsHashStep());
+    for (Step step : steps.build()) {
+      StepRunner.runStep(context, step, Optional.of(buildTarget));
+    }
+
+    if (!fetched && cacheKey.isPresent()) {
+      try {
+        dexOutputCache.store(cacheKey.get(), outputPath, metaPath);
+      } catch (IOException e) {
+        log.warn(e, "Failed to store %s in the dex output cache.", outputPath);
+      }
+    }
+  }
+
   /**
    * Prune the secondary output directory of any files that we didn't generate. This is needed
    * because we crudely add all files in this directory to the final APK, but the number may have
@@ -376,7 +417,7 @@ public class SmartDexingStep implements Step {
    * Once the {@code .class} files have been split into separate zip files, each must be converted
    * to a {@code .dex} file.
    */
-  private Stream<ImmutableList<Step>> generateDxCommands(
+  private Stream<DxPseudoRule> generateDxPseudoRules(
       ProjectFilesystem filesystem, Multimap<Path, Path> outputToInputs) {
 
     ImmutableMap<Path, Sha1HashCode> dexInputHashes = dexInputHashesProvider.getDexInputHashes();
@@ -405,13 +446,7 @@ public class SmartDexingStep implements Step {
                         : null,
                     useDexBuckedId,
                     minSdkVersion))
-        .filter(dxPseudoRule -> !dxPseudoRule.checkIsCached())
-        .map(
-            dxPseudoRule -> {
-              ImmutableList.Builder<Step> steps = ImmutableList.builder();
-              dxPseudoRule.buildInternal(steps);
-              return steps.build();
-            });
+        .filter(dxPseudoRule -> !dxPseudoRule.checkIsCached());
   }
 
   /**
@@ -431,7 +466,7 @@ public class SmartDexingStep implements Step {
     private final ProjectFilesystem filesystem;
     private final Map<Path, Sha1HashCode> dexInputHashes;
     private final Set<Path> srcs;
-    private final Path outputPath;
+    final Path outputPath;
     private final Path outputHashPath;
     private final EnumSet<Option> dxOptions;
     @Nullable private String newInputsHash;
@@ -508,6 +543,57 @@ public class SmartDexingStep implements Step {
       return newInputsHash.equals(currentInputsHash);
     }
 
+    /**
+     * Returns the key under which the outputs of this rule are stored in a {@link DexOutputCache},
+     * or empty if they should not be cached.
+     *
+     * <p>Desugaring reads the classpath, which is not part of the inputs hash, so those outputs are
+     * never cached. The cache outlives Buck upgrades, so the key includes the versions of Buck and
+     * of the D8 it bundles.
+     */
+    @VisibleForTesting
+    Optional<String> getCacheKey() {
+      Preconditions.checkState(newInputsHash != null, "Must call checkIsCached first!");
+      if (classpathFiles != null) {
+        return Optional.empty();
+      }
+
+      // The dex store is encoded in the output's extensions. The file name itself only matters
+      // when it is used to derive the dex id.
+      String fileName = outputPath.getFileName().toString();
+      String outputName =
+          useDexBuckedId || fileName.indexOf('.') < 0
+              ? fileName
+              : fileName.substring(fileName.indexOf('.'));
+
+      Hasher hasher = Hashing.sha1().newHasher();
+      putString(hasher, BuckVersion.getVersion());
+      putString(hasher, Version.getVersionString());
+      putString(hasher, newInputsHash);
+      putString(hasher, outputName);
+      putString(hasher, dexTool);
+      putString(hasher, androidPlatformTarget.getPlatformName());
+      putString(hasher, androidPlatformTarget.getDxExecutable().toString());
+      hasher.putInt(dxOptions.size());
+      for (Option option : dxOptions) {
+        putString(hasher, option.name());
+      }
+      hasher.putInt(minSdkVersion.orElse(-1));
+      hasher.putInt(xzCompressionLevel);
+      return Optional.of(hasher.hash().toString());
+    }
+
+    /** Puts a string prefixed with its length, so that adjacent strings can't run together. */
+    private static void putString(Hasher hasher, String value) {
+      hasher.putInt(value.length());
+      hasher.putUnencodedChars(value);
+    }
+
+    private Step createWriteInputsHashStep() {
+      Preconditions.checkState(newInputsHash != null, "Must call checkIsCached first!");
+      return new WriteFileStep(filesystem, newInputsHash, outputHashPath, /* executable */ false);
+    }
+
     private void buildInternal(ImmutableList.Builder<Step> steps) {
       Preconditions.checkState(newInputsHash != null, "Must call checkIsCached first!");
 
@@ -525,11 +611,20 @@ public class SmartDexingStep implements Step {
           classpathFiles,
           useDexBuckedId,
           minSdkVersion);
-      steps.add(
-          new WriteFileStep(filesystem, newInputsHash, outputHashPath, /* executable */ false));
     }
   }
 
+  /** Returns the {@code .meta} file written alongside {@code outputPath}, if there is one. */
+  static Optional<Path> getDexMetaPath(Path outputPath) {
+    if (DexStore.XZ.matchesPath(outputPath)) {
+      Path repackedJar = Paths.get(outputPath.toString().replaceAll("\\.xz$", ""));
+      return Optional.of(repackedJar.resolveSibling(repackedJar.getFileName() + ".meta"));
+    } else if (DexStore.XZS.matchesPath(outputPath) || DexStore.JAR.matchesPath(outputPath)) {
+      return Optional.of(outputPath.resolveSibling(outputPath.getFileName() + ".meta"));
+    }
+    return Optional.empty();
+  }
+
   /**
    * The step to produce the .dex file will be determined by the file extension of outputPath, much
    * as {@code dx} itself chooses whether to embed the dex inside a jar/zip based on the destination
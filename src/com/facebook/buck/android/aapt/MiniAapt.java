@@ -55,15 +55,9 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
@@ -85,16 +79,6 @@ public class MiniAapt implements Step {
   private static final String PUBLIC_FILENAME = "public.xml";
   private static final String CUSTOM_DRAWABLE_PREFIX = "app-";
 
-  private static final XPathExpression ANDROID_ID_USAGE =
-      createExpression(
-          "//@*[starts-with(., '@') and "
-              + "not(starts-with(., '@+')) and "
-              + "not(starts-with(., '@android:')) and "
-              + "not(starts-with(., '@null'))]");
-
-  private static final XPathExpression ANDROID_ID_DEFINITION =
-      createExpression("//@*[starts-with(., '@+') and " + "not(starts-with(., '@+android:id'))]");
-
   private static final ImmutableMap<String, RType> RESOURCE_TYPES = getResourceTypes();
 
   /**
@@ -167,14 +151,6 @@ public class MiniAapt implements Step {
     }
   }
 
-  private static XPathExpression createExpression(String expressionStr) {
-    try {
-      return XPathFactory.newInstance().newXPath().compile(expressionStr);
-    } catch (XPathExpressionException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   private static ImmutableMap<String, RType> getResourceTypes() {
     ImmutableMap.Builder<String, RType> types = ImmutableMap.builder();
     for (RType rType : RType.values()) {
@@ -199,7 +175,7 @@ public class MiniAapt implements Step {
     try {
       collectResources(filesystemViewWithoutIgnores, context.getBuckEventBus());
       processXmlFilesForIds(filesystemViewWithoutIgnores, references);
-    } catch (XPathExpressionException | ResourceParseException e) {
+    } catch (ResourceParseException e) {
       context.logError(e, "Error parsing resources to generate resource IDs for %s.", resDirectory);
       return StepExecutionResults.ERROR;
     }
@@ -334,11 +310,8 @@ public class MiniAapt implements Step {
     boolean isGrayscaleImage = false;
     boolean isCustomDrawable = false;
     if (filename.endsWith(".xml")) {
-      try (InputStream stream = filesystem.newFileInputStream(resourceFile)) {
-        Document dom = parseXml(resourceFile, stream);
-        Element root = dom.getDocumentElement();
-        isCustomDrawable = root.getNodeName().startsWith(CUSTOM_DRAWABLE_PREFIX);
-      }
+      isCustomDrawable =
+          scanXml(filesystem, resourceFile).getRootElementName().startsWith(CUSTOM_DRAWABLE_PREFIX);
     } else if (isGrayscaleImageProcessingEnabled) {
       // .g.png is no longer an allowed filename in newer versions of aapt2.
       isGrayscaleImage = filename.endsWith(".g.png") || filename.endsWith(GRAYSCALE_SUFFIX);
@@ -513,7 +486,7 @@ public class MiniAapt implements Step {
 
   void processXmlFilesForIds(
       ProjectFilesystemView filesystemView, ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
+      throws IOException, ResourceParseException {
     Path absoluteResDir = resolver.getAbsolutePath(resDirectory);
     Path relativeResDir = resolver.getRelativePath(resDirectory);
     for (Path path :
@@ -533,46 +506,48 @@ public class MiniAapt implements Step {
   @VisibleForTesting
   void processXmlFile(
       ProjectFilesystem filesystem, Path xmlFile, ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
-    try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
-      Document dom = parseXml(xmlFile, stream);
-      NodeList nodesWithIds =
-          (NodeList) ANDROID_ID_DEFINITION.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesWithIds.getLength(); i++) {
-        String resourceName = nodesWithIds.item(i).getNodeValue();
-        if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
-        Preconditions.checkState(resourceName.startsWith(ID_DEFINITION_PREFIX));
+      throws IOException, ResourceParseException {
+    ResourceXmlScan scan = scanXml(filesystem, xmlFile);
+    for (ResourceXmlScan.IdDefinition definition : scan.getIdDefinitions()) {
+      String resourceName = definition.value;
+      if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
+      resourceCollector.addIntResourceIfNotPresent(
+          RType.ID,
+          resourceName.substring(ID_DEFINITION_PREFIX.length()),
+          xmlFile,
+          definition.location);
+    }
 
-        Element ownerElement = ((Attr) nodesWithIds.item(i)).getOwnerElement();
-        DocumentLocation location = extractDocumentLocation(ownerElement);
-        resourceCollector.addIntResourceIfNotPresent(
-            RType.ID, resourceName.substring(ID_DEFINITION_PREFIX.length()), xmlFile, location);
+    for (ResourceXmlScan.Reference reference : scan.getReferences()) {
+      String resourceName = reference.value;
+      int slashPosition = resourceName.indexOf('/');
+      if (resourceName.charAt(0) != '@' || slashPosition == -1) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
       }
 
-      NodeList nodesUsingIds = (NodeList) ANDROID_ID_USAGE.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesUsingIds.getLength(); i++) {
-        String resourceName = nodesUsingIds.item(i).getNodeValue();
-        int slashPosition = resourceName.indexOf('/');
-        if (resourceName.charAt(0) != '@' || slashPosition == -1) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
+      String rawRType = resourceName.substring(1, slashPosition);
+      String name = resourceName.substring(slashPosition + 1);
 
-        String rawRType = resourceName.substring(1, slashPosition);
-        String name = resourceName.substring(slashPosition + 1);
+      if (name.startsWith("android:") || reference.attributeName.startsWith("tools:")) {
+        continue;
+      }
+      if (!RESOURCE_TYPES.containsKey(rawRType)) {
+        throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
+      }
+      RType rType = Objects.requireNonNull(RESOURCE_TYPES.get(rawRType));
 
-        String nodeName = nodesUsingIds.item(i).getNodeName();
-        if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
-          continue;
-        }
-        if (!RESOURCE_TYPES.containsKey(rawRType)) {
-          throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
-        }
-        RType rType = Objects.requireNonNull(RESOURCE_TYPES.get(rawRType));
+      references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+    }
+  }
 
-        references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
-      }
+  private static ResourceXmlScan scanXml(ProjectFilesystem filesystem, Path xmlFile)
+      throws IOException, ResourceParseException {
+    try {
+      return ResourceXmlScan.of(filesystem, xmlFile);
+    } catch (SAXException e) {
+      throw new ResourceParseException("Error parsing xml file '%s': %s.", xmlFile, e.getMessage());
     }
   }
 
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The parts of a non-values resource xml file that {@link MiniAapt} cares about: the root element
+ * name, the {@code @+} id definitions and the {@code @type/name} references.
+ *
+ * <p>Files are scanned with a streaming parser, and the results are cached by content hash for the
+ * lifetime of the process, so that every rule (and every build on a daemon) that looks at an
+ * unchanged file reuses the same scan.
+ */
+final class ResourceXmlScan {
+
+  /** Upper bound on the total number of cached definitions and references. */
+  private static final long MAX_CACHED_ATTRIBUTES = 4_000_000;
+
+  private static final Cache<HashCode, ResourceXmlScan> CACHE =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_ATTRIBUTES)
+          .weigher(
+              (HashCode hash, ResourceXmlScan scan) ->
+                  1 + scan.idDefinitions.size() + scan.references.size())
+          .build();
+
+  /** An attribute whose value defines an id, e.g. {@code android:id="@+id/foo"}. */
+  static final class IdDefinition {
+    final String value;
+    final DocumentLocation location;
+
+    IdDefinition(String value, DocumentLocation location) {
+      this.value = value;
+      this.location = location;
+    }
+  }
+
+  /** An attribute whose value references a resource, e.g. {@code android:src="@drawable/foo"}. */
+  static final class Reference {
+    final String attributeName;
+    final String value;
+
+    Reference(String attributeName, String value) {
+      this.attributeName = attributeName;
+      this.value = value;
+    }
+  }
+
+  private final String rootElementName;
+  private final ImmutableList<IdDefinition> idDefinitions;
+  private final ImmutableList<Reference> references;
+
+  private ResourceXmlScan(
+      String rootElementName,
+      ImmutableList<IdDefinition> idDefinitions,
+      ImmutableList<Reference> references) {
+    this.rootElementName = rootElementName;
+    this.idDefinitions = idDefinitions;
+    this.references = references;
+  }
+
+  String getRootElementName() {
+    return rootElementName;
+  }
+
+  /** Id definitions, in the order an XPath query over the document would return them. */
+  ImmutableList<IdDefinition> getIdDefinitions() {
+    return idDefinitions;
+  }
+
+  /** Resource references, in the order an XPath query over the document would return them. */
+  ImmutableList<Reference> getReferences() {
+    return references;
+  }
+
+  /** Returns the scan of {@code xmlFile}, reusing a previous scan of identical contents. */
+  static ResourceXmlScan of(ProjectFilesystem filesystem, Path xmlFile)
+      throws IOException, SAXException {
+    byte[] contents;
+    try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
+      contents = ByteStreams.toByteArray(stream);
+    }
+    HashCode hash = Hashing.murmur3_128().hashBytes(contents);
+    ResourceXmlScan scan = CACHE.getIfPresent(hash);
+    if (scan == null) {
+      scan = scan(new ByteArrayInputStream(contents));
+      CACHE.put(hash, scan);
+    }
+    return scan;
+  }
+
+  @VisibleForTesting
+  static void invalidateCache() {
+    CACHE.invalidateAll();
+  }
+
+  @VisibleForTesting
+  static long cacheSize() {
+    return CACHE.size();
+  }
+
+  private static ResourceXmlScan scan(InputStream stream) throws IOException, SAXException {
+    ScanHandler handler = new ScanHandler();
+    try {
+      SAXParserFactory.newInstance().newSAXParser().parse(stream, handler);
+    } catch (ParserConfigurationException e) {
+      throw new RuntimeException("Can't create SAX parser.", e);
+    }
+    return new ResourceXmlScan(
+        handler.rootElementName == null ? "" : handler.rootElementName,
+        ImmutableList.copyOf(handler.idDefinitions),
+        ImmutableList.copyOf(handler.references));
+  }
+
+  private static class ScanHandler extends DefaultHandler {
+    @Nullable private Locator locator;
+    @Nullable private String rootElementName;
+    private final List<IdDefinition> idDefinitions = new ArrayList<>();
+    private final List<Reference> references = new ArrayList<>();
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+      this.locator = locator;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      if (rootElementName == null) {
+        rootElementName = qName;
+      }
+
+      // The DOM keeps an element's attributes sorted by name, which is the order the XPath
+      // queries this replaces used to visit them in.
+      List<Integer> indices = new ArrayList<>(attributes.getLength());
+      for (int i = 0; i < attributes.getLength(); i++) {
+        String name = attributes.getQName(i);
+        // Namespace declarations are namespace nodes, not attributes, as far as XPath is concerned.
+        if (!name.equals("xmlns") && !name.startsWith("xmlns:")) {
+          indices.add(i);
+        }
+      }
+      indices.sort(Comparator.comparing(attributes::getQName));
+
+      for (int i : indices) {
+        String value = attributes.getValue(i);
+        if (value.startsWith("@+")) {
+          if (!value.startsWith("@+android:id")) {
+            idDefinitions.add(new IdDefinition(value, getDocumentLocation()));
+          }
+        } else if (value.startsWith("@")
+            && !value.startsWith("@android:")
+            && !value.startsWith("@null")) {
+          references.add(new Reference(attributes.getQName(i), value));
+        }
+      }
+    }
+
+    private DocumentLocation getDocumentLocation() {
+      if (locator == null) {
+        return DocumentLocation.of(0, 0);
+      }
+      // Matches the locations recorded by PositionalXmlHandler.
+      return DocumentLocation.of(locator.getLineNumber() - 1, locator.getColumnNumber() - 1);
+    }
+
+    @Override
+    public void error(SAXParseException ex) throws SAXException {
+      throw new SAXException(ex.getMessage(), ex);
+    }
+
+    @Override
+    public void fatalError(SAXParseException ex) throws SAXException {
+      throw new SAXException(ex.getMessage(), ex);
+    }
+  }
+}
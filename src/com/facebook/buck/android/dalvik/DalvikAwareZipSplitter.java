@@ -19,36 +19,47 @@ package com.facebook.buck.android.dalvik;
 import com.facebook.buck.android.apkmodule.APKModule;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.java.classes.AbstractFileLike;
 import com.facebook.buck.jvm.java.classes.ClasspathTraversal;
-import com.facebook.buck.jvm.java.classes.ClasspathTraverser;
-import com.facebook.buck.jvm.java.classes.DefaultClasspathTraverser;
 import com.facebook.buck.jvm.java.classes.FileLike;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.io.ByteStreams;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link ZipSplitter} that uses estimates from {@link DalvikStatsTool} to
  * determine how many classes to pack into a dex.
  *
- * <p>It does three passes through the .class files:
+ * <p>The inputs are read once: their entries are listed and the Dalvik stats of every class are
+ * computed up front, in parallel across inputs. The entries are then sorted into zips in three
+ * passes over that in-memory list:
  *
  * <ul>
  *   <li>During the first pass, it uses the {@code requiredInPrimaryZip} predicate to filter the set
@@ -166,7 +177,86 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
 
   @Override
   public ImmutableMultimap<APKModule, Path> execute() throws IOException {
-    ClasspathTraverser classpathTraverser = new DefaultClasspathTraverser();
+    Queue<ZipFile> openZipFiles = new ConcurrentLinkedQueue<>();
+    try {
+      return split(scanInputs(openZipFiles));
+    } finally {
+      for (ZipFile zipFile : openZipFiles) {
+        zipFile.close();
+      }
+    }
+  }
+
+  /**
+   * Lists the entries of all inputs, in classpath order, and computes the Dalvik stats of their
+   * classes in parallel across inputs. Zip files are left open (and added to {@code openZipFiles})
+   * so that the entries can be copied to the outputs without traversing the inputs again.
+   */
+  private ImmutableList<FileLike> scanInputs(Queue<ZipFile> openZipFiles) throws IOException {
+    if (inFiles.isEmpty()) {
+      return ImmutableList.of();
+    }
+    ExecutorService executor =
+        MostExecutors.newMultiThreadExecutor(
+            "dalvik-stats", Math.min(inFiles.size(), Runtime.getRuntime().availableProcessors()));
+    try {
+      List<Future<ImmutableList<FileLike>>> scannedInputs = new ArrayList<>(inFiles.size());
+      for (Path inFile : inFiles) {
+        scannedInputs.add(executor.submit(() -> scanInput(inFile, openZipFiles)));
+      }
+
+      ImmutableList.Builder<FileLike> entries = ImmutableList.builder();
+      for (Future<ImmutableList<FileLike>> scannedInput : scannedInputs) {
+        entries.addAll(scannedInput.get());
+      }
+      return entries.build();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while computing Dalvik stats.");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private ImmutableList<FileLike> scanInput(Path inFile, Queue<ZipFile> openZipFiles)
+      throws IOException {
+    ImmutableList.Builder<FileLike> builder = ImmutableList.builder();
+    Path path = filesystem.getPathForRelativePath(inFile);
+    String extension = MorePaths.getFileExtension(path);
+    if (filesystem.isFile(path)
+        && (extension.equalsIgnoreCase("jar") || extension.equalsIgnoreCase("zip"))) {
+      ZipFile zipFile = new ZipFile(path.toFile());
+      openZipFiles.add(zipFile);
+      try {
+        Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements()) {
+          builder.add(new FileLikeInOpenZip(path, zipFile, zipEntries.nextElement()));
+        }
+      } catch (IllegalArgumentException e) { // help debugging a "MALFORMED" error
+        throw new IllegalArgumentException("zipfile traverse exception on file:" + path, e);
+      }
+    } else {
+      new ClasspathTraversal(ImmutableList.of(inFile), filesystem) {
+        @Override
+        public void visit(FileLike fileLike) {
+          builder.add(fileLike);
+        }
+      }.traverse();
+    }
+
+    ImmutableList<FileLike> entries = builder.build();
+    for (FileLike entry : entries) {
+      dalvikStatsCache.getStats(entry);
+    }
+    return entries;
+  }
+
+  private ImmutableMultimap<APKModule, Path> split(ImmutableList<FileLike> inputEntries)
+      throws IOException {
     Set<String> secondaryTail = new HashSet<String>();
 
     // Start out by writing the primary zip and recording which entries were added to it.
@@ -174,56 +264,52 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     secondaryDexWriter.reset();
 
     ImmutableMap.Builder<String, FileLike> entriesBuilder = ImmutableMap.builder();
-    List<String> additionalDexStoreEntries = new ArrayList<>();
+    Set<String> additionalDexStoreEntries = new HashSet<>();
 
     // Iterate over all of the inFiles and add all entries that match the requiredInPrimaryZip
     // predicate.
-    LOG.verbose("Traversing classpath for primary zip");
-
-    classpathTraverser.traverse(
-        new ClasspathTraversal(inFiles, filesystem) {
-          @Override
-          public void visit(FileLike entry) throws IOException {
-            LOG.verbose("Visiting " + entry.getRelativePath());
-
-            String relativePath = entry.getRelativePath();
-            if (!relativePath.endsWith(".class")) {
-              // We don't need resources in dex jars, so just drop them.
-              return;
-            }
-            String classPath = relativePath.replaceAll("\\.class$", "");
-
-            Objects.requireNonNull(primaryOut);
-            Objects.requireNonNull(classPathToDexStore);
-
-            if (requiredInPrimaryZip.test(relativePath)) {
-              primaryOut.putEntry(entry);
-            } else if (wantedInPrimaryZip.contains(relativePath)
-                || (secondaryHeadSet != null && secondaryHeadSet.contains(relativePath))) {
-              entriesBuilder.put(relativePath, new BufferedFileLike(entry));
-            } else if (secondaryTailSet != null && secondaryTailSet.contains(relativePath)) {
-              entriesBuilder.put(relativePath, new BufferedFileLike(entry));
-              secondaryTail.add(relativePath);
-            } else {
-              ImmutableCollection<APKModule> containingModule = classPathToDexStore.get(classPath);
-              if (!containingModule.isEmpty()) {
-                if (containingModule.size() > 1) {
-                  throw new IllegalStateException(
-                      String.format(
-                          "classpath %s is contained in multiple dex stores: %s",
-                          classPath, classPathToDexStore.get(classPath).asList().toString()));
-                }
-                APKModule dexStore = containingModule.iterator().next();
-                if (!dexStore.equals(rootModule)) {
-                  MySecondaryDexHelper dexHelper = additionalDexWriters.get(dexStore);
-                  Objects.requireNonNull(dexHelper);
-                  dexHelper.getOutputToWriteTo(entry).putEntry(entry);
-                  additionalDexStoreEntries.add(relativePath);
-                }
-              }
-            }
+    LOG.verbose("Sorting classpath entries for primary zip");
+
+    for (FileLike entry : inputEntries) {
+      LOG.verbose("Visiting " + entry.getRelativePath());
+
+      String relativePath = entry.getRelativePath();
+      if (!relativePath.endsWith(".class")) {
+        // We don't need resources in dex jars, so just drop them.
+        continue;
+      }
+      String classPath = relativePath.replaceAll("\\.class$", "");
+
+      Objects.requireNonNull(primaryOut);
+      Objects.requireNonNull(classPathToDexStore);
+
+      if (requiredInPrimaryZip.test(relativePath)) {
+        primaryOut.putEntry(entry);
+      } else if (wantedInPrimaryZip.contains(relativePath)
+          || (secondaryHeadSet != null && secondaryHeadSet.contains(relativePath))) {
+        entriesBuilder.put(relativePath, entry);
+      } else if (secondaryTailSet != null && secondaryTailSet.contains(relativePath)) {
+        entriesBuilder.put(relativePath, entry);
+        secondaryTail.add(relativePath);
+      } else {
+        ImmutableCollection<APKModule> containingModule = classPathToDexStore.get(classPath);
+        if (!containingModule.isEmpty()) {
+          if (containingModule.size() > 1) {
+            throw new IllegalStateException(
+                String.format(
+                    "classpath %s is contained in multiple dex stores: %s",
+                    classPath, classPathToDexStore.get(classPath).asList().toString()));
+          }
+          APKModule dexStore = containingModule.iterator().next();
+          if (!dexStore.equals(rootModule)) {
+            MySecondaryDexHelper dexHelper = additionalDexWriters.get(dexStore);
+            Objects.requireNonNull(dexHelper);
+            dexHelper.getOutputToWriteTo(entry).putEntry(entry);
+            additionalDexStoreEntries.add(relativePath);
           }
-        });
+        }
+      }
+    }
 
     // Put as many of the items wanted in the primary dex as we can into the primary dex.
     ImmutableMap<String, FileLike> entries = entriesBuilder.build();
@@ -243,42 +329,36 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       }
     }
 
-    LOG.verbose("Traversing classpath for secondary zip");
+    LOG.verbose("Sorting classpath entries for secondary zip");
 
     // Now that all of the required entries have been added to the primary zip, fill the rest of
     // the zip up with the remaining entries.
-    classpathTraverser.traverse(
-        new ClasspathTraversal(inFiles, filesystem) {
-          @Override
-          public void visit(FileLike entry) throws IOException {
-            Objects.requireNonNull(primaryOut);
-            String relativePath = entry.getRelativePath();
-
-            // skip if it is the primary dex, is part of a modular dex store, or is not a class file
-            if (primaryOut.containsEntry(entry)
-                || additionalDexStoreEntries.contains(relativePath)) {
-              return;
-            }
-
-            LOG.verbose("Visiting " + entry.getRelativePath());
-
-            // Even if we have started writing a secondary dex, we still check if there is any
-            // leftover
-            // room in the primary dex for the current entry in the traversal.
-            if (dexSplitStrategy == DexSplitStrategy.MAXIMIZE_PRIMARY_DEX_SIZE
-                && primaryOut.canPutEntry(entry)) {
-              primaryOut.putEntry(entry);
-            } else {
-              if (secondaryHeadSet != null && secondaryHeadSet.contains(relativePath)) {
-                return;
-              }
-              if (secondaryTail.contains(relativePath)) {
-                return;
-              }
-              secondaryDexWriter.getOutputToWriteTo(entry).putEntry(entry);
-            }
-          }
-        });
+    for (FileLike entry : inputEntries) {
+      Objects.requireNonNull(primaryOut);
+      String relativePath = entry.getRelativePath();
+
+      // skip if it is the primary dex, is part of a modular dex store, or is not a class file
+      if (primaryOut.containsEntry(entry) || additionalDexStoreEntries.contains(relativePath)) {
+        continue;
+      }
+
+      LOG.verbose("Visiting " + entry.getRelativePath());
+
+      // Even if we have started writing a secondary dex, we still check if there is any leftover
+      // room in the primary dex for the current entry in the traversal.
+      if (dexSplitStrategy == DexSplitStrategy.MAXIMIZE_PRIMARY_DEX_SIZE
+          && primaryOut.canPutEntry(entry)) {
+        primaryOut.putEntry(entry);
+      } else {
+        if (secondaryHeadSet != null && secondaryHeadSet.contains(relativePath)) {
+          continue;
+        }
+        if (secondaryTail.contains(relativePath)) {
+          continue;
+        }
+        secondaryDexWriter.getOutputToWriteTo(entry).putEntry(entry);
+      }
+    }
     if (secondaryTailSet != null) {
       for (String tail : secondaryTailSet) {
         FileLike tailEntry = entries.get(tail);
@@ -321,18 +401,16 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     }
   }
 
-  private static class BufferedFileLike extends AbstractFileLike {
+  /** An entry of a zip file that stays open until the split is done. */
+  private static class FileLikeInOpenZip extends AbstractFileLike {
     private final Path container;
-    private final String relativePath;
-    private final byte[] contents;
+    private final ZipFile zipFile;
+    private final ZipEntry entry;
 
-    public BufferedFileLike(FileLike original) throws IOException {
-      this.container = original.getContainer();
-      this.relativePath = original.getRelativePath();
-
-      try (InputStream stream = original.getInput()) {
-        contents = ByteStreams.toByteArray(stream);
-      }
+    public FileLikeInOpenZip(Path container, ZipFile zipFile, ZipEntry entry) {
+      this.container = container;
+      this.zipFile = zipFile;
+      this.entry = entry;
     }
 
     @Override
@@ -342,17 +420,17 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
 
     @Override
     public String getRelativePath() {
-      return relativePath;
+      return entry.getName();
     }
 
     @Override
     public long getSize() {
-      return contents.length;
+      return entry.getSize();
     }
 
     @Override
-    public InputStream getInput() {
-      return new ByteArrayInputStream(contents);
+    public InputStream getInput() throws IOException {
+      return zipFile.getInputStream(entry);
     }
   }
 }
@@ -17,18 +17,47 @@
 package com.facebook.buck.android.dalvik;
 
 import com.facebook.buck.jvm.java.classes.FileLike;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.MapMaker;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.ConcurrentMap;
 
-/** Cache to memoize results from DalvikStatsTool. */
+/**
+ * Cache to memoize results from DalvikStatsTool.
+ *
+ * <p>Results are memoized per {@link FileLike} for the lifetime of this cache, and by class file
+ * contents for the lifetime of the process, so that a class that did not change since the previous
+ * build is not analyzed again.
+ */
 class DalvikStatsCache {
 
+  /** Upper bound on the number of member references kept alive by the shared cache. */
+  private static final long MAX_SHARED_WEIGHT = 4_000_000;
+
+  private static final Cache<HashCode, DalvikStatsTool.Stats> SHARED_CACHE =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_SHARED_WEIGHT)
+          .<HashCode, DalvikStatsTool.Stats>weigher(
+              (hash, stats) -> 1 + stats.methodReferences.size() + stats.fieldReferences.size())
+          .softValues()
+          .build();
+
   private final ConcurrentMap<FileLike, DalvikStatsTool.Stats> cache;
+  private final Cache<HashCode, DalvikStatsTool.Stats> sharedCache;
 
   DalvikStatsCache() {
-    cache = new MapMaker().weakKeys().makeMap();
+    this(SHARED_CACHE);
+  }
+
+  DalvikStatsCache(Cache<HashCode, DalvikStatsTool.Stats> sharedCache) {
+    this.cache = new MapMaker().weakKeys().makeMap();
+    this.sharedCache = sharedCache;
   }
 
   DalvikStatsTool.Stats getStats(FileLike entry) {
@@ -48,7 +77,13 @@ class DalvikStatsCache {
     }
 
     try (InputStream is = entry.getInput()) {
-      stats = DalvikStatsTool.getEstimate(is);
+      byte[] contents = ByteStreams.toByteArray(is);
+      HashCode hash = Hashing.murmur3_128().hashBytes(contents);
+      stats = sharedCache.getIfPresent(hash);
+      if (stats == null) {
+        stats = DalvikStatsTool.getEstimate(new ByteArrayInputStream(contents));
+        sharedCache.put(hash, stats);
+      }
       cache.put(entry, stats);
       return stats;
     } catch (IOException e) {
@@ -42,6 +42,16 @@ public abstract class AdbConfig implements ConfigView<BuckConfig> {
     return getDelegate().getListWithoutComments("adb", "rapid_install_types_beta");
   }
 
+  /**
+   * Maximum number of concurrent connections used to push exopackage files to a single device.
+   * Only transfer modes that open an independent connection per push can use more than one.
+   */
+  @Value.Lazy
+  public int getExopackageInstallConnections() {
+    return Math.max(
+        1, getDelegate().getInteger("adb", "exopackage_install_connections").orElse(4));
+  }
+
   @Value.Lazy
   public boolean getMultiInstallMode() {
     return getDelegate().getBooleanValue("adb", "multi_install_mode", false);
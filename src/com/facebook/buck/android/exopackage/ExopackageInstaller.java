@@ -89,7 +89,10 @@ public class ExopackageInstaller {
       throws Exception {
     if (exopackageEnabled(apkInfo)) {
       device.mkDirP(dataRoot.toString());
-      ImmutableSortedSet<Path> presentFiles = device.listDirRecursive(dataRoot);
+      ImmutableSortedSet<Path> presentFiles;
+      try (SimplePerfEvent.Scope ignored = SimplePerfEvent.scope(eventBus, "exo_list_files")) {
+        presentFiles = device.listDirRecursive(dataRoot);
+      }
       ExopackageInfo exoInfo = apkInfo.getExopackageInfo().get();
       installMissingExopackageFiles(presentFiles, exoInfo);
       finishExoFileInstallation(presentFiles, exoInfo);
@@ -171,7 +174,9 @@ public class ExopackageInstaller {
       metadata.putAll(moduleExoHelper.getMetadataToInstall());
     }
 
-    deleteUnwantedFiles(presentFiles, wantedPaths.build());
+    try (SimplePerfEvent.Scope ignored = SimplePerfEvent.scope(eventBus, "exo_delete_files")) {
+      deleteUnwantedFiles(presentFiles, wantedPaths.build());
+    }
     installMetadata(metadata.build());
   }
 
@@ -311,29 +316,38 @@ public class ExopackageInstaller {
   private void installFiles(String filesType, ImmutableMap<Path, Path> filesToInstall)
       throws Exception {
     try (SimplePerfEvent.Scope ignored =
-            SimplePerfEvent.scope(eventBus, "multi_install_" + filesType);
-        AutoCloseable ignored1 = device.createForward()) {
-      // Make sure all the directories exist.
-      filesToInstall.keySet().stream()
-          .map(p -> dataRoot.resolve(p).getParent())
-          .distinct()
-          .forEach(
-              p -> {
-                try {
-                  device.mkDirP(p.toString());
-                } catch (Exception e) {
-                  throw new RuntimeException(e);
-                }
-              });
-      // Plan the installation.
-      Map<Path, Path> installPaths =
-          filesToInstall.entrySet().stream()
-              .collect(
-                  Collectors.toMap(
-                      entry -> dataRoot.resolve(entry.getKey()),
-                      entry -> projectFilesystem.resolve(entry.getValue())));
-      // Install the files.
-      device.installFiles(filesType, installPaths);
+        SimplePerfEvent.scope(
+            eventBus,
+            SimplePerfEvent.PerfEventId.of("multi_install_" + filesType),
+            "files",
+            filesToInstall.size())) {
+      if (filesToInstall.isEmpty()) {
+        return;
+      }
+      try (AutoCloseable ignored1 = device.createForward()) {
+        // Make sure all the directories exist.
+        try (SimplePerfEvent.Scope ignored2 = SimplePerfEvent.scope(eventBus, "exo_mkdirs")) {
+          for (Path dir :
+              filesToInstall.keySet().stream()
+                  .map(p -> dataRoot.resolve(p).getParent())
+                  .collect(ImmutableSortedSet.toImmutableSortedSet(Ordering.natural()))) {
+            device.mkDirP(dir.toString());
+          }
+        }
+        // Plan the installation.
+        Map<Path, Path> installPaths =
+            filesToInstall.entrySet().stream()
+                .collect(
+                    Collectors.toMap(
+                        entry -> dataRoot.resolve(entry.getKey()),
+                        entry -> projectFilesystem.resolve(entry.getValue())));
+        // Install the files.
+        try (SimplePerfEvent.Scope ignored2 =
+            SimplePerfEvent.scope(
+                eventBus, SimplePerfEvent.PerfEventId.of("exo_transfer"), "type", filesType)) {
+          device.installFiles(filesType, installPaths);
+        }
+      }
     }
   }
 
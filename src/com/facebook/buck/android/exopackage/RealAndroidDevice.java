@@ -36,12 +36,15 @@ import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.Escaper;
 import com.facebook.buck.util.MoreSuppliers;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.io.Closer;
 import com.google.common.primitives.Ints;
@@ -61,6 +64,9 @@ import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -69,8 +75,12 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
@@ -116,6 +126,7 @@ public class RealAndroidDevice implements AndroidDevice {
   private final ImmutableList<String> rapidInstallTypes;
   private final Supplier<ExopackageAgent> agent;
   private final int agentPort;
+  private final int installConnections;
 
   public RealAndroidDevice(
       BuckEventBus eventBus,
@@ -124,6 +135,17 @@ public class RealAndroidDevice implements AndroidDevice {
       @Nullable Path agentApkPath,
       int agentPort,
       ImmutableList<String> rapidInstallTypes) {
+    this(eventBus, device, console, agentApkPath, agentPort, rapidInstallTypes, 1);
+  }
+
+  public RealAndroidDevice(
+      BuckEventBus eventBus,
+      IDevice device,
+      Console console,
+      @Nullable Path agentApkPath,
+      int agentPort,
+      ImmutableList<String> rapidInstallTypes,
+      int installConnections) {
     this.eventBus = eventBus;
     this.device = device;
     this.console = console;
@@ -136,6 +158,7 @@ public class RealAndroidDevice implements AndroidDevice {
                     this,
                     Objects.requireNonNull(agentApkPath, "Agent not configured for this device.")));
     this.agentPort = agentPort;
+    this.installConnections = installConnections;
   }
 
   public RealAndroidDevice(BuckEventBus buckEventBus, IDevice device, Console console) {
@@ -715,16 +738,107 @@ public class RealAndroidDevice implements AndroidDevice {
   public void installFiles(String filesType, Map<Path, Path> installPaths) throws Exception {
     Optional<RapidInstallMode> rapidInstallMode = getRapidInstallMode();
     if (rapidInstallMode.isPresent()) {
-      doRapidInstall(rapidInstallMode.get(), filesType, installPaths);
+      // Every rapid install listens on its own ephemeral port, so shards can be pushed
+      // concurrently.
+      installShardsConcurrently(
+          installPaths, shard -> doRapidInstall(rapidInstallMode.get(), filesType, shard));
     } else {
       try {
+        // The buck-initiated protocol goes through the single forwarded agent port.
         doMultiInstall(filesType, installPaths);
       } catch (Exception e) {
-        doMultiInstallViaADB(installPaths);
+        installShardsConcurrently(installPaths, this::doMultiInstallViaADB);
       }
     }
   }
 
+  /** Something that pushes one shard of files to the device. */
+  private interface ShardInstaller {
+    void install(Map<Path, Path> shard) throws Exception;
+  }
+
+  private void installShardsConcurrently(Map<Path, Path> installPaths, ShardInstaller installer)
+      throws Exception {
+    ImmutableList<ImmutableMap<Path, Path>> shards =
+        shardBySize(installPaths, installConnections, source -> source.toFile().length());
+    if (shards.size() <= 1) {
+      for (ImmutableMap<Path, Path> shard : shards) {
+        installer.install(shard);
+      }
+      return;
+    }
+    ExecutorService executor =
+        MostExecutors.newMultiThreadExecutor("exopackage-install", shards.size());
+    try {
+      List<Future<?>> futures = new ArrayList<>(shards.size());
+      for (ImmutableMap<Path, Path> shard : shards) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  installer.install(shard);
+                  return null;
+                }));
+      }
+      Exception failure = null;
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          if (failure == null) {
+            failure = cause;
+          } else {
+            failure.addSuppressed(cause);
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Splits the files to install into at most {@code maxShards} groups of roughly equal total size,
+   * assigning the largest files first to whichever group is currently smallest.
+   */
+  @VisibleForTesting
+  static ImmutableList<ImmutableMap<Path, Path>> shardBySize(
+      Map<Path, Path> installPaths, int maxShards, ToLongFunction<Path> sizeOfSource) {
+    int shardCount = Math.max(1, Math.min(maxShards, installPaths.size()));
+    List<Map.Entry<Path, Path>> entries = new ArrayList<>(installPaths.entrySet());
+    Map<Path, Long> sizes = new HashMap<>();
+    for (Map.Entry<Path, Path> entry : entries) {
+      sizes.put(entry.getKey(), sizeOfSource.applyAsLong(entry.getValue()));
+    }
+    entries.sort(
+        Comparator.<Map.Entry<Path, Path>>comparingLong(entry -> sizes.get(entry.getKey()))
+            .reversed()
+            .thenComparing(Map.Entry::getKey));
+
+    List<ImmutableMap.Builder<Path, Path>> builders = new ArrayList<>(shardCount);
+    long[] shardSizes = new long[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      builders.add(ImmutableMap.builder());
+    }
+    for (Map.Entry<Path, Path> entry : entries) {
+      int smallest = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (shardSizes[i] < shardSizes[smallest]) {
+          smallest = i;
+        }
+      }
+      builders.get(smallest).put(entry);
+      shardSizes[smallest] += sizes.get(entry.getKey());
+    }
+    return builders.stream()
+        .map(ImmutableMap.Builder::build)
+        .filter(shard -> !shard.isEmpty())
+        .collect(ImmutableList.toImmutableList());
+  }
+
   private void writeAllToChannel(SocketChannel chan, ByteBuffer buf) throws HumanReadableException {
     try {
       chan.write(buf);
@@ -888,14 +1002,13 @@ public class RealAndroidDevice implements AndroidDevice {
   }
 
   private void doMultiInstallViaADB(Map<Path, Path> installPaths) throws Exception {
-    SocketChannel chan = getSyncService();
-    for (Map.Entry<Path, Path> entry : installPaths.entrySet()) {
-      String source = entry.getValue().toString();
-      String destination = entry.getKey().toString();
-      pushFile(source, destination, chan);
+    try (SocketChannel chan = getSyncService()) {
+      for (Map.Entry<Path, Path> entry : installPaths.entrySet()) {
+        String source = entry.getValue().toString();
+        String destination = entry.getKey().toString();
+        pushFile(source, destination, chan);
+      }
     }
-
-    chan.close();
   }
 
   private void doMultiInstall(String filesType, Map<Path, Path> installPaths) throws Exception {
@@ -948,9 +1061,7 @@ public class RealAndroidDevice implements AndroidDevice {
       throw shellException;
     }
 
-    for (Path targetFileName : installPaths.keySet()) {
-      chmod644(targetFileName);
-    }
+    chmod644(installPaths.keySet());
   }
 
   private class BuckInitiatedInstallReceiver extends CollectingOutputReceiver {
@@ -1082,12 +1193,10 @@ public class RealAndroidDevice implements AndroidDevice {
       throw failure;
     }
 
-    for (Path targetFileName : installPaths.keySet()) {
-      chmod644(targetFileName);
-    }
+    chmod644(installPaths.keySet());
   }
 
-  private void chmod644(Path targetDevicePath)
+  private void chmod644(Iterable<Path> targetDevicePaths)
       throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
           IOException {
     // The standard Java libraries on Android always create new files un-readable by other users.
@@ -1095,7 +1204,15 @@ public class RealAndroidDevice implements AndroidDevice {
     // to allow the app to read them.  Ideally, the agent would do this automatically, but
     // there's no easy way to do this in Java.  We can drop this if we drop support for the
     // Java agent.
-    executeCommandWithErrorChecking("chmod 644 " + targetDevicePath);
+    // Batch the paths like rmFiles does, rather than paying an adb round trip per file.
+    String commandPrefix = "chmod 644 ";
+    int overhead = commandPrefix.length() + 100;
+    for (List<String> chmodArgs :
+        chunkArgs(
+            Iterables.transform(targetDevicePaths, Path::toString),
+            MAX_ADB_COMMAND_SIZE - overhead)) {
+      executeCommandWithErrorChecking(commandPrefix + Joiner.on(' ').join(chmodArgs));
+    }
   }
 
   @Override
@@ -261,7 +261,9 @@ public class ExoResourcesRewriter {
   private static class ApkZip implements Closeable, UsedResourcesFinder.ApkContentProvider {
     private final ZipFile zipFile;
     private final SortedMap<String, ZipEntry> entries;
-    private final Map<String, byte[]> entryContents;
+    // Only the contents of parsed entries (resources.arsc and binary xml) are retained, since those
+    // are rewritten in place. Everything else is read from the zip when it is copied.
+    private final Map<String, byte[]> parsedContents;
     private final Map<String, ResourcesXml> xmlEntries;
     private final Supplier<ResourceTable> resourceTable;
 
@@ -272,11 +274,11 @@ public class ExoResourcesRewriter {
               .collect(
                   ImmutableSortedMap.toImmutableSortedMap(
                       Ordering.natural(), ZipEntry::getName, e -> e));
-      this.entryContents = new HashMap<>();
+      this.parsedContents = new HashMap<>();
       this.xmlEntries = new HashMap<>();
       this.resourceTable =
           MoreSuppliers.memoize(
-              () -> ResourceTable.get(ResChunk.wrap(getContent("resources.arsc"))));
+              () -> ResourceTable.get(ResChunk.wrap(getParsedContent("resources.arsc"))));
     }
 
     @Override
@@ -320,7 +322,12 @@ public class ExoResourcesRewriter {
     }
 
     byte[] getContent(String path) {
-      return entryContents.computeIfAbsent(path, this::extractContent);
+      byte[] parsed = parsedContents.get(path);
+      return parsed != null ? parsed : extractContent(path);
+    }
+
+    private byte[] getParsedContent(String path) {
+      return parsedContents.computeIfAbsent(path, this::extractContent);
     }
 
     private byte[] extractContent(String path) {
@@ -333,7 +340,7 @@ public class ExoResourcesRewriter {
 
     private ResourcesXml extractXml(String path) {
       try {
-        return ResourcesXml.get(ResChunk.wrap(getContent(path)));
+        return ResourcesXml.get(ResChunk.wrap(getParsedContent(path)));
       } catch (Exception e) {
         throw new RuntimeException("When extracting " + path, e);
       }
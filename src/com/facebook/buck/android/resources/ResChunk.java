@@ -132,8 +132,16 @@ public abstract class ResChunk {
 
   // These are some utilities used widely by subclasses for dealing with ByteBuffers.
   static ByteBuffer copy(ByteBuffer buf) {
-    return wrap(
-        Arrays.copyOfRange(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.limit()));
+    if (buf.hasArray()) {
+      return wrap(
+          Arrays.copyOfRange(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.limit()));
+    }
+    // Direct and read-only (e.g. memory-mapped) buffers don't expose a backing array.
+    byte[] data = new byte[buf.limit()];
+    ByteBuffer view = buf.duplicate();
+    view.position(0);
+    view.get(data);
+    return wrap(data);
   }
 
   public static ByteBuffer wrap(byte[] data) {
@@ -22,7 +22,9 @@ import com.google.common.collect.ImmutableList;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * A StringPool consists of a header: ResChunk_header u32 chunk_type u32 header_size u32 chunk_size
@@ -55,6 +57,9 @@ public class StringPool extends ResChunk {
   private final ByteBuffer styleOffsets;
   private final ByteBuffer stringData;
   private final ByteBuffer styleData;
+  // Decoded strings, filled in lazily. Resource tables hold hundreds of thousands of strings of
+  // which a walk typically touches a fraction, but touches those repeatedly.
+  @Nullable private String[] decodedStrings;
 
   private StringPool(
       int stringCount,
@@ -195,7 +200,17 @@ public class StringPool extends ResChunk {
   }
 
   public String getString(int id) {
-    return getStringAtOffset(getEncodedStringOffset(id), false);
+    String[] decoded = decodedStrings;
+    if (decoded == null) {
+      decoded = new String[stringCount];
+      decodedStrings = decoded;
+    }
+    String value = decoded[id];
+    if (value == null) {
+      value = getStringAtOffset(getEncodedStringOffset(id), false);
+      decoded[id] = value;
+    }
+    return value;
   }
 
   private String getStringAtOffset(int offset, boolean forDump) {
@@ -221,12 +236,17 @@ public class StringPool extends ResChunk {
     return getStringAtOffset(getEncodedStringOffset(id), true);
   }
 
-  private String decodeString(int start, int utf16Length) {
-    byte[] data = new byte[utf16Length];
-    stringData.position(start);
-    stringData.get(data);
-    stringData.position(0);
-    return new String(data, utf8 ? Charsets.UTF_8 : Charsets.UTF_16LE);
+  private String decodeString(int start, int length) {
+    Charset charset = utf8 ? Charsets.UTF_8 : Charsets.UTF_16LE;
+    if (stringData.hasArray()) {
+      return new String(stringData.array(), stringData.arrayOffset() + start, length, charset);
+    }
+    // Read through a view so that lookups never move the shared buffer's position.
+    byte[] data = new byte[length];
+    ByteBuffer view = stringData.duplicate();
+    view.position(start);
+    view.get(data);
+    return new String(data, charset);
   }
 
   public void dump(PrintStream out) {
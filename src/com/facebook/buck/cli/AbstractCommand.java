@@ -432,6 +432,7 @@ public abstract class AbstractCommand extends CommandWithPluginManager {
             .setConcurrencyLimit(getConcurrencyLimit(params.getBuckConfig()))
             .setPersistentWorkerPools(params.getPersistentWorkerPools())
             .setProjectFilesystemFactory(params.getProjectFilesystemFactory())
+            .setFileHashLoader(params.getFileHashCache())
             .setTruncateFailingCommandEnabled(cliConfig.getEnableFailingCommandTruncation());
     return builder;
   }
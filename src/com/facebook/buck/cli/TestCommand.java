@@ -22,7 +22,6 @@ import com.facebook.buck.android.exopackage.AndroidDevicesHelperFactory;
 import com.facebook.buck.command.Build;
 import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.core.build.context.BuildContext;
-import com.facebook.buck.core.build.engine.BuildEngine;
 import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
 import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.impl.CachingBuildEngine;
@@ -84,6 +83,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
@@ -98,6 +98,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import javax.annotation.Nullable;
@@ -279,6 +280,13 @@ public class TestCommand extends BuildCommand {
             .setJavaTempDir(params.getBuckConfig().getView(JavaBuckConfig.class).getJavaTempDir());
 
     TestBuckConfig testBuckConfig = params.getBuckConfig().getView(TestBuckConfig.class);
+    builder
+        .setTestShardTargetDurationMs(testBuckConfig.getTestShardTargetDurationMs())
+        .setMaxTestShards(getNumTestThreads(params.getBuckConfig()))
+        .setMaxPersistentJavaTestRunners(
+            testBuckConfig.isUsingPersistentJavaTestRunners()
+                ? getNumTestThreads(params.getBuckConfig())
+                : 0);
     Optional<ImmutableList<String>> coverageIncludes = testBuckConfig.getCoverageIncludes();
     Optional<ImmutableList<String>> coverageExcludes = testBuckConfig.getCoverageExcludes();
 
@@ -301,7 +309,7 @@ public class TestCommand extends BuildCommand {
   private ExitCode runTestsInternal(
       CommandRunnerParams params,
       BuildRuleResolver ruleResolver,
-      BuildEngine buildEngine,
+      CachingBuildEngine buildEngine,
       Build build,
       BuildContext buildContext,
       Iterable<TestRule> testRules)
@@ -312,6 +320,17 @@ public class TestCommand extends BuildCommand {
           "unexpected arguments after \"--\" when using internal runner");
     }
 
+    // All the test rules and their runtime deps have been built, so their rule keys are known.
+    Optional<Function<BuildRule, RuleKey>> ruleKeys =
+        params.getBuckConfig().getView(TestBuckConfig.class).isSkippingUnchangedTests()
+            ? Optional.of(
+                rule ->
+                    Futures.getUnchecked(
+                        buildEngine
+                            .getRuleKeyCalculator()
+                            .calculate(params.getBuckEventBus(), rule)))
+            : Optional.empty();
+
     try (CommandThreadManager testPool =
         new CommandThreadManager("Test-Run", getTestConcurrencyLimit(params))) {
       int exitCodeInt =
@@ -324,7 +343,8 @@ public class TestCommand extends BuildCommand {
               testPool.getWeightedListeningExecutorService(),
               buildEngine,
               buildContext,
-              build.getGraphBuilder());
+              build.getGraphBuilder(),
+              ruleKeys);
       return ExitCode.map(exitCodeInt);
     }
   }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestResults;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The durations of test classes, as recorded by previous test runs, which {@link TestRunning} uses
+ * to shard long test rules and to start the longest tests first.
+ *
+ * <p>Durations are kept per test rule and test class, in milliseconds, and are persisted in
+ * buck-out between runs.
+ */
+class TestDurations {
+
+  private static final TestHistoryFile<Map<String, Map<String, Long>>> FILE =
+      new TestHistoryFile<>(
+          "test_durations.json", new TypeReference<Map<String, Map<String, Long>>>() {});
+
+  // Guarded by `this`.
+  private final Map<String, Map<String, Long>> durations;
+
+  @VisibleForTesting
+  TestDurations(Map<String, Map<String, Long>> durations) {
+    this.durations = new HashMap<>();
+    durations.forEach((target, classes) -> this.durations.put(target, new HashMap<>(classes)));
+  }
+
+  /** Reads the durations recorded in {@code filesystem}, if any. */
+  static TestDurations load(ProjectFilesystem filesystem) {
+    return new TestDurations(FILE.read(filesystem).orElse(ImmutableMap.of()));
+  }
+
+  /** Writes the durations to {@code filesystem}, for the next test runs to use. */
+  synchronized void save(ProjectFilesystem filesystem) throws IOException {
+    FILE.write(filesystem, durations);
+  }
+
+  /** @return the recorded durations of the test classes of {@code target}. */
+  synchronized ImmutableMap<String, Long> getTestClassDurations(BuildTarget target) {
+    Map<String, Long> classes = durations.get(target.getFullyQualifiedName());
+    return classes == null ? ImmutableMap.of() : ImmutableMap.copyOf(classes);
+  }
+
+  /** @return the sum of the recorded durations of the test classes of {@code target}. */
+  synchronized long getTotalDuration(BuildTarget target) {
+    Map<String, Long> classes = durations.get(target.getFullyQualifiedName());
+    return classes == null ? 0 : classes.values().stream().mapToLong(Long::longValue).sum();
+  }
+
+  /** Records the durations of the test classes in {@code results}. */
+  synchronized void record(TestResults results) {
+    if (results.getTestCases().isEmpty()) {
+      return;
+    }
+    Map<String, Long> classes =
+        durations.computeIfAbsent(
+            results.getBuildTarget().getFullyQualifiedName(), ignored -> new HashMap<>());
+    for (TestCaseSummary testCase : results.getTestCases()) {
+      if (!testCase.isDryRun()) {
+        classes.put(testCase.getTestCaseName(), testCase.getTotalTime());
+      }
+    }
+  }
+}
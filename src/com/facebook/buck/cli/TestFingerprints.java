@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.BuildRuleResolver;
+import com.facebook.buck.core.rules.attr.HasRuntimeDeps;
+import com.facebook.buck.core.test.rule.TestRule;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestResults;
+import com.facebook.buck.test.TestRunningOptions;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Fingerprints of the inputs of test rules as of their last passing run, which {@link TestRunning}
+ * uses to skip the tests whose inputs did not change since.
+ *
+ * <p>A fingerprint covers the rule key of the test rule, the rule keys of its runtime deps, which
+ * for java tests include every library on the test classpath, and the test running options which
+ * can change the outcome of a run. Fingerprints are persisted in buck-out between runs.
+ */
+class TestFingerprints {
+
+  private static final TestHistoryFile<Map<String, String>> FILE =
+      new TestHistoryFile<>("test_fingerprints.json", new TypeReference<Map<String, String>>() {});
+
+  // Guarded by `this`.
+  private final Map<String, String> fingerprints;
+
+  @VisibleForTesting
+  TestFingerprints(Map<String, String> fingerprints) {
+    this.fingerprints = new HashMap<>(fingerprints);
+  }
+
+  /** Reads the fingerprints recorded in {@code filesystem}, if any. */
+  static TestFingerprints load(ProjectFilesystem filesystem) {
+    return new TestFingerprints(FILE.read(filesystem).orElse(ImmutableMap.of()));
+  }
+
+  /** Writes the fingerprints to {@code filesystem}, for the next test runs to use. */
+  synchronized void save(ProjectFilesystem filesystem) throws IOException {
+    FILE.write(filesystem, fingerprints);
+  }
+
+  /**
+   * Computes the fingerprint of the inputs of {@code test}, which must have been built, as well as
+   * its runtime deps.
+   */
+  static String compute(
+      TestRule test,
+      BuildRuleResolver ruleResolver,
+      Function<BuildRule, RuleKey> ruleKeys,
+      TestRunningOptions options) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    putField(hasher, ruleKeys.apply(test).toString());
+    if (test instanceof HasRuntimeDeps) {
+      ImmutableList<BuildTarget> runtimeDeps =
+          ((HasRuntimeDeps) test)
+              .getRuntimeDeps(ruleResolver)
+              .sorted()
+              .distinct()
+              .collect(ImmutableList.toImmutableList());
+      for (BuildTarget runtimeDep : runtimeDeps) {
+        putField(hasher, runtimeDep.getFullyQualifiedName());
+        putField(hasher, ruleKeys.apply(ruleResolver.getRule(runtimeDep)).toString());
+      }
+    }
+    new TreeMap<>(options.getEnvironmentOverrides())
+        .forEach(
+            (name, value) -> {
+              putField(hasher, name);
+              putField(hasher, value);
+            });
+    putField(hasher, options.getPathToJavaAgent().orElse(""));
+    return hasher.hash().toString();
+  }
+
+  private static void putField(Hasher hasher, String value) {
+    hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+  }
+
+  /**
+   * @return whether {@code target} passed the last time it was run, with inputs matching {@code
+   *     fingerprint}.
+   */
+  synchronized boolean isUnchanged(BuildTarget target, String fingerprint) {
+    return fingerprint.equals(fingerprints.get(target.getFullyQualifiedName()));
+  }
+
+  /**
+   * Records the outcome of running the test rule of {@code results}, whose inputs matched {@code
+   * fingerprint}. Only complete, passing runs are recorded, anything else forgets the rule's
+   * previous fingerprint, so that it runs again next time.
+   */
+  synchronized void record(TestResults results, String fingerprint) {
+    String target = results.getBuildTarget().getFullyQualifiedName();
+    boolean passed =
+        results.isSuccess()
+            && results.getTestCases().stream().noneMatch(TestCaseSummary::isDryRun);
+    if (passed) {
+      fingerprints.put(target, fingerprint);
+    } else {
+      fingerprints.remove(target);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A JSON file in buck-out in which {@link TestRunning} keeps what it learnt about tests from one
+ * run to the next, such as {@link TestDurations} and {@link TestFingerprints}.
+ */
+class TestHistoryFile<T> {
+
+  private static final Logger LOG = Logger.get(TestHistoryFile.class);
+
+  private final String fileName;
+  private final TypeReference<T> type;
+
+  TestHistoryFile(String fileName, TypeReference<T> type) {
+    this.fileName = fileName;
+    this.type = type;
+  }
+
+  /**
+   * Reads the contents of the file in {@code filesystem}, if it exists. Unreadable files are
+   * ignored, as they only make the next test run less informed.
+   */
+  Optional<T> read(ProjectFilesystem filesystem) {
+    Path path = getPath(filesystem);
+    Optional<String> contents = filesystem.readFileIfItExists(path);
+    if (!contents.isPresent()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(ObjectMappers.readValue(contents.get(), type));
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to read %s, ignoring it.", path);
+      return Optional.empty();
+    }
+  }
+
+  /** Replaces the contents of the file in {@code filesystem} with {@code value}. */
+  void write(ProjectFilesystem filesystem, T value) throws IOException {
+    Path path = getPath(filesystem);
+    filesystem.mkdirs(path.getParent());
+    filesystem.writeContentsToPath(ObjectMappers.WRITER.writeValueAsString(value), path);
+  }
+
+  private Path getPath(ProjectFilesystem filesystem) {
+    return filesystem.getBuckPaths().getBuckOut().resolve(fileName);
+  }
+}
@@ -29,9 +29,19 @@ interface TestRun {
 
   TestRule getTest();
 
+  /** The steps running the tests, or preparing the shards if the tests are sharded. */
   List<Step> getSteps();
 
   Callable<TestResults> getTestResultsCallable();
 
   TestRule.TestReportingCallback getTestReportingCallback();
+
+  /**
+   * The steps of every shard, which may run concurrently after {@link #getSteps()}, or an empty
+   * list if the tests are not sharded.
+   */
+  List<List<Step>> getShardSteps();
+
+  /** How long the tests are expected to take, in milliseconds, based on previous runs. */
+  long getEstimatedDurationMs();
 }
@@ -26,6 +26,7 @@ import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.UnconfiguredTargetConfiguration;
+import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
@@ -34,6 +35,7 @@ import com.facebook.buck.core.test.event.IndividualTestEvent;
 import com.facebook.buck.core.test.event.TestRunEvent;
 import com.facebook.buck.core.test.event.TestStatusMessageEvent;
 import com.facebook.buck.core.test.event.TestSummaryEvent;
+import com.facebook.buck.core.test.rule.ShardableTestRule;
 import com.facebook.buck.core.test.rule.TestRule;
 import com.facebook.buck.core.toolchain.tool.Tool;
 import com.facebook.buck.core.toolchain.toolprovider.ToolProvider;
@@ -76,10 +78,12 @@ import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.Files;
+import com.google.common.math.LongMath;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -89,8 +93,10 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.math.RoundingMode;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -104,6 +110,8 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -124,7 +132,6 @@ public class TestRunning {
   // Utility class; do not instantiate.
   private TestRunning() {}
 
-  @SuppressWarnings("PMD.EmptyCatchBlock")
   public static int runTests(
       CommandRunnerParams params,
       BuildRuleResolver ruleResolver,
@@ -136,6 +143,37 @@ public class TestRunning {
       BuildContext buildContext,
       SourcePathRuleFinder ruleFinder)
       throws IOException, InterruptedException {
+    return runTests(
+        params,
+        ruleResolver,
+        tests,
+        executionContext,
+        options,
+        service,
+        buildEngine,
+        buildContext,
+        ruleFinder,
+        Optional.empty());
+  }
+
+  /**
+   * Runs {@code tests}. If {@code ruleKeys} is present, tests which passed the last time they were
+   * run, and whose inputs, as told by the rule keys of the test rules and their runtime deps, did
+   * not change since, are skipped.
+   */
+  @SuppressWarnings("PMD.EmptyCatchBlock")
+  public static int runTests(
+      CommandRunnerParams params,
+      BuildRuleResolver ruleResolver,
+      Iterable<TestRule> tests,
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      ListeningExecutorService service,
+      BuildEngine buildEngine,
+      BuildContext buildContext,
+      SourcePathRuleFinder ruleFinder,
+      Optional<Function<BuildRule, RuleKey>> ruleKeys)
+      throws IOException, InterruptedException {
 
     ImmutableSet<JavaLibrary> rulesUnderTestForCoverage;
     // If needed, we first run instrumentation on the class files.
@@ -167,6 +205,38 @@ public class TestRunning {
       rulesUnderTestForCoverage = ImmutableSet.of();
     }
 
+    // Partial runs, and runs collecting coverage, need the tests to actually run.
+    Optional<TestFingerprints> testFingerprints =
+        ruleKeys.isPresent()
+                && options.getTestSelectorList().isEmpty()
+                && !options.isCodeCoverageEnabled()
+            ? Optional.of(TestFingerprints.load(params.getCells().getRootCell().getFilesystem()))
+            : Optional.empty();
+    Map<BuildTarget, String> fingerprintsByTarget = new HashMap<>();
+    List<TestRule> unchangedTests = new ArrayList<>();
+    if (testFingerprints.isPresent()) {
+      ImmutableList.Builder<TestRule> changedTests = ImmutableList.builder();
+      for (TestRule test : tests) {
+        String fingerprint = TestFingerprints.compute(test, ruleResolver, ruleKeys.get(), options);
+        if (testFingerprints.get().isUnchanged(test.getBuildTarget(), fingerprint)) {
+          LOG.debug("Skipping test %s, its inputs did not change since it last passed", test);
+          unchangedTests.add(test);
+        } else {
+          fingerprintsByTarget.put(test.getBuildTarget(), fingerprint);
+          changedTests.add(test);
+        }
+      }
+      if (!unchangedTests.isEmpty()) {
+        params
+            .getBuckEventBus()
+            .post(
+                ConsoleEvent.info(
+                    "Skipping %d test rules whose inputs did not change since they last passed.",
+                    unchangedTests.size()));
+      }
+      tests = changedTests.build();
+    }
+
     ImmutableSet<String> testTargets =
         FluentIterable.from(tests)
             .transform(BuildRule::getBuildTarget)
@@ -175,6 +245,9 @@ public class TestRunning {
 
     int totalNumberOfTests = Iterables.size(tests);
 
+    TestDurations testDurations =
+        TestDurations.load(params.getCells().getRootCell().getFilesystem());
+
     params
         .getBuckEventBus()
         .post(
@@ -278,17 +351,41 @@ public class TestRunning {
           };
 
       List<Step> steps;
+      ImmutableList<List<Step>> shardSteps = ImmutableList.of();
       params.getBuckEventBus().post(IndividualTestEvent.started(testTargets));
-      ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
       Preconditions.checkState(buildEngine.isRuleBuilt(test.getBuildTarget()));
-      List<Step> testSteps =
-          test.runTests(executionContext, options, buildContext, testReportingCallback);
-      if (!testSteps.isEmpty()) {
-        stepsBuilder.addAll(testSteps);
+      ImmutableList<ImmutableSet<String>> shards =
+          test.runTestSeparately()
+              ? ImmutableList.of()
+              : getTestShards(test, buildContext, options, testDurations);
+      if (shards.size() > 1) {
+        LOG.debug("Running test %s in %d shards", test, shards.size());
+        ShardableTestRule shardableTest = (ShardableTestRule) test;
+        steps = shardableTest.runTestShardSetup(executionContext, options, buildContext);
+        ImmutableList.Builder<List<Step>> shardStepsBuilder = ImmutableList.builder();
+        for (ImmutableSet<String> shard : shards) {
+          shardStepsBuilder.add(
+              shardableTest.runTestShard(executionContext, options, buildContext, shard));
+        }
+        shardSteps = shardStepsBuilder.build();
+      } else {
+        ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
+        List<Step> testSteps =
+            test.runTests(executionContext, options, buildContext, testReportingCallback);
+        if (!testSteps.isEmpty()) {
+          stepsBuilder.addAll(testSteps);
+        }
+        steps = stepsBuilder.build();
       }
-      steps = stepsBuilder.build();
 
-      TestRun testRun = ImmutableTestRun.of(test, steps, resultsInterpreter, testReportingCallback);
+      TestRun testRun =
+          ImmutableTestRun.of(
+              test,
+              steps,
+              resultsInterpreter,
+              testReportingCallback,
+              shardSteps,
+              testDurations.getTotalDuration(test.getBuildTarget()));
 
       // Always run the commands, even if the list of commands as empty. There may be zero
       // commands because the rule is cached, but its results must still be processed.
@@ -301,15 +398,29 @@ public class TestRunning {
       }
     }
 
+    List<PendingTestWork> pendingWork = new ArrayList<>();
     for (TestRun testRun : parallelTestRuns) {
-      ListenableFuture<TestResults> testResults =
-          runStepsAndYieldResult(
-              executionContext,
-              testRun.getSteps(),
-              testRun.getTestResultsCallable(),
-              testRun.getTest().getBuildTarget(),
-              params.getBuckEventBus(),
-              service);
+      ListenableFuture<TestResults> testResults;
+      if (testRun.getShardSteps().isEmpty()) {
+        SettableFuture<TestResults> runResults = SettableFuture.create();
+        pendingWork.add(
+            new PendingTestWork(
+                testRun.getEstimatedDurationMs(),
+                () ->
+                    runResults.setFuture(
+                        runStepsAndYieldResult(
+                            executionContext,
+                            testRun.getSteps(),
+                            testRun.getTestResultsCallable(),
+                            testRun.getTest().getBuildTarget(),
+                            params.getBuckEventBus(),
+                            service))));
+        testResults = runResults;
+      } else {
+        testResults =
+            runShardsAndYieldResult(
+                executionContext, testRun, params.getBuckEventBus(), service, pendingWork);
+      }
       results.add(
           transformTestResults(
               params,
@@ -321,6 +432,13 @@ public class TestRunning {
               totalNumberOfTests));
     }
 
+    // Start the tests and shards which are expected to take the longest first, so that they don't
+    // end up running on their own at the end, while the rest of the test pool sits idle.
+    pendingWork.sort(Comparator.comparingLong(work -> -work.estimatedDurationMs));
+    for (PendingTestWork work : pendingWork) {
+      work.submit.run();
+    }
+
     ListenableFuture<List<TestResults>> parallelTestStepsFuture = Futures.allAsList(results);
 
     List<TestResults> completedResults = new ArrayList<>();
@@ -396,7 +514,44 @@ public class TestRunning {
       throw e;
     }
 
-    params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
+    // Durations of partial runs would make the tests look shorter than they are.
+    if (options.getTestSelectorList().isEmpty()) {
+      completedResults.forEach(testDurations::record);
+      try {
+        testDurations.save(params.getCells().getRootCell().getFilesystem());
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to save test durations.");
+      }
+    }
+
+    if (testFingerprints.isPresent()) {
+      for (TestResults testResults : completedResults) {
+        String fingerprint = fingerprintsByTarget.get(testResults.getBuildTarget());
+        if (fingerprint != null) {
+          testFingerprints.get().record(testResults, fingerprint);
+        }
+      }
+      try {
+        testFingerprints.get().save(params.getCells().getRootCell().getFilesystem());
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to save test fingerprints.");
+      }
+    }
+
+    // Report the tests which were skipped, so that they don't go missing from the results.
+    for (TestRule test : unchangedTests) {
+      completedResults.add(getUnchangedTestResults(test, testDurations));
+    }
+    ImmutableSet<String> finishedTestTargets =
+        ImmutableSet.<String>builder()
+            .addAll(testTargets)
+            .addAll(
+                FluentIterable.from(unchangedTests)
+                    .transform(BuildRule::getBuildTarget)
+                    .transform(Object::toString))
+            .build();
+
+    params.getBuckEventBus().post(TestRunEvent.finished(finishedTestTargets, completedResults));
 
     // Write out the results as XML, if requested.
     Optional<String> path = options.getPathToXmlTestOutput();
@@ -551,12 +706,97 @@ public class TestRunning {
     return transformedTestResults;
   }
 
-  private static Callable<TestResults> getCachingCallable(Callable<TestResults> callable) {
-    return new Callable<TestResults>() {
-      @Nullable private Either<TestResults, Exception> result = null;
+  /**
+   * Returns the test shards {@code test} should be split into, or a list with fewer than two shards
+   * if it should run as a whole.
+   */
+  private static ImmutableList<ImmutableSet<String>> getTestShards(
+      TestRule test,
+      BuildContext buildContext,
+      TestRunningOptions options,
+      TestDurations testDurations) {
+    if (!(test instanceof ShardableTestRule)
+        || !options.getTestShardTargetDurationMs().isPresent()
+        || options.getMaxTestShards() < 2) {
+      return ImmutableList.of();
+    }
+    return splitIntoShards(
+        ((ShardableTestRule) test).getTestClassNames(buildContext.getSourcePathResolver()),
+        testDurations.getTestClassDurations(test.getBuildTarget()),
+        options.getTestShardTargetDurationMs().get(),
+        options.getMaxTestShards());
+  }
+
+  /**
+   * Splits test classes into shards which are expected to take about {@code targetDurationMs}
+   * each, but into no more than {@code maxShards} shards. Every class goes to the shard with the
+   * least work so far, longest classes first, and classes without a recorded duration are assumed
+   * to take as long as the average class which has one. Tests with no recorded durations at all
+   * are not split.
+   *
+   * @return the shards, longest first.
+   */
+  @VisibleForTesting
+  static ImmutableList<ImmutableSet<String>> splitIntoShards(
+      ImmutableSet<String> testClassNames,
+      ImmutableMap<String, Long> durations,
+      long targetDurationMs,
+      int maxShards) {
+    long knownDuration = 0;
+    int knownClasses = 0;
+    for (String testClass : testClassNames) {
+      Long duration = durations.get(testClass);
+      if (duration != null) {
+        knownDuration += duration;
+        knownClasses++;
+      }
+    }
+    if (knownClasses == 0) {
+      return ImmutableList.of(testClassNames);
+    }
+    long defaultDuration = knownDuration / knownClasses;
+    long totalDuration = knownDuration + defaultDuration * (testClassNames.size() - knownClasses);
+    long shardCount =
+        Math.min(
+            Math.min(maxShards, testClassNames.size()),
+            LongMath.divide(totalDuration, Math.max(1, targetDurationMs), RoundingMode.CEILING));
+    if (shardCount < 2) {
+      return ImmutableList.of(testClassNames);
+    }
+
+    List<String> sortedClasses = new ArrayList<>(testClassNames);
+    sortedClasses.sort(
+        Comparator.comparingLong(
+                (String testClass) -> -durations.getOrDefault(testClass, defaultDuration))
+            .thenComparing(Comparator.naturalOrder()));
+    long[] shardDurations = new long[(int) shardCount];
+    List<ImmutableSet.Builder<String>> shards = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(ImmutableSet.builder());
+    }
+    for (String testClass : sortedClasses) {
+      int shortest = 0;
+      for (int i = 1; i < shardCount; i++) {
+        if (shardDurations[i] < shardDurations[shortest]) {
+          shortest = i;
+        }
+      }
+      shards.get(shortest).add(testClass);
+      shardDurations[shortest] += durations.getOrDefault(testClass, defaultDuration);
+    }
+    return IntStream.range(0, shards.size())
+        .boxed()
+        .sorted(Comparator.comparingLong(i -> -shardDurations[i]))
+        .map(i -> shards.get(i).build())
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  private static <T> Callable<T> getCachingCallable(Callable<T> callable) {
+    return new Callable<T>() {
+      @Nullable private Either<T, Exception> result = null;
 
       @Override
-      public synchronized TestResults call() throws Exception {
+      public synchronized T call() throws Exception {
         if (result == null) {
           try {
             result = Either.ofLeft(callable.call());
@@ -626,6 +866,37 @@ public class TestRunning {
     return rulesUnderTest.build();
   }
 
+  /**
+   * @return the results reporting that {@code test} was not run, as its inputs did not change since
+   *     it last passed, with one test case per test class it ran last time, if those are known.
+   */
+  @VisibleForTesting
+  static TestResults getUnchangedTestResults(TestRule test, TestDurations testDurations) {
+    ImmutableSet<String> testCaseNames =
+        testDurations.getTestClassDurations(test.getBuildTarget()).keySet();
+    if (testCaseNames.isEmpty()) {
+      testCaseNames = ImmutableSet.of(test.getBuildTarget().getFullyQualifiedName());
+    }
+    ImmutableList.Builder<TestCaseSummary> testCases = ImmutableList.builder();
+    for (String testCaseName : testCaseNames) {
+      testCases.add(
+          new TestCaseSummary(
+              testCaseName,
+              ImmutableList.of(
+                  new TestResultSummary(
+                      testCaseName,
+                      "main",
+                      ResultType.EXCLUDED,
+                      0L,
+                      "Not run: its inputs did not change since it last passed.",
+                      null,
+                      null,
+                      null))));
+    }
+    return TestResults.of(
+        test.getBuildTarget(), testCases.build(), test.getContacts(), test.getLabels());
+  }
+
   /**
    * Writes the test results in XML format to the supplied writer.
    *
@@ -869,4 +1140,71 @@ public class TestRunning {
 
     return listeningExecutorService.submit(callable);
   }
+
+  /**
+   * Adds one piece of work for each shard of {@code testRun} to {@code pendingWork}. The first
+   * shard to start runs the steps preparing all shards, and the results are interpreted once all of
+   * them have finished.
+   */
+  private static ListenableFuture<TestResults> runShardsAndYieldResult(
+      ExecutionContext context,
+      TestRun testRun,
+      BuckEventBus eventBus,
+      ListeningExecutorService listeningExecutorService,
+      List<PendingTestWork> pendingWork) {
+    Preconditions.checkState(!listeningExecutorService.isShutdown());
+    BuildTarget buildTarget = testRun.getTest().getBuildTarget();
+    Callable<Unit> setup =
+        getCachingCallable(
+            () -> {
+              LOG.debug(
+                  "Test steps will run for %s in %d shards",
+                  buildTarget, testRun.getShardSteps().size());
+              eventBus.post(TestRuleEvent.started(buildTarget));
+              for (Step step : testRun.getSteps()) {
+                StepRunner.runStep(context, step, Optional.of(buildTarget));
+              }
+              return Unit.UNIT;
+            });
+
+    long shardDurationMs = testRun.getEstimatedDurationMs() / testRun.getShardSteps().size();
+    List<ListenableFuture<Unit>> shardResults = new ArrayList<>();
+    for (List<Step> shardSteps : testRun.getShardSteps()) {
+      SettableFuture<Unit> shardResult = SettableFuture.create();
+      pendingWork.add(
+          new PendingTestWork(
+              shardDurationMs,
+              () ->
+                  shardResult.setFuture(
+                      listeningExecutorService.submit(
+                          () -> {
+                            setup.call();
+                            for (Step step : shardSteps) {
+                              StepRunner.runStep(context, step, Optional.of(buildTarget));
+                            }
+                            return Unit.UNIT;
+                          }))));
+      shardResults.add(shardResult);
+    }
+
+    return Futures.transformAsync(
+        Futures.allAsList(shardResults),
+        ignored -> {
+          LOG.debug("Test steps did run for %s", buildTarget);
+          eventBus.post(TestRuleEvent.finished(buildTarget));
+          return Futures.immediateFuture(testRun.getTestResultsCallable().call());
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  /** Test steps waiting to be submitted to the test pool. */
+  private static class PendingTestWork {
+    private final long estimatedDurationMs;
+    private final Runnable submit;
+
+    PendingTestWork(long estimatedDurationMs, Runnable submit) {
+      this.estimatedDurationMs = estimatedDurationMs;
+      this.submit = submit;
+    }
+  }
 }
@@ -1293,7 +1293,8 @@ class CachingBuildRuleBuilder {
     } else {
       ruleScheduleInfo = RuleScheduleInfo.DEFAULT;
     }
-    return ResourceAmounts.of(ruleScheduleInfo.getJobsMultiplier(), 0, 0, 0);
+    return ResourceAmounts.of(
+        ruleScheduleInfo.getJobsMultiplier(), ruleScheduleInfo.getMemoryAmount(), 0, 0);
   }
 
   private Scope buildRuleScope() {
@@ -38,6 +38,7 @@ import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
 import com.facebook.buck.util.concurrent.ResourceAmountsEstimator;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.hashing.FileHashLoader;
 import com.facebook.buck.worker.WorkerProcessPool;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closer;
@@ -88,6 +89,12 @@ public abstract class ExecutionContext implements Closeable {
 
   public abstract ProjectFilesystemFactory getProjectFilesystemFactory();
 
+  /**
+   * Hashes of the files of the build, kept up to date as rules are built or fetched from the cache.
+   * Not available when steps run outside of a build.
+   */
+  public abstract Optional<FileHashLoader> getFileHashLoader();
+
   @Value.Default
   public long getDefaultTestTimeoutMillis() {
     return 0L;
@@ -21,6 +21,7 @@ import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwar
 import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwareExecutorWithLocalStack;
 import com.facebook.buck.core.graph.transformation.executor.impl.JavaExecutorBackedDefaultDepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.executor.impl.ToposortBasedDepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.impl.WorkStealingDepsAwareExecutor;
 
 /**
  * A factory for {@link DepsAwareExecutor}s.
@@ -50,6 +51,8 @@ public class DepsAwareExecutorFactory {
         return JavaExecutorBackedDefaultDepsAwareExecutor.of(parallelism);
       case TOPOSORT_BASED:
         return ToposortBasedDepsAwareExecutor.of(parallelism);
+      case WORK_STEALING:
+        return WorkStealingDepsAwareExecutor.of(parallelism);
       default:
         throw new IllegalArgumentException(
             String.format("Unknown DepsAwareExecutorType: %s", type));
@@ -57,7 +57,8 @@ abstract class AbstractDepsAwareWorker<TaskType extends AbstractDepsAwareTask<?,
   protected abstract boolean eval(TaskType task) throws InterruptedException;
 
   /** propagate an exception for the dependency to the current task by throwing it */
-  protected void propagateException(TaskType task) throws InterruptedException, ExecutionException {
+  static void propagateException(AbstractDepsAwareTask<?, ?> task)
+      throws InterruptedException, ExecutionException {
     CompletableFuture<?> depResult = task.getFuture();
     if (!depResult.isCompletedExceptionally()) {
       return;
@@ -66,7 +67,7 @@ abstract class AbstractDepsAwareWorker<TaskType extends AbstractDepsAwareTask<?,
     Verify.verify(false, "Should have completed exceptionally");
   }
 
-  protected void completeWithException(TaskType task, Throwable e) {
+  static void completeWithException(AbstractDepsAwareTask<?, ?> task, Throwable e) {
     if (e instanceof ExecutionException) {
       e = e.getCause();
     }
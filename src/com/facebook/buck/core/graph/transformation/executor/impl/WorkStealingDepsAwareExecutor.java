@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask.DepsSupplier;
+import com.facebook.buck.core.graph.transformation.executor.impl.AbstractDepsAwareTask.TaskStatus;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Verify;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nullable;
+
+/**
+ * A specialized Executor that executes {@link DepsAwareTask}. This executor will attempt to
+ * maintain maximum concurrency, while completing dependencies of each supplied work first.
+ *
+ * <p>Unlike the other implementations, which share a single blocking queue between all workers,
+ * each worker of this executor owns a lock-free deque. A worker pushes the dependencies it
+ * discovers onto the front of its own deque and pops from the front, so that a chain of
+ * dependencies is computed depth first on one thread without touching shared state. Workers that
+ * run out of local work take newly submitted tasks from a shared injection queue, and then steal
+ * from the back of the other workers' deques, which is where the oldest and usually largest
+ * pieces of work are.
+ *
+ * <p>Idle workers park themselves instead of spinning. A worker registers itself as parked, checks
+ * all queues one last time, and only then parks, while anyone adding work unparks one registered
+ * worker after publishing it. This ordering guarantees that work is never left behind with every
+ * worker asleep. Parking is additionally bounded by a timeout, so a wakeup that is consumed by a
+ * worker that found other work only delays, but never loses, the work it was meant for.
+ */
+public class WorkStealingDepsAwareExecutor<T>
+    implements DepsAwareExecutor<T, DefaultDepsAwareTask<T>> {
+
+  private static final Logger LOG = Logger.get(WorkStealingDepsAwareExecutor.class);
+
+  private static final long PARK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final ConcurrentLinkedQueue<DefaultDepsAwareTask<T>> injectionQueue =
+      new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Worker> parkedWorkers = new ConcurrentLinkedQueue<>();
+  private final ImmutableList<Worker> workers;
+  private final Future<?>[] workerFutures;
+  private final ExecutorService executorService;
+
+  private volatile boolean isShutdown = false;
+
+  private WorkStealingDepsAwareExecutor(int numberOfThreads) {
+    Preconditions.checkArgument(numberOfThreads > 0);
+    this.executorService = Executors.newFixedThreadPool(numberOfThreads);
+    ImmutableList.Builder<Worker> workers = ImmutableList.builderWithExpectedSize(numberOfThreads);
+    for (int i = 0; i < numberOfThreads; i++) {
+      workers.add(new Worker());
+    }
+    this.workers = workers.build();
+    this.workerFutures = new Future<?>[numberOfThreads];
+    for (int i = 0; i < numberOfThreads; i++) {
+      workerFutures[i] = executorService.submit(this.workers.get(i)::run);
+    }
+  }
+
+  /** Creates a {@link WorkStealingDepsAwareExecutor} with given {@code numberOfThreads}. */
+  public static <U> WorkStealingDepsAwareExecutor<U> of(int numberOfThreads) {
+    return new WorkStealingDepsAwareExecutor<>(numberOfThreads);
+  }
+
+  @Override
+  public void close() {
+    isShutdown = true;
+    for (Future<?> worker : workerFutures) {
+      worker.cancel(true);
+    }
+    executorService.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return isShutdown;
+  }
+
+  @Override
+  public DefaultDepsAwareTask<T> createThrowingTask(
+      Callable<T> callable,
+      ThrowingSupplier<ImmutableSet<DefaultDepsAwareTask<T>>, Exception> prereqSupplier,
+      ThrowingSupplier<ImmutableSet<DefaultDepsAwareTask<T>>, Exception> depsSupplier) {
+    return DefaultDepsAwareTask.of(callable, DepsSupplier.of(prereqSupplier, depsSupplier));
+  }
+
+  @Override
+  public DefaultDepsAwareTask<T> createTask(Callable<T> callable) {
+    return DefaultDepsAwareTask.of(callable);
+  }
+
+  @Override
+  public Future<T> submit(DefaultDepsAwareTask<T> task) {
+    if (isShutdown) {
+      throw new RejectedExecutionException("Executor has already been shutdown");
+    }
+    if (task.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
+      injectionQueue.offer(task);
+      signalWork();
+    }
+    return task.getResultFuture();
+  }
+
+  @Override
+  public ImmutableList<Future<T>> submitAll(Collection<DefaultDepsAwareTask<T>> tasks) {
+    ImmutableList.Builder<Future<T>> futures = ImmutableList.builderWithExpectedSize(tasks.size());
+    for (DefaultDepsAwareTask<T> w : tasks) {
+      futures.add(submit(w));
+    }
+    return futures.build();
+  }
+
+  /** Wakes up one parked worker, if any. Must be called after the new work is visible. */
+  private void signalWork() {
+    Worker worker = parkedWorkers.poll();
+    if (worker != null) {
+      LockSupport.unpark(worker.thread);
+    }
+  }
+
+  private boolean hasQueuedWork() {
+    if (!injectionQueue.isEmpty()) {
+      return true;
+    }
+    for (Worker worker : workers) {
+      if (!worker.deque.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A worker owning one deque of {@link DefaultDepsAwareTask}s.
+   *
+   * <p>As with the other implementations, {@link DefaultDepsAwareTask}s in any of the queues have a
+   * status of {@link TaskStatus#SCHEDULED}, and only the worker that moves a task to {@link
+   * TaskStatus#STARTED} may run or requeue it. A task may sit in more than one deque at a time;
+   * copies whose status is no longer {@link TaskStatus#SCHEDULED} are simply skipped.
+   */
+  private class Worker {
+    private final ConcurrentLinkedDeque<DefaultDepsAwareTask<T>> deque =
+        new ConcurrentLinkedDeque<>();
+    @Nullable private volatile Thread thread;
+
+    void run() {
+      thread = Thread.currentThread();
+      try {
+        while (!Thread.currentThread().isInterrupted() && !isShutdown) {
+          DefaultDepsAwareTask<T> task = findTask();
+          if (task == null) {
+            park();
+          } else {
+            eval(task);
+          }
+        }
+      } catch (InterruptedException e) {
+        LOG.info("Worker was interrupted");
+      } catch (Throwable e) {
+        LOG.error(e, "Unexpected Error occurred in DepsAwareExecutor");
+      }
+    }
+
+    @Nullable
+    private DefaultDepsAwareTask<T> findTask() {
+      DefaultDepsAwareTask<T> task = deque.pollFirst();
+      if (task != null) {
+        return task;
+      }
+      task = injectionQueue.poll();
+      if (task != null) {
+        return task;
+      }
+      return steal();
+    }
+
+    @Nullable
+    private DefaultDepsAwareTask<T> steal() {
+      int start = ThreadLocalRandom.current().nextInt(workers.size());
+      for (int i = 0; i < workers.size(); i++) {
+        Worker victim = workers.get((start + i) % workers.size());
+        if (victim == this) {
+          continue;
+        }
+        DefaultDepsAwareTask<T> task = victim.deque.pollLast();
+        if (task != null) {
+          return task;
+        }
+      }
+      return null;
+    }
+
+    private void park() {
+      parkedWorkers.offer(this);
+      try {
+        if (hasQueuedWork() || isShutdown) {
+          return;
+        }
+        LockSupport.parkNanos(this, PARK_TIMEOUT_NANOS);
+      } finally {
+        parkedWorkers.remove(this);
+      }
+    }
+
+    private void eval(DefaultDepsAwareTask<T> task) throws InterruptedException {
+      if (!task.compareAndSetStatus(TaskStatus.SCHEDULED, TaskStatus.STARTED)) {
+        return;
+      }
+
+      ImmutableSet<DefaultDepsAwareTask<T>> prereqs;
+      boolean prereqsDone;
+      try {
+        prereqs = task.getPrereqs();
+        prereqsDone = checkTasksReadyOrSchedule(prereqs);
+      } catch (Throwable e) {
+        AbstractDepsAwareWorker.completeWithException(task, e);
+        return;
+      }
+      if (!prereqsDone) {
+        requeue(task);
+        return;
+      }
+
+      ImmutableSet<DefaultDepsAwareTask<T>> deps;
+      boolean depsDone;
+      try {
+        deps = task.getDependencies();
+        depsDone = checkTasksReadyOrSchedule(deps);
+      } catch (Throwable e) {
+        AbstractDepsAwareWorker.completeWithException(task, e);
+        return;
+      }
+      if (!depsDone) {
+        requeue(task);
+        return;
+      }
+
+      task.call();
+    }
+
+    /**
+     * Puts a task whose dependencies are not done yet at the back of the local deque, behind the
+     * dependencies that were just pushed to the front. This worker keeps running, so there is no
+     * need to wake anyone up for it.
+     */
+    private void requeue(DefaultDepsAwareTask<T> task) {
+      Verify.verify(task.compareAndSetStatus(TaskStatus.STARTED, TaskStatus.SCHEDULED));
+      deque.addLast(task);
+    }
+
+    private boolean checkTasksReadyOrSchedule(ImmutableSet<DefaultDepsAwareTask<T>> tasksToCheck)
+        throws InterruptedException, ExecutionException {
+      boolean result = true;
+      boolean scheduledAny = false;
+
+      for (DefaultDepsAwareTask<T> task : tasksToCheck) {
+        if (task.getStatus() != TaskStatus.DONE) {
+          result = false;
+          if (task.getStatus() == TaskStatus.STARTED) {
+            continue;
+          }
+          // A dependency that is already queued, possibly at the back of some deque, is pushed to
+          // the front of ours as well, so that chains are computed depth first. Whoever gets to
+          // move it to STARTED first runs it, and other copies are dropped.
+          if (task.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
+            scheduledAny = true;
+          }
+          deque.addFirst(task);
+        }
+        AbstractDepsAwareWorker.propagateException(task);
+      }
+      if (scheduledAny) {
+        signalWork();
+      }
+      return result;
+    }
+  }
+}
@@ -30,11 +30,22 @@ public abstract class RuleScheduleInfo {
    */
   public abstract int getJobsMultiplier();
 
+  /**
+   * @return the amount of the memory resource to hold while running the rule's steps, in the units
+   *     of {@link com.facebook.buck.util.concurrent.ResourceAmounts#getMemory()}. Rules with a
+   *     non-zero amount only run together while their total fits in the configured maximum.
+   */
+  public abstract int getMemoryAmount();
+
   public static RuleScheduleInfo of() {
     return RuleScheduleInfo.of(1);
   }
 
   public static RuleScheduleInfo of(int jobsMultiplier) {
-    return ImmutableRuleScheduleInfo.of(jobsMultiplier);
+    return RuleScheduleInfo.of(jobsMultiplier, 0);
+  }
+
+  public static RuleScheduleInfo of(int jobsMultiplier, int memoryAmount) {
+    return ImmutableRuleScheduleInfo.of(jobsMultiplier, memoryAmount);
   }
 }
@@ -25,6 +25,10 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
@@ -35,6 +39,16 @@ public abstract class AbstractSelectorListResolver implements SelectorListResolv
 
   private final SelectableResolver selectableResolver;
 
+  /**
+   * The conditions of <code>select</code> statements, keyed by the build target of the condition
+   * and the configuration they were matched in, mapped to the condition if it matched, and to
+   * nothing otherwise. Many targets select on the same conditions in the same configuration, so
+   * every condition is resolved and matched once per configuration, rather than once for every
+   * <code>select</code> referring to it.
+   */
+  private final ConcurrentMap<MatchKey, Optional<Selectable>> matchingSelectables =
+      new ConcurrentHashMap<>();
+
   protected AbstractSelectorListResolver(SelectableResolver selectableResolver) {
     this.selectableResolver = selectableResolver;
   }
@@ -104,12 +118,26 @@ public abstract class AbstractSelectorListResolver implements SelectorListResolv
       return;
     }
 
-    Selectable selectable =
-        selectableResolver.getSelectable(selectorKey.getBuildTarget(), dependencyStack);
+    getSelectableIfMatching(configurationContext, selectorKey.getBuildTarget(), dependencyStack)
+        .ifPresent(selectable -> updateConditions(matchingConditions, selectable, value));
+  }
 
-    if (selectable.matches(configurationContext, dependencyStack)) {
-      updateConditions(matchingConditions, selectable, value);
+  private Optional<Selectable> getSelectableIfMatching(
+      SelectableConfigurationContext configurationContext,
+      BuildTarget selectableTarget,
+      DependencyStack dependencyStack) {
+    MatchKey key = new MatchKey(selectableTarget, configurationContext);
+    Optional<Selectable> result = matchingSelectables.get(key);
+    if (result == null) {
+      // Not computed in the map, as resolving a selectable may need to resolve other selectables.
+      Selectable selectable = selectableResolver.getSelectable(selectableTarget, dependencyStack);
+      result =
+          selectable.matches(configurationContext, dependencyStack)
+              ? Optional.of(selectable)
+              : Optional.empty();
+      matchingSelectables.putIfAbsent(key, result);
     }
+    return result;
   }
 
   private static void updateConditions(
@@ -166,4 +194,36 @@ public abstract class AbstractSelectorListResolver implements SelectorListResolv
     }
     throw new HumanReadableException(dependencyStack, noMatchMessage);
   }
+
+  /** A condition and the configuration it is matched in. */
+  private static final class MatchKey {
+    private final BuildTarget selectableTarget;
+    private final SelectableConfigurationContext configurationContext;
+    private final int hashCode;
+
+    MatchKey(BuildTarget selectableTarget, SelectableConfigurationContext configurationContext) {
+      this.selectableTarget = selectableTarget;
+      this.configurationContext = configurationContext;
+      this.hashCode = Objects.hash(selectableTarget, configurationContext);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof MatchKey)) {
+        return false;
+      }
+      MatchKey that = (MatchKey) other;
+      return hashCode == that.hashCode
+          && selectableTarget.equals(that.selectableTarget)
+          && configurationContext.equals(that.configurationContext);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.test.rule;
+
+import com.facebook.buck.core.build.context.BuildContext;
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.test.TestRunningOptions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A {@link TestRule} whose test classes can be split into shards, which run at the same time.
+ *
+ * <p>Running the steps returned by {@link #runTestShardSetup}, followed by the steps of shards
+ * which cover all test classes, is equivalent to running the steps returned by {@link #runTests},
+ * and {@link #interpretTestResults} merges the results of all shards into one {@link
+ * com.facebook.buck.test.TestResults}.
+ */
+public interface ShardableTestRule extends TestRule {
+
+  /** @return the names of the test classes run by this rule, which shards are made of. */
+  ImmutableSet<String> getTestClassNames(SourcePathResolverAdapter pathResolver);
+
+  /** @return the steps which must run before the steps of any shard. */
+  ImmutableList<Step> runTestShardSetup(
+      ExecutionContext executionContext, TestRunningOptions options, BuildContext buildContext);
+
+  /**
+   * @return the steps which run the tests in {@code testClassNames}. The steps of different shards
+   *     of the same rule may run concurrently.
+   */
+  ImmutableList<Step> runTestShard(
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      BuildContext buildContext,
+      ImmutableSet<String> testClassNames);
+}
@@ -31,8 +31,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import java.nio.file.Path;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
@@ -48,6 +50,11 @@ public abstract class CxxHeaders implements AddsToRuleKey, HasCustomDepsLogic {
   /** @return the path to the optional header map to use for this header pack. */
   public abstract Optional<SourcePath> getHeaderMap();
 
+  /** @return the path to the optional clang VFS overlay to use for this header pack. */
+  public Optional<SourcePath> getVFSOverlay() {
+    return Optional.empty();
+  }
+
   /**
    * Add this header pack to the given {@link com.facebook.buck.cxx.HeaderPathNormalizer.Builder}.
    */
@@ -89,7 +96,15 @@ public abstract class CxxHeaders implements AddsToRuleKey, HasCustomDepsLogic {
     // 2) De-duplicate redundant include paths.
     Multimap<CxxPreprocessables.IncludeType, String> headerMaps = LinkedHashMultimap.create();
     Multimap<CxxPreprocessables.IncludeType, String> roots = LinkedHashMultimap.create();
+    Set<String> vfsOverlays = new LinkedHashSet<>();
     for (CxxHeaders cxxHeaders : cxxHeaderses) {
+      cxxHeaders
+          .getVFSOverlay()
+          .ifPresent(
+              vfsOverlay ->
+                  vfsOverlays.add(
+                      resolveSourcePathAndShorten(resolver, vfsOverlay, pathMinimizer)
+                          .toString()));
       Optional<SourcePath> headerMap = cxxHeaders.getHeaderMap();
       if (headerMap.isPresent()) {
         headerMaps.put(
@@ -114,6 +129,12 @@ public abstract class CxxHeaders implements AddsToRuleKey, HasCustomDepsLogic {
         ImmutableSet.of(
             CxxPreprocessables.IncludeType.LOCAL, CxxPreprocessables.IncludeType.SYSTEM);
 
+    // VFS overlays only change what the include roots below resolve to, so their order doesn't
+    // matter, but they need to be in place before any include root refers into them.
+    for (String vfsOverlay : vfsOverlays) {
+      args.add("-ivfsoverlay", vfsOverlay);
+    }
+
     // Apply the header maps first, so that headers that matching there avoid falling back to
     // stat'ing files in the normal include roots.
     Preconditions.checkState(includeTypes.containsAll(headerMaps.keySet()));
@@ -147,6 +147,8 @@ public class CxxPreprocessables {
             target, filesystem, root, links, ModuleMapMode.UMBRELLA_HEADER);
       case HEADER_MAP_ONLY:
         return new DirectHeaderMap(target, filesystem, root, links);
+      case VFS_OVERLAY_ONLY:
+        return new DirectVFSOverlay(target, filesystem, root, links);
       default:
       case SYMLINK_TREE_ONLY:
         return new HeaderSymlinkTree(target, filesystem, root, links);
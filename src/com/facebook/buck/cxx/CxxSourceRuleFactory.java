@@ -345,6 +345,9 @@ public abstract class CxxSourceRuleFactory {
     Preconditions.checkArgument(CxxSourceTypes.isOptimizableType(source.getType()));
 
     BuildTarget target = createOptimizeBuildTarget(name);
+    SourcePath thinIndex =
+        CxxThinLTOIndexArg.getModuleIndexSourcePath(
+            getPathResolver(), thinIndicesRoot, source.getPath());
 
     Compiler compiler =
         CxxSourceTypes.getCompiler(getCxxPlatform(), source.getType())
@@ -360,7 +363,7 @@ public abstract class CxxSourceRuleFactory {
             .addAllRuleFlags(getRuleCompileFlags(source.getType()))
             // Add custom per-file flags.
             .addAllRuleFlags(sanitizedArgs(StringArg.from(source.getFlags())))
-            .addRuleFlags(new CxxThinLTOIndexArg(thinIndicesRoot, source.getPath()))
+            .addRuleFlags(new CxxThinLTOIndexArg(thinIndex))
             .build();
 
     CompilerDelegate compilerDelegate =
@@ -377,9 +380,10 @@ public abstract class CxxSourceRuleFactory {
         compilerDelegate,
         getCompileOutputName(name),
         source.getPath(),
-        thinIndicesRoot,
+        thinIndex,
         source.getType(),
-        getSanitizer());
+        getSanitizer(),
+        getCxxBuckConfig().getThinLTOOptScheduleInfo());
   }
 
   /**
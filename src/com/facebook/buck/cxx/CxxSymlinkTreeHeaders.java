@@ -85,6 +85,10 @@ public abstract class CxxSymlinkTreeHeaders extends CxxHeaders implements RuleKe
   @CustomFieldBehavior(HeaderMapInputsBehavior.class)
   public abstract Optional<SourcePath> getHeaderMap();
 
+  @Override
+  @CustomFieldBehavior(HeaderMapInputsBehavior.class)
+  public abstract Optional<SourcePath> getVFSOverlay();
+
   @Value.Auxiliary
   @CustomFieldBehavior(NameToPathMapInputsBehavior.class)
   public abstract ImmutableSortedMap<Path, SourcePath> getNameToPathMap();
@@ -108,6 +112,7 @@ public abstract class CxxSymlinkTreeHeaders extends CxxHeaders implements RuleKe
       ruleFinder.getRule(getIncludeRoot().getRight()).ifPresent(builder);
     }
     getHeaderMap().flatMap(ruleFinder::getRule).ifPresent(builder);
+    getVFSOverlay().flatMap(ruleFinder::getRule).ifPresent(builder);
 
     // return a stream of the cached dependencies, or compute and store it
     return Stream.concat(
@@ -155,6 +160,7 @@ public abstract class CxxSymlinkTreeHeaders extends CxxHeaders implements RuleKe
         symlinkTree.getRootSourcePath(),
         includeRoot,
         headerMap,
+        symlinkTree.getVFSOverlaySourcePath(),
         symlinkTree.getLinks(),
         symlinkTree.getClass().getName());
   }
@@ -166,8 +172,26 @@ public abstract class CxxSymlinkTreeHeaders extends CxxHeaders implements RuleKe
       Optional<? extends SourcePath> headerMap,
       ImmutableSortedMap<Path, SourcePath> nameToPathMap,
       String symlinkTreeClass) {
+    return of(
+        includeType,
+        root,
+        includeRoot,
+        headerMap,
+        Optional.empty(),
+        nameToPathMap,
+        symlinkTreeClass);
+  }
+
+  public static CxxSymlinkTreeHeaders of(
+      CxxPreprocessables.IncludeType includeType,
+      SourcePath root,
+      Either<PathSourcePath, SourcePath> includeRoot,
+      Optional<? extends SourcePath> headerMap,
+      Optional<? extends SourcePath> vfsOverlay,
+      ImmutableSortedMap<Path, SourcePath> nameToPathMap,
+      String symlinkTreeClass) {
     return ImmutableCxxSymlinkTreeHeaders.of(
-        includeType, root, includeRoot, headerMap, nameToPathMap, symlinkTreeClass);
+        includeType, root, includeRoot, headerMap, vfsOverlay, nameToPathMap, symlinkTreeClass);
   }
 
   /** Custom serialization. */
@@ -184,6 +208,7 @@ public abstract class CxxSymlinkTreeHeaders extends CxxHeaders implements RuleKe
         CxxSymlinkTreeHeaders instance, ValueVisitor<E> serializer) throws E {
       INCLUDE_TYPE_TYPE_INFO.visit(instance.getIncludeType(), serializer);
       HEADER_MAP_TYPE_INFO.visit(instance.getHeaderMap(), serializer);
+      HEADER_MAP_TYPE_INFO.visit(instance.getVFSOverlay(), serializer);
       serializer.visitSourcePath(instance.getRoot());
       INCLUDE_ROOT_TYPE_INFO.visit(instance.getIncludeRoot(), serializer);
       ImmutableSortedMap<Path, SourcePath> nameToPathMap = instance.getNameToPathMap();
@@ -203,6 +228,7 @@ public abstract class CxxSymlinkTreeHeaders extends CxxHeaders implements RuleKe
         throws E {
       IncludeType includeType = INCLUDE_TYPE_TYPE_INFO.createNotNull(deserializer);
       Optional<SourcePath> headerMapType = HEADER_MAP_TYPE_INFO.createNotNull(deserializer);
+      Optional<SourcePath> vfsOverlayType = HEADER_MAP_TYPE_INFO.createNotNull(deserializer);
       SourcePath root = deserializer.createSourcePath();
       Either<PathSourcePath, SourcePath> includeRootType =
           INCLUDE_ROOT_TYPE_INFO.createNotNull(deserializer);
@@ -221,6 +247,7 @@ public abstract class CxxSymlinkTreeHeaders extends CxxHeaders implements RuleKe
           root,
           includeRootType,
           headerMapType,
+          vfsOverlayType,
           nameToPathMapBuilder.build(),
           symlinkTreeClass);
     }
@@ -17,29 +17,52 @@
 package com.facebook.buck.cxx;
 
 import com.facebook.buck.core.rulekey.AddToRuleKey;
+import com.facebook.buck.core.sourcepath.BuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.rules.args.Arg;
+import com.google.common.base.Preconditions;
+import java.nio.file.Path;
 import java.util.function.Consumer;
 
 /** Holds an argument specifying the location of a thinLTO index file for optimization */
 public class CxxThinLTOIndexArg implements Arg {
-  @AddToRuleKey private final SourcePath thinIndicesRoot;
-  private final SourcePath cxxSourcePath;
+  @AddToRuleKey private final SourcePath thinIndex;
 
-  public CxxThinLTOIndexArg(SourcePath thinIndicesRoot, SourcePath cxxSourcePath) {
-    this.thinIndicesRoot = thinIndicesRoot;
-    this.cxxSourcePath = cxxSourcePath;
+  /**
+   * @param thinIndex the index of a single module, see {@link
+   *     #getModuleIndexSourcePath(SourcePathResolverAdapter, SourcePath, SourcePath)}.
+   */
+  public CxxThinLTOIndexArg(SourcePath thinIndex) {
+    this.thinIndex = thinIndex;
+  }
+
+  /**
+   * @return the index the ThinLTO indexing step writes for {@code cxxSourcePath} under {@code
+   *     thinIndicesRoot}. Referring to it on its own, rather than to the whole root, lets input
+   *     based rule keys of the backend for a module only change when that module's index does.
+   */
+  public static SourcePath getModuleIndexSourcePath(
+      SourcePathResolverAdapter pathResolver,
+      SourcePath thinIndicesRoot,
+      SourcePath cxxSourcePath) {
+    Preconditions.checkArgument(
+        thinIndicesRoot instanceof BuildTargetSourcePath,
+        "ThinLTO indices should be the output of a rule: %s",
+        thinIndicesRoot);
+    Path moduleIndex =
+        pathResolver
+            .getRelativePath(thinIndicesRoot)
+            .resolve(pathResolver.getRelativePath(cxxSourcePath) + ".thinlto.bc");
+    return ExplicitBuildTargetSourcePath.of(
+        ((BuildTargetSourcePath) thinIndicesRoot).getTarget(), moduleIndex);
   }
 
   @Override
   public void appendToCommandLine(
       Consumer<String> consumer, SourcePathResolverAdapter pathResolver) {
     consumer.accept(
-        String.format(
-            "-fthinlto-index=%s.thinlto.bc",
-            pathResolver
-                .getRelativePath(thinIndicesRoot)
-                .resolve(pathResolver.getRelativePath(cxxSourcePath))));
+        String.format("-fthinlto-index=%s", pathResolver.getRelativePath(thinIndex)));
   }
 }
@@ -21,6 +21,9 @@ import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.AddToRuleKey;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.rules.attr.SupportsInputBasedRuleKey;
+import com.facebook.buck.core.rules.schedule.OverrideScheduleRule;
+import com.facebook.buck.core.rules.schedule.RuleScheduleInfo;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.cxx.CxxSource.Type;
@@ -42,9 +45,17 @@ import com.google.common.collect.ImmutableList;
 import java.nio.file.Path;
 import java.util.Optional;
 
-/** A build rule which runs the opt phase of an incremental ThinLTO build */
+/**
+ * A build rule which runs the opt phase of an incremental ThinLTO build for a single module.
+ *
+ * <p>Its input based rule key only covers the module's bitcode and its own index, so relinking
+ * after a change only reruns the backends whose imports were affected.
+ */
 public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
-    implements CxxIntermediateBuildProduct {
+    implements CxxIntermediateBuildProduct, SupportsInputBasedRuleKey, OverrideScheduleRule {
+
+  private final Optional<RuleScheduleInfo> ruleScheduleInfo;
+
   private CxxThinLTOOpt(
       BuildTarget buildTarget,
       ProjectFilesystem projectFilesystem,
@@ -52,21 +63,17 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
       CompilerDelegate compilerDelegate,
       String outputName,
       SourcePath input,
-      SourcePath thinIndicesRoot,
+      SourcePath thinIndex,
       Type inputType,
-      DebugPathSanitizer sanitizer) {
+      DebugPathSanitizer sanitizer,
+      Optional<RuleScheduleInfo> ruleScheduleInfo) {
     super(
         buildTarget,
         projectFilesystem,
         ruleFinder,
         new Impl(
-            buildTarget,
-            compilerDelegate,
-            outputName,
-            input,
-            thinIndicesRoot,
-            inputType,
-            sanitizer));
+            buildTarget, compilerDelegate, outputName, input, thinIndex, inputType, sanitizer));
+    this.ruleScheduleInfo = ruleScheduleInfo;
     Preconditions.checkArgument(
         !buildTarget.getFlavors().contains(CxxStrip.RULE_FLAVOR)
             || !StripStyle.FLAVOR_DOMAIN.containsAnyOf(buildTarget.getFlavors()),
@@ -78,7 +85,9 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
         LinkerMapMode.FLAVOR_DOMAIN);
   }
 
-  /** @return a {@link CxxThinLTOOpt} step that optimizes the given bitcode source. */
+  /**
+   * @return a {@link CxxThinLTOOpt} step that optimizes the given bitcode source using its index.
+   */
   public static CxxThinLTOOpt optimize(
       BuildTarget buildTarget,
       ProjectFilesystem projectFilesystem,
@@ -86,9 +95,10 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
       CompilerDelegate compilerDelegate,
       String outputName,
       SourcePath input,
-      SourcePath thinIndicesRoot,
+      SourcePath thinIndex,
       Type inputType,
-      DebugPathSanitizer sanitizer) {
+      DebugPathSanitizer sanitizer,
+      Optional<RuleScheduleInfo> ruleScheduleInfo) {
     return new CxxThinLTOOpt(
         buildTarget,
         projectFilesystem,
@@ -96,9 +106,10 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
         compilerDelegate,
         outputName,
         input,
-        thinIndicesRoot,
+        thinIndex,
         inputType,
-        sanitizer);
+        sanitizer,
+        ruleScheduleInfo);
   }
 
   CompilerDelegate getCompilerDelegate() {
@@ -121,6 +132,11 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
     return getBuildable().input;
   }
 
+  @Override
+  public RuleScheduleInfo getRuleScheduleInfo() {
+    return ruleScheduleInfo.orElse(RuleScheduleInfo.DEFAULT);
+  }
+
   /** Buildable implementation for CxxThinLTOOpt. */
   public static class Impl implements Buildable {
     @AddToRuleKey private final BuildTarget targetName;
@@ -129,7 +145,7 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
     @AddToRuleKey private final DebugPathSanitizer sanitizer;
     @AddToRuleKey private final OutputPath output;
     @AddToRuleKey private final SourcePath input;
-    @AddToRuleKey private final SourcePath thinIndicesRoot;
+    @AddToRuleKey private final SourcePath thinIndex;
     @AddToRuleKey private final CxxSource.Type inputType;
 
     public Impl(
@@ -137,7 +153,7 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
         CompilerDelegate compilerDelegate,
         String outputName,
         SourcePath input,
-        SourcePath thinIndicesRoot,
+        SourcePath thinIndex,
         Type inputType,
         DebugPathSanitizer sanitizer) {
       this.targetName = targetName;
@@ -145,7 +161,7 @@ public class CxxThinLTOOpt extends ModernBuildRule<CxxThinLTOOpt.Impl>
       this.sanitizer = sanitizer;
       this.output = new OutputPath(outputName);
       this.input = input;
-      this.thinIndicesRoot = thinIndicesRoot;
+      this.thinIndex = thinIndex;
       this.inputType = inputType;
     }
 
@@ -29,7 +29,10 @@ import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.pathformat.PathFormatter;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -53,6 +56,16 @@ class Depfiles {
 
   private Depfiles() {}
 
+  private static final long MAX_INTERNED_HEADERS = 1_000_000;
+
+  /**
+   * Header paths as written in depfiles, resolved against and normalized under the project root.
+   * The same few thousand headers appear in the depfiles of every translation unit, so this saves
+   * re-resolving them and makes equal headers share one {@link Path} instance.
+   */
+  private static final Cache<Pair<Path, String>, Path> INTERNED_HEADERS =
+      CacheBuilder.newBuilder().maximumSize(MAX_INTERNED_HEADERS).build();
+
   public static Predicate<SourcePath> getCoveredByDepFilePredicate(
       Optional<PreprocessorDelegate> preprocessorDelegate,
       Optional<CompilerDelegate> compilerDelegate) {
@@ -257,6 +270,16 @@ class Depfiles {
     }
   }
 
+  private static Path resolveHeader(ProjectFilesystem filesystem, String rawHeader) {
+    Pair<Path, String> key = new Pair<>(filesystem.getRootPath().getPath(), rawHeader);
+    Path header = INTERNED_HEADERS.getIfPresent(key);
+    if (header == null) {
+      header = filesystem.resolve(rawHeader).normalize();
+      INTERNED_HEADERS.put(key, header);
+    }
+    return header;
+  }
+
   /**
    * Reads and processes {@code .dep} file produced by a cxx compiler.
    *
@@ -336,16 +359,16 @@ class Depfiles {
             dependencyTrackingMode, filesystem, headerPathNormalizer, sourceDepFile, inputPath);
     List<String> errors = new ArrayList<String>();
     for (String rawHeader : headers) {
-      Path header = filesystem.resolve(rawHeader).normalize();
+      Path header = resolveHeader(filesystem, rawHeader);
       Optional<Path> absolutePath =
           headerPathNormalizer.getAbsolutePathForUnnormalizedPath(pathResolver, header);
-      Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
       if (absolutePath.isPresent()) {
         Preconditions.checkState(absolutePath.get().isAbsolute());
         resultBuilder.add(absolutePath.get());
       } else if ((headerVerification.getMode() != HeaderVerification.Mode.IGNORE)
           && (!(headerVerification.isWhitelisted(header.toString())
-              || repoRelativePath
+              || filesystem
+                  .getPathRelativeToProjectRoot(header)
                   .map(path -> headerVerification.isWhitelisted(path.toString()))
                   .orElse(false)))) {
         // Check again with the real path with all symbolic links resolved.
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.apple.clang.VFSOverlay;
+import com.facebook.buck.core.build.buildable.context.BuildableContext;
+import com.facebook.buck.core.build.context.BuildContext;
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.impl.BuildTargetPaths;
+import com.facebook.buck.core.rulekey.AddToRuleKey;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.cxx.toolchain.HeaderSymlinkTree;
+import com.facebook.buck.io.BuildCellRelativePath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Header "symlink tree" which is only a clang VFS overlay: the tree's root is left empty, and the
+ * overlay makes the paths under it resolve to the headers in the source tree.
+ */
+class DirectVFSOverlay extends HeaderSymlinkTree {
+
+  private static final Logger LOG = Logger.get(DirectVFSOverlay.class);
+
+  @AddToRuleKey(stringify = true)
+  private final Path vfsOverlayPath;
+
+  public DirectVFSOverlay(
+      BuildTarget target,
+      ProjectFilesystem filesystem,
+      Path root,
+      ImmutableMap<Path, SourcePath> links) {
+    super(target, filesystem, root, links);
+    this.vfsOverlayPath = BuildTargetPaths.getGenPath(filesystem, target, "%s.yaml");
+  }
+
+  @Override
+  public SourcePath getSourcePathToOutput() {
+    return ExplicitBuildTargetSourcePath.of(getBuildTarget(), vfsOverlayPath);
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context, BuildableContext buildableContext) {
+    LOG.debug("Generating build steps to write VFS overlay to %s", vfsOverlayPath);
+    // Clang only matches overlay entries against absolute paths.
+    ImmutableSortedMap.Builder<Path, Path> overlaysBuilder = ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<Path, SourcePath> entry : getLinks().entrySet()) {
+      overlaysBuilder.put(
+          getRoot().resolve(entry.getKey()),
+          context.getSourcePathResolver().getAbsolutePath(entry.getValue()));
+    }
+    VFSOverlay overlay = new VFSOverlay(overlaysBuilder.build());
+    buildableContext.recordArtifact(vfsOverlayPath);
+    return ImmutableList.<Step>builder()
+        .add(getVerifyStep(getResolvedSymlinks(context.getSourcePathResolver())))
+        .addAll(
+            MakeCleanDirectoryStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(), getProjectFilesystem(), getRoot())))
+        .add(
+            MkdirStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(),
+                    getProjectFilesystem(),
+                    vfsOverlayPath.getParent())))
+        .add(
+            new AbstractExecutionStep("write_vfs_overlay") {
+              @Override
+              public StepExecutionResult execute(ExecutionContext context) throws IOException {
+                getProjectFilesystem().writeContentsToPath(overlay.render(), vfsOverlayPath);
+                return StepExecutionResults.SUCCESS;
+              }
+            })
+        .build();
+  }
+
+  @Override
+  public Optional<SourcePath> getVFSOverlaySourcePath() {
+    return Optional.of(ExplicitBuildTargetSourcePath.of(getBuildTarget(), vfsOverlayPath));
+  }
+}
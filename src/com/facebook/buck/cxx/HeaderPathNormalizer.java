@@ -28,7 +28,10 @@ import java.util.AbstractMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 class HeaderPathNormalizer {
 
@@ -47,6 +50,14 @@ class HeaderPathNormalizer {
   /** Minimal mappings to translate paths used during compilation to their real locations. */
   private final ImmutableMap<Path, Path> prefixMap;
 
+  // A normalizer is shared by every translation unit compiled with the same preprocessor flags,
+  // and those mostly include the same headers, so remember the results of the lookups below.
+  // Absolute paths depend on the resolver they were computed with, so they are only remembered
+  // for the last resolver used.
+  @Nullable private volatile AbsolutePathsMemo absolutePathsForUnnormalizedPaths;
+  private final ConcurrentMap<Path, SourcePath> sourcePathsForAbsolutePaths =
+      new ConcurrentHashMap<>();
+
   protected HeaderPathNormalizer(
       ImmutableMap<Path, SourcePath> headers,
       ImmutableMap<Path, SourcePath> normalized,
@@ -74,6 +85,17 @@ class HeaderPathNormalizer {
   public Optional<Path> getAbsolutePathForUnnormalizedPath(
       SourcePathResolverAdapter pathResolver, Path unnormalizedPath) {
     Preconditions.checkArgument(unnormalizedPath.isAbsolute());
+    AbsolutePathsMemo memo = absolutePathsForUnnormalizedPaths;
+    if (memo == null || memo.pathResolver != pathResolver) {
+      memo = new AbsolutePathsMemo(pathResolver);
+      absolutePathsForUnnormalizedPaths = memo;
+    }
+    return memo.paths.computeIfAbsent(
+        unnormalizedPath, path -> computeAbsolutePathForUnnormalizedPath(pathResolver, path));
+  }
+
+  private Optional<Path> computeAbsolutePathForUnnormalizedPath(
+      SourcePathResolverAdapter pathResolver, Path unnormalizedPath) {
     Optional<Map.Entry<Path, SourcePath>> result = pathLookup(unnormalizedPath, normalized);
     if (!result.isPresent()) {
       return Optional.empty();
@@ -87,9 +109,13 @@ class HeaderPathNormalizer {
   /** @return the {@link SourcePath} which corresponds to the given absolute path. */
   public SourcePath getSourcePathForAbsolutePath(Path absolutePath) {
     Preconditions.checkArgument(absolutePath.isAbsolute());
-    Optional<Map.Entry<Path, SourcePath>> path = pathLookup(absolutePath, headers);
-    Preconditions.checkState(path.isPresent(), "no headers mapped to %s", absolutePath);
-    return path.get().getValue();
+    return sourcePathsForAbsolutePaths.computeIfAbsent(
+        absolutePath,
+        key -> {
+          Optional<Map.Entry<Path, SourcePath>> path = pathLookup(key, headers);
+          Preconditions.checkState(path.isPresent(), "no headers mapped to %s", key);
+          return path.get().getValue();
+        });
   }
 
   /**
@@ -100,6 +126,16 @@ class HeaderPathNormalizer {
     return prefixMap;
   }
 
+  /** The absolute paths of unnormalized paths, as computed with {@link #pathResolver}. */
+  private static class AbsolutePathsMemo {
+    private final SourcePathResolverAdapter pathResolver;
+    private final ConcurrentMap<Path, Optional<Path>> paths = new ConcurrentHashMap<>();
+
+    AbsolutePathsMemo(SourcePathResolverAdapter pathResolver) {
+      this.pathResolver = pathResolver;
+    }
+  }
+
   public static class Builder {
 
     private final SourcePathResolverAdapter pathResolver;
@@ -88,6 +88,9 @@ public class CxxBuckConfig {
       "exported_headers_symlinks_enabled";
   private static final String HEADERS_SYMLINKS_ENABLED = "headers_symlinks_enabled";
   private static final String LINK_WEIGHT = "link_weight";
+  private static final String LINK_MEMORY_WEIGHT = "link_memory_weight";
+  private static final String THINLTO_OPT_WEIGHT = "thinlto_opt_weight";
+  private static final String THINLTO_OPT_MEMORY_WEIGHT = "thinlto_opt_memory_weight";
   private static final String CACHE_LINKS = "cache_links";
   private static final String CACHE_STRIPS = "cache_strips";
   private static final String CACHE_BINARIES = "cache_binaries";
@@ -452,8 +455,22 @@ public class CxxBuckConfig {
   }
 
   public Optional<RuleScheduleInfo> getLinkScheduleInfo() {
-    Optional<Long> linkWeight = delegate.getLong(cxxSection, LINK_WEIGHT);
-    return linkWeight.map(weight -> RuleScheduleInfo.of(weight.intValue()));
+    return getScheduleInfo(LINK_WEIGHT, LINK_MEMORY_WEIGHT);
+  }
+
+  /** @return how to schedule the per-module ThinLTO backend (opt) jobs. */
+  public Optional<RuleScheduleInfo> getThinLTOOptScheduleInfo() {
+    return getScheduleInfo(THINLTO_OPT_WEIGHT, THINLTO_OPT_MEMORY_WEIGHT);
+  }
+
+  private Optional<RuleScheduleInfo> getScheduleInfo(String weightKey, String memoryWeightKey) {
+    Optional<Long> weight = delegate.getLong(cxxSection, weightKey);
+    Optional<Long> memoryWeight = delegate.getLong(cxxSection, memoryWeightKey);
+    if (!weight.isPresent() && !memoryWeight.isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        RuleScheduleInfo.of(weight.orElse(1L).intValue(), memoryWeight.orElse(0L).intValue()));
   }
 
   public boolean shouldCacheLinks() {
@@ -28,6 +28,11 @@ public enum HeaderMode implements FlavorConvertible {
   SYMLINK_TREE_ONLY,
   /** Creates the header map that references the headers directly in the source tree. */
   HEADER_MAP_ONLY,
+  /**
+   * Creates a clang VFS overlay that maps the would-be symlink tree onto the headers in the source
+   * tree, without creating any symbolic links.
+   */
+  VFS_OVERLAY_ONLY,
   /**
    * Creates the tree of symbolic links of headers and creates the header map that references the
    * symbolic links to the headers.
@@ -89,6 +94,7 @@ public enum HeaderMode implements FlavorConvertible {
       case SYMLINK_TREE_ONLY:
       case SYMLINK_TREE_WITH_HEADER_MAP:
       case HEADER_MAP_ONLY:
+      case VFS_OVERLAY_ONLY:
         return false;
       case SYMLINK_TREE_WITH_HEADERS_MODULEMAP:
       case SYMLINK_TREE_WITH_UMBRELLA_HEADER_MODULEMAP:
@@ -52,4 +52,12 @@ public class HeaderSymlinkTree extends MappedSymlinkTree {
   public Optional<SourcePath> getHeaderMapSourcePath() {
     return Optional.empty();
   }
+
+  /**
+   * Get path to a clang VFS overlay which makes the include path returned from {@link
+   * #getIncludeSourcePath()} resolve to the headers, in place of the actual tree.
+   */
+  public Optional<SourcePath> getVFSOverlaySourcePath() {
+    return Optional.empty();
+  }
 }
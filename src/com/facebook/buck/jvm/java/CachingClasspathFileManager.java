@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.jvm.java.ClasspathJarIndexCache.ClasspathJar;
+import com.facebook.buck.jvm.java.ClasspathJarIndexCache.JarEntryFileObject;
+import com.facebook.buck.jvm.java.ClasspathJarIndexCache.JarIndex;
+import com.facebook.buck.util.hashing.FileHashLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Closer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A file manager that serves the contents of classpath jars from a {@link ClasspathJarIndexCache}
+ * instead of having javac open and index every jar for every compilation.
+ *
+ * <p>This only takes over the classpath if all of its entries are jars (or don't exist), since
+ * javac resolves duplicate classes by classpath order and we can't list a single directory through
+ * the delegate. Otherwise, or if a jar can't be read, everything is forwarded to the delegate.
+ *
+ * <p>Jars are looked up in the cache by the hash the build has for their contents. Jars the build
+ * doesn't know the hash of, such as those outside of the project, are indexed for this compilation
+ * only.
+ */
+class CachingClasspathFileManager extends ForwardingStandardJavaFileManager {
+  private static final Logger LOG = Logger.get(CachingClasspathFileManager.class);
+
+  private final ClasspathJarIndexCache cache;
+  private final Optional<FileHashLoader> fileHashLoader;
+
+  /** The classpath jars in order, or empty if the classpath is not taken over. */
+  @Nullable private Optional<ImmutableList<ClasspathJar>> classpathJars;
+
+  private long classpathLoadingNanos = 0;
+
+  public CachingClasspathFileManager(
+      StandardJavaFileManager fileManager,
+      ClasspathJarIndexCache cache,
+      Optional<FileHashLoader> fileHashLoader) {
+    super(fileManager);
+    this.cache = cache;
+    this.fileHashLoader = fileHashLoader;
+  }
+
+  /** Time spent reading and looking up classpath entries so far. */
+  public long getClasspathLoadingNanos() {
+    return classpathLoadingNanos;
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+      throws IOException {
+    long start = System.nanoTime();
+    try {
+      Optional<ImmutableList<ClasspathJar>> jars = getClasspathJars(location);
+      if (!jars.isPresent()) {
+        return super.list(location, packageName, kinds, recurse);
+      }
+      List<JavaFileObject> result = new ArrayList<>();
+      for (ClasspathJar jar : jars.get()) {
+        for (JarEntryFileObject entry : jar.getEntries(packageName, recurse)) {
+          if (kinds.contains(entry.getKind())) {
+            result.add(entry);
+          }
+        }
+      }
+      return result;
+    } finally {
+      classpathLoadingNanos += System.nanoTime() - start;
+    }
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof JarEntryFileObject) {
+      return ((JarEntryFileObject) file).getBinaryName();
+    }
+    return super.inferBinaryName(location, file);
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof JarEntryFileObject || b instanceof JarEntryFileObject) {
+      return a.equals(b);
+    }
+    return super.isSameFile(a, b);
+  }
+
+  @Override
+  @Nullable
+  public JavaFileObject getJavaFileForInput(
+      Location location, String className, JavaFileObject.Kind kind) throws IOException {
+    Optional<ImmutableList<ClasspathJar>> jars = getClasspathJars(location);
+    if (!jars.isPresent()) {
+      return super.getJavaFileForInput(location, className, kind);
+    }
+    int lastDot = className.lastIndexOf('.');
+    String packageName = lastDot < 0 ? "" : className.substring(0, lastDot);
+    for (ClasspathJar jar : jars.get()) {
+      for (JarEntryFileObject entry : jar.getEntries(packageName, false)) {
+        if (entry.getKind() == kind && entry.getBinaryName().equals(className)) {
+          return entry;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+    super.setLocation(location, path);
+    if (location == StandardLocation.CLASS_PATH) {
+      closeClasspathJars();
+      classpathJars = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (Closer closer = Closer.create()) {
+      closer.register(super::close);
+      closer.register(this::closeClasspathJars);
+    }
+  }
+
+  private void closeClasspathJars() throws IOException {
+    if (classpathJars == null || !classpathJars.isPresent()) {
+      return;
+    }
+    try (Closer closer = Closer.create()) {
+      classpathJars.get().forEach(closer::register);
+    }
+  }
+
+  private Optional<ImmutableList<ClasspathJar>> getClasspathJars(Location location) {
+    if (location != StandardLocation.CLASS_PATH) {
+      return Optional.empty();
+    }
+    if (classpathJars == null) {
+      classpathJars = readClasspathJars();
+    }
+    return classpathJars;
+  }
+
+  private Optional<ImmutableList<ClasspathJar>> readClasspathJars() {
+    Iterable<? extends File> classpath = getLocation(StandardLocation.CLASS_PATH);
+    if (classpath == null) {
+      return Optional.empty();
+    }
+    ImmutableList.Builder<ClasspathJar> jars = ImmutableList.builder();
+    for (File entry : classpath) {
+      if (!entry.exists()) {
+        // javac ignores missing classpath entries.
+        continue;
+      }
+      if (!entry.isFile()) {
+        return Optional.empty();
+      }
+      Path jar = entry.toPath();
+      try {
+        jars.add(new ClasspathJar(jar, getIndex(jar)));
+      } catch (IOException e) {
+        LOG.debug(e, "Unable to index %s, not caching the classpath.", entry);
+        return Optional.empty();
+      }
+    }
+    return Optional.of(jars.build());
+  }
+
+  private JarIndex getIndex(Path jar) throws IOException {
+    Optional<HashCode> contentHash = Optional.empty();
+    if (fileHashLoader.isPresent()) {
+      try {
+        contentHash = Optional.of(fileHashLoader.get().get(jar.toAbsolutePath()));
+      } catch (IOException e) {
+        LOG.verbose(e, "No hash for %s, indexing it for this compilation only.", jar);
+      }
+    }
+    return contentHash.isPresent() ? cache.getIndex(jar, contentHash.get()) : JarIndex.read(jar);
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Caches the entries of jars that appear on javac classpaths, so that each jar's central directory
+ * is read once per daemon rather than once per compilation. Jars are identified by the hash of
+ * their contents, so a jar that is rebuilt or fetched from the artifact cache is indexed anew even
+ * if its size and modification time didn't change.
+ *
+ * <p>The cache is bounded by the total number of entries it indexes, rather than by the number of
+ * jars, since a single jar can have anywhere from a handful to tens of thousands of entries.
+ *
+ * <p>Only the entries are cached. Each compilation opens the jars it reads classes from through
+ * its own {@link ClasspathJar}s, and closes them when it's done, so no file handles are held
+ * between compilations.
+ */
+final class ClasspathJarIndexCache {
+  private static final long MAX_DAEMON_SCOPED_ENTRIES = 5_000_000;
+  private static final ClasspathJarIndexCache DAEMON_SCOPED_CACHE =
+      new ClasspathJarIndexCache(MAX_DAEMON_SCOPED_ENTRIES);
+
+  private final Cache<HashCode, JarIndex> indexes;
+
+  ClasspathJarIndexCache(long maxEntries) {
+    this.indexes =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxEntries)
+            .weigher((HashCode hash, JarIndex index) -> 1 + index.size())
+            .build();
+  }
+
+  /** Returns the cache shared by all compilations in this process. */
+  static ClasspathJarIndexCache getDaemonScopedCache() {
+    return DAEMON_SCOPED_CACHE;
+  }
+
+  /** Returns the index of the given jar, whose contents have the given hash. */
+  JarIndex getIndex(Path jar, HashCode contentHash) throws IOException {
+    try {
+      return indexes.get(contentHash, () -> JarIndex.read(jar));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** The entries of a jar, grouped by package. */
+  static final class JarIndex {
+    private final ImmutableListMultimap<String, ZipEntry> entriesByPackage;
+
+    private JarIndex(ImmutableListMultimap<String, ZipEntry> entriesByPackage) {
+      this.entriesByPackage = entriesByPackage;
+    }
+
+    /** Returns the number of indexed entries. */
+    int size() {
+      return entriesByPackage.size();
+    }
+
+    /** Reads the index of the given jar, without caching it. */
+    static JarIndex read(Path jar) throws IOException {
+      ImmutableListMultimap.Builder<String, ZipEntry> builder = ImmutableListMultimap.builder();
+      try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry entry = entries.nextElement();
+          if (entry.isDirectory()) {
+            continue;
+          }
+          String name = entry.getName();
+          int lastSlash = name.lastIndexOf('/');
+          String packageName = lastSlash < 0 ? "" : name.substring(0, lastSlash).replace('/', '.');
+          builder.put(packageName, entry);
+        }
+      }
+      return new JarIndex(builder.build());
+    }
+  }
+
+  /**
+   * A jar on the classpath of a single compilation. The jar is opened the first time one of its
+   * entries is read, and stays open until the compilation closes it.
+   */
+  static final class ClasspathJar implements Closeable {
+    private final Path path;
+    private final JarIndex index;
+    private final Map<String, ImmutableList<JarEntryFileObject>> fileObjectsByPackage =
+        new HashMap<>();
+
+    @Nullable private ZipFile zipFile;
+    private boolean closed = false;
+
+    ClasspathJar(Path path, JarIndex index) {
+      this.path = path;
+      this.index = index;
+    }
+
+    /** Returns the entries of the given package, and of its subpackages if {@code recurse}. */
+    synchronized ImmutableList<JarEntryFileObject> getEntries(String packageName, boolean recurse) {
+      if (!recurse) {
+        return getEntries(packageName);
+      }
+      String prefix = packageName + ".";
+      ImmutableList.Builder<JarEntryFileObject> builder = ImmutableList.builder();
+      for (String name : index.entriesByPackage.keySet()) {
+        if (packageName.isEmpty() || name.equals(packageName) || name.startsWith(prefix)) {
+          builder.addAll(getEntries(name));
+        }
+      }
+      return builder.build();
+    }
+
+    private ImmutableList<JarEntryFileObject> getEntries(String packageName) {
+      // File objects are created once per compilation, so that javac sees the same object for the
+      // same entry every time.
+      return fileObjectsByPackage.computeIfAbsent(
+          packageName,
+          name ->
+              index.entriesByPackage.get(name).stream()
+                  .map(entry -> new JarEntryFileObject(this, entry))
+                  .collect(ImmutableList.toImmutableList()));
+    }
+
+    private synchronized InputStream openInputStream(ZipEntry entry) throws IOException {
+      if (closed) {
+        throw new IOException(String.format("%s was already closed.", path));
+      }
+      if (zipFile == null) {
+        zipFile = new ZipFile(path.toFile());
+      }
+      return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      closed = true;
+      if (zipFile != null) {
+        zipFile.close();
+        zipFile = null;
+      }
+    }
+  }
+
+  /**
+   * A class file in a classpath jar. Like {@link JarFileObject}, this implements {@link
+   * JavaFileObject} directly because {@link javax.tools.SimpleJavaFileObject} only accepts
+   * hierarchical URIs.
+   */
+  static final class JarEntryFileObject implements JavaFileObject {
+    private final ClasspathJar jar;
+    private final ZipEntry entry;
+    private final URI uri;
+    private final Kind kind;
+
+    private JarEntryFileObject(ClasspathJar jar, ZipEntry entry) {
+      this.jar = jar;
+      this.entry = entry;
+      this.uri = createUri(jar.path, entry);
+      this.kind = getKind(entry.getName());
+    }
+
+    /** Creates the same kind of {@code jar:} URI as javac does for classpath entries. */
+    private static URI createUri(Path jar, ZipEntry entry) {
+      try {
+        return new URI("jar", jar.toUri() + "!/" + entry.getName(), null);
+      } catch (URISyntaxException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    private static Kind getKind(String name) {
+      for (Kind kind : new Kind[] {Kind.CLASS, Kind.SOURCE, Kind.HTML}) {
+        if (name.endsWith(kind.extension)) {
+          return kind;
+        }
+      }
+      return Kind.OTHER;
+    }
+
+    /** Returns the binary name of the class this file defines, as javac would infer it. */
+    String getBinaryName() {
+      String name = entry.getName();
+      int extension = name.lastIndexOf('.');
+      Preconditions.checkState(extension > 0, "%s has no extension.", name);
+      return name.substring(0, extension).replace('/', '.');
+    }
+
+    @Override
+    public URI toUri() {
+      return uri;
+    }
+
+    @Override
+    public String getName() {
+      return jar.path + "(" + entry.getName() + ")";
+    }
+
+    @Override
+    public Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    public boolean isNameCompatible(String simpleName, Kind kind) {
+      String baseName = simpleName + kind.extension;
+      String name = entry.getName();
+      return kind.equals(this.kind) && (baseName.equals(name) || name.endsWith("/" + baseName));
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return jar.openInputStream(entry);
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new InputStreamReader(openInputStream(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      try (InputStream inputStream = openInputStream()) {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(ByteStreams.toByteArray(inputStream)));
+      }
+    }
+
+    @Override
+    public Writer openWriter() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getLastModified() {
+      return entry.getTime();
+    }
+
+    @Override
+    public boolean delete() {
+      return false;
+    }
+
+    @Override
+    @Nullable
+    public NestingKind getNestingKind() {
+      return null;
+    }
+
+    @Override
+    @Nullable
+    public Modifier getAccessLevel() {
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getName() + "[" + uri + "]";
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.util.immutables.BuckStyleValueWithBuilder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.java.runner.FileClassPathRunner;
+import com.facebook.buck.jvm.java.runner.PersistentTestRunner;
 import com.facebook.buck.test.selectors.TestSelectorList;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.env.BuckClasspath;
@@ -138,16 +139,74 @@ abstract class JUnitJvmArgs {
       Verbosity verbosity,
       long defaultTestTimeoutMillis) {
     if (!shouldUseClasspathArgfile()) {
-      args.add(
-          String.format(
-              "-D%s=%s",
-              FileClassPathRunner.TESTRUNNER_CLASSES_PROPERTY, getTestRunnerClasspath()));
-      args.add(
-          String.format(
-              "-D%s=%s",
-              FileClassPathRunner.CLASSPATH_FILE_PROPERTY, filesystem.resolve(getClasspathFile())));
+      formatClasspathPropertiesToList(args, filesystem);
     }
 
+    formatJvmOptionsToList(args, args, filesystem, verbosity);
+
+    if (shouldUseClasspathArgfile()) {
+      // Java 9+ supports argfiles for commandline arguments. We leverage this when we know we're
+      // launching a version of Java that supports this, as classloader changes in Java 9 preclude
+      // use from using the approach we use for Java 8-.
+      args.add("@" + filesystem.resolve(classpathArgfile.get()));
+    } else {
+      args.add("-classpath", getTestRunnerClasspath().toString());
+    }
+
+    args.add(FileClassPathRunner.class.getName());
+
+    formatTestRunnerArgsToList(args, defaultTestTimeoutMillis);
+  }
+
+  /**
+   * Formats the arguments in this object for a {@link PersistentTestRunner}, which is started once
+   * and then runs the tests of many rules. The options the JVM must be started with, including the
+   * user's JVM args, go to {@code startupArgs}. Buck's own system properties, which the runner sets
+   * for the duration of a single run, go to {@code jobArgs}, followed by the arguments of the test
+   * runner.
+   *
+   * <p>User-defined system properties stay in the startup args, since the JVM reads many of them,
+   * such as {@code file.encoding} or {@code java.library.path}, only once.
+   */
+  public void formatPersistentTestRunnerArgsToLists(
+      ImmutableList.Builder<String> startupArgs,
+      ImmutableList.Builder<String> jobArgs,
+      ProjectFilesystem filesystem,
+      Verbosity verbosity,
+      long defaultTestTimeoutMillis) {
+    formatClasspathPropertiesToList(jobArgs, filesystem);
+    formatJvmOptionsToList(startupArgs, jobArgs, filesystem, verbosity);
+
+    if (getTargetJavaVersion() >= 12) {
+      // The runner traps System.exit with a security manager, which Java 18+ only allow with this.
+      startupArgs.add("-Djava.security.manager=allow");
+    }
+    startupArgs.add("-classpath", getTestRunnerClasspath().toString());
+    startupArgs.add(PersistentTestRunner.class.getName());
+
+    formatTestRunnerArgsToList(jobArgs, defaultTestTimeoutMillis);
+  }
+
+  private void formatClasspathPropertiesToList(
+      ImmutableList.Builder<String> args, ProjectFilesystem filesystem) {
+    args.add(
+        String.format(
+            "-D%s=%s", FileClassPathRunner.TESTRUNNER_CLASSES_PROPERTY, getTestRunnerClasspath()));
+    args.add(
+        String.format(
+            "-D%s=%s",
+            FileClassPathRunner.CLASSPATH_FILE_PROPERTY, filesystem.resolve(getClasspathFile())));
+  }
+
+  /**
+   * Formats the JVM options to {@code args}, except for the system properties Buck passes to the
+   * test runner, which go to {@code buckPropertyArgs}.
+   */
+  private void formatJvmOptionsToList(
+      ImmutableList.Builder<String> args,
+      ImmutableList.Builder<String> buckPropertyArgs,
+      ProjectFilesystem filesystem,
+      Verbosity verbosity) {
     if (isCodeCoverageEnabled()) {
       args.add(
           String.format(
@@ -163,10 +222,10 @@ abstract class JUnitJvmArgs {
     }
 
     // Include the buildId
-    args.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, getBuildId()));
+    buckPropertyArgs.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, getBuildId()));
 
     // Include the baseDir
-    args.add(
+    buckPropertyArgs.add(
         String.format("-D%s=%s", MODULE_BASE_PATH_PROPERTY, getBuckModuleBaseSourceCodePath()));
 
     // Disable the Java icon from appearing in the OS X Dock while running tests
@@ -174,14 +233,17 @@ abstract class JUnitJvmArgs {
 
     // Include log levels
     if (getStdOutLogLevel().isPresent()) {
-      args.add(String.format("-D%s=%s", STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get()));
+      buckPropertyArgs.add(
+          String.format("-D%s=%s", STD_OUT_LOG_LEVEL_PROPERTY, getStdOutLogLevel().get()));
     }
     if (getStdErrLogLevel().isPresent()) {
-      args.add(String.format("-D%s=%s", STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get()));
+      buckPropertyArgs.add(
+          String.format("-D%s=%s", STD_ERR_LOG_LEVEL_PROPERTY, getStdErrLogLevel().get()));
     }
 
     if (getRobolectricLogPath().isPresent()) {
-      args.add(String.format("-Drobolectric.logging=%s", getRobolectricLogPath().get()));
+      buckPropertyArgs.add(
+          String.format("-Drobolectric.logging=%s", getRobolectricLogPath().get()));
     }
 
     if (isDebugEnabled()) {
@@ -200,18 +262,10 @@ abstract class JUnitJvmArgs {
     if (verbosity.shouldUseVerbosityFlagIfAvailable()) {
       args.add("-verbose");
     }
+  }
 
-    if (shouldUseClasspathArgfile()) {
-      // Java 9+ supports argfiles for commandline arguments. We leverage this when we know we're
-      // launching a version of Java that supports this, as classloader changes in Java 9 preclude
-      // use from using the approach we use for Java 8-.
-      args.add("@" + filesystem.resolve(classpathArgfile.get()));
-    } else {
-      args.add("-classpath", getTestRunnerClasspath().toString());
-    }
-
-    args.add(FileClassPathRunner.class.getName());
-
+  private void formatTestRunnerArgsToList(
+      ImmutableList.Builder<String> args, long defaultTestTimeoutMillis) {
     // Specify the Java class whose main() method should be run. This is the class that is
     // responsible for running the tests.
     args.add(getTestType().getDefaultTestRunner());
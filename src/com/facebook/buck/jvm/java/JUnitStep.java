@@ -18,21 +18,36 @@ package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.runner.PersistentTestRunner;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.MoreSuppliers;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.env.BuckClasspath;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcessParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPool.BorrowedWorkerProcess;
+import com.facebook.buck.worker.WorkerProcessPoolFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +57,11 @@ import java.util.function.Supplier;
 public class JUnitStep extends ShellStep {
   private static final Logger LOG = Logger.get(JUnitStep.class);
 
+  private static final String PERSISTENT_TEST_RUNNER_DIR = "java-test-runner";
+
+  private static final String PERSISTENT_TEST_RUNNER_ENVIRONMENT_PROPERTY =
+      "buck.persistent_test_runner.environment";
+
   private final ProjectFilesystem filesystem;
   private final ImmutableList<String> javaRuntimeLauncher;
   private final ImmutableMap<String, String> nativeLibsEnvironment;
@@ -49,6 +69,7 @@ public class JUnitStep extends ShellStep {
   private final Optional<Long> testCaseTimeoutMs;
   private final ImmutableMap<String, String> env;
   private final JUnitJvmArgs junitJvmArgs;
+  private final int maxPersistentTestRunners;
   private Supplier<Path> classpathArgfile;
 
   // Set when the junit command times out.
@@ -62,6 +83,31 @@ public class JUnitStep extends ShellStep {
       ImmutableMap<String, String> env,
       ImmutableList<String> javaRuntimeLauncher,
       JUnitJvmArgs junitJvmArgs) {
+    this(
+        filesystem,
+        nativeLibsEnvironment,
+        testRuleTimeoutMs,
+        testCaseTimeoutMs,
+        env,
+        javaRuntimeLauncher,
+        junitJvmArgs,
+        0);
+  }
+
+  /**
+   * @param maxPersistentTestRunners if positive, the tests are run in one of at most this many
+   *     {@link PersistentTestRunner}s, which are shared with the other test rules that need the
+   *     same JVM options, instead of in a JVM of their own.
+   */
+  public JUnitStep(
+      ProjectFilesystem filesystem,
+      Map<String, String> nativeLibsEnvironment,
+      Optional<Long> testRuleTimeoutMs,
+      Optional<Long> testCaseTimeoutMs,
+      ImmutableMap<String, String> env,
+      ImmutableList<String> javaRuntimeLauncher,
+      JUnitJvmArgs junitJvmArgs,
+      int maxPersistentTestRunners) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.javaRuntimeLauncher = javaRuntimeLauncher;
@@ -70,6 +116,7 @@ public class JUnitStep extends ShellStep {
     this.testCaseTimeoutMs = testCaseTimeoutMs;
     this.env = env;
     this.junitJvmArgs = junitJvmArgs;
+    this.maxPersistentTestRunners = maxPersistentTestRunners;
 
     this.classpathArgfile =
         MoreSuppliers.memoize(
@@ -122,10 +169,96 @@ public class JUnitStep extends ShellStep {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws InterruptedException, IOException {
+    if (shouldUsePersistentTestRunner()) {
+      return executeInPersistentTestRunner(context);
+    }
     ensureClasspathArgfile();
     return super.execute(context);
   }
 
+  /**
+   * Whether to run the tests in a persistent test runner. Runs which wait for a debugger, or which
+   * must be killed when the rule times out, always fork a JVM of their own.
+   */
+  @VisibleForTesting
+  boolean shouldUsePersistentTestRunner() {
+    return maxPersistentTestRunners > 0
+        && !junitJvmArgs.isDebugEnabled()
+        && !testRuleTimeoutMs.isPresent();
+  }
+
+  private StepExecutionResult executeInPersistentTestRunner(ExecutionContext context)
+      throws InterruptedException, IOException {
+    // The runner can't change its environment for a run, so runners are only shared by rules with
+    // the same environment. The classpath file is passed as a system property instead.
+    ImmutableSortedMap<String, String> environment =
+        getEnvironmentVariables(context).entrySet().stream()
+            .filter(entry -> !entry.getKey().equals(BuckClasspath.TEST_ENV_VAR_NAME))
+            .collect(
+                ImmutableSortedMap.toImmutableSortedMap(
+                    Comparator.naturalOrder(), Map.Entry::getKey, Map.Entry::getValue));
+
+    ImmutableList.Builder<String> startupArgs = ImmutableList.builder();
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    startupArgs.addAll(javaRuntimeLauncher);
+    // Worker process pools are keyed on their startup command, so make it tell environments apart.
+    startupArgs.add(
+        String.format(
+            "-D%s=%s",
+            PERSISTENT_TEST_RUNNER_ENVIRONMENT_PROPERTY,
+            Hashing.sha1().hashString(environment.toString(), StandardCharsets.UTF_8)));
+    junitJvmArgs.formatPersistentTestRunnerArgsToLists(
+        startupArgs,
+        jobArgs,
+        filesystem,
+        context.getVerbosity(),
+        testCaseTimeoutMs.orElse(context.getDefaultTestTimeoutMillis()));
+    ImmutableList<String> startupCommand = startupArgs.build();
+
+    WorkerProcessParams params =
+        WorkerProcessParams.of(
+            filesystem
+                .getBuckPaths()
+                .getTmpDir()
+                .resolve(PERSISTENT_TEST_RUNNER_DIR)
+                .resolve(
+                    Hashing.sha1()
+                        .hashString(Joiner.on(' ').join(startupCommand), StandardCharsets.UTF_8)
+                        .toString()),
+            startupCommand,
+            environment,
+            maxPersistentTestRunners,
+            Optional.empty());
+    WorkerProcessPool pool =
+        new WorkerProcessPoolFactory(filesystem).getWorkerProcessPool(context, params);
+    WorkerJobResult result;
+    try (BorrowedWorkerProcess process = pool.borrowWorkerProcess()) {
+      result =
+          process.submitAndWaitForJob(
+              Joiner.on(PersistentTestRunner.ARG_SEPARATOR).join(jobArgs.build()));
+    }
+
+    // Print the output the same way a forked test runner's output is printed.
+    Verbosity verbosity = context.getVerbosity();
+    Optional<String> stdout = result.getStdout();
+    Optional<String> stderr = result.getStderr();
+    if (stdout.isPresent()
+        && !stdout.get().isEmpty()
+        && (result.getExitCode() != 0 || shouldPrintStdout(verbosity))) {
+      context.postEvent(ConsoleEvent.info("%s", stdout.get()));
+    }
+    if (stderr.isPresent()
+        && !stderr.get().isEmpty()
+        && (result.getExitCode() != 0 || shouldPrintStderr(verbosity))) {
+      context.postEvent(ConsoleEvent.warning("%s", stderr.get()));
+    }
+
+    return StepExecutionResult.builder()
+        .setExitCode(result.getExitCode())
+        .setStderr(stderr)
+        .build();
+  }
+
   @Override
   public ImmutableMap<String, String> getEnvironmentVariables(ExecutionContext context) {
     ImmutableMap.Builder<String, String> env = ImmutableMap.builder();
@@ -38,7 +38,7 @@ import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.core.test.rule.ExternalTestRunnerRule;
 import com.facebook.buck.core.test.rule.ExternalTestRunnerTestSpec;
 import com.facebook.buck.core.test.rule.ExternalTestSpec;
-import com.facebook.buck.core.test.rule.TestRule;
+import com.facebook.buck.core.test.rule.ShardableTestRule;
 import com.facebook.buck.core.toolchain.tool.Tool;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
@@ -88,7 +88,7 @@ import javax.annotation.Nullable;
 
 @SuppressWarnings("PMD.TestClassWithoutTestCases")
 public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
-    implements TestRule,
+    implements ShardableTestRule,
         HasClasspathEntries,
         HasRuntimeDeps,
         HasPostBuildSteps,
@@ -265,7 +265,8 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         testCaseTimeoutMs,
         Arg.stringify(env, pathResolver),
         javaRuntimeLauncher.getCommandPrefix(pathResolver),
-        args);
+        args,
+        options.getMaxPersistentJavaTestRunners());
   }
 
   /** Returns the underlying java library containing the compiled tests. */
@@ -291,24 +292,49 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
     // If no classes were generated, then this is probably a java_test() that declares a number of
     // other java_test() rules as deps, functioning as a test suite. In this case, simply return an
     // empty list of commands.
-    Set<String> testClassNames = getClassNamesForSources(buildContext.getSourcePathResolver());
+    ImmutableSet<String> testClassNames = getTestClassNames(buildContext.getSourcePathResolver());
     LOG.debug("Testing these classes: %s", testClassNames.toString());
     if (testClassNames.isEmpty()) {
       return ImmutableList.of();
     }
 
-    ImmutableList.Builder<Step> steps = ImmutableList.builder();
-    Path pathToTestOutput = getPathToTestOutputDirectory();
+    return ImmutableList.<Step>builder()
+        .addAll(runTestShardSetup(executionContext, options, buildContext))
+        .addAll(runTestShard(executionContext, options, buildContext, testClassNames))
+        .build();
+  }
 
+  @Override
+  public ImmutableSet<String> getTestClassNames(SourcePathResolverAdapter pathResolver) {
+    return ImmutableSet.copyOf(getClassNamesForSources(pathResolver));
+  }
+
+  @Override
+  public ImmutableList<Step> runTestShardSetup(
+      ExecutionContext executionContext, TestRunningOptions options, BuildContext buildContext) {
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
     steps.addAll(
         MakeCleanDirectoryStep.of(
             BuildCellRelativePath.fromCellRelativePath(
-                buildContext.getBuildCellRootPath(), getProjectFilesystem(), pathToTestOutput)));
+                buildContext.getBuildCellRootPath(),
+                getProjectFilesystem(),
+                getPathToTestOutputDirectory())));
     addPreTestSteps(buildContext, steps);
+    junits = ImmutableList.of();
+    return steps.build();
+  }
+
+  @Override
+  public ImmutableList<Step> runTestShard(
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      BuildContext buildContext,
+      ImmutableSet<String> testClassNames) {
+    Path pathToTestOutput = getPathToTestOutputDirectory();
+    ImmutableList.Builder<JUnitStep> shardJunits = ImmutableList.builder();
     if (forkMode() == ForkMode.PER_TEST) {
-      ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
       for (String testClass : testClassNames) {
-        junitsBuilder.add(
+        shardJunits.add(
             getJUnitStep(
                 executionContext,
                 buildContext.getSourcePathResolver(),
@@ -317,20 +343,23 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
                 Optional.of(pathToTestLogs),
                 Collections.singleton(testClass)));
       }
-      junits = junitsBuilder.build();
     } else {
-      junits =
-          ImmutableList.of(
-              getJUnitStep(
-                  executionContext,
-                  buildContext.getSourcePathResolver(),
-                  options,
-                  Optional.of(pathToTestOutput),
-                  Optional.of(pathToTestLogs),
-                  testClassNames));
+      shardJunits.add(
+          getJUnitStep(
+              executionContext,
+              buildContext.getSourcePathResolver(),
+              options,
+              Optional.of(pathToTestOutput),
+              Optional.of(pathToTestLogs),
+              testClassNames));
     }
-    steps.addAll(junits);
-    return steps.build();
+    ImmutableList<JUnitStep> steps = shardJunits.build();
+    junits =
+        ImmutableList.<JUnitStep>builder()
+            .addAll(Objects.requireNonNull(junits))
+            .addAll(steps)
+            .build();
+    return ImmutableList.copyOf(steps);
   }
 
   private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
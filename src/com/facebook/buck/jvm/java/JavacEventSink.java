@@ -68,6 +68,9 @@ public interface JavacEventSink {
    */
   void startSimplePerfEvent(String name, long uniqueKey);
 
-  /** @param uniqueKey Unique key. This should match in both Start and Stop method calls. */
-  void stopSimplePerfEvent(long uniqueKey);
+  /**
+   * @param uniqueKey Unique key. This should match in both Start and Stop method calls.
+   * @param finishedInfo Information to add to the finished event.
+   */
+  void stopSimplePerfEvent(long uniqueKey, ImmutableMap<String, Object> finishedInfo);
 }
@@ -16,6 +16,9 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class JavacEventSinkScopedSimplePerfEvent implements AutoCloseable {
@@ -24,14 +27,20 @@ public class JavacEventSinkScopedSimplePerfEvent implements AutoCloseable {
 
   private final JavacEventSink eventSink;
   private final long eventKey = KEY_GENERATOR.incrementAndGet();
+  private final Map<String, Object> finishedInfo = new LinkedHashMap<>();
 
   public JavacEventSinkScopedSimplePerfEvent(JavacEventSink eventSink, String name) {
     this.eventSink = eventSink;
     this.eventSink.startSimplePerfEvent(name, eventKey);
   }
 
+  /** Adds a value to the finished event of this scope. */
+  public void appendFinishedInfo(String key, Object value) {
+    finishedInfo.put(key, value);
+  }
+
   @Override
   public void close() {
-    eventSink.stopSimplePerfEvent(eventKey);
+    eventSink.stopSimplePerfEvent(eventKey, ImmutableMap.copyOf(finishedInfo));
   }
 }
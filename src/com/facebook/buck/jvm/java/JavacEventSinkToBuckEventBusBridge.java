@@ -180,9 +180,10 @@ public class JavacEventSinkToBuckEventBusBridge implements JavacEventSink {
   }
 
   @Override
-  public void stopSimplePerfEvent(long uniqueKey) {
+  public void stopSimplePerfEvent(long uniqueKey, ImmutableMap<String, Object> finishedInfo) {
     SimplePerfEvent.Scope scope = perfEventScopes.remove(uniqueKey);
     if (scope != null) {
+      finishedInfo.forEach(scope::appendFinishedInfo);
       scope.close();
     } else {
       throw new RuntimeException(
@@ -24,8 +24,10 @@ import com.facebook.buck.jvm.core.JavaPackageFinder;
 import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.hashing.FileHashLoader;
 import com.google.common.collect.ImmutableMap;
 import java.io.PrintStream;
+import java.util.Optional;
 
 @BuckStyleValue
 public interface JavacExecutionContext {
@@ -48,4 +50,7 @@ public interface JavacExecutionContext {
   ImmutableMap<String, String> getEnvironment();
 
   ProcessExecutor getProcessExecutor();
+
+  /** Hashes of the build's files, used to key caches of classpath jars. */
+  Optional<FileHashLoader> getFileHashLoader();
 }
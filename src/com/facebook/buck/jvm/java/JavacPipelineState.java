@@ -110,7 +110,8 @@ public class JavacPipelineState implements RulePipelineState {
               filesystem,
               context.getProjectFilesystemFactory(),
               firstOrderContext.getEnvironment(),
-              firstOrderContext.getProcessExecutor());
+              firstOrderContext.getProcessExecutor(),
+              firstOrderContext.getFileHashLoader());
 
       ImmutableList<JavacPluginJsr199Fields> annotationProcessors =
           ImmutableList.copyOf(
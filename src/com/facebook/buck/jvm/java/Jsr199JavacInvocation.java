@@ -61,6 +61,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.zip.ZipEntry;
@@ -208,6 +209,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
     @Nullable private String compilerThreadName;
     @Nullable private JavacPhaseEventLogger phaseEventLogger;
     @Nullable private JavaInMemoryFileManager inMemoryFileManager;
+    @Nullable private CachingClasspathFileManager classpathFileManager;
     @Nullable private ClassUsageTracker classUsageTracker;
     @Nullable private Jsr199TracingBridge tracingBridge;
 
@@ -418,6 +420,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
                   targetEvent =
                       new JavacEventSinkScopedSimplePerfEvent(
                           context.getEventSink(), invokingRule.toString());
+                  long startNanos = System.nanoTime();
                   try {
                     boolean success = false;
                     try {
@@ -488,6 +491,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
                         LOG.warn(e, "Unable to close %s; we may be leaking memory.", closeable);
                       }
                     }
+                    reportClasspathLoadingTime(targetEvent, System.nanoTime() - startNanos);
                     targetEvent.close();
                   }
                 }));
@@ -503,8 +507,12 @@ class Jsr199JavacInvocation implements Javac.Invocation {
         try {
           JavaCompiler compiler = compilerConstructor.get();
 
-          StandardJavaFileManager standardFileManager =
-              compiler.getStandardFileManager(null, null, null);
+          classpathFileManager =
+              new CachingClasspathFileManager(
+                  compiler.getStandardFileManager(null, null, null),
+                  ClasspathJarIndexCache.getDaemonScopedCache(),
+                  context.getFileHashLoader());
+          StandardJavaFileManager standardFileManager = classpathFileManager;
           addCloseable(standardFileManager);
 
           // Ensure plugins are loaded from their own classloader.
@@ -627,6 +635,17 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       return lazyJavacTask;
     }
 
+    private void reportClasspathLoadingTime(
+        JavacEventSinkScopedSimplePerfEvent event, long compilationNanos) {
+      if (classpathFileManager == null) {
+        return;
+      }
+      event.appendFinishedInfo(
+          "classpath_loading_ms",
+          TimeUnit.NANOSECONDS.toMillis(classpathFileManager.getClasspathLoadingNanos()));
+      event.appendFinishedInfo("compilation_ms", TimeUnit.NANOSECONDS.toMillis(compilationNanos));
+    }
+
     private JarBuilder newJarBuilder(JarParameters jarParameters) {
       JarBuilder jarBuilder = new JarBuilder();
       Objects.requireNonNull(inMemoryFileManager).writeToJar(jarBuilder);
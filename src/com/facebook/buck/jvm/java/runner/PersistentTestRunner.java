@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.runner;
+
+import com.facebook.buck.jvm.java.version.JavaVersion;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A test runner that stays alive between runs, so that test rules don't each pay for starting and
+ * warming up a JVM of their own.
+ *
+ * <p>It speaks the protocol of Buck's worker processes on stdin and stdout. The args file of every
+ * command holds the system properties and the arguments of one {@link FileClassPathRunner}
+ * invocation, separated by {@link #ARG_SEPARATOR}, and the main class named by them is called
+ * through a static {@code int run(String[])} method, which runs the tests and returns instead of
+ * exiting.
+ *
+ * <p>Every run gets a class loader of its own for the test runner classes and the classpath in
+ * {@code buck.classpath_file}, whose parent is the extension or platform class loader. Runs
+ * therefore neither see each other's classes nor their static state, and always see the current
+ * contents of their classpath. System properties, the standard streams and the context class
+ * loader are restored after each run. While tests run, {@link System#exit} throws instead of ending
+ * the runner, so a test that calls it fails like any other.
+ *
+ * <p>Note: like {@link FileClassPathRunner}, this class only depends on classes present in the
+ * JRE.
+ */
+public class PersistentTestRunner {
+  public static final char ARG_SEPARATOR = '\0';
+
+  private static final String RUN_METHOD_NAME = "run";
+
+  private final Reader in;
+  private final Writer out;
+
+  // VisibleForTesting (can not use guava as dependency)
+  PersistentTestRunner(InputStream in, OutputStream out) {
+    this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+  }
+
+  public static void main(String[] args) throws IOException {
+    // Stdout carries the protocol, so anything else written to it goes to stderr instead.
+    PrintStream protocolOut = System.out;
+    System.setOut(System.err);
+    new PersistentTestRunner(System.in, protocolOut).serve();
+
+    // As the forked test runners do, exit explicitly in case tests left non-daemon threads behind.
+    System.exit(0);
+  }
+
+  /** Answers the handshake, and then runs commands until the end of the command array. */
+  // VisibleForTesting (can not use guava as dependency)
+  void serve() throws IOException {
+    expect('[');
+    Map<String, Object> handshake = readObject();
+    out.write(
+        String.format(
+            "[{\"id\":%d,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}",
+            getId(handshake)));
+    out.flush();
+
+    while (true) {
+      int c = nextNonWhitespace();
+      if (c == ']' || c == -1) {
+        out.write("]");
+        out.flush();
+        return;
+      }
+      if (c != ',') {
+        throw new IOException(String.format("Expected ',' or ']', got '%c'.", (char) c));
+      }
+      Map<String, Object> command = readObject();
+      int exitCode;
+      String type;
+      if ("command".equals(command.get("type"))
+          && command.get("args_path") instanceof String
+          && command.get("stdout_path") instanceof String
+          && command.get("stderr_path") instanceof String) {
+        try {
+          exitCode =
+              runCommand(
+                  Paths.get((String) command.get("args_path")),
+                  Paths.get((String) command.get("stdout_path")),
+                  Paths.get((String) command.get("stderr_path")));
+        } catch (IOException e) {
+          // Only this run's files are broken, the runner itself can go on.
+          e.printStackTrace();
+          exitCode = 1;
+        }
+        type = "result";
+      } else {
+        exitCode = 1;
+        type = "error";
+      }
+      out.write(
+          String.format(
+              ",{\"id\":%d,\"type\":\"%s\",\"exit_code\":%d}", getId(command), type, exitCode));
+      out.flush();
+    }
+  }
+
+  private static int getId(Map<String, Object> message) throws IOException {
+    Object id = message.get("id");
+    if (!(id instanceof Integer)) {
+      throw new IOException("Message without an id: " + message);
+    }
+    return (Integer) id;
+  }
+
+  private int runCommand(Path argsPath, Path stdoutPath, Path stderrPath) throws IOException {
+    String[] args =
+        new String(Files.readAllBytes(argsPath), StandardCharsets.UTF_8)
+            .split(String.valueOf(ARG_SEPARATOR), -1);
+
+    Thread thread = Thread.currentThread();
+    ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    SecurityManager originalSecurityManager = System.getSecurityManager();
+    try (PrintStream stdout =
+            new PrintStream(new FileOutputStream(stdoutPath.toFile()), true, "UTF-8");
+        PrintStream stderr =
+            new PrintStream(new FileOutputStream(stderrPath.toFile()), true, "UTF-8")) {
+      System.setOut(stdout);
+      System.setErr(stderr);
+      boolean trapsExit = setSecurityManager(new ExitTrappingSecurityManager());
+      try {
+        return runTests(args);
+      } catch (Throwable t) {
+        t.printStackTrace();
+        return 1;
+      } finally {
+        if (trapsExit) {
+          setSecurityManager(originalSecurityManager);
+        }
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        System.setProperties(originalProperties);
+        thread.setContextClassLoader(originalContextClassLoader);
+      }
+    }
+  }
+
+  /**
+   * Installs the given security manager, if the JVM allows it: Java 18 and later only do when
+   * started with {@code -Djava.security.manager=allow}.
+   */
+  private static boolean setSecurityManager(SecurityManager securityManager) {
+    try {
+      System.setSecurityManager(securityManager);
+      return true;
+    } catch (UnsupportedOperationException e) {
+      System.err.println("Unable to install a security manager, tests can end the runner.");
+      return false;
+    }
+  }
+
+  /** Allows everything but ending the runner. */
+  private static class ExitTrappingSecurityManager extends SecurityManager {
+    @Override
+    public void checkPermission(Permission permission) {}
+
+    @Override
+    public void checkPermission(Permission permission, Object context) {}
+
+    @Override
+    public void checkExit(int status) {
+      throw new SecurityException(
+          String.format(
+              "System.exit(%d) was called while running tests in a persistent test runner.",
+              status));
+    }
+  }
+
+  private static int runTests(String[] args) throws IOException, ReflectiveOperationException {
+    int mainClassIndex = 0;
+    while (mainClassIndex < args.length && args[mainClassIndex].startsWith("-D")) {
+      String property = args[mainClassIndex].substring(2);
+      int equals = property.indexOf('=');
+      if (equals < 0) {
+        System.setProperty(property, "");
+      } else {
+        System.setProperty(property.substring(0, equals), property.substring(equals + 1));
+      }
+      mainClassIndex++;
+    }
+    if (mainClassIndex == args.length) {
+      throw new IllegalArgumentException("No main class given in " + Arrays.toString(args));
+    }
+    String[] mainArgs = Arrays.copyOfRange(args, mainClassIndex, args.length);
+
+    StringBuilder classPathProperty = new StringBuilder();
+    URL[] classpath = FileClassPathRunner.getClassPath(classPathProperty);
+    System.setProperty("java.class.path", classPathProperty.toString());
+
+    Set<Thread> threadsBefore = new HashSet<>(Thread.getAllStackTraces().keySet());
+    try (URLClassLoader classLoader =
+        new URLClassLoader(classpath, getParentClassLoader())) {
+      Thread.currentThread().setContextClassLoader(classLoader);
+      Method run =
+          classLoader.loadClass(mainArgs[0]).getMethod(RUN_METHOD_NAME, String[].class);
+      if (!Modifier.isStatic(run.getModifiers()) || run.getReturnType() != int.class) {
+        throw new NoSuchMethodException(
+            String.format("%s must have a static int %s(String[]).", mainArgs[0], RUN_METHOD_NAME));
+      }
+      try {
+        return (Integer) run.invoke(null, (Object) FileClassPathRunner.constructArgs(mainArgs));
+      } catch (InvocationTargetException e) {
+        e.getCause().printStackTrace();
+        return 1;
+      } finally {
+        interruptLeftoverThreads(threadsBefore, classLoader);
+      }
+    }
+  }
+
+  /** Returns the extension class loader on Java 8, and the platform class loader on Java 9+. */
+  private static ClassLoader getParentClassLoader() {
+    if (JavaVersion.getMajorVersion() <= 8) {
+      return ClassLoader.getSystemClassLoader().getParent();
+    }
+    return FileClassPathRunner.findPlatformClassLoader();
+  }
+
+  /**
+   * Interrupts the non-daemon threads a run started and left running, which would have been killed
+   * by a forked test runner exiting. Threads started by the JDK on behalf of the run are daemons,
+   * and are left alone.
+   */
+  private static void interruptLeftoverThreads(Set<Thread> threadsBefore, ClassLoader loader) {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (!threadsBefore.contains(thread)
+          && !thread.isDaemon()
+          && thread.getContextClassLoader() == loader) {
+        System.err.printf("Interrupting thread %s, which was left running.%n", thread.getName());
+        thread.interrupt();
+      }
+    }
+  }
+
+  // The worker process protocol is JSON, and this class can't depend on a JSON library. This
+  // reads just enough of it: objects with string, number, boolean and null values, and arrays of
+  // such values.
+
+  private Map<String, Object> readObject() throws IOException {
+    expect('{');
+    Map<String, Object> object = new HashMap<>();
+    int c = nextNonWhitespace();
+    if (c == '}') {
+      return object;
+    }
+    while (true) {
+      if (c != '"') {
+        throw new IOException(String.format("Expected a name, got '%c'.", (char) c));
+      }
+      String name = readStringContents();
+      expect(':');
+      object.put(name, readValue(nextNonWhitespace()));
+      c = nextNonWhitespace();
+      if (c == '}') {
+        return object;
+      }
+      if (c != ',') {
+        throw new IOException(String.format("Expected ',' or '}', got '%c'.", (char) c));
+      }
+      c = nextNonWhitespace();
+    }
+  }
+
+  private Object readValue(int first) throws IOException {
+    if (first == '"') {
+      return readStringContents();
+    }
+    if (first == '[') {
+      List<Object> array = new ArrayList<>();
+      int c = nextNonWhitespace();
+      while (c != ']') {
+        array.add(readValue(c));
+        c = nextNonWhitespace();
+        if (c == ',') {
+          c = nextNonWhitespace();
+        } else if (c != ']') {
+          throw new IOException(String.format("Expected ',' or ']', got '%c'.", (char) c));
+        }
+      }
+      return array;
+    }
+    StringBuilder literal = new StringBuilder().append((char) first);
+    while (true) {
+      in.mark(1);
+      int c = in.read();
+      if (c == -1 || c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+        in.reset();
+        break;
+      }
+      literal.append((char) c);
+    }
+    String value = literal.toString();
+    switch (value) {
+      case "true":
+        return Boolean.TRUE;
+      case "false":
+        return Boolean.FALSE;
+      case "null":
+        return null;
+      default:
+        try {
+          return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+          return value;
+        }
+    }
+  }
+
+  private String readStringContents() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return builder.toString();
+      }
+      if (c != '\\') {
+        builder.append((char) c);
+        continue;
+      }
+      c = read();
+      switch (c) {
+        case 'b':
+          builder.append('\b');
+          break;
+        case 'f':
+          builder.append('\f');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 't':
+          builder.append('\t');
+          break;
+        case 'u':
+          char[] hex = new char[4];
+          for (int i = 0; i < hex.length; i++) {
+            hex[i] = (char) read();
+          }
+          builder.append((char) Integer.parseInt(new String(hex), 16));
+          break;
+        default:
+          builder.append((char) c);
+      }
+    }
+  }
+
+  private void expect(char expected) throws IOException {
+    int c = nextNonWhitespace();
+    if (c != expected) {
+      throw new IOException(String.format("Expected '%c', got '%c'.", expected, (char) c));
+    }
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    int c;
+    do {
+      c = in.read();
+    } while (c != -1 && Character.isWhitespace(c));
+    return c;
+  }
+
+  private int read() throws IOException {
+    int c = in.read();
+    if (c == -1) {
+      throw new IOException("Unexpected end of input.");
+    }
+    return c;
+  }
+}
@@ -52,6 +52,9 @@ public interface RemoteExecutionStatsProvider {
   /** Metadata for total time spent running actions remotely. */
   long getTotalRemoteTimeMs();
 
+  /** Metadata for total time spent locally preparing (computing) remote actions in millis. */
+  long getActionPreparationTimeMs();
+
   /** Export all the above metadata in a Map format */
   ImmutableMap<String, String> exportFieldsToMap();
 }
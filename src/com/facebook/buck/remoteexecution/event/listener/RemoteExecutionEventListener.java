@@ -54,6 +54,7 @@ public class RemoteExecutionEventListener
   private final LongAdder remoteCpuTimeMs;
   private final LongAdder remoteQueueTimeMs;
   private final LongAdder totalRemoteTimeMs;
+  private final LongAdder actionPreparationTimeMs;
 
   private final AtomicBoolean hasFirstRemoteActionStarted;
 
@@ -69,6 +70,7 @@ public class RemoteExecutionEventListener
     this.remoteCpuTimeMs = new LongAdder();
     this.remoteQueueTimeMs = new LongAdder();
     this.totalRemoteTimeMs = new LongAdder();
+    this.actionPreparationTimeMs = new LongAdder();
     this.totalBuildRules = new LongAdder();
     this.hasFirstRemoteActionStarted = new AtomicBoolean(false);
 
@@ -159,6 +161,10 @@ public class RemoteExecutionEventListener
     hasFirstRemoteActionStarted.set(true);
     getStateCount(State.WAITING).increment();
     getStateCount(event.getStartedEvent().getState()).decrement();
+    if (event.getStartedEvent().getState() == State.COMPUTING_ACTION) {
+      actionPreparationTimeMs.add(
+          event.getTimestampMillis() - event.getStartedEvent().getTimestampMillis());
+    }
   }
 
   /** Events from the LocalFallback stats. */
@@ -233,6 +239,11 @@ public class RemoteExecutionEventListener
     return totalRemoteTimeMs.sum();
   }
 
+  @Override
+  public long getActionPreparationTimeMs() {
+    return actionPreparationTimeMs.sum();
+  }
+
   @Override
   public ImmutableMap<String, String> exportFieldsToMap() {
     ImmutableMap.Builder<String, String> retval = ImmutableMap.builderWithExpectedSize(16);
@@ -249,7 +260,8 @@ public class RemoteExecutionEventListener
             localFallbackSuccessfulLocalExecutions.toString())
         .put("remote_cpu_time_ms", Long.toString(getRemoteCpuTimeMs()))
         .put("remote_queue_time_ms", Long.toString(getRemoteQueueTimeMs()))
-        .put("remote_total_time_ms", Long.toString(getTotalRemoteTimeMs()));
+        .put("remote_total_time_ms", Long.toString(getTotalRemoteTimeMs()))
+        .put("remote_action_preparation_time_ms", Long.toString(getActionPreparationTimeMs()));
 
     for (ImmutableMap.Entry<State, Integer> entry : getActionsPerState().entrySet()) {
       retval.put(
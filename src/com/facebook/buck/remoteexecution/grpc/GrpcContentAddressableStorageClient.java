@@ -30,11 +30,17 @@ import com.facebook.buck.remoteexecution.util.OutputsMaterializer;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.types.Unit;
 import com.google.bytestream.ByteStreamGrpc.ByteStreamStub;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /** Implementation of a CAS client using GRPC. */
 public class GrpcContentAddressableStorageClient implements ContentAddressedStorageClient {
@@ -42,6 +48,14 @@ public class GrpcContentAddressableStorageClient implements ContentAddressedStor
   private static final int SIZE_LIMIT = 10 * 1024 * 1024; // 10MB
   private static final int FIND_MISSING_CHECK_LIMIT = 1000;
   private static final int EXECUTOR_THREADS = 4;
+  private static final long FIND_MISSING_BATCH_WINDOW_MS = 5;
+
+  // Hashes known to be present in a CAS, shared by all the clients for the lifetime of the daemon.
+  // Entries expire so that we eventually recheck blobs that the CAS might have evicted.
+  private static final int MAX_KNOWN_PRESENT_HASHES = 2_000_000;
+  private static final long KNOWN_PRESENT_HASHES_EXPIRATION_MINUTES = 60;
+  private static final ConcurrentMap<String, Set<String>> knownPresentHashesByCas =
+      new ConcurrentHashMap<>();
 
   private final MultiThreadedBlobUploader uploader;
   private final OutputsMaterializer outputsMaterializer;
@@ -59,7 +73,9 @@ public class GrpcContentAddressableStorageClient implements ContentAddressedStor
     this.uploader =
         new MultiThreadedBlobUploader(
             FIND_MISSING_CHECK_LIMIT,
+            FIND_MISSING_BATCH_WINDOW_MS,
             SIZE_LIMIT,
+            getKnownPresentHashes(storageStub.getChannel().authority() + "/" + instanceName),
             MostExecutors.newMultiThreadExecutor("blob-uploader", EXECUTOR_THREADS),
             new GrpcCasBlobUploader(
                 instanceName, storageStub, byteStreamStub, buckEventBus, metadata));
@@ -83,6 +99,18 @@ public class GrpcContentAddressableStorageClient implements ContentAddressedStor
             buckEventBus);
   }
 
+  private static Set<String> getKnownPresentHashes(String casKey) {
+    return knownPresentHashesByCas.computeIfAbsent(
+        casKey,
+        ignored ->
+            Collections.newSetFromMap(
+                CacheBuilder.newBuilder()
+                    .maximumSize(MAX_KNOWN_PRESENT_HASHES)
+                    .expireAfterWrite(KNOWN_PRESENT_HASHES_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+                    .<String, Boolean>build()
+                    .asMap()));
+  }
+
   @Override
   public ListenableFuture<Unit> addMissing(Collection<UploadDataSupplier> data) throws IOException {
     return uploader.addMissing(data.stream());
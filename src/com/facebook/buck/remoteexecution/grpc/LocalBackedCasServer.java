@@ -81,12 +81,13 @@ class LocalBackedCasServer extends ContentAddressableStorageImplBase {
     try {
       BatchReadBlobsResponse.Builder responseBuilder = BatchReadBlobsResponse.newBuilder();
       for (build.bazel.remote.execution.v2.Digest digest : request.getDigestsList()) {
-        InputStream dataStream = storage.getData(new GrpcDigest(digest));
-        responseBuilder.addResponses(
-            BatchReadBlobsResponse.Response.newBuilder()
-                .setDigest(digest)
-                .setData(ByteString.readFrom(dataStream))
-                .build());
+        try (InputStream dataStream = storage.getData(new GrpcDigest(digest))) {
+          responseBuilder.addResponses(
+              BatchReadBlobsResponse.Response.newBuilder()
+                  .setDigest(digest)
+                  .setData(ByteString.readFrom(dataStream))
+                  .build());
+        }
       }
 
       responseObserver.onNext(responseBuilder.build());
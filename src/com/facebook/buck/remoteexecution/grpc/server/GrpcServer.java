@@ -37,13 +37,23 @@ public class GrpcServer implements Closeable {
   private final NamedTemporaryDirectory workDir;
 
   public GrpcServer(int port) throws IOException {
+    this(port, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param maxCacheSizeBytes bound on the size of the server's CAS, least recently used blobs are
+   *     evicted beyond it.
+   */
+  public GrpcServer(int port, long maxCacheSizeBytes) throws IOException {
     workDir = new NamedTemporaryDirectory("__remote__");
     GrpcRemoteExecutionServiceServer remoteExecution =
         new GrpcRemoteExecutionServiceServer(
             new LocalContentAddressedStorage(
                 workDir.getPath().resolve("__cache__"),
                 GrpcRemoteExecutionClients.PROTOCOL,
-                new DefaultBuckEventBus(new DefaultClock(true), new BuildId())),
+                new DefaultBuckEventBus(new DefaultClock(true), new BuildId()),
+                maxCacheSizeBytes,
+                Runtime.getRuntime().availableProcessors()),
             workDir.getPath().resolve("__work__"));
     NettyServerBuilder builder = NettyServerBuilder.forPort(port);
 
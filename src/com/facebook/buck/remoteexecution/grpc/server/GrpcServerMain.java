@@ -21,10 +21,11 @@ import java.io.IOException;
 
 /** Runs the GrpcServer remote execution server. */
 public class GrpcServerMain {
-  /** Server entry point. */
+  /** Server entry point. Takes the port and, optionally, the max CAS size in bytes. */
   public static void main(String[] args) throws IOException, InterruptedException {
-    Preconditions.checkState(args.length == 1);
-    try (GrpcServer server = new GrpcServer(Integer.parseInt(args[0]))) {
+    Preconditions.checkState(args.length == 1 || args.length == 2);
+    long maxCacheSizeBytes = args.length == 2 ? Long.parseLong(args[1]) : Long.MAX_VALUE;
+    try (GrpcServer server = new GrpcServer(Integer.parseInt(args[0]), maxCacheSizeBytes)) {
       server.awaitTermination();
     }
   }
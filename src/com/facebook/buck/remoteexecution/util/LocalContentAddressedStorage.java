@@ -17,6 +17,7 @@
 package com.facebook.buck.remoteexecution.util;
 
 import com.facebook.buck.core.exceptions.BuckUncheckedExecutionException;
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.windowsfs.WindowsFS;
@@ -40,6 +41,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.MoreFiles;
 import com.google.common.util.concurrent.Futures;
@@ -57,25 +59,57 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
-/** A simple, on-disk content addressed storage. */
+/**
+ * A simple, on-disk content addressed storage.
+ *
+ * <p>Blobs are stored sharded by the first two bytes of their hash. An in-memory index of the
+ * stored blobs is kept in least-recently-used order so that presence checks don't need to hit the
+ * filesystem and so that the storage can be bounded in size. When the total size exceeds the bound,
+ * the least recently used blobs are deleted. Inputs are materialized by hard-linking, so evicting a
+ * blob doesn't affect sandboxes that have already been materialized from it.
+ */
 public class LocalContentAddressedStorage implements ContentAddressedStorageClient {
+  private static final Logger LOG = Logger.get(LocalContentAddressedStorage.class);
+
   private final Path cacheDir;
   private final StripedKeyedLocker<String> fileLock = new StripedKeyedLocker<>(8);
 
   private static final int MISSING_CHECK_LIMIT = 1000;
   private static final int SIZE_LIMIT = 10 * 1024 * 1024;
+  private static final int DEFAULT_WRITER_THREADS = 4;
+
+  private final long maxSizeBytes;
+  /** Size on disk of each blob (including its executable copy), in least-recently-used order. */
+  @GuardedBy("index")
+  private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+  @GuardedBy("index")
+  private long totalSize = 0;
+
+  private final Set<String> containedHashes = Sets.newConcurrentHashSet();
 
   private final MultiThreadedBlobUploader uploader;
   private final OutputsMaterializer outputsMaterializer;
@@ -84,13 +118,33 @@ public class LocalContentAddressedStorage implements ContentAddressedStorageClie
   private final AsyncBlobFetcher fetcher;
 
   public LocalContentAddressedStorage(Path cacheDir, Protocol protocol, BuckEventBus buckEventBus) {
+    this(cacheDir, protocol, buckEventBus, Long.MAX_VALUE, DEFAULT_WRITER_THREADS);
+  }
+
+  /**
+   * @param maxSizeBytes once the stored blobs exceed this size, the least recently used ones are
+   *     evicted.
+   * @param writerThreads number of threads used to write uploaded blobs.
+   */
+  public LocalContentAddressedStorage(
+      Path cacheDir,
+      Protocol protocol,
+      BuckEventBus buckEventBus,
+      long maxSizeBytes,
+      int writerThreads) {
+    Preconditions.checkArgument(maxSizeBytes > 0, "maxSizeBytes must be positive.");
     this.cacheDir = cacheDir;
     this.protocol = protocol;
-    ExecutorService uploadService = MostExecutors.newMultiThreadExecutor("local-cas-write", 4);
+    this.maxSizeBytes = maxSizeBytes;
+    loadIndex();
+    ExecutorService uploadService =
+        MostExecutors.newMultiThreadExecutor("local-cas-write", writerThreads);
     this.uploader =
         new MultiThreadedBlobUploader(
             MISSING_CHECK_LIMIT,
+            0,
             SIZE_LIMIT,
+            containedHashes,
             uploadService,
             new CasBlobUploader() {
               @Override
@@ -141,14 +195,15 @@ public class LocalContentAddressedStorage implements ContentAddressedStorageClie
               ImmutableMultimap<Digest, SettableFuture<Unit>> futures)
               throws IOException {
             for (Digest digest : requests.keySet()) {
-              FileInputStream stream = getFileInputStream(digest);
-              FileChannel input = stream.getChannel();
-              for (Callable<WritableByteChannel> callable : requests.get(digest)) {
-                try (WritableByteChannel channel = callable.call()) {
-                  input.transferTo(0, input.size(), channel);
-                } catch (Exception e) {
-                  throw new BuckUncheckedExecutionException(
-                      "Unable to write " + digest + " to channel");
+              try (FileInputStream stream = getFileInputStream(digest)) {
+                FileChannel input = stream.getChannel();
+                for (Callable<WritableByteChannel> callable : requests.get(digest)) {
+                  try (WritableByteChannel channel = callable.call()) {
+                    input.transferTo(0, input.size(), channel);
+                  } catch (Exception e) {
+                    throw new BuckUncheckedExecutionException(
+                        "Unable to write " + digest + " to channel");
+                  }
                 }
               }
               futures.get(digest).forEach(future -> future.set(null));
@@ -169,30 +224,37 @@ public class LocalContentAddressedStorage implements ContentAddressedStorageClie
             new InputsMaterializer.Delegate() {
               @Override
               public void materializeFile(Path root, FileNode file) throws IOException {
-                Path path = getPath(file.getDigest().getHash());
-                Preconditions.checkState(Files.exists(path), "Path %s doesn't exist.", path);
-                // As this file could potentially be materialized as both executable and
-                // non-executable, and
-                // links share that, we need two concrete versions of the file.
-                if (file.getIsExecutable()) {
-                  Path exePath = path.getParent().resolve(path.getFileName() + ".x");
-                  if (!Files.exists(exePath)) {
-                    try (AutoUnlocker ignored = fileLock.writeLock(exePath.toString())) {
-                      if (!Files.exists(exePath)) {
-                        Path tempPath = path.getParent().resolve(path.getFileName() + ".x.tmp");
-                        Files.copy(path, tempPath);
-                        Preconditions.checkState(tempPath.toFile().setExecutable(true));
-                        Files.move(tempPath, exePath);
-                      }
-                    }
-                  }
-                  path = exePath;
-                }
+                String hash = file.getDigest().getHash();
+                Path path = getPath(hash);
                 Path target = root.resolve(file.getName());
                 Path normalized = target.normalize();
                 Preconditions.checkState(
                     normalized.startsWith(root), "%s doesn't start with %s.", normalized, root);
-                Files.createLink(target, path);
+                // As this file could potentially be materialized as both executable and
+                // non-executable, and links share that, we need two concrete versions of the file.
+                Path exePath = path.getParent().resolve(path.getFileName() + ".x");
+                // Linking holds the lock that evicting the blob takes for writing, so that the blob
+                // can't disappear between checking for it and linking to it.
+                try (AutoUnlocker ignored = fileLock.readLock(hash)) {
+                  if (!file.getIsExecutable() || Files.exists(exePath)) {
+                    Preconditions.checkState(Files.exists(path), "Path %s doesn't exist.", path);
+                    Files.createLink(target, file.getIsExecutable() ? exePath : path);
+                    recordStored(hash, path);
+                    return;
+                  }
+                }
+                try (AutoUnlocker ignored = fileLock.writeLock(hash)) {
+                  Preconditions.checkState(Files.exists(path), "Path %s doesn't exist.", path);
+                  if (!Files.exists(exePath)) {
+                    Path tempPath = path.getParent().resolve(path.getFileName() + ".x.tmp");
+                    Files.copy(path, tempPath);
+                    Preconditions.checkState(tempPath.toFile().setExecutable(true));
+                    Files.move(tempPath, exePath);
+                  }
+                  Files.createLink(target, exePath);
+                  recordStored(hash, path);
+                }
+                evictIfNecessary(hash);
               }
 
               @Override
@@ -210,17 +272,19 @@ public class LocalContentAddressedStorage implements ContentAddressedStorageClie
       try {
         Path path = ensureParent(getPath(hash));
         try (AutoUnlocker ignored = fileLock.writeLock(hash)) {
-          if (Files.exists(path)) {
-            continue;
-          }
-          Path tempPath = path.getParent().resolve(path.getFileName() + ".tmp");
-          try (OutputStream outputStream =
-                  new BufferedOutputStream(new FileOutputStream(tempPath.toFile()));
-              InputStream dataStream = data.get()) {
-            ByteStreams.copy(dataStream, outputStream);
+          if (!Files.exists(path)) {
+            Path tempPath = path.getParent().resolve(path.getFileName() + ".tmp");
+            try (OutputStream outputStream =
+                    new BufferedOutputStream(new FileOutputStream(tempPath.toFile()));
+                InputStream dataStream = data.get()) {
+              ByteStreams.copy(dataStream, outputStream);
+            }
+            Files.move(tempPath, path);
           }
-          Files.move(tempPath, path);
+          // The blob may have been concurrently evicted from the index (but not yet deleted).
+          recordStored(hash, path);
         }
+        evictIfNecessary(hash);
         responseBuilder.add(new UploadResult(data.getDigest(), 0, null));
       } catch (IOException e) {
         responseBuilder.add(new UploadResult(data.getDigest(), 1, e.getMessage()));
@@ -354,16 +418,122 @@ public class LocalContentAddressedStorage implements ContentAddressedStorageClie
   /** Looks up some data. Used internally and in tests. */
   @VisibleForTesting
   public InputStream getData(Protocol.Digest digest) throws IOException {
-    Path path = getPath(digest.getHash());
-    Preconditions.checkState(Files.exists(path), "Couldn't find %s.", path);
     return new BufferedInputStream(getFileInputStream(digest));
   }
 
   /** Get a file input stream to a Digest */
   public FileInputStream getFileInputStream(Protocol.Digest digest) throws IOException {
-    Path path = getPath(digest.getHash());
-    Preconditions.checkState(Files.exists(path), "Couldn't find %s.", path);
-    return new FileInputStream(path.toFile());
+    String hash = digest.getHash();
+    Path path = getPath(hash);
+    // Once opened, the stream keeps reading the blob even if it is evicted.
+    try (AutoUnlocker ignored = fileLock.readLock(hash)) {
+      Preconditions.checkState(Files.exists(path), "Couldn't find %s.", path);
+      recordStored(hash, path);
+      return new FileInputStream(path.toFile());
+    }
+  }
+
+  /** Returns the total size of the blobs currently stored. */
+  @VisibleForTesting
+  public long getTotalSize() {
+    synchronized (index) {
+      return totalSize;
+    }
+  }
+
+  /** Rebuilds the index from the blobs left on disk, oldest modification first. */
+  private void loadIndex() {
+    if (!Files.isDirectory(cacheDir)) {
+      return;
+    }
+    Map<String, Long> sizes = new HashMap<>();
+    Map<String, FileTime> modifiedTimes = new HashMap<>();
+    try {
+      Files.walkFileTree(
+          cacheDir,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                throws IOException {
+              String name = file.getFileName().toString();
+              if (name.endsWith(".tmp")) {
+                // Left over from an interrupted write.
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+              }
+              String hash = name.endsWith(".x") ? name.substring(0, name.length() - 2) : name;
+              sizes.merge(hash, attrs.size(), Long::sum);
+              if (!name.endsWith(".x")) {
+                modifiedTimes.put(hash, attrs.lastModifiedTime());
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      throw new BuckUncheckedExecutionException(e, "When loading the index of %s.", cacheDir);
+    }
+    synchronized (index) {
+      modifiedTimes.entrySet().stream()
+          .sorted(Map.Entry.comparingByValue())
+          .forEach(
+              entry -> {
+                long size = sizes.get(entry.getKey());
+                index.put(entry.getKey(), size);
+                totalSize += size;
+              });
+    }
+    containedHashes.addAll(modifiedTimes.keySet());
+    evictIfNecessary(null);
+  }
+
+  /**
+   * Records a use of the blob stored at {@code path}, with its current size on disk, including its
+   * executable copy. The blob is added back to the index if it was evicted from it in the meantime.
+   * Callers must hold a lock on {@code hash}, so that its files don't change while they are sized.
+   */
+  private void recordStored(String hash, Path path) throws IOException {
+    Path exePath = path.getParent().resolve(path.getFileName() + ".x");
+    long size = Files.size(path) + (Files.exists(exePath) ? Files.size(exePath) : 0);
+    synchronized (index) {
+      Long previousSize = index.put(hash, size);
+      totalSize += size - (previousSize == null ? 0 : previousSize);
+    }
+  }
+
+  /**
+   * Evicts least recently used blobs until the total size is within the bound. The blob that was
+   * just added ({@code justAdded}) is never evicted.
+   */
+  private void evictIfNecessary(@Nullable String justAdded) {
+    List<String> evicted = new ArrayList<>();
+    synchronized (index) {
+      Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+      while (totalSize > maxSizeBytes && iterator.hasNext()) {
+        Map.Entry<String, Long> entry = iterator.next();
+        if (entry.getKey().equals(justAdded)) {
+          continue;
+        }
+        totalSize -= entry.getValue();
+        evicted.add(entry.getKey());
+        iterator.remove();
+      }
+    }
+    for (String hash : evicted) {
+      containedHashes.remove(hash);
+      Path path = getPath(hash);
+      try (AutoUnlocker ignored = fileLock.writeLock(hash)) {
+        synchronized (index) {
+          if (index.containsKey(hash)) {
+            // Re-added after we decided to evict it.
+            continue;
+          }
+        }
+        Files.deleteIfExists(path.getParent().resolve(path.getFileName() + ".x"));
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to evict %s from the local cas.", path);
+      }
+    }
   }
 
   private static Path ensureParent(Path path) throws IOException {
@@ -378,7 +548,14 @@ public class LocalContentAddressedStorage implements ContentAddressedStorageClie
         .resolve(hashString);
   }
 
+  /** Returns the digests that aren't stored. This consults the index and not the filesystem. */
   public Stream<Protocol.Digest> findMissing(Iterable<Protocol.Digest> digests) {
-    return RichStream.from(digests).filter(digest -> !Files.exists(getPath(digest.getHash())));
+    return RichStream.from(digests)
+        .filter(
+            digest -> {
+              synchronized (index) {
+                return index.get(digest.getHash()) == null;
+              }
+            });
   }
 }
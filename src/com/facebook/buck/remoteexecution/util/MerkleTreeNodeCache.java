@@ -25,10 +25,16 @@ import com.facebook.buck.remoteexecution.interfaces.Protocol.SymlinkNode;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.TreeNode;
 import com.facebook.buck.util.types.Either;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.base.Verify;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -37,8 +43,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 /**
@@ -47,13 +57,58 @@ import javax.annotation.Nullable;
  *
  * <p>It also provides methods to get the {@link Protocol} encoded merkle tree data structures
  * (these values are cached once computed for a node).
+ *
+ * <p>A cache created with a retention limit additionally holds on to the most recently created and
+ * merged nodes. Since nodes are keyed purely on their contents (i.e. on the file digests provided
+ * by the file hash cache), a retained node stays valid across builds and its digest is computed
+ * only once for as long as it is retained. The retention limit is a number of entries rather than
+ * nodes, since every retained node also retains the inputs it was created or merged from.
  */
 public class MerkleTreeNodeCache {
+  private static final long DAEMON_SCOPED_MAX_RETAINED_ENTRIES = 1_000_000;
+
+  private static final ConcurrentMap<Class<? extends Protocol>, MerkleTreeNodeCache>
+      daemonScopedCaches = new ConcurrentHashMap<>();
+
   private final Interner<MerkleTreeNode> nodeInterner = Interners.newWeakInterner();
   private final Protocol protocol;
+  @Nullable private final Cache<NodeContents, MerkleTreeNode> createdNodes;
+  @Nullable private final Cache<ImmutableList<MerkleTreeNode>, MerkleTreeNode> mergedNodes;
 
   public MerkleTreeNodeCache(Protocol protocol) {
     this.protocol = protocol;
+    this.createdNodes = null;
+    this.mergedNodes = null;
+  }
+
+  /**
+   * Creates a cache that retains the most recently created nodes and merge results so that they can
+   * be reused by later actions and builds. Created nodes are weighed by the number of files,
+   * symlinks and empty directories they were created from, and merge results by the number of
+   * nodes that were merged. Each of the two is limited to {@code maxRetainedEntries} in total.
+   */
+  public MerkleTreeNodeCache(Protocol protocol, long maxRetainedEntries) {
+    this.protocol = protocol;
+    this.createdNodes =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxRetainedEntries)
+            .weigher((NodeContents contents, MerkleTreeNode node) -> contents.size())
+            .build();
+    this.mergedNodes =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxRetainedEntries)
+            .weigher((ImmutableList<MerkleTreeNode> nodes, MerkleTreeNode node) -> nodes.size())
+            .build();
+  }
+
+  /**
+   * Gets the cache shared by everything using the provided protocol for the lifetime of this
+   * process (i.e. the daemon).
+   */
+  public static MerkleTreeNodeCache getDaemonScopedCache(Protocol protocol) {
+    return daemonScopedCaches.computeIfAbsent(
+        protocol.getClass(),
+        ignored -> new MerkleTreeNodeCache(protocol, DAEMON_SCOPED_MAX_RETAINED_ENTRIES));
   }
 
   /**
@@ -64,6 +119,24 @@ public class MerkleTreeNodeCache {
       Map<Path, FileNode> files,
       Map<Path, SymlinkNode> symlinks,
       Map<Path, DirectoryNode> emptyDirectories) {
+    if (createdNodes == null) {
+      return createNodeImpl(files, symlinks, emptyDirectories);
+    }
+    NodeContents contents =
+        new NodeContents(
+            ImmutableMap.copyOf(files),
+            ImmutableMap.copyOf(symlinks),
+            ImmutableMap.copyOf(emptyDirectories));
+    return getOrCompute(
+        createdNodes,
+        contents,
+        () -> createNodeImpl(contents.files, contents.symlinks, contents.emptyDirectories));
+  }
+
+  private MerkleTreeNode createNodeImpl(
+      Map<Path, FileNode> files,
+      Map<Path, SymlinkNode> symlinks,
+      Map<Path, DirectoryNode> emptyDirectories) {
     TreeNodeBuilder rootBuilder = new TreeNodeBuilder();
     files.forEach(processTreeNode(rootBuilder, NodeType.FILE));
     symlinks.forEach(processTreeNode(rootBuilder, NodeType.SYMLINK));
@@ -97,6 +170,14 @@ public class MerkleTreeNodeCache {
       return nodes.iterator().next();
     }
 
+    if (mergedNodes == null) {
+      return mergeNodesImpl(nodes);
+    }
+    ImmutableList<MerkleTreeNode> key = ImmutableList.copyOf(nodes);
+    return getOrCompute(mergedNodes, key, () -> mergeNodesImpl(key));
+  }
+
+  private MerkleTreeNode mergeNodesImpl(Collection<MerkleTreeNode> nodes) {
     Iterator<MerkleTreeNode> iterator = nodes.iterator();
     TreeNodeBuilder root = new TreeNodeBuilder(iterator.next());
     while (iterator.hasNext()) {
@@ -118,6 +199,58 @@ public class MerkleTreeNodeCache {
     return node.getData(protocol);
   }
 
+  private static <K> MerkleTreeNode getOrCompute(
+      Cache<K, MerkleTreeNode> cache, K key, Supplier<MerkleTreeNode> supplier) {
+    try {
+      return cache.get(key, supplier::get);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** The (immutable) inputs to {@link #createNode}, used as the key for retained nodes. */
+  private static class NodeContents {
+    private final ImmutableMap<Path, FileNode> files;
+    private final ImmutableMap<Path, SymlinkNode> symlinks;
+    private final ImmutableMap<Path, DirectoryNode> emptyDirectories;
+    private final int hashCode;
+
+    NodeContents(
+        ImmutableMap<Path, FileNode> files,
+        ImmutableMap<Path, SymlinkNode> symlinks,
+        ImmutableMap<Path, DirectoryNode> emptyDirectories) {
+      this.files = files;
+      this.symlinks = symlinks;
+      this.emptyDirectories = emptyDirectories;
+      this.hashCode = Objects.hash(files, symlinks, emptyDirectories);
+    }
+
+    int size() {
+      return files.size() + symlinks.size() + emptyDirectories.size();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof NodeContents)) {
+        return false;
+      }
+      NodeContents other = (NodeContents) obj;
+      return hashCode == other.hashCode
+          && files.equals(other.files)
+          && symlinks.equals(other.symlinks)
+          && emptyDirectories.equals(other.emptyDirectories);
+    }
+  }
+
   /** Represents a node in the merkle tree of files and symlinks. */
   public static class MerkleTreeNode {
     @Nullable private volatile NodeData data;
@@ -34,6 +34,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.Status;
 import java.io.IOException;
 import java.util.Objects;
@@ -43,8 +44,12 @@ import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -58,20 +63,36 @@ import java.util.stream.Stream;
  * does/doesn't contain. Any that are missing will be added to a queue to be uploaded. Work threads
  * will then pull those off and upload them. When the upload is finished, the future for that digest
  * will be fulfilled.
+ *
+ * <p>Requests from concurrent callers are coalesced: a digest that is already being checked or
+ * uploaded is never enqueued twice, and the missing check for newly enqueued digests is scheduled
+ * missingCheckBatchWindowMs later, so that digests enqueued in the meantime are checked in the same
+ * request. No work thread waits for the window to pass. The set of hashes known to be contained in
+ * the CAS can be shared between uploaders (e.g. for the lifetime of the daemon) so that later
+ * builds don't need to check them again.
  */
 public class MultiThreadedBlobUploader {
   private static final Logger LOG = Logger.get(MultiThreadedBlobUploader.class);
 
+  private static final ScheduledExecutorService missingCheckScheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("blob-uploader-missing-check-%d")
+              .setDaemon(true)
+              .build());
+
   private final int missingCheckLimit;
+  private final long missingCheckBatchWindowMs;
   private final int uploadSizeLimit;
 
   private final ConcurrentHashMap<String, ListenableFuture<Unit>> pendingUploads =
       new ConcurrentHashMap<>();
 
-  private final Set<String> containedHashes = Sets.newConcurrentHashSet();
+  private final Set<String> containedHashes;
   private final BlockingDeque<PendingUpload> waitingUploads = new LinkedBlockingDeque<>();
 
   private final BlockingQueue<PendingUpload> waitingMissingCheck = new LinkedBlockingQueue<>();
+  private final AtomicBoolean missingCheckScheduled = new AtomicBoolean(false);
 
   private final ExecutorService uploadService;
   private final CasBlobUploader asyncBlobUploader;
@@ -99,8 +120,32 @@ public class MultiThreadedBlobUploader {
       int uploadSizeLimit,
       ExecutorService uploadService,
       CasBlobUploader delegate) {
+    this(
+        missingCheckLimit,
+        0,
+        uploadSizeLimit,
+        Sets.newConcurrentHashSet(),
+        uploadService,
+        delegate);
+  }
+
+  /**
+   * @param missingCheckBatchWindowMs how long to wait for more digests to batch together before
+   *     querying the CAS for missing ones.
+   * @param containedHashes hashes known to be contained in the CAS. This may be shared with other
+   *     uploaders that talk to the same CAS.
+   */
+  public MultiThreadedBlobUploader(
+      int missingCheckLimit,
+      long missingCheckBatchWindowMs,
+      int uploadSizeLimit,
+      Set<String> containedHashes,
+      ExecutorService uploadService,
+      CasBlobUploader delegate) {
     this.missingCheckLimit = missingCheckLimit;
+    this.missingCheckBatchWindowMs = missingCheckBatchWindowMs;
     this.uploadSizeLimit = uploadSizeLimit;
+    this.containedHashes = containedHashes;
     this.uploadService = uploadService;
     this.asyncBlobUploader = delegate;
   }
@@ -130,6 +175,7 @@ public class MultiThreadedBlobUploader {
 
   private ListenableFuture<Unit> enqueue(ImmutableList<UploadDataSupplier> dataSupplier) {
     Builder<ListenableFuture<Unit>> futures = ImmutableList.builder();
+    boolean enqueuedAny = false;
     for (UploadDataSupplier data : dataSupplier) {
       Digest digest = data.getDigest();
       SettableFuture<Unit> future = SettableFuture.create();
@@ -153,14 +199,32 @@ public class MultiThreadedBlobUploader {
               future,
               MoreFutures.finallyCallback(() -> pendingUploads.remove(digest.getHash())),
               directExecutor());
-          uploadService.submit(this::processUploads);
+          enqueuedAny = true;
         }
       }
       futures.add(pendingFuture);
     }
+    if (enqueuedAny) {
+      scheduleMissingCheck();
+    }
     return Futures.whenAllSucceed(futures.build()).call(() -> null, directExecutor());
   }
 
+  private void scheduleMissingCheck() {
+    if (missingCheckBatchWindowMs <= 0) {
+      uploadService.submit(this::processUploads);
+    } else if (missingCheckScheduled.compareAndSet(false, true)) {
+      // Digests enqueued until this runs are picked up by the same missing check.
+      missingCheckScheduler.schedule(
+          () -> {
+            missingCheckScheduled.set(false);
+            uploadService.submit(this::processUploads);
+          },
+          missingCheckBatchWindowMs,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
   private void processMissing() {
     ImmutableList.Builder<PendingUpload> dataBuilder = ImmutableList.builder();
     int count = 0;
@@ -263,6 +327,8 @@ public class MultiThreadedBlobUploader {
       }
     }
 
+    // Each batch of enqueued digests only schedules a single task, so this picks up whatever didn't
+    // fit into this task's missing check or upload.
     if (!waitingMissingCheck.isEmpty() || !waitingUploads.isEmpty()) {
       uploadService.submit(this::processUploads);
     }
@@ -22,12 +22,22 @@ import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.UnconfiguredBuildTarget;
 import com.facebook.buck.core.path.ForwardRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.reflect.TypeToken;
 
-/** Coerce to {@link com.facebook.buck.core.model.BuildTarget}. */
+/**
+ * Coerce to {@link com.facebook.buck.core.model.BuildTarget}.
+ *
+ * <p>Coerced targets are interned. The same few targets appear in the deps of thousands of target
+ * nodes, and their unconfigured halves are already interned, so this makes every node depending on
+ * a target in a given configuration share one {@link BuildTarget}.
+ */
 public class BuildTargetTypeCoercer
     extends LeafTypeNewCoercer<UnconfiguredBuildTarget, BuildTarget> {
 
+  private static final Interner<BuildTarget> interner = Interners.newWeakInterner();
+
   private final TypeCoercer<UnconfiguredBuildTarget, UnconfiguredBuildTarget>
       unconfiguredBuildTargetTypeCoercer;
 
@@ -70,6 +80,6 @@ public class BuildTargetTypeCoercer
       TargetConfiguration hostConfiguration,
       UnconfiguredBuildTarget object)
       throws CoerceFailedException {
-    return object.configure(targetConfiguration);
+    return interner.intern(object.configure(targetConfiguration));
   }
 }
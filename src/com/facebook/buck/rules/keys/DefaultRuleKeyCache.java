@@ -30,9 +30,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -61,7 +64,7 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
       new ConcurrentHashMap<>();
 
   /** A map for rule key inputs to nodes that use them. */
-  private final ConcurrentHashMap<RuleKeyInput, Stream.Builder<Object>> inputsIndex =
+  private final ConcurrentHashMap<RuleKeyInput, List<Object>> inputsIndex =
       new ConcurrentHashMap<>();
 
   private <K> V calculateNode(K node, Function<K, RuleKeyResult<V>> create) {
@@ -85,12 +88,12 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
     for (RuleKeyInput input : result.inputs) {
       inputsIndex.compute(
           input,
-          (key, builder) -> {
-            if (builder == null) {
-              builder = Stream.builder();
+          (key, nodes) -> {
+            if (nodes == null) {
+              nodes = new ArrayList<>();
             }
-            builder.add(node);
-            return builder;
+            nodes.add(node);
+            return nodes;
           });
     }
 
@@ -172,7 +175,7 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
           // This node may have already been removed due to being someone else's reverse dependency.
           if (node != null) {
             LOG.verbose("invalidating node %s", key);
-            dependents.add(node.dependents.build());
+            dependents.add(node.dependents.stream());
             statsTracker.recordEviction();
           }
         });
@@ -187,9 +190,9 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
     List<Stream<Object>> nodes = new ArrayList<>();
     for (RuleKeyInput input : inputs) {
       LOG.verbose("invalidating input %s", input);
-      Stream.Builder<Object> inputNodes = inputsIndex.remove(input);
+      List<Object> inputNodes = inputsIndex.remove(input);
       if (inputNodes != null) {
-        nodes.add(inputNodes.build());
+        nodes.add(inputNodes.stream());
       }
     }
     if (!nodes.isEmpty()) {
@@ -227,6 +230,85 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
         statsTracker);
   }
 
+  /**
+   * Invalidate all {@link BuildEngineAction}s except the given ones, their transitive dependents,
+   * and all {@link AddsToRuleKey}s which are no longer used by any of the remaining actions.
+   *
+   * <p>This lets the rule keys of actions which a new action graph reused from the previous one
+   * survive the switch to the new graph, while dropping every reference to the rest of the previous
+   * graph. Must not be called while rule keys are being computed.
+   */
+  @Override
+  public void invalidateAllExceptActions(
+      Iterable<? extends BuildEngineAction> actions, CacheStatsTracker statsTracker) {
+    Set<IdentityWrapper<Object>> retainedActions = new HashSet<>();
+    for (BuildEngineAction action : actions) {
+      retainedActions.add(new IdentityWrapper<>(action));
+    }
+    invalidateNodes(
+        cache.keySet().stream()
+            .filter(
+                key ->
+                    key.delegate instanceof BuildEngineAction && !retainedActions.contains(key))
+            .map(key -> key.delegate)
+            .collect(Collectors.toList())
+            .stream(),
+        statsTracker);
+
+    Map<IdentityWrapper<Object>, Boolean> usedNodes = new HashMap<>();
+    List<IdentityWrapper<Object>> unusedAppendables =
+        cache.keySet().stream().filter(key -> !isUsed(key, usedNodes)).collect(Collectors.toList());
+    for (IdentityWrapper<Object> key : unusedAppendables) {
+      LOG.verbose("invalidating unused node %s", key.delegate);
+      cache.remove(key);
+    }
+    statsTracker.recordEviction(unusedAppendables.size());
+
+    // Drop the references which the remaining nodes hold to the ones that were just removed.
+    for (IdentityWrapper<Object> key : cache.keySet()) {
+      cache.computeIfPresent(
+          key,
+          (ignored, node) -> {
+            node.dependents.removeIf(dependent -> !isCachedNode(dependent));
+            return node;
+          });
+    }
+    for (RuleKeyInput input : inputsIndex.keySet()) {
+      inputsIndex.computeIfPresent(
+          input,
+          (ignored, nodes) -> {
+            nodes.removeIf(node -> !isCachedNode(node));
+            return nodes.isEmpty() ? null : nodes;
+          });
+    }
+  }
+
+  /**
+   * Returns whether the given node is a cached action, or an appendable used by one, directly or
+   * through other appendables.
+   */
+  private boolean isUsed(
+      IdentityWrapper<Object> key, Map<IdentityWrapper<Object>, Boolean> usedNodes) {
+    if (key.delegate instanceof BuildEngineAction) {
+      return cache.containsKey(key);
+    }
+    Boolean used = usedNodes.get(key);
+    if (used == null) {
+      used = false;
+      Node<Object, V> node = cache.get(key);
+      if (node != null) {
+        for (Object dependent : node.dependents) {
+          if (isUsed(new IdentityWrapper<>(dependent), usedNodes)) {
+            used = true;
+            break;
+          }
+        }
+      }
+      usedNodes.put(key, used);
+    }
+    return used;
+  }
+
   /** Invalidate everything in the cache. */
   @Override
   public void invalidateAll(CacheStatsTracker statsTracker) {
@@ -253,9 +335,9 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
   private static final class Node<T, V> {
     /**
      * Accumulator of nodes that depends on this one. Used to invalidate those nodes when this node
-     * is invalidated.
+     * is invalidated. Only modified by the compute* functions on the ConcurrentHashMap.
      */
-    private final Stream.Builder<T> dependents;
+    private final List<T> dependents;
 
     /**
      * The cached value, stored in a memoized supplier. A memoized supplier is used to allow the
@@ -268,7 +350,7 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
     @Nullable private volatile Supplier<V> value;
 
     public Node() {
-      this.dependents = Stream.builder();
+      this.dependents = new ArrayList<>();
       this.value = null;
     }
   }
@@ -137,6 +137,17 @@ public class RuleKeyCacheRecycler<V> {
           scope.update("settings_change", false);
         }
 
+        // When a new action graph is used, only the rules which it reused from the previous one
+        // keep their rule keys.
+        if (previousSettings != null
+            && previousSettings.actionGraph != currentSettings.actionGraph) {
+          LOG.debug("invalidating rules which are not part of the new action graph");
+          getCache().invalidateAllExceptActions(currentSettings.actionGraph.getNodes());
+          scope.update("action_graph_change", true);
+        } else {
+          scope.update("action_graph_change", false);
+        }
+
         // Record the current settings for next time.
         previousSettings = currentSettings;
       }
@@ -193,15 +204,11 @@ public class RuleKeyCacheRecycler<V> {
         return false;
       }
 
-      if (previous.ruleKeySeed != current.ruleKeySeed) {
-        return false;
-      }
-
-      // NOTE: Since the cache indexes using instance equality, it's only ever useful if we get a
-      // hit in the action graph cache and re-use the same action graph in the next build.  So, if
-      // we detect that a fresh action graph is being used, we eagerly dump the cache to free up
-      // memory.
-      return previous.actionGraph == current.actionGraph;
+      // NOTE: The cache indexes using instance equality, so a fresh action graph doesn't require
+      // an invalidation by itself. Rules which incremental action graph construction carried over
+      // from the previous graph are the same instances, with the same rule keys, and everything
+      // else is dropped separately.
+      return previous.ruleKeySeed == current.ruleKeySeed;
     }
   }
 }
@@ -54,6 +54,9 @@ public interface TrackableRuleKeyCache<V> {
 
   void invalidateFilesystem(ProjectFilesystem filesystem, CacheStatsTracker statsTracker);
 
+  void invalidateAllExceptActions(
+      Iterable<? extends BuildEngineAction> actions, CacheStatsTracker statsTracker);
+
   void invalidateAll(CacheStatsTracker statsTracker);
 
   ImmutableList<Map.Entry<BuildRule, V>> getCachedBuildRules();
@@ -81,6 +81,14 @@ public class TrackedRuleKeyCache<V> implements RuleKeyCache<V> {
     cache.invalidateFilesystem(filesystem, statsTracker);
   }
 
+  /**
+   * Invalidate all actions except the given ones, their transitive dependents, and all appendables
+   * no longer used by the remaining actions.
+   */
+  public void invalidateAllExceptActions(Iterable<? extends BuildEngineAction> actions) {
+    cache.invalidateAllExceptActions(actions, statsTracker);
+  }
+
   /** Invalidate everything in the cache. */
   @Override
   public void invalidateAll() {
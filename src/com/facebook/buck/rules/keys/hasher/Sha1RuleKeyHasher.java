@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.keys.hasher;
+
+import com.facebook.buck.core.filesystems.BuckUnixPath;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.RuleType;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.sourcepath.BuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.ForwardingBuildTargetSourcePath;
+import com.facebook.buck.io.file.FastPaths;
+import com.facebook.buck.util.sha1.Sha1HashCode;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * An implementation of {@link RuleKeyHasher} which computes exactly the same SHA-1 hashes as a
+ * {@link GuavaRuleKeyHasher} wrapping {@code Hashing.sha1()}, without allocating for every field.
+ *
+ * <p>{@link GuavaRuleKeyHasher} passes every primitive to the digest on its own, every character of
+ * a path as two bytes at a time, and encodes every string into a fresh array. This hasher instead
+ * encodes all fields, strings and paths included, straight into a buffer, which is passed to the
+ * digest whenever it fills up. The digest and the buffer are returned to a per-thread pool once the
+ * hash is computed, so that the many hashers created while computing the keys of a build reuse
+ * them.
+ */
+public class Sha1RuleKeyHasher implements RuleKeyHasher<HashCode> {
+
+  private static final int BUFFER_SIZE = 4096;
+
+  /**
+   * Hashers nest while the keys of dependencies are computed, so the pool holds up to one state per
+   * level of nesting on every thread.
+   */
+  private static final int MAX_POOLED_STATES_PER_THREAD = 32;
+
+  private static final ThreadLocal<Deque<State>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+  @Nullable private State state;
+
+  public Sha1RuleKeyHasher() {
+    State pooled = POOL.get().pollFirst();
+    this.state = pooled == null ? new State() : pooled;
+  }
+
+  private State state() {
+    return Preconditions.checkNotNull(state, "Hasher was used after computing the hash.");
+  }
+
+  /** Returns the buffer, after making room for the given number of bytes in it. */
+  private ByteBuffer buffer(int bytes) {
+    State current = state();
+    if (current.buffer.remaining() < bytes) {
+      current.flush();
+    }
+    return current.buffer;
+  }
+
+  private void putRawBytes(byte[] bytes, int offset, int length) {
+    if (length > BUFFER_SIZE) {
+      State current = state();
+      current.flush();
+      current.digest.update(bytes, offset, length);
+    } else {
+      buffer(length).put(bytes, offset, length);
+    }
+  }
+
+  private void putRawHash(HashCode hash) {
+    int length = hash.bits() / Byte.SIZE;
+    if (length > BUFFER_SIZE) {
+      putRawBytes(hash.asBytes(), 0, length);
+      return;
+    }
+    ByteBuffer buffer = buffer(length);
+    hash.writeBytesTo(buffer.array(), buffer.position(), length);
+    buffer.position(buffer.position() + length);
+  }
+
+  private void putRawChars(String val) {
+    for (int i = 0; i < val.length(); i++) {
+      buffer(Character.BYTES).putChar(val.charAt(i));
+    }
+  }
+
+  /**
+   * Encodes the string as UTF-8, replacing unpaired surrogates with {@code '?'} just like {@link
+   * String#getBytes(java.nio.charset.Charset)} does.
+   *
+   * @return the number of bytes put.
+   */
+  private int putRawUtf8(String val) {
+    int length = 0;
+    for (int i = 0; i < val.length(); i++) {
+      char c = val.charAt(i);
+      if (c < 0x80) {
+        buffer(1).put((byte) c);
+        length += 1;
+      } else if (c < 0x800) {
+        buffer(2).put((byte) (0xc0 | (c >> 6))).put((byte) (0x80 | (c & 0x3f)));
+        length += 2;
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c)
+            && i + 1 < val.length()
+            && Character.isLowSurrogate(val.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, val.charAt(++i));
+          buffer(4)
+              .put((byte) (0xf0 | (codePoint >> 18)))
+              .put((byte) (0x80 | ((codePoint >> 12) & 0x3f)))
+              .put((byte) (0x80 | ((codePoint >> 6) & 0x3f)))
+              .put((byte) (0x80 | (codePoint & 0x3f)));
+          length += 4;
+        } else {
+          buffer(1).put((byte) '?');
+          length += 1;
+        }
+      } else {
+        buffer(3)
+            .put((byte) (0xe0 | (c >> 12)))
+            .put((byte) (0x80 | ((c >> 6) & 0x3f)))
+            .put((byte) (0x80 | (c & 0x3f)));
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private Sha1RuleKeyHasher putBytes(byte type, byte[] bytes) {
+    putRawBytes(bytes, 0, bytes.length);
+    buffer(Integer.BYTES + 1).putInt(bytes.length).put(type);
+    return this;
+  }
+
+  private Sha1RuleKeyHasher putHash(byte type, HashCode hash) {
+    putRawHash(hash);
+    buffer(Integer.BYTES + 1).putInt(hash.bits() / Byte.SIZE).put(type);
+    return this;
+  }
+
+  private Sha1RuleKeyHasher putStringified(byte type, String val) {
+    int length = putRawUtf8(val);
+    buffer(Integer.BYTES + 1).putInt(length).put(type);
+    return this;
+  }
+
+  private Sha1RuleKeyHasher putBuildTarget(byte type, BuildTarget target) {
+    return putStringified(type, target.getFullyQualifiedName());
+  }
+
+  /** Puts the path the same way {@link FastPaths#hashPathFast} does. */
+  private Sha1RuleKeyHasher putPathFast(byte type, Path path) {
+    if (!(path instanceof BuckUnixPath)) {
+      putRawChars(path.toString());
+    } else {
+      if (path.isAbsolute()) {
+        buffer(Character.BYTES).putChar('/');
+      }
+      for (int i = 0; i < path.getNameCount(); i++) {
+        if (i != 0) {
+          buffer(Character.BYTES).putChar('/');
+        }
+        putRawChars(FastPaths.getNameString(path, i));
+      }
+    }
+    buffer(1).put(type);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putKey(String key) {
+    return this.putStringified(RuleKeyHasherTypes.KEY, key);
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putKeyPath(Path key) {
+    return this.putPathFast(RuleKeyHasherTypes.KEY, key);
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putNull() {
+    buffer(1).put(RuleKeyHasherTypes.NULL);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putCharacter(char val) {
+    buffer(Character.BYTES).putChar(val);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putBoolean(boolean val) {
+    buffer(1).put(val ? RuleKeyHasherTypes.TRUE : RuleKeyHasherTypes.FALSE);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putNumber(Number val) {
+    if (val instanceof Integer) { // most common, so test first
+      buffer(Integer.BYTES + 1).putInt((Integer) val).put(RuleKeyHasherTypes.INTEGER);
+    } else if (val instanceof Long) {
+      buffer(Long.BYTES + 1).putLong((Long) val).put(RuleKeyHasherTypes.LONG);
+    } else if (val instanceof Short) {
+      buffer(Short.BYTES + 1).putShort((Short) val).put(RuleKeyHasherTypes.SHORT);
+    } else if (val instanceof Byte) {
+      buffer(Byte.BYTES + 1).put((Byte) val).put(RuleKeyHasherTypes.BYTE);
+    } else if (val instanceof Float) {
+      buffer(Integer.BYTES + 1)
+          .putInt(Float.floatToRawIntBits((Float) val))
+          .put(RuleKeyHasherTypes.FLOAT);
+    } else if (val instanceof Double) {
+      buffer(Long.BYTES + 1)
+          .putLong(Double.doubleToRawLongBits((Double) val))
+          .put(RuleKeyHasherTypes.DOUBLE);
+    } else {
+      throw new UnsupportedOperationException(("Unsupported Number type: " + val.getClass()));
+    }
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putString(String val) {
+    return this.putStringified(RuleKeyHasherTypes.STRING, val);
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putBytes(byte[] bytes) {
+    return putBytes(RuleKeyHasherTypes.BYTE_ARRAY, bytes);
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putPattern(Pattern pattern) {
+    return this.putStringified(RuleKeyHasherTypes.PATTERN, pattern.toString());
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putSha1(Sha1HashCode sha1) {
+    sha1.update(buffer(20));
+    buffer(1).put(RuleKeyHasherTypes.SHA1);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putPath(Path path, HashCode hash) {
+    this.putPathFast(RuleKeyHasherTypes.PATH, path);
+    this.putHash(RuleKeyHasherTypes.PATH, hash);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putArchiveMemberPath(
+      Path relativeArchivePath, Path archiveMemberPath, HashCode hash) {
+    putPathFast(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, relativeArchivePath);
+    putPathFast(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, archiveMemberPath);
+    this.putHash(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, hash);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putNonHashingPath(Path path) {
+    return this.putPathFast(RuleKeyHasherTypes.NON_HASHING_PATH, path);
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putRuleKey(RuleKey ruleKey) {
+    return this.putHash(RuleKeyHasherTypes.RULE_KEY, ruleKey.getHashCode());
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putRuleType(RuleType ruleType) {
+    return this.putStringified(RuleKeyHasherTypes.RULE_TYPE, ruleType.toString());
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putBuildTarget(BuildTarget buildTarget) {
+    return this.putBuildTarget(RuleKeyHasherTypes.TARGET, buildTarget);
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putBuildTargetSourcePath(BuildTargetSourcePath targetSourcePath) {
+    this.putBuildTarget(RuleKeyHasherTypes.TARGET_SOURCE_PATH, targetSourcePath.getTarget());
+    if (targetSourcePath instanceof ExplicitBuildTargetSourcePath) {
+      this.putPathFast(
+          RuleKeyHasherTypes.TARGET_SOURCE_PATH,
+          ((ExplicitBuildTargetSourcePath) targetSourcePath).getResolvedPath());
+    } else if (targetSourcePath instanceof ForwardingBuildTargetSourcePath) {
+      this.putStringified(
+          RuleKeyHasherTypes.TARGET_SOURCE_PATH, targetSourcePath.representationForRuleKey());
+    }
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putContainer(Container container, int length) {
+    buffer(Integer.BYTES + 2)
+        .put(RuleKeyHasherTypes.containerSubType(container))
+        .putInt(length)
+        .put(RuleKeyHasherTypes.CONTAINER);
+    return this;
+  }
+
+  @Override
+  public Sha1RuleKeyHasher putWrapper(Wrapper wrapper) {
+    buffer(2).put(RuleKeyHasherTypes.wrapperSubType(wrapper)).put(RuleKeyHasherTypes.WRAPPER);
+    return this;
+  }
+
+  @Override
+  public HashCode hash() {
+    State current = state();
+    state = null;
+    current.flush();
+    HashCode hash = HashCode.fromBytes(current.digest.digest());
+    Deque<State> pool = POOL.get();
+    if (pool.size() < MAX_POOLED_STATES_PER_THREAD) {
+      pool.addFirst(current);
+    }
+    return hash;
+  }
+
+  /** A digest and the buffer of data which wasn't passed to it yet. */
+  private static final class State {
+    private final MessageDigest digest;
+    private final ByteBuffer buffer =
+        ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private State() {
+      try {
+        this.digest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private void flush() {
+      digest.update(buffer.array(), 0, buffer.position());
+      buffer.clear();
+    }
+  }
+}
@@ -232,7 +232,8 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
         };
     this.serializer = new Serializer(ruleFinder, cellResolver, delegate);
 
-    this.nodeCache = new MerkleTreeNodeCache(protocol);
+    // Nodes are keyed on their contents, so they can be shared by all actions across builds.
+    this.nodeCache = MerkleTreeNodeCache.getDaemonScopedCache(protocol);
 
     this.classPath = prepareClassPath(BuckClasspath::getClasspath);
     this.bootstrapClassPath = prepareClassPath(BuckClasspath::getBootstrapClasspath);
@@ -60,6 +60,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Streams;
+import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -68,13 +69,18 @@ import com.google.common.util.concurrent.MoreExecutors;
 import io.grpc.Status;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 
@@ -563,30 +569,65 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
     stdout.ifPresent(x -> eventBus.post(ConsoleEvent.info(x)));
     stderr.ifPresent(x -> eventBus.post(ConsoleEvent.severe(x)));
 
+    List<Protocol.OutputFile> files = new ArrayList<>();
+    ListenableFuture<Unit> metadata = stripMetadata(result.getOutputFiles(), files, buildRule);
+
+    List<Protocol.OutputFile> filesToMaterialize = new ArrayList<>();
     try (Scope ignored1 =
         guardContext.enterState(State.DELETING_STALE_OUTPUTS, Optional.of(actionDigest))) {
+      Set<Path> upToDateOutputs = new HashSet<>();
+      for (Protocol.OutputFile file : files) {
+        if (isUpToDate(file)) {
+          upToDateOutputs.add(Paths.get(file.getPath()));
+        } else {
+          filesToMaterialize.add(file);
+        }
+      }
+      if (!upToDateOutputs.isEmpty()) {
+        LOG.debug(
+            "[RE] Reusing %d up-to-date local outputs of [%s].",
+            upToDateOutputs.size(), buildTarget.getFullyQualifiedName());
+      }
       for (Path path : actionOutputs) {
-        MostFiles.deleteRecursivelyIfExists(mbrHelper.getCellPathPrefix().resolve(path));
+        if (!upToDateOutputs.contains(path)) {
+          MostFiles.deleteRecursivelyIfExists(mbrHelper.getCellPathPrefix().resolve(path));
+        }
       }
     }
 
     Scope materializationScope =
         guardContext.enterState(State.MATERIALIZING_OUTPUTS, Optional.of(actionDigest));
 
-    List<Protocol.OutputFile> files = new ArrayList<>();
-    ListenableFuture<Unit> metadata = stripMetadata(result.getOutputFiles(), files, buildRule);
     ListenableFuture<Unit> materializationFuture =
         executionClients
             .getContentAddressedStorage()
             .materializeOutputs(
                 result.getOutputDirectories(),
-                files,
+                filesToMaterialize,
                 new FilesystemFileMaterializer(mbrHelper.getCellPathPrefix()));
     materializationFuture.addListener(materializationScope::close, MoreExecutors.directExecutor());
     return Futures.whenAllSucceed(ImmutableList.of(metadata, materializationFuture))
         .call(() -> result, MoreExecutors.directExecutor());
   }
 
+  /**
+   * Checks whether the local file for an output already has exactly the remote contents, in which
+   * case we don't need to delete it and download it again. This is common for outputs of rules
+   * whose rule key changed without their outputs changing.
+   */
+  private boolean isUpToDate(Protocol.OutputFile file) throws IOException {
+    Path path = mbrHelper.getCellPathPrefix().resolve(file.getPath());
+    if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)
+        || Files.size(path) != file.getDigest().getSize()
+        || Files.isExecutable(path) != file.getIsExecutable()) {
+      return false;
+    }
+    Protocol protocol = executionClients.getProtocol();
+    HashCode localHash =
+        com.google.common.io.Files.asByteSource(path.toFile()).hash(protocol.getHashFunction());
+    return localHash.toString().equals(file.getDigest().getHash());
+  }
+
   private ListenableFuture<Unit> stripMetadata(
       List<Protocol.OutputFile> outputFiles, List<Protocol.OutputFile> files, BuildRule buildRule) {
     Digest metadataDigest = null;
@@ -74,6 +74,24 @@ public abstract class TestRunningOptions {
 
   public abstract Optional<String> getJavaTempDir();
 
+  /** The duration test shards should take, or empty if test rules should not be sharded. */
+  public abstract Optional<Long> getTestShardTargetDurationMs();
+
+  /** The maximum number of shards a single test rule may be split into. */
+  @Value.Default
+  public int getMaxTestShards() {
+    return 1;
+  }
+
+  /**
+   * The maximum number of persistent JVMs java tests are run in, or zero if every test run should
+   * fork a JVM of its own.
+   */
+  @Value.Default
+  public int getMaxPersistentJavaTestRunners() {
+    return 0;
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -103,6 +103,31 @@ public abstract class TestBuckConfig implements ConfigView<BuckConfig> {
     return getDelegate().getLong(TEST_SECTION_HEADER, "rule_timeout");
   }
 
+  /**
+   * The duration test shards should take. Test rules which took longer than this to run last time
+   * are split into shards which are expected to take about this long. No rules are sharded if this
+   * is not set.
+   */
+  public Optional<Long> getTestShardTargetDurationMs() {
+    return getDelegate().getLong(TEST_SECTION_HEADER, "shard_target_duration_ms");
+  }
+
+  /**
+   * Whether java tests should be run in persistent JVMs which are shared between test rules, rather
+   * than in a JVM forked for each rule.
+   */
+  public boolean isUsingPersistentJavaTestRunners() {
+    return getDelegate().getBooleanValue(TEST_SECTION_HEADER, "persistent_java_test_runners", false);
+  }
+
+  /**
+   * Whether tests which passed the last time they were run, and whose inputs did not change since,
+   * should be skipped.
+   */
+  public boolean isSkippingUnchangedTests() {
+    return getDelegate().getBooleanValue(TEST_SECTION_HEADER, "skip_unchanged_tests", false);
+  }
+
   public boolean isInclNoLocationClassesEnabled() {
     return getDelegate().getBooleanValue(TEST_SECTION_HEADER, "incl_no_location_classes", false);
   }
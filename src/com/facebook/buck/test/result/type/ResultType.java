@@ -29,7 +29,8 @@ public enum ResultType {
   DRY_RUN,
   /**
    * The test was not run because it was excluded by the user (e.g., specifying {@link
-   * com.facebook.buck.cli.TestSelectorOptions}).
+   * com.facebook.buck.cli.TestSelectorOptions}), or because its inputs did not change since it last
+   * passed.
    */
   EXCLUDED,
   /**
@@ -39,12 +39,24 @@ public class JUnitMain {
   }
 
   public static void main(String[] args) {
+    createRunner(args).runAndExit();
+  }
+
+  /**
+   * Runs the tests like {@link #main(String[])}, but returns the exit code instead of exiting, for
+   * the test runners which stay alive after the tests are done.
+   */
+  public static int run(String[] args) {
+    return createRunner(args).runAndReturnExitCode();
+  }
+
+  private static JUnitRunner createRunner(String[] args) {
     // Ensure that both junit and hamcrest are on the classpath
     CheckDependency.isPresent("junit", "org.junit.Test");
     CheckDependency.isPresent("hamcrest", "org.hamcrest.Description");
 
     JUnitRunner runner = new JUnitRunner();
     runner.parseArgs(args);
-    runner.runAndExit();
+    return runner;
   }
 }
@@ -39,12 +39,24 @@ public class TestNGMain {
   }
 
   public static void main(String[] args) {
+    createRunner(args).runAndExit();
+  }
+
+  /**
+   * Runs the tests like {@link #main(String[])}, but returns the exit code instead of exiting, for
+   * the test runners which stay alive after the tests are done.
+   */
+  public static int run(String[] args) {
+    return createRunner(args).runAndReturnExitCode();
+  }
+
+  private static TestNGRunner createRunner(String[] args) {
     // Ensure that both testng and hamcrest are on the classpath
     CheckDependency.isPresent("testng", "org.testng.TestNG");
     CheckDependency.isPresent("hamcrest", "org.hamcrest.Description");
 
     TestNGRunner runner = new TestNGRunner();
     runner.parseArgs(args);
-    runner.runAndExit();
+    return runner;
   }
 }
@@ -20,9 +20,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.facebook.buck.core.util.log.Logger;
-import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.environment.Platform;
-import com.facebook.buck.util.types.Unit;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -30,12 +28,9 @@ import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -43,14 +38,6 @@ import java.util.function.Consumer;
 public class DefaultProcessExecutor implements ProcessExecutor {
 
   private static final Logger LOG = Logger.get(ProcessExecutor.class);
-  private static final ThreadPoolExecutor THREAD_POOL =
-      new ThreadPoolExecutor(
-          0,
-          Integer.MAX_VALUE,
-          1,
-          TimeUnit.SECONDS,
-          new SynchronousQueue<>(),
-          new MostExecutors.NamedThreadFactory("ProcessExecutor"));
 
   private final PrintStream stdOutStream;
   private final PrintStream stdErrStream;
@@ -254,10 +241,11 @@ public class DefaultProcessExecutor implements ProcessExecutor {
     // See http://stackoverflow.com/questions/882772/capturing-stdout-when-calling-runtime-exec
     boolean shouldPrintStdOut = options.contains(Option.PRINT_STD_OUT);
     boolean expectingStdOut = options.contains(Option.EXPECTING_STD_OUT);
-    PrintStream stdOutToWriteTo = shouldPrintStdOut ? stdOutStream : new CapturingPrintStream();
-    InputStreamConsumer stdOut =
-        new InputStreamConsumer(
-            process.getInputStream(),
+    PrintStream stdOutToWriteTo =
+        shouldPrintStdOut ? stdOutStream : new SpillingCapturingPrintStream();
+    LineHandlingOutputStream stdOut =
+        new LineHandlingOutputStream(
+            Charset.defaultCharset(),
             InputStreamConsumer.createAnsiHighlightingHandler(
                 /* flagOutputWrittenToStream */ !shouldPrintStdOut && !expectingStdOut,
                 stdOutToWriteTo,
@@ -265,25 +253,32 @@ public class DefaultProcessExecutor implements ProcessExecutor {
 
     boolean shouldPrintStdErr = options.contains(Option.PRINT_STD_ERR);
     boolean expectingStdErr = options.contains(Option.EXPECTING_STD_ERR);
-    PrintStream stdErrToWriteTo = shouldPrintStdErr ? stdErrStream : new CapturingPrintStream();
-    InputStreamConsumer stdErr =
-        new InputStreamConsumer(
-            process.getErrorStream(),
+    PrintStream stdErrToWriteTo =
+        shouldPrintStdErr ? stdErrStream : new SpillingCapturingPrintStream();
+    LineHandlingOutputStream stdErr =
+        new LineHandlingOutputStream(
+            Charset.defaultCharset(),
             InputStreamConsumer.createAnsiHighlightingHandler(
                 /* flagOutputWrittenToStream */ !shouldPrintStdErr && !expectingStdErr,
                 stdErrToWriteTo,
                 ansi));
 
-    // Consume the streams so they do not deadlock.
-    Future<Unit> stdOutTerminationFuture = THREAD_POOL.submit(stdOut);
-    Future<Unit> stdErrTerminationFuture = THREAD_POOL.submit(stdErr);
+    // Consume the streams so they do not deadlock. All processes share a single thread to read
+    // them, and whatever is left once the process has exited is read on this thread.
+    ProcessOutputReactor reactor = ProcessOutputReactor.getInstance();
+    ProcessOutputReactor.Registration stdOutRegistration =
+        reactor.register(process.getInputStream(), stdOut);
+    ProcessOutputReactor.Registration stdErrRegistration =
+        reactor.register(process.getErrorStream(), stdErr);
 
     boolean timedOut = false;
+    Optional<String> stdoutText;
+    Optional<String> stderrText;
 
     // Block until the Process completes.
     try {
       // If a stdin string was specific, then write that first.  This shouldn't cause
-      // deadlocks, as the stdout/stderr consumers are running in separate threads.
+      // deadlocks, as the stdout/stderr are being consumed by the reactor thread.
       if (stdin.isPresent()) {
         try (OutputStreamWriter stdinWriter = new OutputStreamWriter(process.getOutputStream())) {
           stdinWriter.write(stdin.get());
@@ -297,9 +292,23 @@ public class DefaultProcessExecutor implements ProcessExecutor {
         process.destroyForcibly();
       }
 
-      stdOutTerminationFuture.get();
-      stdErrTerminationFuture.get();
-    } catch (ExecutionException | IOException e) {
+      try {
+        try {
+          stdOutRegistration.finish();
+        } finally {
+          stdErrRegistration.finish();
+        }
+      } catch (IOException e) {
+        if (!timedOut) {
+          throw e;
+        }
+        // Killing the process closes its streams, so whatever they still held is lost.
+        LOG.debug(e, "Failed to read the rest of the output of a process which timed out.");
+      }
+
+      stdoutText = getDataIfNotPrinted(stdOutToWriteTo, shouldPrintStdOut);
+      stderrText = getDataIfNotPrinted(stdErrToWriteTo, shouldPrintStdErr);
+    } catch (IOException e) {
       // Buck was killed while waiting for the consumers to finish or while writing stdin
       // to the process. This means either the user killed the process or a step failed
       // causing us to kill all other running steps. Neither of these is an exceptional
@@ -307,13 +316,19 @@ public class DefaultProcessExecutor implements ProcessExecutor {
       LOG.warn(e, "Process threw exception when being executed.");
       return new Result(1, launchedProcess.getCommand());
     } finally {
+      stdOutRegistration.cancel();
+      stdErrRegistration.cancel();
+      // Releases any output that was spilled to disk, if it wasn't read above.
+      if (!shouldPrintStdOut) {
+        stdOutToWriteTo.close();
+      }
+      if (!shouldPrintStdErr) {
+        stdErrToWriteTo.close();
+      }
       process.destroy();
       process.waitFor();
     }
 
-    Optional<String> stdoutText = getDataIfNotPrinted(stdOutToWriteTo, shouldPrintStdOut);
-    Optional<String> stderrText = getDataIfNotPrinted(stdErrToWriteTo, shouldPrintStdErr);
-
     // Report the exit code of the Process.
     int exitCode = process.exitValue();
 
@@ -333,10 +348,11 @@ public class DefaultProcessExecutor implements ProcessExecutor {
     return new Result(exitCode, timedOut, stdoutText, stderrText, launchedProcess.getCommand());
   }
 
-  private static Optional<String> getDataIfNotPrinted(
-      PrintStream printStream, boolean shouldPrint) {
+  private static Optional<String> getDataIfNotPrinted(PrintStream printStream, boolean shouldPrint)
+      throws IOException {
     if (!shouldPrint) {
-      CapturingPrintStream capturingPrintStream = (CapturingPrintStream) printStream;
+      SpillingCapturingPrintStream capturingPrintStream =
+          (SpillingCapturingPrintStream) printStream;
       return Optional.of(capturingPrintStream.getContentsAsString(UTF_8));
     } else {
       return Optional.empty();
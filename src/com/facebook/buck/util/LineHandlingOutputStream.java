@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Splits the bytes written to it into lines, and passes them to {@link
+ * InputStreamConsumer.Handler}s the same way {@link InputStreamConsumer} does for the lines of a
+ * stream it reads: lines end with {@code \r}, {@code \n} or {@code \r\n}, and a trailing
+ * unterminated line is passed on when the stream is closed.
+ *
+ * <p>Lines are split on bytes, so the charset must encode those two characters as single bytes
+ * that don't appear in the encoding of any other character, as all ASCII-compatible charsets do.
+ */
+final class LineHandlingOutputStream extends OutputStream {
+
+  private final Charset charset;
+  private final ImmutableList<InputStreamConsumer.Handler> handlers;
+  private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+  private boolean lastWasCarriageReturn = false;
+  private boolean closed = false;
+
+  LineHandlingOutputStream(Charset charset, InputStreamConsumer.Handler... handlers) {
+    this.charset = charset;
+    this.handlers = ImmutableList.copyOf(handlers);
+  }
+
+  @Override
+  public void write(int b) {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) {
+    int lineStart = offset;
+    int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      byte b = bytes[i];
+      if (b == '\n' && lastWasCarriageReturn) {
+        // Second half of a \r\n which was already handled.
+        lineStart = i + 1;
+      } else if (b == '\n' || b == '\r') {
+        line.write(bytes, lineStart, i - lineStart);
+        handleLine();
+        lineStart = i + 1;
+      }
+      lastWasCarriageReturn = b == '\r';
+    }
+    line.write(bytes, lineStart, end - lineStart);
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (line.size() > 0) {
+      handleLine();
+    }
+  }
+
+  private void handleLine() {
+    String text = new String(line.toByteArray(), charset);
+    line.reset();
+    for (InputStreamConsumer.Handler handler : handlers) {
+      handler.handleLine(text);
+    }
+  }
+}
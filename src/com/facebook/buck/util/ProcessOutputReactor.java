@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nullable;
+
+/**
+ * Pumps the output streams of child processes on a single shared thread, rather than dedicating a
+ * thread, blocked on a read most of the time, to every stream of every child.
+ *
+ * <p>The streams of a {@link Process} can't be selected on, so the reactor polls them instead:
+ * every pass reads whatever {@link InputStream#available()} reports for each registered stream,
+ * which never blocks, and the reactor backs off while all children are quiet. It parks without a
+ * timeout while nothing is registered. Once the process has exited, whoever waited for it calls
+ * {@link Registration#finish()} to read the rest of the stream on its own thread. A stream that is
+ * held open by a grandchild therefore only stalls that caller, as it always did, and never the
+ * reactor.
+ *
+ * <p>The reactor only reads. What it reads is handed to a pool of writer threads, at most one per
+ * registration at a time, so a sink that is slow to write to (a busy console, or a capture that
+ * spills to disk) only holds back its own stream. Once a registration has 256KB waiting to be
+ * written, the reactor stops reading from it, and the child blocks on the full pipe instead.
+ */
+final class ProcessOutputReactor {
+
+  private static final Logger LOG = Logger.get(ProcessOutputReactor.class);
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private static final int MAX_PENDING_BYTES = 4 * READ_BUFFER_SIZE;
+
+  private static final ProcessOutputReactor INSTANCE = new ProcessOutputReactor();
+
+  static final String THREAD_NAME = "ProcessOutputReactor";
+
+  private final Set<Registration> registrations = ConcurrentHashMap.newKeySet();
+
+  private final ExecutorService writers =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("ProcessOutputWriter-%d")
+              .setDaemon(true)
+              .build());
+
+  @Nullable private volatile Thread thread;
+
+  @VisibleForTesting
+  ProcessOutputReactor() {}
+
+  static ProcessOutputReactor getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Starts copying {@code stream} to {@code sink} in the background. The sink is only ever written
+   * to by one thread at a time, and is closed by {@link Registration#finish()}.
+   */
+  Registration register(InputStream stream, OutputStream sink) {
+    Registration registration = new Registration(stream, sink);
+    registrations.add(registration);
+    LockSupport.unpark(getOrStartThread());
+    return registration;
+  }
+
+  @VisibleForTesting
+  int getRegistrationCount() {
+    return registrations.size();
+  }
+
+  private Thread getOrStartThread() {
+    Thread current = thread;
+    if (current != null) {
+      return current;
+    }
+    synchronized (this) {
+      if (thread == null) {
+        Thread newThread = new Thread(this::run, THREAD_NAME);
+        newThread.setDaemon(true);
+        newThread.start();
+        thread = newThread;
+      }
+      return thread;
+    }
+  }
+
+  private void run() {
+    byte[] buffer = new byte[READ_BUFFER_SIZE];
+    long idleNanos = MIN_IDLE_NANOS;
+    while (true) {
+      if (registrations.isEmpty()) {
+        // register() unparks the thread after adding to the set, so a registration that races
+        // with this check leaves a permit behind and park() returns right away.
+        LockSupport.park(this);
+        idleNanos = MIN_IDLE_NANOS;
+        continue;
+      }
+      boolean readAnything = false;
+      for (Registration registration : registrations) {
+        readAnything |= registration.pump(buffer);
+      }
+      if (readAnything) {
+        idleNanos = MIN_IDLE_NANOS;
+      } else {
+        // New registrations unpark the thread, so this only delays output of children which are
+        // already running and have been quiet for a while.
+        LockSupport.parkNanos(this, idleNanos);
+        idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+      }
+    }
+  }
+
+  /** A stream being pumped by the reactor. */
+  final class Registration {
+    private final InputStream stream;
+    private final OutputStream sink;
+
+    // All guarded by `this`.
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+    private int pendingBytes = 0;
+    private boolean writing = false;
+    private boolean finished = false;
+    private boolean reachedEnd = false;
+    @Nullable private IOException failure = null;
+
+    private Registration(InputStream stream, OutputStream sink) {
+      this.stream = stream;
+      this.sink = sink;
+    }
+
+    /**
+     * Reads whatever can be read from the stream without blocking, and queues it to be written to
+     * the sink by a writer thread.
+     *
+     * @return whether anything was read.
+     */
+    private synchronized boolean pump(byte[] buffer) {
+      if (finished || reachedEnd || failure != null || pendingBytes >= MAX_PENDING_BYTES) {
+        return false;
+      }
+      try {
+        int available = stream.available();
+        if (available <= 0) {
+          return false;
+        }
+        int read = stream.read(buffer, 0, Math.min(available, buffer.length));
+        if (read < 0) {
+          reachedEnd = true;
+          return false;
+        }
+        if (read == 0) {
+          return false;
+        }
+        pending.add(Arrays.copyOf(buffer, read));
+        pendingBytes += read;
+        if (!writing) {
+          writing = true;
+          writers.execute(this::write);
+        }
+        return true;
+      } catch (IOException e) {
+        LOG.debug(e, "Failed to pump process output.");
+        failure = e;
+        return false;
+      }
+    }
+
+    /** Writes queued output to the sink, outside of the lock, until the queue is empty. */
+    private void write() {
+      while (true) {
+        byte[] chunk;
+        synchronized (this) {
+          chunk = pending.poll();
+          if (chunk == null || failure != null) {
+            pending.clear();
+            pendingBytes = 0;
+            writing = false;
+            notifyAll();
+            return;
+          }
+          pendingBytes -= chunk.length;
+        }
+        try {
+          sink.write(chunk);
+        } catch (IOException e) {
+          LOG.debug(e, "Failed to write process output.");
+          synchronized (this) {
+            failure = e;
+          }
+        }
+      }
+    }
+
+    /**
+     * Stops pumping the stream in the background, and drops whatever hasn't been read or written
+     * yet. Waits for a write that is already in progress, so the sink can be closed afterwards.
+     * Does nothing if the registration was already finished.
+     */
+    void cancel() {
+      registrations.remove(this);
+      synchronized (this) {
+        finished = true;
+        pending.clear();
+        pendingBytes = 0;
+        boolean interrupted = false;
+        while (writing) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /**
+     * Stops pumping the stream in the background, waits for what was already read to be written,
+     * copies the rest of the stream to the sink on the calling thread, blocking until the end of
+     * the stream, and closes the sink.
+     */
+    void finish() throws IOException, InterruptedException {
+      registrations.remove(this);
+      boolean readRest;
+      synchronized (this) {
+        finished = true;
+        while (writing) {
+          wait();
+        }
+        if (failure != null) {
+          sink.close();
+          throw failure;
+        }
+        readRest = !reachedEnd;
+      }
+      try (OutputStream sink = this.sink) {
+        if (readRest) {
+          ByteStreams.copy(stream, sink);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.annotation.Nullable;
+
+/**
+ * Like {@link CapturingPrintStream}, but only keeps a bounded amount of output in memory, and
+ * spills the rest to a temporary file, so that many chatty processes running at once don't each
+ * hold their entire output on the heap while they run.
+ */
+final class SpillingCapturingPrintStream extends PrintStream {
+
+  static final int DEFAULT_IN_MEMORY_LIMIT = 64 * 1024;
+
+  private final SpillingOutputStream spillingOutputStream;
+
+  SpillingCapturingPrintStream() {
+    this(DEFAULT_IN_MEMORY_LIMIT);
+  }
+
+  @VisibleForTesting
+  SpillingCapturingPrintStream(int inMemoryLimit) {
+    this(new SpillingOutputStream(inMemoryLimit));
+  }
+
+  private SpillingCapturingPrintStream(SpillingOutputStream spillingOutputStream) {
+    super(spillingOutputStream);
+    this.spillingOutputStream = spillingOutputStream;
+  }
+
+  /** Returns everything printed so far, and releases the spill file, if any. */
+  String getContentsAsString(Charset charset) throws IOException {
+    flush();
+    if (checkError()) {
+      throw new IOException("Failed to capture process output.");
+    }
+    try {
+      return new String(spillingOutputStream.toByteArray(), charset);
+    } finally {
+      close();
+    }
+  }
+
+  @VisibleForTesting
+  boolean hasSpilled() {
+    return spillingOutputStream.spillFile != null;
+  }
+
+  private static class SpillingOutputStream extends OutputStream {
+    private final int inMemoryLimit;
+    private final ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    @Nullable private Path spillFile;
+    @Nullable private OutputStream spill;
+
+    SpillingOutputStream(int inMemoryLimit) {
+      this.inMemoryLimit = inMemoryLimit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (spill == null && memory.size() + length > inMemoryLimit) {
+        spillFile = Files.createTempFile("buck-process-output", ".txt");
+        spill = Files.newOutputStream(spillFile);
+        memory.writeTo(spill);
+        memory.reset();
+      }
+      if (spill != null) {
+        spill.write(bytes, offset, length);
+      } else {
+        memory.write(bytes, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (spill != null) {
+        spill.flush();
+      }
+    }
+
+    byte[] toByteArray() throws IOException {
+      if (spillFile == null) {
+        return memory.toByteArray();
+      }
+      flush();
+      return Files.readAllBytes(spillFile);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (spill != null) {
+        spill.close();
+        spill = null;
+      }
+      if (spillFile != null) {
+        Files.deleteIfExists(spillFile);
+      }
+    }
+  }
+}
@@ -99,6 +99,20 @@ public final class Sha1HashCode {
     return hasher;
   }
 
+  /**
+   * Puts the 20 bytes of this SHA-1 to the specified little-endian {@link ByteBuffer} in order,
+   * just like {@link #update(Hasher)} puts them to a {@link Hasher}.
+   *
+   * @return The specified {@link ByteBuffer}.
+   */
+  public ByteBuffer update(ByteBuffer buffer) {
+    Preconditions.checkArgument(buffer.order() == BYTE_ORDER_FOR_FIELDS);
+    buffer.putInt(firstFourBytes);
+    buffer.putLong(nextEightBytes);
+    buffer.putLong(lastEightBytes);
+    return buffer;
+  }
+
   /**
    * <strong>This method should be used sparingly as we are trying to favor {@link Sha1HashCode}
    * over {@link HashCode}, where appropriate.</strong> Currently, the {@code FileHashCache} API is
@@ -50,14 +50,22 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import org.immutables.value.Value;
 
 /**
@@ -74,10 +82,22 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
 
   private final GraphTransformationEngine versionInfoAsyncTransformationEngine;
 
+  /** The state left behind by the previous transformation, if it can be reused. */
+  private final Optional<IncrementalState> previousState;
+
+  /**
+   * Nodes of the unversioned graph which changed since the previous transformation, along with all
+   * their transitive dependents. Keys for any other node translate exactly like they did before.
+   */
+  private final Set<TargetNode<?>> dirtyNodes;
+
+  @Nullable private VersionedTargetGraph versionedTargetGraph;
+
   AsyncVersionedTargetGraphBuilder(
       DepsAwareExecutor<? super ComputeResult, ?> executor,
       VersionSelector versionSelector,
       TargetGraphCreationResult unversionedTargetGraphCreationResult,
+      Optional<IncrementalState> previousState,
       TypeCoercerFactory typeCoercerFactory,
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       long timeoutSeconds,
@@ -90,6 +110,14 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
         TimeUnit.SECONDS,
         cells);
 
+    this.previousState = previousState;
+    this.dirtyNodes =
+        previousState.isPresent()
+            ? findDirtyNodes(
+                previousState.get().unversionedTargetGraph,
+                unversionedTargetGraphCreationResult.getTargetGraph())
+            : ImmutableSet.of();
+
     this.versionedTargetGraphTransformer =
         new VersionedTargetGraphComputation(
             unversionedTargetGraphCreationResult.getTargetGraph(), versionSelector);
@@ -154,13 +182,104 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
     long end = System.currentTimeMillis();
 
     VersionedTargetGraph graph = versionedTargetGraphTransformer.targetGraphBuilder.build();
+    versionedTargetGraph = graph;
     LOG.debug(
-        "Finished version target graph transformation in %.2f (nodes %d, roots: %d)",
-        (end - start) / 1000.0, graph.getSize(), versionedTargetGraphTransformer.roots.get());
+        "Finished version target graph transformation in %.2f (nodes %d, roots: %d, reused: %d)",
+        (end - start) / 1000.0,
+        graph.getSize(),
+        versionedTargetGraphTransformer.roots.get(),
+        versionedTargetGraphTransformer.reusedKeys.get());
 
     return graph;
   }
 
+  /** @return the state the next transformation can start from, once {@link #build()} is done. */
+  IncrementalState getIncrementalState() {
+    Preconditions.checkState(versionedTargetGraph != null, "graph has not been built yet");
+    Map<VersionTargetGraphKey, TargetNode<?>> results =
+        new HashMap<>(versionedTargetGraphTransformer.results);
+    Map<TargetNode<?>, BuildTarget> baseTargets = versionedTargetGraphTransformer.baseTargets;
+
+    // Keep the results of the previous transformation that are still valid, and whose sub-graphs
+    // are still part of the versioned graph, so that they can be reused the next time around even
+    // if whichever key they were copied under this time becomes dirty.
+    previousState.ifPresent(
+        previous ->
+            previous.results.forEach(
+                (key, node) -> {
+                  if (!isDirty(key.getTargetNode()) && baseTargets.containsKey(node)) {
+                    results.putIfAbsent(key, node);
+                  }
+                }));
+
+    return new IncrementalState(
+        unversionedTargetGraphCreationResult.getTargetGraph(),
+        versionedTargetGraph,
+        ImmutableMap.copyOf(results),
+        ImmutableMap.copyOf(baseTargets));
+  }
+
+  /** @return whether the translation of the given unversioned node may have changed. */
+  private boolean isDirty(TargetNode<?> node) {
+    if (dirtyNodes.contains(node)) {
+      return true;
+    }
+    // Nodes which are no longer part of the graph, or were replaced by a different node.
+    return !unversionedTargetGraphCreationResult
+        .getTargetGraph()
+        .getOptional(node.getBuildTarget())
+        .map(node::equals)
+        .orElse(false);
+  }
+
+  /**
+   * @return the nodes whose keys {@link VersionedTargetGraphComputation#discoverPreliminaryDeps}
+   *     makes the key for {@code node} depend on.
+   */
+  private static Iterable<TargetNode<?>> getSubGraphDeps(
+      TargetGraph targetGraph, TargetNode<?> node) {
+    ImmutableList.Builder<TargetNode<?>> deps = ImmutableList.builder();
+    for (BuildTarget dep : Sets.union(node.getParseDeps(), node.getConfigurationDeps())) {
+      targetGraph.getOptional(dep).ifPresent(deps::add);
+    }
+    node.getBuildTarget()
+        .getTargetConfiguration()
+        .getConfigurationTarget()
+        .flatMap(targetGraph::getOptional)
+        .ifPresent(deps::add);
+    return deps.build();
+  }
+
+  /**
+   * @return the nodes of {@code newGraph} which are not in {@code oldGraph}, along with all nodes
+   *     that transitively depend on them.
+   */
+  private static Set<TargetNode<?>> findDirtyNodes(TargetGraph oldGraph, TargetGraph newGraph) {
+    Map<TargetNode<?>, List<TargetNode<?>>> dependents = new HashMap<>();
+    Deque<TargetNode<?>> work = new ArrayDeque<>();
+    Set<TargetNode<?>> dirty = new HashSet<>();
+    for (TargetNode<?> node : newGraph.getNodes()) {
+      for (TargetNode<?> dep : getSubGraphDeps(newGraph, node)) {
+        dependents.computeIfAbsent(dep, d -> new ArrayList<>()).add(node);
+      }
+      if (!oldGraph.getOptional(node.getBuildTarget()).map(node::equals).orElse(false)
+          && dirty.add(node)) {
+        work.add(node);
+      }
+    }
+    while (!work.isEmpty()) {
+      for (TargetNode<?> dependent : dependents.getOrDefault(work.pop(), ImmutableList.of())) {
+        if (dirty.add(dependent)) {
+          work.add(dependent);
+        }
+      }
+    }
+    LOG.debug(
+        "%d of %d nodes changed since the previous versioned target graph",
+        dirty.size(), newGraph.getSize());
+    return dirty;
+  }
+
   /** Transforms the given {@link TargetGraphCreationResult} such that all versions are resolved */
   public static TargetGraphCreationResult transform(
       VersionSelector versionSelector,
@@ -172,15 +291,78 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       Cells cells)
       throws VersionException, TimeoutException, InterruptedException {
     return unversionedTargetGraphCreationResult.withTargetGraph(
-        new AsyncVersionedTargetGraphBuilder(
-                executor,
+        transformIncrementally(
                 versionSelector,
                 unversionedTargetGraphCreationResult,
+                Optional.empty(),
+                executor,
                 typeCoercerFactory,
                 unconfiguredBuildTargetFactory,
                 timeoutSeconds,
                 cells)
-            .build());
+            .getVersionedTargetGraph());
+  }
+
+  /**
+   * Transforms the given {@link TargetGraphCreationResult} such that all versions are resolved,
+   * reusing the translation of every node whose transitive inputs did not change since the
+   * transformation which produced {@code previousState}.
+   *
+   * <p>{@code previousState} must have been produced using the same version universes.
+   */
+  static IncrementalState transformIncrementally(
+      VersionSelector versionSelector,
+      TargetGraphCreationResult unversionedTargetGraphCreationResult,
+      Optional<IncrementalState> previousState,
+      DepsAwareExecutor<? super ComputeResult, ?> executor,
+      TypeCoercerFactory typeCoercerFactory,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      long timeoutSeconds,
+      Cells cells)
+      throws VersionException, TimeoutException, InterruptedException {
+    AsyncVersionedTargetGraphBuilder builder =
+        new AsyncVersionedTargetGraphBuilder(
+            executor,
+            versionSelector,
+            unversionedTargetGraphCreationResult,
+            previousState,
+            typeCoercerFactory,
+            unconfiguredBuildTargetFactory,
+            timeoutSeconds,
+            cells);
+    builder.build();
+    return builder.getIncrementalState();
+  }
+
+  /**
+   * The result of a transformation, along with the translation of every key, so that the next
+   * transformation of a slightly different graph only has to retranslate what changed.
+   */
+  static final class IncrementalState {
+
+    private final TargetGraph unversionedTargetGraph;
+    private final VersionedTargetGraph versionedTargetGraph;
+
+    /** The node every key translated into. */
+    private final ImmutableMap<VersionTargetGraphKey, TargetNode<?>> results;
+
+    /** The base target every node of the versioned graph is indexed under. */
+    private final ImmutableMap<TargetNode<?>, BuildTarget> baseTargets;
+
+    private IncrementalState(
+        TargetGraph unversionedTargetGraph,
+        VersionedTargetGraph versionedTargetGraph,
+        ImmutableMap<VersionTargetGraphKey, TargetNode<?>> results,
+        ImmutableMap<TargetNode<?>, BuildTarget> baseTargets) {
+      this.unversionedTargetGraph = unversionedTargetGraph;
+      this.versionedTargetGraph = versionedTargetGraph;
+      this.results = results;
+      this.baseTargets = baseTargets;
+    }
+
+    VersionedTargetGraph getVersionedTargetGraph() {
+      return versionedTargetGraph;
+    }
   }
 
   /**
@@ -332,6 +514,13 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
     /** Count of root nodes. */
     private final AtomicInteger roots = new AtomicInteger();
 
+    /** Count of keys whose translation was copied from the previous transformation. */
+    private final AtomicInteger reusedKeys = new AtomicInteger();
+
+    private final Map<VersionTargetGraphKey, TargetNode<?>> results = new ConcurrentHashMap<>();
+
+    private final Map<TargetNode<?>, BuildTarget> baseTargets = new ConcurrentHashMap<>();
+
     private final TargetGraph targetGraph;
 
     private final VersionSelector versionSelector;
@@ -354,6 +543,14 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
     public TargetNode<?> transform(VersionTargetGraphKey key, ComputationEnvironment env)
         throws VersionException {
 
+      Optional<TargetNode<?>> previousResult = getReusableResult(key);
+      if (previousResult.isPresent()) {
+        reusedKeys.incrementAndGet();
+        copyPreviousSubGraph(previousResult.get());
+        results.put(key, previousResult.get());
+        return previousResult.get();
+      }
+
       TargetNodeTranslator targetTranslator;
       if (key.getSelectedVersions().isPresent() && key.targetNodeTranslator().isPresent()) {
         targetTranslator = key.targetNodeTranslator().get();
@@ -362,7 +559,44 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
         targetTranslator = info.getTargetTranslator();
       }
 
-      return processVersionSubGraphNode(key.getTargetNode(), targetTranslator, env);
+      TargetNode<?> newNode = processVersionSubGraphNode(key.getTargetNode(), targetTranslator, env);
+      results.put(key, newNode);
+      return newNode;
+    }
+
+    /**
+     * @return what the key translated into during the previous transformation, if neither the node
+     *     nor anything it transitively depends on changed since.
+     */
+    private Optional<TargetNode<?>> getReusableResult(VersionTargetGraphKey key) {
+      if (!previousState.isPresent() || isDirty(key.getTargetNode())) {
+        return Optional.empty();
+      }
+      return Optional.ofNullable(previousState.get().results.get(key));
+    }
+
+    /**
+     * Adds the given node of the previous versioned graph, and everything reachable from it, to the
+     * graph being built.
+     */
+    private void copyPreviousSubGraph(TargetNode<?> root) {
+      IncrementalState previous = previousState.get();
+      Deque<TargetNode<?>> work = new ArrayDeque<>();
+      work.add(root);
+      while (!work.isEmpty()) {
+        TargetNode<?> node = work.pop();
+        BuildTarget baseTarget = Preconditions.checkNotNull(previous.baseTargets.get(node));
+        // Another key may already be copying the same sub-graph, in which case it'll take care
+        // of everything below this node too.
+        if (baseTargets.putIfAbsent(node, baseTarget) != null) {
+          continue;
+        }
+        targetGraphBuilder.addNode(baseTarget, node);
+        for (TargetNode<?> child : previous.versionedTargetGraph.getOutgoingNodesFor(node)) {
+          targetGraphBuilder.addEdge(node, child);
+          work.add(child);
+        }
+      }
     }
 
     @Override
@@ -375,6 +609,11 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
     public ImmutableSet<VersionTargetGraphKey> discoverPreliminaryDeps(
         VersionTargetGraphKey versionTargetGraphKey) throws VersionException {
 
+      // The whole sub-graph below a reusable key is copied over from the previous transformation.
+      if (getReusableResult(versionTargetGraphKey).isPresent()) {
+        return ImmutableSet.of();
+      }
+
       TargetNode<?> root = versionTargetGraphKey.getTargetNode();
 
       ImmutableMap<BuildTarget, Version> selectedVersions;
@@ -462,13 +701,14 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       // Add the new node, and it's dep edges, to the new graph.
       // Insert the node into the graph, indexing it by a base target containing only the version
       // flavor, if one exists.
-      targetGraphBuilder.addNode(
+      BuildTarget baseTarget =
           node.getBuildTarget()
               .withFlavors(
                   Sets.difference(
                       newNode.getBuildTarget().getFlavors().getSet(),
-                      node.getBuildTarget().getFlavors().getSet())),
-          newNode);
+                      node.getBuildTarget().getFlavors().getSet()));
+      targetGraphBuilder.addNode(baseTarget, newNode);
+      baseTargets.put(newNode, baseTarget);
 
       for (TargetNode<?> childNode : env.getDeps(VersionTargetGraphKey.IDENTIFIER).values()) {
         targetGraphBuilder.addEdge(newNode, childNode);
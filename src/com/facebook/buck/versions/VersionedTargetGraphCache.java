@@ -46,28 +46,30 @@ public class VersionedTargetGraphCache {
 
   @Nullable private CachedVersionedTargetGraph cachedVersionedTargetGraph = null;
 
-  /** @return a new versioned target graph. */
-  private TargetGraphCreationResult createdVersionedTargetGraph(
+  /**
+   * @return a new versioned target graph, only retranslating the parts of the graph which changed
+   *     since {@code previousState} was computed, if present.
+   */
+  private AsyncVersionedTargetGraphBuilder.IncrementalState createdVersionedTargetGraph(
       DepsAwareExecutor<? super ComputeResult, ?> depsAwareExecutor,
       ImmutableMap<String, VersionUniverse> versionUniverses,
       TypeCoercerFactory typeCoercerFactory,
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       long timeoutSeconds,
       TargetGraphCreationResult targetGraphCreationResult,
+      Optional<AsyncVersionedTargetGraphBuilder.IncrementalState> previousState,
       Cells cells)
       throws VersionException, TimeoutException, InterruptedException {
-
-    TargetGraphCreationResult versionedTargetGraph =
-        AsyncVersionedTargetGraphBuilder.transform(
-            new VersionUniverseVersionSelector(
-                targetGraphCreationResult.getTargetGraph(), versionUniverses),
-            targetGraphCreationResult,
-            depsAwareExecutor,
-            typeCoercerFactory,
-            unconfiguredBuildTargetFactory,
-            timeoutSeconds,
-            cells);
-    return versionedTargetGraph;
+    return AsyncVersionedTargetGraphBuilder.transformIncrementally(
+        new VersionUniverseVersionSelector(
+            targetGraphCreationResult.getTargetGraph(), versionUniverses),
+        targetGraphCreationResult,
+        previousState,
+        depsAwareExecutor,
+        typeCoercerFactory,
+        unconfiguredBuildTargetFactory,
+        timeoutSeconds,
+        cells);
   }
 
   private VersionedTargetGraphCacheResult getVersionedTargetGraph(
@@ -100,15 +102,21 @@ public class VersionedTargetGraphCache {
 
     // Build and cache new versioned target graph.
     ResultType resultType;
+    Optional<AsyncVersionedTargetGraphBuilder.IncrementalState> previousState = Optional.empty();
     if (cachedVersionedTargetGraph == null) {
       request.recordMiss();
       resultType = ResultType.EMPTY;
     } else {
       request.recordMissMatch();
       resultType = ResultType.MISMATCH;
+      // Version selection depends on the universes, so only the target graph may have changed for
+      // the previous translations to be reusable.
+      if (versionUniverses.equals(cachedVersionedTargetGraph.getInputs().getVersionUniverses())) {
+        previousState = Optional.of(cachedVersionedTargetGraph.getIncrementalState());
+      }
     }
 
-    TargetGraphCreationResult newVersionedTargetGraph =
+    AsyncVersionedTargetGraphBuilder.IncrementalState newState =
         createdVersionedTargetGraph(
             depsAwareExecutor,
             versionUniverses,
@@ -116,9 +124,12 @@ public class VersionedTargetGraphCache {
             unconfiguredBuildTargetFactory,
             timeoutSeconds,
             targetGraphCreationResult,
+            previousState,
             cells);
+    TargetGraphCreationResult newVersionedTargetGraph =
+        targetGraphCreationResult.withTargetGraph(newState.getVersionedTargetGraph());
     cachedVersionedTargetGraph =
-        ImmutableCachedVersionedTargetGraph.of(newInputs, newVersionedTargetGraph);
+        ImmutableCachedVersionedTargetGraph.of(newInputs, newVersionedTargetGraph, newState);
     VersionedTargetGraphCacheResult result =
         ImmutableVersionedTargetGraphCacheResult.of(resultType, newVersionedTargetGraph);
 
@@ -239,6 +250,9 @@ public class VersionedTargetGraphCache {
 
     /** @return a versioned target graph. */
     TargetGraphCreationResult getTargetGraphCreationResult();
+
+    /** @return what the next versioned target graph can be built incrementally from. */
+    AsyncVersionedTargetGraphBuilder.IncrementalState getIncrementalState();
   }
 
   @BuckStyleValue
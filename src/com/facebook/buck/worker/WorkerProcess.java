@@ -27,12 +27,16 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 
 public class WorkerProcess implements Closeable {
 
@@ -45,7 +49,18 @@ public class WorkerProcess implements Closeable {
   private final Path stdErr;
   private final AtomicInteger currentMessageID = new AtomicInteger();
   private boolean handshakePerformed = false;
-  @Nullable private WorkerProcessProtocol.CommandSender protocol;
+  private volatile boolean supportsMultiplexing = false;
+  @Nullable private volatile WorkerProcessProtocol.CommandSender protocol;
+
+  /**
+   * Responses of a multiplexing worker process that were received by a thread waiting for a
+   * different job. Also guards {@link #receivingResponses}.
+   */
+  private final Map<Integer, Integer> receivedExitCodes = new HashMap<>();
+
+  @GuardedBy("receivedExitCodes")
+  private boolean receivingResponses = false;
+
   @Nullable private ProcessExecutor.LaunchedProcess launchedProcess;
 
   /**
@@ -53,7 +68,9 @@ public class WorkerProcess implements Closeable {
    * processes may be combined into pools so they can perform different jobs concurrently. It
    * communicates via JSON stream and via files. Submitted job blocks the calling thread until it
    * receives the result back. Worker process must understand the protocol that Buck will use to
-   * communicate with it.
+   * communicate with it. If the worker process announces {@link
+   * WorkerProcessProtocol#CAPABILITY_MULTIPLEX} in its handshake, several jobs may be submitted to
+   * it concurrently.
    *
    * @param executor Process executor that will start worker process.
    * @param processParams Arguments for process executor.
@@ -100,11 +117,29 @@ public class WorkerProcess implements Closeable {
             () -> launchedProcess != null && launchedProcess.isAlive());
 
     LOG.debug("Handshaking with process %d", this.hashCode());
-    protocol.handshake(currentMessageID.getAndIncrement());
+    supportsMultiplexing =
+        protocol
+            .handshake(currentMessageID.getAndIncrement())
+            .contains(WorkerProcessProtocol.CAPABILITY_MULTIPLEX);
     handshakePerformed = true;
   }
 
-  public synchronized WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
+  /** Whether the process accepts concurrent jobs, known once the handshake was performed. */
+  public boolean supportsMultiplexing() {
+    return supportsMultiplexing;
+  }
+
+  public WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
+    if (supportsMultiplexing) {
+      return submitJob(jobArgs);
+    }
+    synchronized (this) {
+      return submitJob(jobArgs);
+    }
+  }
+
+  private WorkerJobResult submitJob(String jobArgs) throws IOException {
+    WorkerProcessProtocol.CommandSender protocol = this.protocol;
     Preconditions.checkState(
         protocol != null,
         "Tried to submit a job to the worker process before the handshake was performed.");
@@ -122,7 +157,10 @@ public class WorkerProcess implements Closeable {
         messageID, this.hashCode(), jobArgs);
     protocol.send(messageID, ImmutableWorkerProcessCommand.of(argsPath, stdoutPath, stderrPath));
     LOG.debug("Receiving response for job %d from process %d", messageID, this.hashCode());
-    int exitCode = protocol.receiveCommandResponse(messageID);
+    int exitCode =
+        supportsMultiplexing
+            ? receiveMultiplexedResponse(protocol, messageID)
+            : protocol.receiveCommandResponse(messageID);
     Optional<String> stdout = filesystem.readFileIfItExists(stdoutPath);
     Optional<String> stderr = filesystem.readFileIfItExists(stderrPath);
     LOG.debug(
@@ -135,6 +173,48 @@ public class WorkerProcess implements Closeable {
     return WorkerJobResult.of(exitCode, stdout, stderr);
   }
 
+  /**
+   * Waits for the response to the given job. One waiting thread at a time reads responses from the
+   * process, handing those for other jobs over to their threads.
+   */
+  private int receiveMultiplexedResponse(
+      WorkerProcessProtocol.CommandSender protocol, int messageID) throws IOException {
+    synchronized (receivedExitCodes) {
+      while (!receivedExitCodes.containsKey(messageID) && receivingResponses) {
+        try {
+          receivedExitCodes.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              String.format("Interrupted while waiting for the response to job %d.", messageID));
+        }
+      }
+      Integer exitCode = receivedExitCodes.remove(messageID);
+      if (exitCode != null) {
+        return exitCode;
+      }
+      receivingResponses = true;
+    }
+
+    try {
+      while (true) {
+        WorkerProcessCommandResponse response = protocol.receiveNextCommandResponse();
+        if (response.getId() == messageID) {
+          return response.getExitCode();
+        }
+        synchronized (receivedExitCodes) {
+          receivedExitCodes.put(response.getId(), response.getExitCode());
+          receivedExitCodes.notifyAll();
+        }
+      }
+    } finally {
+      synchronized (receivedExitCodes) {
+        receivingResponses = false;
+        receivedExitCodes.notifyAll();
+      }
+    }
+  }
+
   @Override
   public synchronized void close() {
     LOG.debug("Closing process %d", this.hashCode());
@@ -171,6 +251,13 @@ public class WorkerProcess implements Closeable {
 
   @VisibleForTesting
   void setProtocol(WorkerProcessProtocol.CommandSender protocolMock) {
+    setProtocol(protocolMock, false);
+  }
+
+  @VisibleForTesting
+  void setProtocol(
+      WorkerProcessProtocol.CommandSender protocolMock, boolean supportsMultiplexing) {
     this.protocol = protocolMock;
+    this.supportsMultiplexing = supportsMultiplexing;
   }
 }
@@ -31,6 +31,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -40,6 +41,10 @@ import javax.annotation.concurrent.ThreadSafe;
  *
  * <p>This pool supports acquisition and release of worker processes on different threads. Workers
  * are acquired with {@link #borrowWorkerProcess()}, which returns
+ *
+ * <p>The capacity of the pool bounds the number of jobs in flight. Worker processes that support
+ * multiplexing are shared between concurrent borrowers, so a single warm process can serve all of
+ * them. Worker processes that don't are used by one borrower at a time.
  */
 @ThreadSafe
 public class WorkerProcessPool implements Closeable {
@@ -49,6 +54,7 @@ public class WorkerProcessPool implements Closeable {
   private final BlockingQueue<WorkerLifecycle> availableWorkers;
   private final WorkerLifecycle[] workerLifecycles;
   private final HashCode poolHash;
+  private final AtomicReference<WorkerProcess> multiplexingWorkerProcess = new AtomicReference<>();
 
   public WorkerProcessPool(
       int maxWorkers,
@@ -61,7 +67,9 @@ public class WorkerProcessPool implements Closeable {
 
     Arrays.setAll(
         workerLifecycles,
-        ignored -> new WorkerLifecycle(startWorkerProcess, availableWorkers::add));
+        ignored ->
+            new WorkerLifecycle(
+                () -> startOrShareWorkerProcess(startWorkerProcess), availableWorkers::add));
     Collections.addAll(availableWorkers, workerLifecycles);
   }
 
@@ -107,6 +115,25 @@ public class WorkerProcessPool implements Closeable {
     return capacity;
   }
 
+  /**
+   * Returns a live worker process that supports multiplexing if one was started, otherwise starts a
+   * new worker process. Processes started concurrently before the first one finished its handshake
+   * are not shared.
+   */
+  private WorkerProcess startOrShareWorkerProcess(
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) throws IOException {
+    WorkerProcess shared = multiplexingWorkerProcess.get();
+    if (shared != null && shared.isAlive()) {
+      return shared;
+    }
+    WorkerProcess started = startWorkerProcess.get();
+    if (started.supportsMultiplexing()) {
+      multiplexingWorkerProcess.accumulateAndGet(
+          started, (previous, next) -> previous != null && previous.isAlive() ? previous : next);
+    }
+    return started;
+  }
+
   HashCode getPoolHash() {
     return poolHash;
   }
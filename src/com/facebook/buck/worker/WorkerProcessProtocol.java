@@ -16,18 +16,32 @@
 
 package com.facebook.buck.worker;
 
+import com.google.common.collect.ImmutableSet;
 import java.io.Closeable;
 import java.io.IOException;
 
 public interface WorkerProcessProtocol {
 
+  /**
+   * Capability a worker process may announce in its handshake response. A worker that announces it
+   * accepts new commands while others are still running and may respond to them in any order.
+   */
+  String CAPABILITY_MULTIPLEX = "multiplex";
+
   interface CommandSender extends Closeable {
-    void handshake(int messageId) throws IOException;
+    /** Performs the handshake and returns the capabilities announced by the worker process. */
+    ImmutableSet<String> handshake(int messageId) throws IOException;
 
     void send(int messageId, WorkerProcessCommand command) throws IOException;
 
     int receiveCommandResponse(int messageID) throws IOException;
 
+    /**
+     * Receives the next command response, whichever command it belongs to. Only meaningful if the
+     * worker process announced {@link #CAPABILITY_MULTIPLEX}.
+     */
+    WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException;
+
     /** Instructs the CommandReceiver to shut itself down. */
     @Override
     void close() throws IOException;
@@ -19,6 +19,7 @@ package com.facebook.buck.worker;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.util.log.Logger;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import java.io.BufferedReader;
@@ -70,9 +71,9 @@ public class WorkerProcessProtocolZero {
     }
 
     @Override
-    public void handshake(int messageId) throws IOException {
+    public ImmutableSet<String> handshake(int messageId) throws IOException {
       sendHandshake(processStdinWriter, messageId);
-      receiveHandshake(processStdoutReader, messageId, stdErr);
+      return receiveHandshake(processStdoutReader, messageId, stdErr);
     }
 
     /*
@@ -86,7 +87,8 @@ public class WorkerProcessProtocolZero {
       }
     */
     @Override
-    public void send(int messageId, WorkerProcessCommand command) throws IOException {
+    public synchronized void send(int messageId, WorkerProcessCommand command)
+        throws IOException {
       processStdinWriter.beginObject();
       processStdinWriter.name("id").value(messageId);
       processStdinWriter.name("type").value(TYPE_COMMAND);
@@ -130,6 +132,23 @@ public class WorkerProcessProtocolZero {
     */
     @Override
     public int receiveCommandResponse(int messageID) throws IOException {
+      WorkerProcessCommandResponse response = receiveNextCommandResponse();
+      if (response.getId() != messageID) {
+        throw new HumanReadableException(
+            String.format(
+                "Expected response's \"id\" value to be " + "\"%d\", got \"%d\" instead.",
+                messageID, response.getId()));
+      }
+      return response.getExitCode();
+    }
+
+    /*
+      Expects a message as for receiveCommandResponse, but for any message id. A worker process that
+      announced the 'multiplex' capability may send responses in a different order than the
+      commands were sent.
+    */
+    @Override
+    public WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException {
       int id = -1;
       int exitCode = -1;
       String type = "";
@@ -157,12 +176,6 @@ public class WorkerProcessProtocolZero {
             getStdErrorOutput(stdErr));
       }
 
-      if (id != messageID) {
-        throw new HumanReadableException(
-            String.format(
-                "Expected response's \"id\" value to be " + "\"%d\", got \"%d\" instead.",
-                messageID, id));
-      }
       if (!type.equals(TYPE_RESULT) && !type.equals(TYPE_ERROR)) {
         throw new HumanReadableException(
             String.format(
@@ -170,7 +183,7 @@ public class WorkerProcessProtocolZero {
                     + "to be one of [\"%s\",\"%s\"], got \"%s\" instead.",
                 TYPE_RESULT, TYPE_ERROR, type));
       }
-      return exitCode;
+      return WorkerProcessCommandResponse.of(id, exitCode);
     }
 
     @Override
@@ -204,6 +217,8 @@ public class WorkerProcessProtocolZero {
   private static final String PROTOCOL_VERSION = "0";
   private static final String TYPE_RESULT = "result";
   private static final String TYPE_ERROR = "error";
+  private static final ImmutableSet<String> SUPPORTED_CAPABILITIES =
+      ImmutableSet.of(WorkerProcessProtocol.CAPABILITY_MULTIPLEX);
 
   /*
    Sends a message that looks like this:
@@ -235,12 +250,15 @@ public class WorkerProcessProtocolZero {
          protocol_version: '0',
          capabilities: []
        }
+
+   where capabilities may contain any of SUPPORTED_CAPABILITIES.
   */
-  private static void receiveHandshake(JsonReader reader, int messageId, Path stdErr)
-      throws IOException {
+  private static ImmutableSet<String> receiveHandshake(
+      JsonReader reader, int messageId, Path stdErr) throws IOException {
     int id = -1;
     String type = "";
     String protocolVersion = "";
+    ImmutableSet.Builder<String> capabilities = ImmutableSet.builder();
 
     try {
       reader.beginArray();
@@ -256,10 +274,13 @@ public class WorkerProcessProtocolZero {
         } else if (property.equals("capabilities")) {
           try {
             reader.beginArray();
+            while (reader.hasNext()) {
+              capabilities.add(reader.nextString());
+            }
             reader.endArray();
           } catch (IllegalStateException e) {
             throw new HumanReadableException(
-                "Expected handshake response's \"capabilities\" to " + "be an empty array.");
+                "Expected handshake response's \"capabilities\" to " + "be an array of strings.");
           }
         } else {
           reader.skipValue();
@@ -293,6 +314,16 @@ public class WorkerProcessProtocolZero {
                   + "\"protocol_version\" to be \"%s\", got \"%s\" instead.",
               PROTOCOL_VERSION, protocolVersion));
     }
+    ImmutableSet<String> receivedCapabilities = capabilities.build();
+    for (String capability : receivedCapabilities) {
+      if (!SUPPORTED_CAPABILITIES.contains(capability)) {
+        throw new HumanReadableException(
+            String.format(
+                "Unsupported capability \"%s\" in handshake response, expected any of %s.",
+                capability, SUPPORTED_CAPABILITIES));
+      }
+    }
+    return receivedCapabilities;
   }
 
   private static String getStdErrorOutput(Path stdErr) throws IOException {
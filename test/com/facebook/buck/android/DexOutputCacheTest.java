@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DexOutputCacheTest {
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private DexOutputCache cache;
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot().toPath());
+    cache = new DexOutputCache(filesystem, Paths.get("cache"), 2);
+  }
+
+  @Test
+  public void storedOutputsAreFetchedToANewLocation() throws IOException {
+    Path output = Paths.get("first/secondary-1.dex.jar");
+    Path meta = Paths.get("first/secondary-1.dex.jar.meta");
+    filesystem.mkdirs(output.getParent());
+    filesystem.writeContentsToPath("dex", output);
+    filesystem.writeContentsToPath("meta", meta);
+    cache.store("key", output, Optional.of(meta));
+
+    Path newOutput = Paths.get("second/secondary-3.dex.jar");
+    Path newMeta = Paths.get("second/secondary-3.dex.jar.meta");
+    assertTrue(cache.fetch("key", newOutput, Optional.of(newMeta)));
+
+    assertEquals(Optional.of("dex"), filesystem.readFileIfItExists(newOutput));
+    assertEquals(Optional.of("meta"), filesystem.readFileIfItExists(newMeta));
+  }
+
+  @Test
+  public void missingEntriesAreNotFetched() throws IOException {
+    Path output = Paths.get("classes2.dex");
+    filesystem.writeContentsToPath("dex", output);
+    cache.store("key", output, Optional.empty());
+
+    assertFalse(cache.fetch("other", Paths.get("out.dex"), Optional.empty()));
+    assertFalse(
+        "An entry without a meta file cannot satisfy a request for one.",
+        cache.fetch("key", Paths.get("out.dex.jar"), Optional.of(Paths.get("out.dex.jar.meta"))));
+    assertFalse(filesystem.exists(Paths.get("out.dex")));
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+    Path output = Paths.get("classes2.dex");
+    filesystem.writeContentsToPath("dex", output);
+    cache.store("a", output, Optional.empty());
+    filesystem.setLastModifiedTime(Paths.get("cache/a"), FileTime.fromMillis(1000));
+    cache.store("b", output, Optional.empty());
+    filesystem.setLastModifiedTime(Paths.get("cache/b"), FileTime.fromMillis(2000));
+
+    // Reading "a" makes "b" the least recently used entry.
+    assertTrue(cache.fetch("a", Paths.get("out.dex"), Optional.empty()));
+    cache.store("c", output, Optional.empty());
+
+    assertTrue(cache.fetch("a", Paths.get("out.dex"), Optional.empty()));
+    assertFalse(cache.fetch("b", Paths.get("out.dex"), Optional.empty()));
+    assertTrue(cache.fetch("c", Paths.get("out.dex"), Optional.empty()));
+  }
+
+  @Test
+  public void trimmingLeavesRoomForMoreEntries() throws IOException {
+    DexOutputCache cache = new DexOutputCache(filesystem, Paths.get("other-cache"), 10);
+    Path output = Paths.get("classes2.dex");
+    filesystem.writeContentsToPath("dex", output);
+    for (int i = 0; i < 11; i++) {
+      cache.store("entry" + i, output, Optional.empty());
+      filesystem.setLastModifiedTime(
+          Paths.get("other-cache/entry" + i), FileTime.fromMillis(1000 * (i + 1)));
+    }
+
+    assertEquals(9, filesystem.getDirectoryContents(Paths.get("other-cache")).size());
+    assertFalse(cache.fetch("entry1", Paths.get("out.dex"), Optional.empty()));
+    assertTrue(cache.fetch("entry2", Paths.get("out.dex"), Optional.empty()));
+  }
+}
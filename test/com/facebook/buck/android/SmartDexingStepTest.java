@@ -18,6 +18,7 @@ package com.facebook.buck.android;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.android.SmartDexingStep.DxPseudoRule;
@@ -105,6 +106,104 @@ public class SmartDexingStepTest {
     assertTrue("Matching input hash should be considered cached", rule.checkIsCached());
   }
 
+  @Test
+  public void testDxPseudoRuleCacheKeyDependsOnOptionsButNotOnOutputName() {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    Path input = Paths.get("in.dex.jar");
+    ImmutableMap<Path, Sha1HashCode> inputHashes =
+        ImmutableMap.of(input, Sha1HashCode.of(Strings.repeat("a", 40)));
+
+    String key =
+        createMergeRule(filesystem, inputHashes, "secondary-1.dex.jar", DxStep.Option.NO_OPTIMIZE)
+            .get();
+    assertEquals(
+        key,
+        createMergeRule(filesystem, inputHashes, "secondary-2.dex.jar", DxStep.Option.NO_OPTIMIZE)
+            .get());
+    assertNotEquals(
+        key,
+        createMergeRule(
+                filesystem, inputHashes, "secondary-1.dex.jar.xz", DxStep.Option.NO_OPTIMIZE)
+            .get());
+    assertNotEquals(
+        key,
+        createMergeRule(filesystem, inputHashes, "secondary-1.dex.jar", DxStep.Option.NO_LOCALS)
+            .get());
+    assertNotEquals(
+        key,
+        createMergeRule(
+                filesystem,
+                ImmutableMap.of(input, Sha1HashCode.of(Strings.repeat("b", 40))),
+                "secondary-1.dex.jar",
+                DxStep.Option.NO_OPTIMIZE)
+            .get());
+  }
+
+  @Test
+  public void testDxPseudoRuleWithClasspathIsNotCached() {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    Path input = Paths.get("in.jar");
+    DxPseudoRule rule =
+        new DxPseudoRule(
+            createAndroidPlatformTarget(),
+            FakeBuildContext.NOOP_CONTEXT,
+            filesystem,
+            ImmutableMap.of(input, Sha1HashCode.of(Strings.repeat("a", 40))),
+            ImmutableSet.of(input),
+            Paths.get("classes.dex"),
+            Paths.get("classes.dex.hash"),
+            EnumSet.noneOf(DxStep.Option.class),
+            XzStep.DEFAULT_COMPRESSION_LEVEL,
+            Optional.empty(),
+            DxStep.D8,
+            ImmutableList.of(Paths.get("dep.jar")),
+            false,
+            Optional.empty());
+    rule.checkIsCached();
+
+    assertEquals(Optional.empty(), rule.getCacheKey());
+  }
+
+  @Test
+  public void testGetDexMetaPath() {
+    assertEquals(
+        Optional.of(Paths.get("out/secondary-1.dex.jar.meta")),
+        SmartDexingStep.getDexMetaPath(Paths.get("out/secondary-1.dex.jar.xz")));
+    assertEquals(
+        Optional.of(Paths.get("out/secondary-1.dex.jar.xzs.tmp~.meta")),
+        SmartDexingStep.getDexMetaPath(Paths.get("out/secondary-1.dex.jar.xzs.tmp~")));
+    assertEquals(
+        Optional.of(Paths.get("out/secondary-1.dex.jar.meta")),
+        SmartDexingStep.getDexMetaPath(Paths.get("out/secondary-1.dex.jar")));
+    assertEquals(Optional.empty(), SmartDexingStep.getDexMetaPath(Paths.get("out/classes2.dex")));
+  }
+
+  private Optional<String> createMergeRule(
+      ProjectFilesystem filesystem,
+      ImmutableMap<Path, Sha1HashCode> inputHashes,
+      String outputName,
+      DxStep.Option option) {
+    Path output = Paths.get("out").resolve(outputName);
+    DxPseudoRule rule =
+        new DxPseudoRule(
+            createAndroidPlatformTarget(),
+            FakeBuildContext.NOOP_CONTEXT,
+            filesystem,
+            inputHashes,
+            inputHashes.keySet(),
+            output,
+            Paths.get("success").resolve(outputName),
+            EnumSet.of(option),
+            XzStep.DEFAULT_COMPRESSION_LEVEL,
+            Optional.empty(),
+            DxStep.D8,
+            null,
+            false,
+            Optional.empty());
+    rule.checkIsCached();
+    return rule.getCacheKey();
+  }
+
   @Test
   public void testCreateDxStepForDxPseudoRuleWithXzOutput() {
     ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
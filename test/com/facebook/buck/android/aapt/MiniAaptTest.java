@@ -40,6 +40,8 @@ import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -124,6 +126,56 @@ public class MiniAaptTest {
             FakeEntry.create(IdType.INT, RType.ID, "button2")));
   }
 
+  @Test
+  public void testIdenticalXmlFilesAreScannedOnce() throws IOException, ResourceParseException {
+    ResourceXmlScan.invalidateCache();
+    filesystem.writeLinesToPath(RESOURCES, Paths.get("first.xml"));
+    filesystem.writeLinesToPath(RESOURCES, Paths.get("second.xml"));
+
+    List<Set<RDotTxtEntry>> results = new ArrayList<>();
+    for (String file : ImmutableList.of("first.xml", "second.xml")) {
+      MiniAapt aapt =
+          new MiniAapt(
+              resolver,
+              filesystem,
+              FakeSourcePath.of(filesystem, "res"),
+              Paths.get("R.txt"),
+              ImmutableSet.of());
+      aapt.processXmlFile(filesystem, Paths.get(file), ImmutableSet.builder());
+      results.add(
+          createTestingFakes(
+              ((RDotTxtResourceCollector) aapt.getResourceCollector()).getResources()));
+    }
+
+    assertEquals(1, ResourceXmlScan.cacheSize());
+    assertEquals(results.get(0), results.get(1));
+    assertEquals(
+        ImmutableSet.of(
+            FakeEntry.create(IdType.INT, RType.ID, "button1"),
+            FakeEntry.create(IdType.INT, RType.ID, "button3")),
+        results.get(0));
+
+    filesystem.writeLinesToPath(
+        ImmutableList.of(
+            "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\" ",
+            "android:id=\"@+id/root\" />"),
+        Paths.get("second.xml"));
+    MiniAapt aapt =
+        new MiniAapt(
+            resolver,
+            filesystem,
+            FakeSourcePath.of(filesystem, "res"),
+            Paths.get("R.txt"),
+            ImmutableSet.of());
+    aapt.processXmlFile(filesystem, Paths.get("second.xml"), ImmutableSet.builder());
+
+    assertEquals(2, ResourceXmlScan.cacheSize());
+    assertEquals(
+        ImmutableSet.of(FakeEntry.create(IdType.INT, RType.ID, "root")),
+        createTestingFakes(
+            ((RDotTxtResourceCollector) aapt.getResourceCollector()).getResources()));
+  }
+
   @Test
   public void testParsingFilesUnderValuesDirectory() throws IOException, ResourceParseException {
     ImmutableList<String> lines =
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.dalvik;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.android.apkmodule.APKModule;
+import com.facebook.buck.android.apkmodule.APKModuleGraph;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DalvikAwareZipSplitterTest {
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private byte[] classBytes;
+  private APKModule rootModule;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot().toPath());
+    try (InputStream in =
+        DalvikAwareZipSplitterTest.class.getResourceAsStream(
+            DalvikAwareZipSplitterTest.class.getSimpleName() + ".class")) {
+      classBytes = ByteStreams.toByteArray(in);
+    }
+    rootModule = APKModule.of(APKModuleGraph.ROOT_APKMODULE_NAME, true);
+    filesystem.mkdirs(Paths.get("secondary"));
+    filesystem.mkdirs(Paths.get("stores"));
+    filesystem.mkdirs(Paths.get("report"));
+  }
+
+  @Test
+  public void classesAreSplitInClasspathOrder() throws IOException {
+    Path first =
+        writeJar("first.jar", "com/example/Primary.class", "com/example/A.class", "res.txt");
+    Path second = writeJar("second.jar", "com/example/B.class", "com/example/A.class");
+    filesystem.mkdirs(Paths.get("loose/com/example"));
+    Files.write(filesystem.resolve("loose/com/example/C.class"), classBytes);
+
+    ImmutableMultimap<APKModule, Path> outputs =
+        split(
+            ImmutableSet.of(first, second, Paths.get("loose")),
+            getClassSize() * 10);
+
+    assertEquals(
+        ImmutableList.of("com/example/Primary.class"), readEntries(Paths.get("primary.jar")));
+    assertEquals(
+        ImmutableList.of(Paths.get("secondary/secondary-1.jar")), outputs.values().asList());
+    assertThat(
+        readEntries(Paths.get("secondary/secondary-1.jar")),
+        Matchers.containsInRelativeOrder(
+            "com/example/A.class", "com/example/B.class", "com/example/C.class"));
+  }
+
+  @Test
+  public void classesSpillIntoMoreSecondaryZipsWhenFull() throws IOException {
+    Path jar =
+        writeJar(
+            "in.jar",
+            "com/example/Primary.class",
+            "com/example/A.class",
+            "com/example/B.class",
+            "com/example/C.class");
+    // Each secondary zip fits a single class next to its canary.
+    ImmutableMultimap<APKModule, Path> outputs = split(ImmutableSet.of(jar), getClassSize() + 1);
+
+    assertEquals(3, outputs.get(rootModule).size());
+    assertThat(
+        readEntries(Paths.get("secondary/secondary-1.jar")),
+        Matchers.hasItem("com/example/A.class"));
+    assertThat(
+        readEntries(Paths.get("secondary/secondary-3.jar")),
+        Matchers.hasItem("com/example/C.class"));
+  }
+
+  private long getClassSize() throws IOException {
+    return DalvikStatsTool.getEstimate(new ByteArrayInputStream(classBytes))
+        .estimatedLinearAllocSize;
+  }
+
+  private ImmutableMultimap<APKModule, Path> split(ImmutableSet<Path> inputs, long limit)
+      throws IOException {
+    return DalvikAwareZipSplitter.splitZip(
+            filesystem,
+            inputs,
+            Paths.get("primary.jar"),
+            Paths.get("secondary"),
+            "secondary-%d.jar",
+            Paths.get("stores"),
+            limit,
+            path -> path.equals("com/example/Primary.class"),
+            ImmutableSet.of(),
+            ImmutableSet.of(),
+            ImmutableSet.of(),
+            ImmutableMultimap.of(),
+            rootModule,
+            ZipSplitter.DexSplitStrategy.MINIMIZE_PRIMARY_DEX_SIZE,
+            filesystem.resolve("report"))
+        .execute();
+  }
+
+  private Path writeJar(String name, String... entries) throws IOException {
+    Path jar = Paths.get(name);
+    try (OutputStream out = filesystem.newFileOutputStream(jar);
+        ZipOutputStream zip = new ZipOutputStream(out)) {
+      for (String entry : entries) {
+        zip.putNextEntry(new ZipEntry(entry));
+        zip.write(classBytes);
+        zip.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  private ImmutableList<String> readEntries(Path zip) throws IOException {
+    try (ZipFile zipFile = new ZipFile(filesystem.resolve(zip).toFile())) {
+      return Collections.list(zipFile.entries()).stream()
+          .map(ZipEntry::getName)
+          .collect(ImmutableList.toImmutableList());
+    }
+  }
+}
@@ -30,8 +30,11 @@ import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.testutil.TestConsole;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
@@ -215,4 +218,40 @@ public class RealAndroidDeviceTest {
     assertTrue(command.contains("--es extra1"));
     assertTrue(command.contains("value1"));
   }
+
+  @Test
+  public void testShardBySizeBalancesLargestFilesFirst() {
+    ImmutableMap<Path, Long> sizes =
+        ImmutableMap.of(
+            Paths.get("/src/a"), 100L,
+            Paths.get("/src/b"), 60L,
+            Paths.get("/src/c"), 50L,
+            Paths.get("/src/d"), 10L);
+    ImmutableMap.Builder<Path, Path> installPaths = ImmutableMap.builder();
+    for (Path source : sizes.keySet()) {
+      installPaths.put(Paths.get("/dev").resolve(source.getFileName()), source);
+    }
+
+    ImmutableList<ImmutableMap<Path, Path>> shards =
+        RealAndroidDevice.shardBySize(installPaths.build(), 2, sizes::get);
+
+    assertEquals(2, shards.size());
+    assertEquals(
+        ImmutableSet.of(Paths.get("/src/a"), Paths.get("/src/d")),
+        ImmutableSet.copyOf(shards.get(0).values()));
+    assertEquals(
+        ImmutableSet.of(Paths.get("/src/b"), Paths.get("/src/c")),
+        ImmutableSet.copyOf(shards.get(1).values()));
+  }
+
+  @Test
+  public void testShardBySizeNeverCreatesEmptyShards() {
+    ImmutableMap<Path, Path> installPaths =
+        ImmutableMap.of(Paths.get("/dev/a"), Paths.get("/src/a"));
+    assertEquals(
+        ImmutableList.of(installPaths),
+        RealAndroidDevice.shardBySize(installPaths, 4, source -> 1L));
+    assertEquals(
+        ImmutableList.of(), RealAndroidDevice.shardBySize(ImmutableMap.of(), 4, source -> 1L));
+  }
 }
@@ -18,6 +18,7 @@ package com.facebook.buck.android.resources;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
@@ -63,6 +64,26 @@ public class StringPoolTest {
     }
   }
 
+  @Test
+  public void testGetFromReadOnlyDirectBuffer() {
+    String[] strings = new String[] {"string1", "\u00e9l\u00e8ve", "string3"};
+    byte[] serialized = StringPool.create(Arrays.asList(strings)).serialize();
+    ByteBuffer direct = ByteBuffer.allocateDirect(serialized.length);
+    direct.put(serialized);
+    direct.flip();
+
+    StringPool pool = StringPool.get(ResChunk.slice(direct.asReadOnlyBuffer(), 0));
+
+    assertEquals(strings.length, pool.getStringCount());
+    for (int i = 0; i < strings.length; i++) {
+      assertEquals(strings[i], pool.getString(i));
+    }
+    // Decoded strings are kept, and lookups don't disturb the underlying buffer.
+    assertSame(pool.getString(1), pool.getString(1));
+    assertArrayEquals(serialized, pool.serialize());
+    assertArrayEquals(serialized, pool.copy().serialize());
+  }
+
   @Test
   public void testCreateSerializeAndGet() {
     String[] strings = new String[] {"string1", "string2", "string3"};
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestResultSummary;
+import com.facebook.buck.test.TestResults;
+import com.facebook.buck.test.result.type.ResultType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+public class TestDurationsTest {
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:test");
+
+  @Test
+  public void recordedDurationsSurviveSaveAndLoad() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    TestDurations durations = TestDurations.load(filesystem);
+    assertEquals(ImmutableMap.of(), durations.getTestClassDurations(TARGET));
+
+    durations.record(
+        results(testCase("com.example.ATest", 100, 200), testCase("com.example.BTest", 50)));
+    durations.save(filesystem);
+
+    TestDurations loaded = TestDurations.load(filesystem);
+    assertEquals(
+        ImmutableMap.of("com.example.ATest", 300L, "com.example.BTest", 50L),
+        loaded.getTestClassDurations(TARGET));
+    assertEquals(350, loaded.getTotalDuration(TARGET));
+  }
+
+  @Test
+  public void newDurationsReplaceOldOnes() {
+    TestDurations durations =
+        new TestDurations(
+            ImmutableMap.of(
+                TARGET.getFullyQualifiedName(),
+                ImmutableMap.of("com.example.ATest", 1000L, "com.example.BTest", 2000L)));
+
+    durations.record(results(testCase("com.example.ATest", 10)));
+
+    assertEquals(
+        ImmutableMap.of("com.example.ATest", 10L, "com.example.BTest", 2000L),
+        durations.getTestClassDurations(TARGET));
+  }
+
+  @Test
+  public void unreadableDurationsAreIgnored() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.mkdirs(filesystem.getBuckPaths().getBuckOut());
+    filesystem.writeContentsToPath(
+        "not json", filesystem.getBuckPaths().getBuckOut().resolve("test_durations.json"));
+
+    assertEquals(
+        ImmutableMap.of(), TestDurations.load(filesystem).getTestClassDurations(TARGET));
+  }
+
+  private static TestResults results(TestCaseSummary... testCases) {
+    return TestResults.of(
+        TARGET, ImmutableList.copyOf(testCases), ImmutableSet.of(), ImmutableSet.of());
+  }
+
+  private static TestCaseSummary testCase(String name, long... testTimes) {
+    ImmutableList.Builder<TestResultSummary> results = ImmutableList.builder();
+    for (int i = 0; i < testTimes.length; i++) {
+      results.add(
+          new TestResultSummary(
+              name, "test" + i, ResultType.SUCCESS, testTimes[i], null, null, null, null));
+    }
+    return new TestCaseSummary(name, results.build());
+  }
+}
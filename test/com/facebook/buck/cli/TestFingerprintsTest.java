@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.TestBuildRuleParams;
+import com.facebook.buck.core.rules.impl.FakeTestRule;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.test.TestCaseSummary;
+import com.facebook.buck.test.TestResultSummary;
+import com.facebook.buck.test.TestResults;
+import com.facebook.buck.test.TestRunningOptions;
+import com.facebook.buck.test.result.type.ResultType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class TestFingerprintsTest {
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:test");
+
+  @Test
+  public void passingRunsSurviveSaveAndLoad() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    TestFingerprints fingerprints = TestFingerprints.load(filesystem);
+    assertFalse(fingerprints.isUnchanged(TARGET, "abc"));
+
+    fingerprints.record(results(ResultType.SUCCESS), "abc");
+    fingerprints.save(filesystem);
+
+    TestFingerprints loaded = TestFingerprints.load(filesystem);
+    assertTrue(loaded.isUnchanged(TARGET, "abc"));
+    assertFalse(loaded.isUnchanged(TARGET, "def"));
+  }
+
+  @Test
+  public void failingAndDryRunsForgetThePreviousFingerprint() {
+    for (ResultType type : ImmutableList.of(ResultType.FAILURE, ResultType.DRY_RUN)) {
+      TestFingerprints fingerprints =
+          new TestFingerprints(ImmutableMap.of(TARGET.getFullyQualifiedName(), "abc"));
+      fingerprints.record(results(type), "abc");
+      assertFalse(fingerprints.isUnchanged(TARGET, "abc"));
+    }
+  }
+
+  @Test
+  public void unreadableFingerprintsAreIgnored() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.mkdirs(filesystem.getBuckPaths().getBuckOut());
+    filesystem.writeContentsToPath(
+        "not json", filesystem.getBuckPaths().getBuckOut().resolve("test_fingerprints.json"));
+
+    assertFalse(TestFingerprints.load(filesystem).isUnchanged(TARGET, "abc"));
+  }
+
+  @Test
+  public void fingerprintChangesWithRuleKeysAndOptions() {
+    TestActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    FakeTestRule test =
+        new FakeTestRule(
+            TARGET,
+            new FakeProjectFilesystem(),
+            TestBuildRuleParams.create(),
+            ImmutableSet.of(),
+            Optional.empty(),
+            false, // runTestSeparately
+            ImmutableList.of(),
+            () -> results(ResultType.SUCCESS));
+    Map<BuildRule, RuleKey> ruleKeys = ImmutableMap.of(test, new RuleKey("aaaa"));
+    TestRunningOptions options = TestRunningOptions.builder().build();
+
+    String fingerprint = TestFingerprints.compute(test, graphBuilder, ruleKeys::get, options);
+    assertEquals(
+        fingerprint, TestFingerprints.compute(test, graphBuilder, ruleKeys::get, options));
+
+    Function<BuildRule, RuleKey> otherRuleKeys = rule -> new RuleKey("bbbb");
+    assertNotEquals(
+        fingerprint, TestFingerprints.compute(test, graphBuilder, otherRuleKeys, options));
+
+    TestRunningOptions otherOptions =
+        TestRunningOptions.builder().setEnvironmentOverrides(ImmutableMap.of("FOO", "1")).build();
+    assertNotEquals(
+        fingerprint, TestFingerprints.compute(test, graphBuilder, ruleKeys::get, otherOptions));
+  }
+
+  private static TestResults results(ResultType type) {
+    return TestResults.builder()
+        .setBuildTarget(TARGET)
+        .setTestCases(
+            ImmutableList.of(
+                new TestCaseSummary(
+                    "com.example.ATest",
+                    ImmutableList.of(
+                        new TestResultSummary(
+                            "com.example.ATest", "test", type, 10, null, null, null, null)))))
+        .build();
+  }
+}
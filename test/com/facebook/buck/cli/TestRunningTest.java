@@ -23,6 +23,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.core.build.context.BuildContext;
 import com.facebook.buck.core.build.context.FakeBuildContext;
 import com.facebook.buck.core.build.engine.BuildResult;
 import com.facebook.buck.core.build.engine.impl.FakeBuildEngine;
@@ -34,11 +35,14 @@ import com.facebook.buck.core.model.BuildTargetFactory;
 import com.facebook.buck.core.model.targetgraph.TargetGraph;
 import com.facebook.buck.core.model.targetgraph.TargetGraphFactory;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rules.ActionGraphBuilder;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.rules.TestBuildRuleParams;
 import com.facebook.buck.core.rules.impl.FakeTestRule;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.core.test.rule.ShardableTestRule;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.jvm.core.JavaLibrary;
@@ -49,6 +53,7 @@ import com.facebook.buck.jvm.java.JavaLibraryDescriptionArg;
 import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.shell.GenruleDescriptionArg;
 import com.facebook.buck.step.ExecutionOrderAwareFakeStep;
+import com.facebook.buck.step.Step;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.test.FakeTestResults;
 import com.facebook.buck.test.TestCaseSummary;
@@ -62,17 +67,21 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.ByteArrayInputStream;
 import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.hamcrest.Matchers;
@@ -736,4 +745,265 @@ public class TestRunningTest {
 
     assertThat(ret, equalTo(ExitCode.TEST_ERROR.getCode()));
   }
+
+  @Test
+  public void splitIntoShardsBalancesByRecordedDuration() {
+    ImmutableList<ImmutableSet<String>> shards =
+        TestRunning.splitIntoShards(
+            ImmutableSet.of("A", "B", "C", "D", "E"),
+            ImmutableMap.of("A", 5000L, "B", 3000L, "C", 2000L, "D", 1000L, "E", 1000L),
+            4000,
+            4);
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("B", "E"), ImmutableSet.of("C", "D")),
+        shards);
+  }
+
+  @Test
+  public void splitIntoShardsIsLimitedByMaxShards() {
+    ImmutableList<ImmutableSet<String>> shards =
+        TestRunning.splitIntoShards(
+            ImmutableSet.of("A", "B", "C", "D"),
+            ImmutableMap.of("A", 5000L, "B", 5000L, "C", 5000L, "D", 5000L),
+            1000,
+            2);
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("A", "C"), ImmutableSet.of("B", "D")), shards);
+  }
+
+  @Test
+  public void splitIntoShardsAssumesAverageDurationForUnknownClasses() {
+    ImmutableList<ImmutableSet<String>> shards =
+        TestRunning.splitIntoShards(
+            ImmutableSet.of("A", "B", "New"), ImmutableMap.of("A", 3000L, "B", 1000L), 3000, 8);
+    assertEquals(ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("B", "New")), shards);
+  }
+
+  @Test
+  public void splitIntoShardsReturnsLongestShardsFirst() {
+    ImmutableList<ImmutableSet<String>> shards =
+        TestRunning.splitIntoShards(
+            ImmutableSet.of("A", "B", "C"),
+            ImmutableMap.of("A", 10000L, "B", 6000L, "C", 6000L),
+            11000,
+            2);
+    assertEquals(ImmutableList.of(ImmutableSet.of("B", "C"), ImmutableSet.of("A")), shards);
+  }
+
+  @Test
+  public void testsWithoutRecordedDurationsAreNotSharded() {
+    ImmutableSet<String> classes = ImmutableSet.of("A", "B");
+    assertEquals(
+        ImmutableList.of(classes),
+        TestRunning.splitIntoShards(classes, ImmutableMap.of("Other", 100000L), 1, 8));
+  }
+
+  @Test
+  public void whenShardingIsEnabledLongTestsAreShardedAndStartedFirst() throws Exception {
+    CommandRunnerParams commandRunnerParams = CommandRunnerParamsForTesting.builder().build();
+    BuildTarget longTestTarget = BuildTargetFactory.newInstance("//:long");
+    BuildTarget shortTestTarget = BuildTargetFactory.newInstance("//:short");
+    new TestDurations(
+            ImmutableMap.of(
+                longTestTarget.getFullyQualifiedName(),
+                ImmutableMap.of("A", 4000L, "B", 3000L, "C", 2000L),
+                shortTestTarget.getFullyQualifiedName(),
+                ImmutableMap.of("X", 100L)))
+        .save(commandRunnerParams.getCells().getRootCell().getFilesystem());
+
+    AtomicInteger atomicExecutionOrder = new AtomicInteger(0);
+    TestResults longTestResults =
+        FakeTestResults.of(
+            ImmutableList.of(
+                new TestCaseSummary("A", ImmutableList.of()),
+                new TestCaseSummary("B", ImmutableList.of()),
+                new TestCaseSummary("C", ImmutableList.of())));
+    AtomicInteger interpretations = new AtomicInteger(0);
+    FakeShardableTestRule longTest =
+        new FakeShardableTestRule(
+            longTestTarget,
+            ImmutableSet.of("A", "B", "C"),
+            atomicExecutionOrder,
+            () -> {
+              interpretations.incrementAndGet();
+              return longTestResults;
+            });
+    ExecutionOrderAwareFakeStep shortTestStep =
+        new ExecutionOrderAwareFakeStep("short", "short", 0, atomicExecutionOrder);
+    FakeTestRule shortTest =
+        new FakeTestRule(
+            shortTestTarget,
+            new FakeProjectFilesystem(),
+            TestBuildRuleParams.create(),
+            ImmutableSet.of(),
+            Optional.empty(),
+            false, // runTestSeparately
+            ImmutableList.of(shortTestStep),
+            () -> FakeTestResults.of(ImmutableList.of()));
+
+    // A single thread runs work in the order it was submitted.
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    FakeBuildEngine fakeBuildEngine =
+        new FakeBuildEngine(
+            ImmutableMap.of(
+                longTestTarget,
+                BuildResult.success(longTest, BUILT_LOCALLY, CacheResult.miss()),
+                shortTestTarget,
+                BuildResult.success(shortTest, BUILT_LOCALLY, CacheResult.miss())));
+    SourcePathRuleFinder ruleFinder = new TestActionGraphBuilder();
+    int ret =
+        TestRunning.runTests(
+            commandRunnerParams,
+            new TestActionGraphBuilder(),
+            ImmutableList.of(shortTest, longTest),
+            TestExecutionContext.newInstance(),
+            TestRunningOptions.builder()
+                .setTestShardTargetDurationMs(3000L)
+                .setMaxTestShards(4)
+                .build(),
+            service,
+            fakeBuildEngine,
+            FakeBuildContext.withSourcePathResolver(ruleFinder.getSourcePathResolver()),
+            ruleFinder);
+    service.shutdown();
+
+    assertThat(ret, equalTo(0));
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("B"), ImmutableSet.of("C")),
+        longTest.shards);
+    assertThat(longTest.setupStep.getExecutionBeginOrder(), equalTo(OptionalInt.of(0)));
+    for (int i = 0; i < longTest.shardSteps.size(); i++) {
+      assertThat(
+          longTest.shardSteps.get(i).getExecutionBeginOrder(),
+          equalTo(OptionalInt.of(2 + 2 * i)));
+    }
+    assertThat(shortTestStep.getExecutionBeginOrder(), equalTo(OptionalInt.of(8)));
+    assertEquals(1, interpretations.get());
+  }
+
+  @Test
+  public void testsWhichPassedAreSkippedUntilTheirInputsChange() throws Exception {
+    CommandRunnerParams commandRunnerParams = CommandRunnerParamsForTesting.builder().build();
+    BuildTarget target = BuildTargetFactory.newInstance("//:test");
+    AtomicInteger runs = new AtomicInteger(0);
+    FakeTestRule test =
+        new FakeTestRule(
+            target,
+            new FakeProjectFilesystem(),
+            TestBuildRuleParams.create(),
+            ImmutableSet.of(),
+            Optional.empty(),
+            false, // runTestSeparately
+            ImmutableList.of(),
+            () -> {
+              runs.incrementAndGet();
+              return TestResults.builder()
+                  .setBuildTarget(target)
+                  .setTestCases(ImmutableList.of(new TestCaseSummary("A", ImmutableList.of())))
+                  .build();
+            });
+    FakeBuildEngine fakeBuildEngine =
+        new FakeBuildEngine(
+            ImmutableMap.of(target, BuildResult.success(test, BUILT_LOCALLY, CacheResult.miss())));
+    AtomicReference<RuleKey> ruleKey = new AtomicReference<>(new RuleKey("aaaa"));
+    SourcePathRuleFinder ruleFinder = new TestActionGraphBuilder();
+
+    for (int i = 0; i < 3; i++) {
+      if (i == 2) {
+        ruleKey.set(new RuleKey("bbbb"));
+      }
+      int ret =
+          TestRunning.runTests(
+              commandRunnerParams,
+              new TestActionGraphBuilder(),
+              ImmutableList.of(test),
+              TestExecutionContext.newInstance(),
+              DEFAULT_OPTIONS,
+              MoreExecutors.newDirectExecutorService(),
+              fakeBuildEngine,
+              FakeBuildContext.withSourcePathResolver(ruleFinder.getSourcePathResolver()),
+              ruleFinder,
+              Optional.of(rule -> ruleKey.get()));
+      assertThat(ret, equalTo(0));
+    }
+
+    // The second run is skipped, and the third one runs because the rule key changed.
+    assertEquals(2, runs.get());
+  }
+
+  @Test
+  public void unchangedTestsAreReportedAsExcluded() {
+    BuildTarget target = BuildTargetFactory.newInstance("//:test");
+    FakeTestRule test = new FakeTestRule(ImmutableSet.of("label"), target, ImmutableSortedSet.of());
+    TestDurations testDurations =
+        new TestDurations(ImmutableMap.of("//:test", ImmutableMap.of("A", 10L, "B", 20L)));
+
+    TestResults results = TestRunning.getUnchangedTestResults(test, testDurations);
+    assertEquals(target, results.getBuildTarget());
+    assertEquals(ImmutableSet.of("label"), results.getLabels());
+    assertTrue(results.isSuccess());
+    assertEquals(2, results.getTestCases().size());
+    for (TestCaseSummary testCase : results.getTestCases()) {
+      TestResultSummary result = Iterables.getOnlyElement(testCase.getTestResults());
+      assertEquals(ResultType.EXCLUDED, result.getType());
+      assertEquals(testCase.getTestCaseName(), result.getTestCaseName());
+    }
+
+    // Without recorded test classes, the rule itself stands in for them.
+    results = TestRunning.getUnchangedTestResults(test, new TestDurations(ImmutableMap.of()));
+    assertEquals("//:test", Iterables.getOnlyElement(results.getTestCases()).getTestCaseName());
+  }
+
+  /** A test rule which records the shards it was asked to run. */
+  private static class FakeShardableTestRule extends FakeTestRule implements ShardableTestRule {
+    private final ImmutableSet<String> testClassNames;
+    private final AtomicInteger atomicExecutionOrder;
+    private final ExecutionOrderAwareFakeStep setupStep;
+    private final List<ImmutableSet<String>> shards = new ArrayList<>();
+    private final List<ExecutionOrderAwareFakeStep> shardSteps = new ArrayList<>();
+
+    FakeShardableTestRule(
+        BuildTarget buildTarget,
+        ImmutableSet<String> testClassNames,
+        AtomicInteger atomicExecutionOrder,
+        Callable<TestResults> interpretedTestResults) {
+      super(
+          buildTarget,
+          new FakeProjectFilesystem(),
+          TestBuildRuleParams.create(),
+          ImmutableSet.of(),
+          Optional.empty(),
+          false, // runTestSeparately
+          ImmutableList.of(),
+          interpretedTestResults);
+      this.testClassNames = testClassNames;
+      this.atomicExecutionOrder = atomicExecutionOrder;
+      this.setupStep = new ExecutionOrderAwareFakeStep("setup", "setup", 0, atomicExecutionOrder);
+    }
+
+    @Override
+    public ImmutableSet<String> getTestClassNames(SourcePathResolverAdapter pathResolver) {
+      return testClassNames;
+    }
+
+    @Override
+    public ImmutableList<Step> runTestShardSetup(
+        ExecutionContext executionContext, TestRunningOptions options, BuildContext buildContext) {
+      return ImmutableList.of(setupStep);
+    }
+
+    @Override
+    public ImmutableList<Step> runTestShard(
+        ExecutionContext executionContext,
+        TestRunningOptions options,
+        BuildContext buildContext,
+        ImmutableSet<String> testClassNames) {
+      ExecutionOrderAwareFakeStep step =
+          new ExecutionOrderAwareFakeStep("shard", "shard", 0, atomicExecutionOrder);
+      shards.add(testClassNames);
+      shardSteps.add(step);
+      return ImmutableList.of(step);
+    }
+  }
 }
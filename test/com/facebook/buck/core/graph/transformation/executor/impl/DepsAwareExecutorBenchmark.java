@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask;
+import com.facebook.buck.core.graph.transformation.executor.factory.DepsAwareExecutorFactory;
+import com.facebook.buck.core.graph.transformation.executor.factory.DepsAwareExecutorType;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Compares the {@link DepsAwareExecutor} implementations on a wide DAG, where a single root depends
+ * on many independent leaves, and on a deep DAG, made of many narrow layers where every node
+ * depends on every node of the layer below it.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DepsAwareExecutorBenchmark {
+
+  /** The shape of the DAG to compute, as a number of layers below the root and their width. */
+  public enum Shape {
+    WIDE(1, 20_000),
+    DEEP(500, 8),
+    ;
+
+    private final int depth;
+    private final int width;
+
+    Shape(int depth, int width) {
+      this.depth = depth;
+      this.width = width;
+    }
+  }
+
+  @Param({"DEFAULT", "DEFAULT_WITH_LS", "JAVA_BASED", "TOPOSORT_BASED", "WORK_STEALING"})
+  private DepsAwareExecutorType executorType = DepsAwareExecutorType.DEFAULT;
+
+  @Param({"WIDE", "DEEP"})
+  private Shape shape = Shape.WIDE;
+
+  /** Amount of CPU work done by every task, in {@link Blackhole#consumeCPU(long)} tokens. */
+  @Param({"0", "1000"})
+  private long workPerTask = 0;
+
+  private DepsAwareExecutor<Object, ?> executor;
+
+  @Setup
+  public void setUp() {
+    executor =
+        DepsAwareExecutorFactory.create(executorType, Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Object computeGraph() throws ExecutionException, InterruptedException {
+    return computeGraph(executor);
+  }
+
+  private <TaskType extends DepsAwareTask<Object, TaskType>> Object computeGraph(
+      DepsAwareExecutor<Object, TaskType> executor)
+      throws ExecutionException, InterruptedException {
+    ImmutableSet<TaskType> layer = ImmutableSet.of();
+    for (int depth = 0; depth < shape.depth; depth++) {
+      ImmutableSet.Builder<TaskType> nextLayer = ImmutableSet.builderWithExpectedSize(shape.width);
+      for (int i = 0; i < shape.width; i++) {
+        nextLayer.add(createTask(executor, layer));
+      }
+      layer = nextLayer.build();
+    }
+    return executor.submit(createTask(executor, layer)).get();
+  }
+
+  private <TaskType extends DepsAwareTask<Object, TaskType>> TaskType createTask(
+      DepsAwareExecutor<Object, TaskType> executor, ImmutableSet<TaskType> deps) {
+    return executor.createThrowingTask(
+        () -> {
+          Blackhole.consumeCPU(workPerTask);
+          return deps.size();
+        },
+        ImmutableSet::of,
+        () -> deps);
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {DepsAwareExecutorBenchmark.class.getName()});
+  }
+}
@@ -27,6 +27,7 @@ import com.facebook.buck.core.model.BuildTargetFactory;
 import com.facebook.buck.core.model.ConfigurationBuildTargetFactoryForTests;
 import com.facebook.buck.core.model.Flavor;
 import com.facebook.buck.core.model.InternalFlavor;
+import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.select.NonCopyingSelectableConfigurationContext;
 import com.facebook.buck.core.select.SelectableConfigurationContext;
 import com.facebook.buck.core.select.Selector;
@@ -43,6 +44,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import org.junit.Before;
@@ -333,6 +335,57 @@ public class DefaultSelectorListResolverTest {
     }
   }
 
+  @Test
+  public void conditionsAreMatchedOncePerConfiguration() throws CoerceFailedException {
+    BuildTarget selectableTarget = ConfigurationBuildTargetFactoryForTests.newInstance("//x:y");
+    SelectableConfigurationContext otherConfigurationContext =
+        new SelectableConfigurationContext() {
+          @Override
+          public SelectableConfigurationContext withTargetConfiguration(
+              TargetConfiguration targetConfiguration) {
+            return this;
+          }
+        };
+    AtomicInteger matchCount = new AtomicInteger();
+    TestSelectable selectable =
+        new TestSelectable(selectableTarget, true) {
+          @Override
+          public boolean matches(
+              SelectableConfigurationContext configurationContext,
+              DependencyStack dependencyStack) {
+            matchCount.incrementAndGet();
+            return configurationContext == otherConfigurationContext;
+          }
+        };
+    DefaultSelectorListResolver resolver =
+        new DefaultSelectorListResolver(new TestSelectableResolver(ImmutableList.of(selectable)));
+    SelectorList<Flavor> selectorList =
+        createSelectorListForFlavors(ImmutableMap.of("DEFAULT", "flavor1", "//x:y", "flavor2"));
+
+    for (String target : ImmutableList.of("//a:b", "//a:c", "//d:e")) {
+      Flavor flavor =
+          resolver.resolveList(
+              configurationContext,
+              BuildTargetFactory.newInstance(target),
+              "some_attribute",
+              selectorList,
+              new FlavorTypeCoercer(),
+              DependencyStack.root());
+      assertEquals("flavor1", flavor.getName());
+    }
+    Flavor flavor =
+        resolver.resolveList(
+            otherConfigurationContext,
+            BuildTargetFactory.newInstance("//a:b"),
+            "some_attribute",
+            selectorList,
+            new FlavorTypeCoercer(),
+            DependencyStack.root());
+    assertEquals("flavor2", flavor.getName());
+
+    assertEquals(2, matchCount.get());
+  }
+
   private SelectorList<Flavor> createSelectorListForFlavors(Map<String, ?>... selectors)
       throws CoerceFailedException {
     return TestSelectorListFactory.createSelectorListForCoercer(new FlavorTypeCoercer(), selectors);
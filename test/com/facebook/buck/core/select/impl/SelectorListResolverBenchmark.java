@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.buck.core.select.impl;
+
+import com.facebook.buck.core.config.BuckConfig;
+import com.facebook.buck.core.config.FakeBuckConfig;
+import com.facebook.buck.core.exceptions.DependencyStack;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.ConfigurationBuildTargetFactoryForTests;
+import com.facebook.buck.core.model.UnconfiguredTargetConfiguration;
+import com.facebook.buck.core.model.platform.impl.UnconfiguredPlatform;
+import com.facebook.buck.core.rules.configsetting.ConfigSettingSelectable;
+import com.facebook.buck.core.select.Selectable;
+import com.facebook.buck.core.select.SelectableConfigurationContext;
+import com.facebook.buck.core.select.Selector;
+import com.facebook.buck.core.select.SelectorKey;
+import com.facebook.buck.core.select.SelectorList;
+import com.facebook.buck.core.select.TestSelectableResolver;
+import com.facebook.buck.parser.DefaultSelectableConfigurationContext;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Resolves the configurable attributes of many targets in parallel, the way configured target
+ * nodes are created, where every attribute selects on the same set of {@link
+ * ConfigSettingSelectable}s matching on buckconfig values.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SelectorListResolverBenchmark {
+
+  @Param({"5000"})
+  private int targetCount = 5000;
+
+  @Param({"4"})
+  private int attributesPerTarget = 4;
+
+  /** Number of conditions in every <code>select</code>, besides the default one. */
+  @Param({"10"})
+  private int conditionsPerSelect = 10;
+
+  private ImmutableList<BuildTarget> targets;
+  private ImmutableList<Selectable> selectables;
+  private SelectorList<String> selectorList;
+  private SelectableConfigurationContext configurationContext;
+
+  @Setup
+  public void setUp() {
+    ImmutableList.Builder<BuildTarget> targets = ImmutableList.builder();
+    for (int i = 0; i < targetCount; i++) {
+      targets.add(BuildTargetFactory.newInstance("//package" + i / 100 + ":target" + i));
+    }
+    this.targets = targets.build();
+
+    ImmutableList.Builder<Selectable> selectables = ImmutableList.builder();
+    ImmutableMap.Builder<SelectorKey, String> conditions = ImmutableMap.builder();
+    conditions.put(SelectorKey.DEFAULT, "default");
+    for (int i = 0; i < conditionsPerSelect; i++) {
+      BuildTarget condition = ConfigurationBuildTargetFactoryForTests.newInstance("//config:c" + i);
+      selectables.add(
+          new ConfigSettingSelectable(
+              condition, ImmutableMap.of("section.option" + i, "value"), ImmutableSet.of()));
+      conditions.put(new SelectorKey(condition), "value" + i);
+    }
+    this.selectables = selectables.build();
+    this.selectorList =
+        new SelectorList<>(
+            ImmutableList.of(new Selector<>(conditions.build(), ImmutableSet.of(), "")));
+
+    BuckConfig buckConfig =
+        FakeBuckConfig.builder().setSections("[section]", "option0 = value").build();
+    this.configurationContext =
+        DefaultSelectableConfigurationContext.of(
+            buckConfig,
+            UnconfiguredTargetConfiguration.INSTANCE,
+            (configuration, dependencyStack) -> UnconfiguredPlatform.INSTANCE);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public long resolveAttributes() {
+    DefaultSelectorListResolver resolver =
+        new DefaultSelectorListResolver(new TestSelectableResolver(selectables));
+    return targets.parallelStream()
+        .flatMap(
+            target ->
+                IntStream.range(0, attributesPerTarget)
+                    .mapToObj(
+                        attribute ->
+                            resolver.resolveList(
+                                configurationContext,
+                                target,
+                                "attribute" + attribute,
+                                selectorList,
+                                Iterables::getOnlyElement,
+                                DependencyStack.root())))
+        .filter("value0"::equals)
+        .count();
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {SelectorListResolverBenchmark.class.getName()});
+  }
+}
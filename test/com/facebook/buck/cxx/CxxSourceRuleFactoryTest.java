@@ -36,6 +36,8 @@ import com.facebook.buck.core.rules.TestBuildRuleParams;
 import com.facebook.buck.core.rules.impl.DependencyAggregationTestUtil;
 import com.facebook.buck.core.rules.impl.FakeBuildRule;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.rules.schedule.RuleScheduleInfo;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.FakeSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
@@ -61,6 +63,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
@@ -471,6 +474,58 @@ public class CxxSourceRuleFactoryTest {
       cxxPreprocess = cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(name, cxxSource);
       assertThat(cxxPreprocess.getBuildDeps(), hasItems(cxx, cxxpp));
     }
+
+    @Test
+    public void thinOptRulesUseTheirModuleIndexAndConfiguredScheduleInfo() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+      FakeBuildRule index = graphBuilder.addToIndex(new FakeBuildRule("//foo:bar#thinindex"));
+      FakeBuildRule compile = graphBuilder.addToIndex(new FakeBuildRule("//foo:bar#compile"));
+
+      CxxBuckConfig cxxBuckConfig =
+          new CxxBuckConfig(
+              FakeBuckConfig.builder()
+                  .setSections(
+                      ImmutableMap.of(
+                          "cxx",
+                          ImmutableMap.of(
+                              "thinlto_opt_weight", "2", "thinlto_opt_memory_weight", "8")))
+                  .build());
+      CxxSourceRuleFactory cxxSourceRuleFactory =
+          CxxSourceRuleFactory.of(
+              PROJECT_FILESYSTEM,
+              target,
+              graphBuilder,
+              graphBuilder.getSourcePathResolver(),
+              cxxBuckConfig,
+              CXX_PLATFORM,
+              ImmutableList.of(),
+              ImmutableMultimap.of(),
+              Optional.empty(),
+              Optional.empty(),
+              PicType.PDC);
+
+      SourcePath object =
+          ExplicitBuildTargetSourcePath.of(compile.getBuildTarget(), Paths.get("objs/bar.cpp.o"));
+      SourcePath thinIndicesRoot =
+          ExplicitBuildTargetSourcePath.of(index.getBuildTarget(), Paths.get("index"));
+      CxxThinLTOOpt opt =
+          Iterables.getOnlyElement(
+              cxxSourceRuleFactory
+                  .requireThinOptRules(
+                      ImmutableMap.of(
+                          "bar.cpp.o",
+                          CxxSource.of(CxxSource.Type.CXX_THINLINK, object, ImmutableList.of())),
+                      thinIndicesRoot)
+                  .keySet());
+
+      assertEquals(RuleScheduleInfo.of(2, 8), opt.getRuleScheduleInfo());
+      assertThat(
+          opt.getCommand(
+              FakeBuildContext.withSourcePathResolver(graphBuilder.getSourcePathResolver())),
+          hasItems("-fthinlto-index=" + Paths.get("index/objs/bar.cpp.o.thinlto.bc")));
+      assertThat(opt.getBuildDeps(), hasItems(index, compile));
+    }
   }
 
   @RunWith(Parameterized.class)
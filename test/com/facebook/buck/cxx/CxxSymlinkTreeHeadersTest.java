@@ -22,11 +22,16 @@ import com.facebook.buck.core.cell.TestCellPathResolver;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
 import com.facebook.buck.core.sourcepath.FakeSourcePath;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.core.toolchain.impl.ToolchainProviderBuilder;
+import com.facebook.buck.core.toolchain.tool.impl.HashedFileTool;
+import com.facebook.buck.cxx.toolchain.ClangPreprocessor;
+import com.facebook.buck.cxx.toolchain.Preprocessor;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.rules.modern.SerializationTestHelper;
 import com.facebook.buck.util.types.Either;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -42,6 +47,7 @@ public class CxxSymlinkTreeHeadersTest {
             FakeSourcePath.of("root"),
             Either.ofRight(FakeSourcePath.of("includeRoot")),
             Optional.of(FakeSourcePath.of("headerMap")),
+            Optional.of(FakeSourcePath.of("vfsOverlay")),
             ImmutableSortedMap.of(Paths.get("a/b"), FakeSourcePath.of("path")),
             "treeClass");
 
@@ -59,4 +65,31 @@ public class CxxSymlinkTreeHeadersTest {
 
     assertEquals(cxxSymlinkTreeHeaders, reconstructed);
   }
+
+  @Test
+  public void vfsOverlayIsPassedBeforeIncludeRoots() {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    SourcePathResolverAdapter resolver = new TestActionGraphBuilder().getSourcePathResolver();
+    CxxSymlinkTreeHeaders headers =
+        CxxSymlinkTreeHeaders.of(
+            CxxPreprocessables.IncludeType.SYSTEM,
+            FakeSourcePath.of(filesystem, "root"),
+            Either.ofRight(FakeSourcePath.of(filesystem, "root")),
+            Optional.empty(),
+            Optional.of(FakeSourcePath.of(filesystem, "root.yaml")),
+            ImmutableSortedMap.of(Paths.get("a/b.h"), FakeSourcePath.of(filesystem, "b.h")),
+            DirectVFSOverlay.class.getName());
+    Preprocessor preprocessor =
+        new ClangPreprocessor(new HashedFileTool(FakeSourcePath.of(filesystem, "clang")));
+
+    assertEquals(
+        ImmutableList.of(
+            "-ivfsoverlay",
+            filesystem.resolve("root.yaml").toString(),
+            "-isystem",
+            filesystem.resolve("root").toString()),
+        ImmutableList.copyOf(
+            CxxHeaders.getArgs(
+                ImmutableList.of(headers), resolver, Optional.empty(), preprocessor)));
+  }
 }
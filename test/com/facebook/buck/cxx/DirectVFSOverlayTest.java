@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.apple.clang.VFSOverlay;
+import com.facebook.buck.core.build.buildable.context.FakeBuildableContext;
+import com.facebook.buck.core.build.context.BuildContext;
+import com.facebook.buck.core.build.context.FakeBuildContext;
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.impl.BuildTargetPaths;
+import com.facebook.buck.core.rules.ActionGraphBuilder;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.PathSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
+import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DirectVFSOverlayTest {
+
+  @Rule public final TemporaryPaths tmpDir = new TemporaryPaths();
+
+  private ProjectFilesystem projectFilesystem;
+  private DirectVFSOverlay buildRule;
+  private SourcePathResolverAdapter pathResolver;
+  private Path file1;
+  private Path file2;
+
+  @Before
+  public void setUp() throws Exception {
+    projectFilesystem = TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot());
+    BuildTarget buildTarget = BuildTargetFactory.newInstance("//test:test");
+
+    file1 = tmpDir.newFile();
+    file2 = tmpDir.newFile();
+    ImmutableMap<Path, SourcePath> links =
+        ImmutableMap.of(
+            Paths.get("file"),
+            PathSourcePath.of(projectFilesystem, MorePaths.relativize(tmpDir.getRoot(), file1)),
+            Paths.get("directory", "then", "file"),
+            PathSourcePath.of(projectFilesystem, MorePaths.relativize(tmpDir.getRoot(), file2)));
+    Path symlinkTreeRoot =
+        BuildTargetPaths.getGenPath(projectFilesystem, buildTarget, "%s/symlink-tree-root");
+
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    pathResolver = graphBuilder.getSourcePathResolver();
+    buildRule = new DirectVFSOverlay(buildTarget, projectFilesystem, symlinkTreeRoot, links);
+    graphBuilder.addToIndex(buildRule);
+  }
+
+  @Test
+  public void buildWritesOverlayInsteadOfSymlinks() throws Exception {
+    BuildContext buildContext =
+        FakeBuildContext.withSourcePathResolver(pathResolver, projectFilesystem);
+    ExecutionContext executionContext =
+        TestExecutionContext.newBuilder()
+            .setBuildCellRootPath(projectFilesystem.getRootPath().getPath())
+            .build();
+    for (Step step : buildRule.getBuildSteps(buildContext, new FakeBuildableContext())) {
+      assertEquals(0, step.execute(executionContext).getExitCode());
+    }
+
+    Path root = buildRule.getRoot();
+    assertTrue(projectFilesystem.isDirectory(root));
+    assertTrue(projectFilesystem.getDirectoryContents(root).isEmpty());
+
+    Optional<SourcePath> overlay = buildRule.getVFSOverlaySourcePath();
+    assertEquals(Optional.of(buildRule.getSourcePathToOutput()), overlay);
+    String expected =
+        new VFSOverlay(
+                ImmutableSortedMap.of(
+                    root.resolve("file"), file1, root.resolve("directory/then/file"), file2))
+            .render();
+    assertEquals(
+        Optional.of(expected),
+        projectFilesystem.readFileIfItExists(pathResolver.getRelativePath(overlay.get())));
+  }
+}
@@ -113,6 +113,7 @@ public final class FakeCxxLibrary extends NoopBuildRuleWithDeclaredAndExtraDeps
                 DefaultBuildTargetSourcePath.of(publicHeaderSymlinkTreeTarget),
                 Either.ofRight(DefaultBuildTargetSourcePath.of(publicHeaderSymlinkTreeTarget)),
                 Optional.empty(),
+                Optional.empty(),
                 ImmutableSortedMap.of(
                     Paths.get("header.h"), DefaultBuildTargetSourcePath.of(publicHeaderTarget)),
                 HeaderSymlinkTree.class.getName()))
@@ -129,6 +130,7 @@ public final class FakeCxxLibrary extends NoopBuildRuleWithDeclaredAndExtraDeps
                 DefaultBuildTargetSourcePath.of(privateHeaderSymlinkTreeTarget),
                 Either.ofRight(DefaultBuildTargetSourcePath.of(privateHeaderSymlinkTreeTarget)),
                 Optional.empty(),
+                Optional.empty(),
                 ImmutableSortedMap.of(
                     Paths.get("header.h"), DefaultBuildTargetSourcePath.of(privateHeaderTarget)),
                 HeaderSymlinkTree.class.getName()))
@@ -77,6 +77,50 @@ public class HeaderPathNormalizerTest {
         Matchers.equalTo(headerPath));
   }
 
+  @Test
+  public void repeatedLookupsReturnSameResults() {
+    SourcePathResolverAdapter pathResolver = new TestActionGraphBuilder().getSourcePathResolver();
+    Path header = filesystem.getPath("foo/bar.h");
+    SourcePath headerDirPath = PathSourcePath.of(filesystem, header.getParent());
+    HeaderPathNormalizer normalizer =
+        new HeaderPathNormalizer.Builder(pathResolver).addHeaderDir(headerDirPath).build();
+    Path unnormalized = filesystem.resolve(header);
+    Optional<Path> first =
+        normalizer.getAbsolutePathForUnnormalizedPath(pathResolver, unnormalized);
+    assertThat(first, Matchers.equalTo(Optional.of(unnormalized)));
+    assertThat(
+        normalizer.getAbsolutePathForUnnormalizedPath(pathResolver, unnormalized),
+        Matchers.sameInstance(first));
+    assertThat(
+        normalizer.getSourcePathForAbsolutePath(first.get()),
+        Matchers.sameInstance(normalizer.getSourcePathForAbsolutePath(first.get())));
+  }
+
+  @Test
+  public void lookupsUseTheGivenResolver() {
+    SourcePathResolverAdapter pathResolver = new TestActionGraphBuilder().getSourcePathResolver();
+    Path header = filesystem.getPath("foo/bar.h");
+    SourcePath headerDirPath = PathSourcePath.of(filesystem, header.getParent());
+    HeaderPathNormalizer normalizer =
+        new HeaderPathNormalizer.Builder(pathResolver).addHeaderDir(headerDirPath).build();
+    Path unnormalized = filesystem.resolve(header);
+    assertThat(
+        normalizer.getAbsolutePathForUnnormalizedPath(pathResolver, unnormalized),
+        Matchers.equalTo(Optional.of(unnormalized)));
+
+    Path otherRoot = filesystem.resolve("other");
+    SourcePathResolverAdapter otherPathResolver =
+        new SourcePathResolverAdapter(pathResolver.getResolver()) {
+          @Override
+          public Path getAbsolutePath(SourcePath sourcePath) {
+            return otherRoot.resolve(pathResolver.getRelativePath(sourcePath));
+          }
+        };
+    assertThat(
+        normalizer.getAbsolutePathForUnnormalizedPath(otherPathResolver, unnormalized),
+        Matchers.equalTo(Optional.of(otherRoot.resolve(header))));
+  }
+
   @Test
   public void managedHeaderDir() {
     SourcePathResolverAdapter pathResolver = new TestActionGraphBuilder().getSourcePathResolver();
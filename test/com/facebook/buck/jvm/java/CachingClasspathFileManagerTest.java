@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Tests {@link CachingClasspathFileManager} */
+public class CachingClasspathFileManagerTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  private JavaCompiler compiler;
+  private ClasspathJarIndexCache cache;
+  private FakeFileHashCache fileHashCache;
+
+  @Before
+  public void setUp() {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    cache = new ClasspathJarIndexCache(100);
+    fileHashCache = new FakeFileHashCache(new HashMap<>());
+  }
+
+  @Test
+  public void testCompilesAgainstCachedJar() throws Exception {
+    Path dependency = compileToJar("dep.jar", "package dep; public class Dep { public int x; }");
+
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    CachingClasspathFileManager fileManager = newFileManager(dependency, diagnostics);
+    Path source =
+        write("Main.java", "package main; class Main { int get(dep.Dep d) { return d.x; } }");
+    File output = temp.newFolder("out");
+    fileManager.setLocation(StandardLocation.CLASS_OUTPUT, ImmutableList.of(output));
+
+    boolean success =
+        compiler
+            .getTask(
+                null,
+                fileManager,
+                diagnostics,
+                null,
+                null,
+                fileManager.getJavaFileObjects(source.toFile()))
+            .call();
+
+    assertTrue(diagnostics.getDiagnostics().toString(), success);
+    assertTrue(new File(output, "main/Main.class").exists());
+  }
+
+  @Test
+  public void testListsEntriesWithJavacStyleUris() throws Exception {
+    Path dependency = compileToJar("dep.jar", "package dep; public class Dep {}");
+    CachingClasspathFileManager fileManager =
+        newFileManager(dependency, new DiagnosticCollector<>());
+
+    JavaFileObject file =
+        Iterables.getOnlyElement(
+            fileManager.list(
+                StandardLocation.CLASS_PATH,
+                "dep",
+                ImmutableSet.of(JavaFileObject.Kind.CLASS),
+                false));
+
+    assertEquals("jar:" + dependency.toUri() + "!/dep/Dep.class", file.toUri().toString());
+    assertEquals("dep.Dep", fileManager.inferBinaryName(StandardLocation.CLASS_PATH, file));
+    assertTrue(file.isNameCompatible("Dep", JavaFileObject.Kind.CLASS));
+    assertSame(
+        file,
+        fileManager.getJavaFileForInput(
+            StandardLocation.CLASS_PATH, "dep.Dep", JavaFileObject.Kind.CLASS));
+  }
+
+  @Test
+  public void testJarIsReindexedOnlyWhenContentsChange() throws Exception {
+    Path dependency = compileToJar("dep.jar", "package dep; public class Dep { int a; }");
+    FileTime modifiedTime = Files.getLastModifiedTime(dependency);
+
+    ClasspathJarIndexCache.JarIndex first =
+        cache.getIndex(dependency, fileHashCache.get(dependency));
+    assertSame(first, cache.getIndex(dependency, fileHashCache.get(dependency)));
+
+    // Artifacts fetched from the cache all get the same modification time.
+    compileToJar("dep.jar", "package dep; public class Dep { int b; }");
+    Files.setLastModifiedTime(dependency, modifiedTime);
+    assertNotSame(first, cache.getIndex(dependency, fileHashCache.get(dependency)));
+  }
+
+  @Test
+  public void testJarsAreClosedWithTheFileManager() throws Exception {
+    Path dependency = compileToJar("dep.jar", "package dep; public class Dep {}");
+    CachingClasspathFileManager fileManager =
+        newFileManager(dependency, new DiagnosticCollector<>());
+    JavaFileObject file =
+        fileManager.getJavaFileForInput(
+            StandardLocation.CLASS_PATH, "dep.Dep", JavaFileObject.Kind.CLASS);
+    try (InputStream stream = file.openInputStream()) {
+      assertTrue(stream.read() >= 0);
+    }
+
+    fileManager.close();
+
+    try {
+      file.openInputStream().close();
+      fail("Expected the jar to be closed.");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), containsString("already closed"));
+    }
+  }
+
+  @Test
+  public void testJarsWithoutKnownHashesAreIndexed() throws Exception {
+    Path dependency = compileToJar("dep.jar", "package dep; public class Dep {}");
+    fileHashCache.invalidate(dependency);
+    CachingClasspathFileManager fileManager =
+        newFileManager(dependency, new DiagnosticCollector<>());
+
+    assertEquals(
+        "dep.Dep",
+        fileManager.inferBinaryName(
+            StandardLocation.CLASS_PATH,
+            fileManager.getJavaFileForInput(
+                StandardLocation.CLASS_PATH, "dep.Dep", JavaFileObject.Kind.CLASS)));
+  }
+
+  private CachingClasspathFileManager newFileManager(
+      Path classpath, DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+    CachingClasspathFileManager fileManager =
+        new CachingClasspathFileManager(
+            compiler.getStandardFileManager(diagnostics, null, null),
+            cache,
+            Optional.of(fileHashCache));
+    fileManager.setLocation(StandardLocation.CLASS_PATH, ImmutableList.of(classpath.toFile()));
+    return fileManager;
+  }
+
+  private Path write(String name, String contents) throws IOException {
+    Path path = temp.getRoot().toPath().resolve(name);
+    Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+    return path;
+  }
+
+  private Path compileToJar(String jarName, String source) throws IOException {
+    Path sourceFile = write("Dep.java", source);
+    Path classes = Files.createTempDirectory(temp.getRoot().toPath(), "classes");
+    assertEquals(0, compiler.run(null, null, null, "-d", classes.toString(), sourceFile.toString()));
+
+    Path jar = temp.getRoot().toPath().resolve(jarName);
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("dep/Dep.class"));
+      out.write(Files.readAllBytes(classes.resolve("dep/Dep.class")));
+      out.closeEntry();
+    }
+    fileHashCache.set(jar, Hashing.sha1().hashBytes(Files.readAllBytes(jar)));
+    return jar;
+  }
+}
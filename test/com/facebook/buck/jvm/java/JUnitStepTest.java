@@ -19,6 +19,8 @@ package com.facebook.buck.jvm.java;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.model.BuildId;
@@ -26,6 +28,7 @@ import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.jvm.java.runner.FileClassPathRunner;
+import com.facebook.buck.jvm.java.runner.PersistentTestRunner;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.MoreAsserts;
 import com.facebook.buck.testutil.TestConsole;
@@ -316,4 +319,98 @@ public class JUnitStepTest {
         "Debugging. Suspending JVM. Connect a JDWP debugger to port 5005 to proceed.",
         console.getTextWrittenToStdErr().trim());
   }
+
+  @Test
+  public void testPersistentTestRunnerArgsOnlyPassBuckPropertiesPerRun() {
+    Path testRunnerClasspath = Paths.get("ant-out/classes/junit");
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    Path classpathFile = filesystem.resolve("foo");
+    BuildId pretendBuildId = new BuildId("pretend-build-id");
+    Path modulePath = Paths.get("module/submodule");
+
+    JUnitJvmArgs args =
+        ImmutableJUnitJvmArgs.builder()
+            .setBuildId(pretendBuildId)
+            .setBuckModuleBaseSourceCodePath(modulePath)
+            .setTargetJavaVersion(11)
+            .setClasspathFile(classpathFile)
+            .setTestRunnerClasspath(testRunnerClasspath)
+            .setExtraJvmArgs(ImmutableList.of("-Xmx1g", "-Dname1=value1"))
+            .setTestType(TestType.JUNIT)
+            .addTestClasses("com.example.FooTest")
+            .build();
+
+    ImmutableList.Builder<String> startupArgs = ImmutableList.builder();
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    args.formatPersistentTestRunnerArgsToLists(
+        startupArgs, jobArgs, filesystem, Verbosity.STANDARD_INFORMATION, 5000L);
+
+    MoreAsserts.assertListEquals(
+        ImmutableList.of(
+            "-Dapple.awt.UIElement=true",
+            "-Xmx1g",
+            "-Dname1=value1",
+            "-classpath",
+            MorePaths.pathWithPlatformSeparators("ant-out/classes/junit"),
+            PersistentTestRunner.class.getName()),
+        startupArgs.build());
+    MoreAsserts.assertListEquals(
+        ImmutableList.of(
+            "-Dbuck.testrunner_classes=" + testRunnerClasspath,
+            "-Dbuck.classpath_file=" + classpathFile,
+            "-Dcom.facebook.buck.buildId=" + pretendBuildId,
+            "-Dcom.facebook.buck.moduleBasePath=" + modulePath,
+            "com.facebook.buck.testrunner.JUnitMain",
+            "--default-test-timeout",
+            "5000",
+            "com.example.FooTest"),
+        jobArgs.build());
+  }
+
+  @Test
+  public void testPersistentTestRunnerIsNotUsedWhenTheRuleHasATimeoutOrIsDebugged() {
+    ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    JUnitJvmArgs args = createJUnitJvmArgs(filesystem, /* debugEnabled */ false);
+    JUnitJvmArgs debugArgs = createJUnitJvmArgs(filesystem, /* debugEnabled */ true);
+
+    assertTrue(
+        createJUnitStep(filesystem, args, Optional.empty(), 4).shouldUsePersistentTestRunner());
+    assertFalse(
+        createJUnitStep(filesystem, args, Optional.empty(), 0).shouldUsePersistentTestRunner());
+    assertFalse(
+        createJUnitStep(filesystem, args, Optional.of(1000L), 4).shouldUsePersistentTestRunner());
+    assertFalse(
+        createJUnitStep(filesystem, debugArgs, Optional.empty(), 4)
+            .shouldUsePersistentTestRunner());
+  }
+
+  private static JUnitJvmArgs createJUnitJvmArgs(
+      ProjectFilesystem filesystem, boolean debugEnabled) {
+    return ImmutableJUnitJvmArgs.builder()
+        .setBuildId(new BuildId("pretend-build-id"))
+        .setBuckModuleBaseSourceCodePath(Paths.get("module"))
+        .setTargetJavaVersion(8)
+        .setClasspathFile(filesystem.resolve("foo"))
+        .setTestRunnerClasspath(Paths.get("ant-out/classes/junit"))
+        .setTestType(TestType.JUNIT)
+        .setDebugEnabled(debugEnabled)
+        .addTestClasses("com.example.FooTest")
+        .build();
+  }
+
+  private static JUnitStep createJUnitStep(
+      ProjectFilesystem filesystem,
+      JUnitJvmArgs args,
+      Optional<Long> testRuleTimeoutMs,
+      int maxPersistentTestRunners) {
+    return new JUnitStep(
+        filesystem,
+        /* nativeLibsEnvironment */ ImmutableMap.of(),
+        testRuleTimeoutMs,
+        /* testCaseTimeoutMs */ Optional.empty(),
+        ImmutableMap.of(),
+        ImmutableList.of("/foo/bar/custom/java"),
+        args,
+        maxPersistentTestRunners);
+  }
 }
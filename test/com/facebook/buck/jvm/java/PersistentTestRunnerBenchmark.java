@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildId;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.Matcher;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures the overhead of running the tests of a rule, by running a single trivial test class
+ * either in a forked JVM or in a {@link com.facebook.buck.jvm.java.runner.PersistentTestRunner}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PersistentTestRunnerBenchmark {
+
+  @Param({"false", "true"})
+  private boolean persistent = false;
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private ExecutionContext context;
+  private JUnitJvmArgs junitJvmArgs;
+
+  @Setup
+  public void setUp() throws IOException, URISyntaxException {
+    root = Files.createTempDirectory("persistent-test-runner-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(root);
+    context = TestExecutionContext.newInstanceWithRealProcessExecutor();
+
+    Path classpathFile = root.resolve("classpath-file");
+    Files.write(
+        classpathFile,
+        ImmutableList.of(
+            getClassLocation(PersistentTestRunnerBenchmark.class),
+            getClassLocation(Test.class),
+            getClassLocation(Matcher.class)));
+    Path results = Files.createDirectories(root.resolve("results"));
+    junitJvmArgs =
+        ImmutableJUnitJvmArgs.builder()
+            .setBuildId(new BuildId("benchmark"))
+            .setBuckModuleBaseSourceCodePath(Paths.get("benchmark"))
+            .setTargetJavaVersion(8)
+            .setClasspathFile(classpathFile)
+            .setTestRunnerClasspath(
+                Paths.get(
+                    System.getProperty(
+                        "buck.testrunner_classes",
+                        new File("ant-out/testrunner/classes").getAbsolutePath())))
+            .setTestType(TestType.JUNIT)
+            .setDirectoryForTestResults(results)
+            .addTestClasses(TrivialTest.class.getName())
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    context.close();
+    MostFiles.deleteRecursively(root);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public StepExecutionResult runTestRule() throws IOException, InterruptedException {
+    JUnitStep step =
+        new JUnitStep(
+            filesystem,
+            /* nativeLibsEnvironment */ ImmutableMap.of(),
+            /* testRuleTimeoutMs */ Optional.empty(),
+            /* testCaseTimeoutMs */ Optional.empty(),
+            ImmutableMap.of(),
+            ImmutableList.of(Paths.get(System.getProperty("java.home"), "bin", "java").toString()),
+            junitJvmArgs,
+            persistent ? 1 : 0);
+    StepExecutionResult result = step.execute(context);
+    Assert.assertEquals(0, result.getExitCode());
+    return result;
+  }
+
+  private static String getClassLocation(Class<?> clazz) throws URISyntaxException {
+    return Paths.get(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+  }
+
+  /** The test run by the benchmark. */
+  public static class TrivialTest {
+    @Test
+    public void test() {
+      Assert.assertTrue(true);
+    }
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {PersistentTestRunnerBenchmark.class.getName()});
+  }
+}
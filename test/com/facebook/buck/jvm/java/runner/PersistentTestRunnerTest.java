@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.jvm.java.runner;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.base.Joiner;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PersistentTestRunnerTest {
+  @Rule public TemporaryPaths temporaryPaths = new TemporaryPaths();
+
+  private Path testRunnerClasses;
+  private Path classpathFile;
+
+  @Before
+  public void setUp() throws Exception {
+    // Runs load the fake runners below from the classes of this test, in a class loader of their
+    // own.
+    testRunnerClasses = temporaryPaths.newFolder("testrunner");
+    classpathFile = temporaryPaths.newFile("classpath");
+    Path testClasses =
+        Paths.get(
+            PersistentTestRunnerTest.class
+                .getProtectionDomain()
+                .getCodeSource()
+                .getLocation()
+                .toURI());
+    Files.write(classpathFile, Collections.singletonList(testClasses.toString()));
+  }
+
+  @Test
+  public void answersHandshakeAndCommandsInOrder() throws IOException {
+    String output =
+        serve(command(1, CountingRunner.class, "3"), command(2, CountingRunner.class, "0"));
+
+    assertEquals(
+        "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}"
+            + ",{\"id\":1,\"type\":\"result\",\"exit_code\":3}"
+            + ",{\"id\":2,\"type\":\"result\",\"exit_code\":0}]",
+        output);
+  }
+
+  @Test
+  public void everyRunLoadsTheClassesAgain() throws IOException {
+    serve(command(1, CountingRunner.class, "0"), command(2, CountingRunner.class, "0"));
+
+    assertEquals("runs=1 args=0", readStdout(1));
+    assertEquals("runs=1 args=0", readStdout(2));
+  }
+
+  @Test
+  public void systemPropertiesAreOnlySetDuringTheRun() throws IOException {
+    serve(command(1, PropertyReadingRunner.class, "-Dpersistent.runner.test=value"));
+
+    assertEquals("value", readStdout(1));
+    assertNull(System.getProperty("persistent.runner.test"));
+  }
+
+  @Test
+  public void failingRunsDoNotStopTheRunner() throws IOException {
+    String output =
+        serve(
+            command(1, ThrowingRunner.class),
+            command(2, PersistentTestRunnerTest.class),
+            command(3, CountingRunner.class, "0"));
+
+    assertThat(output, containsString("{\"id\":1,\"type\":\"result\",\"exit_code\":1}"));
+    assertThat(readStderr(1), containsString("IllegalStateException: boom"));
+    assertThat(output, containsString("{\"id\":2,\"type\":\"result\",\"exit_code\":1}"));
+    assertThat(readStderr(2), containsString("NoSuchMethodException"));
+    assertThat(output, containsString("{\"id\":3,\"type\":\"result\",\"exit_code\":0}"));
+  }
+
+  @Test
+  public void systemExitFailsTheRunWithoutEndingTheRunner() throws IOException {
+    String output =
+        serve(command(1, ExitingRunner.class), command(2, CountingRunner.class, "0"));
+
+    assertThat(output, containsString("{\"id\":1,\"type\":\"result\",\"exit_code\":1}"));
+    assertThat(readStderr(1), containsString("System.exit(3) was called"));
+    assertThat(output, containsString("{\"id\":2,\"type\":\"result\",\"exit_code\":0}]"));
+    assertNull(System.getSecurityManager());
+  }
+
+  @Test
+  public void unknownMessagesAreAnsweredWithAnError() throws IOException {
+    String output = serve(",{\"id\":1,\"type\":\"unknown\",\"extra\":[1,\"a\\\"b\",null]}");
+
+    assertThat(output, containsString(",{\"id\":1,\"type\":\"error\",\"exit_code\":1}]"));
+  }
+
+  /** Counts its runs in a static field, and exits with the code it is given. */
+  public static class CountingRunner {
+    private static int runs = 0;
+
+    public static int run(String[] args) {
+      runs++;
+      System.out.print("runs=" + runs + " args=" + String.join(",", args));
+      return Integer.parseInt(args[0]);
+    }
+  }
+
+  /** Prints the system property the test sets. */
+  public static class PropertyReadingRunner {
+    public static int run(String[] args) {
+      System.out.print(System.getProperty("persistent.runner.test"));
+      return 0;
+    }
+  }
+
+  /** Crashes. */
+  public static class ThrowingRunner {
+    public static int run(String[] args) {
+      throw new IllegalStateException("boom");
+    }
+  }
+
+  /** Tries to end the runner. */
+  public static class ExitingRunner {
+    public static int run(String[] args) {
+      System.exit(3);
+      return 0;
+    }
+  }
+
+  private String command(int id, Class<?> runner, String... args) throws IOException {
+    List<String> allArgs = new ArrayList<>();
+    allArgs.add("-D" + FileClassPathRunner.TESTRUNNER_CLASSES_PROPERTY + "=" + testRunnerClasses);
+    allArgs.add("-D" + FileClassPathRunner.CLASSPATH_FILE_PROPERTY + "=" + classpathFile);
+    int firstArg = 0;
+    while (firstArg < args.length && args[firstArg].startsWith("-D")) {
+      allArgs.add(args[firstArg++]);
+    }
+    allArgs.add(runner.getName());
+    for (int i = firstArg; i < args.length; i++) {
+      allArgs.add(args[i]);
+    }
+    Path argsPath = temporaryPaths.getRoot().resolve(id + ".args");
+    String joinedArgs = Joiner.on(PersistentTestRunner.ARG_SEPARATOR).join(allArgs);
+    Files.write(argsPath, joinedArgs.getBytes(StandardCharsets.UTF_8));
+    return String.format(
+        ",{\"id\":%d,\"type\":\"command\",\"args_path\":\"%s\",\"stdout_path\":\"%s\","
+            + "\"stderr_path\":\"%s\"}",
+        id, escape(argsPath), escape(getStdoutPath(id)), escape(getStderrPath(id)));
+  }
+
+  private String serve(String... commands) throws IOException {
+    String input =
+        "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}"
+            + String.join("", commands)
+            + "]";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new PersistentTestRunner(
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output)
+        .serve();
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private Path getStdoutPath(int id) {
+    return temporaryPaths.getRoot().resolve(id + ".out");
+  }
+
+  private Path getStderrPath(int id) {
+    return temporaryPaths.getRoot().resolve(id + ".err");
+  }
+
+  private String readStdout(int id) throws IOException {
+    return new String(Files.readAllBytes(getStdoutPath(id)), StandardCharsets.UTF_8);
+  }
+
+  private String readStderr(int id) throws IOException {
+    return new String(Files.readAllBytes(getStderrPath(id)), StandardCharsets.UTF_8);
+  }
+
+  private static String escape(Path path) {
+    return path.toString().replace("\\", "\\\\");
+  }
+}
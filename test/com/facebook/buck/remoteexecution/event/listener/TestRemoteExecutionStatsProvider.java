@@ -120,4 +120,9 @@ public class TestRemoteExecutionStatsProvider implements RemoteExecutionStatsPro
   public long getTotalRemoteTimeMs() {
     return TimeUnit.SECONDS.toMillis(200);
   }
+
+  @Override
+  public long getActionPreparationTimeMs() {
+    return 0;
+  }
 }
@@ -18,6 +18,7 @@ package com.facebook.buck.remoteexecution.util;
 
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -37,6 +38,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
@@ -326,4 +328,68 @@ public class MerkleTreeNodeCacheTest {
                 Paths.get("file.name"), protocol.newSymlinkNode("other.name", Paths.get("target"))),
             ImmutableMap.of());
   }
+
+  @Test
+  public void testRetainedNodesAreReusedWithTheirData() {
+    MerkleTreeNodeCache nodeCache = new MerkleTreeNodeCache(protocol, 100);
+    Path toolchainDir = Paths.get("toolchain");
+    Path srcDir = Paths.get("src");
+
+    Supplier<Map<Path, FileNode>> toolchainFiles =
+        () ->
+            ImmutableMap.of(
+                toolchainDir.resolve("cc"),
+                protocol.newFileNode(
+                    protocol.computeDigest("cc".getBytes(Charsets.UTF_8)), "cc", true));
+    Supplier<Map<Path, FileNode>> srcFiles =
+        () ->
+            ImmutableMap.of(
+                srcDir.resolve("a.c"),
+                protocol.newFileNode(
+                    protocol.computeDigest("a".getBytes(Charsets.UTF_8)), "a.c", false));
+
+    MerkleTreeNode toolchainNode =
+        nodeCache.createNode(
+            new HashMap<>(toolchainFiles.get()), ImmutableMap.of(), ImmutableMap.of());
+    NodeData toolchainData = nodeCache.getData(toolchainNode);
+    MerkleTreeNode merged =
+        nodeCache.mergeNodes(
+            ImmutableList.of(
+                toolchainNode,
+                nodeCache.createNode(srcFiles.get(), ImmutableMap.of(), ImmutableMap.of())));
+    NodeData mergedData = nodeCache.getData(merged);
+
+    // A later "build" recreates the same inputs from scratch.
+    MerkleTreeNode recreatedToolchainNode =
+        nodeCache.createNode(toolchainFiles.get(), ImmutableMap.of(), ImmutableMap.of());
+    assertSame(toolchainNode, recreatedToolchainNode);
+    assertSame(toolchainData, nodeCache.getData(recreatedToolchainNode));
+    MerkleTreeNode recreatedMerged =
+        nodeCache.mergeNodes(
+            ImmutableList.of(
+                recreatedToolchainNode,
+                nodeCache.createNode(srcFiles.get(), ImmutableMap.of(), ImmutableMap.of())));
+    assertSame(merged, recreatedMerged);
+    assertSame(mergedData, nodeCache.getData(recreatedMerged));
+
+    // Changing a single file only produces a new node for the changed subtree.
+    MerkleTreeNode changedSrcNode =
+        nodeCache.createNode(
+            ImmutableMap.of(
+                srcDir.resolve("a.c"),
+                protocol.newFileNode(
+                    protocol.computeDigest("b".getBytes(Charsets.UTF_8)), "a.c", false)),
+            ImmutableMap.of(),
+            ImmutableMap.of());
+    MerkleTreeNode changedMerged =
+        nodeCache.mergeNodes(ImmutableList.of(recreatedToolchainNode, changedSrcNode));
+    assertNotEquals(mergedData.getDigest(), nodeCache.getData(changedMerged).getDigest());
+    Set<MerkleTreeNode> sharedNodes = Sets.newIdentityHashSet();
+    merged.forAllNodes(sharedNodes::add);
+    Set<MerkleTreeNode> changedNodes = Sets.newIdentityHashSet();
+    changedMerged.forAllNodes(changedNodes::add);
+    sharedNodes.retainAll(changedNodes);
+    // Only the toolchain directory is shared.
+    assertEquals(1, sharedNodes.size());
+  }
 }
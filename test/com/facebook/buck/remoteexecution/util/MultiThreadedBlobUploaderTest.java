@@ -31,6 +31,8 @@ import io.grpc.StatusRuntimeException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -136,8 +138,81 @@ public class MultiThreadedBlobUploaderTest {
     EasyMock.verify(casBlobUploader);
   }
 
+  @Test
+  public void testConcurrentMissingChecksAreBatchedAndKnownHashesAreShared()
+      throws IOException, ExecutionException, InterruptedException {
+    ExecutorService service = Executors.newFixedThreadPool(2);
+    CasBlobUploader casBlobUploader = EasyMock.createMock(CasBlobUploader.class);
+    ImmutableMap<Digest, UploadDataSupplier> firstData = createUploadData("topspin");
+    ImmutableMap<Digest, UploadDataSupplier> secondData = createUploadData("backspin");
+    Set<String> knownPresentHashes = Sets.newConcurrentHashSet();
+    MultiThreadedBlobUploader uploader =
+        new MultiThreadedBlobUploader(
+            1000, 500, UPLOAD_SIZE_LIMT, knownPresentHashes, service, casBlobUploader);
+
+    // Both requests must be answered by a single missing check.
+    EasyMock.expect(
+            casBlobUploader.getMissingHashes(
+                Sets.union(firstData.keySet(), secondData.keySet())))
+        .andReturn(ImmutableSet.of())
+        .once();
+    EasyMock.replay(casBlobUploader);
+
+    ListenableFuture<Unit> firstFuture = uploader.addMissing(firstData.values().stream());
+    ListenableFuture<Unit> secondFuture = uploader.addMissing(secondData.values().stream());
+    firstFuture.get();
+    secondFuture.get();
+
+    // A new uploader sharing the known hashes (e.g. for a later build) doesn't check again.
+    MultiThreadedBlobUploader laterUploader =
+        new MultiThreadedBlobUploader(
+            1000, 0, UPLOAD_SIZE_LIMT, knownPresentHashes, service, casBlobUploader);
+    laterUploader.addMissing(firstData.values().stream()).get();
+    Assert.assertTrue(laterUploader.containsDigest(secondData.keySet().asList().get(0)));
+
+    EasyMock.verify(casBlobUploader);
+    service.shutdown();
+  }
+
+  @Test
+  public void testMissingChecksRunConcurrently()
+      throws IOException, ExecutionException, InterruptedException {
+    ExecutorService service = Executors.newFixedThreadPool(2);
+    CasBlobUploader casBlobUploader = EasyMock.createMock(CasBlobUploader.class);
+    ImmutableMap<Digest, UploadDataSupplier> firstData = createUploadData("topspin");
+    ImmutableMap<Digest, UploadDataSupplier> secondData = createUploadData("backspin");
+    MultiThreadedBlobUploader uploader =
+        new MultiThreadedBlobUploader(
+            MISSING_CHECK_LIMIT, UPLOAD_SIZE_LIMT, service, casBlobUploader);
+
+    // Neither missing check returns until both of them are in flight.
+    CountDownLatch inFlight = new CountDownLatch(2);
+    EasyMock.expect(casBlobUploader.getMissingHashes(EasyMock.anyObject()))
+        .andAnswer(
+            () -> {
+              inFlight.countDown();
+              Assert.assertTrue(inFlight.await(10, TimeUnit.SECONDS));
+              return ImmutableSet.of();
+            })
+        .times(2);
+    EasyMock.makeThreadSafe(casBlobUploader, false);
+    EasyMock.replay(casBlobUploader);
+
+    ListenableFuture<Unit> firstFuture = uploader.addMissing(firstData.values().stream());
+    ListenableFuture<Unit> secondFuture = uploader.addMissing(secondData.values().stream());
+    firstFuture.get();
+    secondFuture.get();
+
+    EasyMock.verify(casBlobUploader);
+    service.shutdown();
+  }
+
   private ImmutableMap<Digest, UploadDataSupplier> createUploadData() {
-    byte[] buffer = "topspin".getBytes();
+    return createUploadData("topspin");
+  }
+
+  private ImmutableMap<Digest, UploadDataSupplier> createUploadData(String content) {
+    byte[] buffer = content.getBytes();
     Digest digest = PROTOCOL.computeDigest(buffer);
     UploadDataSupplier supplier =
         new UploadDataSupplier() {
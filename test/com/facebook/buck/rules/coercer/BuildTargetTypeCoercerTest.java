@@ -19,6 +19,7 @@ package com.facebook.buck.rules.coercer;
 import static com.facebook.buck.core.cell.TestCellBuilder.createCellRoots;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
@@ -62,6 +63,29 @@ public class BuildTargetTypeCoercerTest {
     assertEquals(BuildTargetFactory.newInstance("//foo:bar"), seen);
   }
 
+  @Test
+  public void equalTargetsAreShared() throws CoerceFailedException {
+    BuildTargetTypeCoercer coercer = new BuildTargetTypeCoercer(unconfiguredBuildTargetTypeCoercer);
+    BuildTarget first =
+        coercer.coerceBoth(
+            createCellRoots(filesystem).getCellNameResolver(),
+            filesystem,
+            basePath,
+            UnconfiguredTargetConfiguration.INSTANCE,
+            UnconfiguredTargetConfiguration.INSTANCE,
+            ":bar");
+    BuildTarget second =
+        coercer.coerceBoth(
+            createCellRoots(filesystem).getCellNameResolver(),
+            filesystem,
+            ForwardRelativePath.of("foo"),
+            UnconfiguredTargetConfiguration.INSTANCE,
+            UnconfiguredTargetConfiguration.INSTANCE,
+            "//java/com/facebook/buck/example:bar");
+
+    assertSame(first, second);
+  }
+
   @Test
   public void failedCoerce() throws CoerceFailedException {
     thrown.expect(CoerceFailedException.class);
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
 import com.facebook.buck.core.rules.TestBuildRuleParams;
 import com.facebook.buck.core.rules.actions.ActionExecutionResult;
 import com.facebook.buck.core.rules.actions.ActionRegistryForTests;
@@ -165,6 +166,40 @@ public class DefaultRuleKeyCacheTest {
     assertFalse(internalCache.isCached(ruleD));
   }
 
+  @Test
+  public void invalidateAllExceptActionsKeepsRetainedActionsAndTheAppendablesTheyUse() {
+    DefaultRuleKeyCache<String> internalCache = new DefaultRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    AddsToRuleKey shared = new AddsToRuleKey() {};
+    AddsToRuleKey nested = new AddsToRuleKey() {};
+    AddsToRuleKey unused = new AddsToRuleKey() {};
+    cache.get(nested, a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    cache.get(shared, a -> new RuleKeyResult<>("", ImmutableList.of(nested), ImmutableList.of()));
+    cache.get(unused, a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    TestRule dep = new TestRule();
+    cache.get(dep, r -> new RuleKeyResult<>("", ImmutableList.of(shared), ImmutableList.of()));
+    TestRule retained = new TestRule();
+    cache.get(
+        retained, r -> new RuleKeyResult<>("", ImmutableList.of(dep, shared), ImmutableList.of()));
+    TestRule dropped = new TestRule();
+    cache.get(dropped, r -> new RuleKeyResult<>("", ImmutableList.of(unused), ImmutableList.of()));
+    TestRule dependent = new TestRule();
+    cache.get(
+        dependent, r -> new RuleKeyResult<>("", ImmutableList.of(dropped), ImmutableList.of()));
+
+    cache.invalidateAllExceptActions(ImmutableList.of(dep, retained, dependent));
+
+    assertTrue(internalCache.isCached(dep));
+    assertTrue(internalCache.isCached(retained));
+    assertTrue(internalCache.isCached(shared));
+    assertTrue(internalCache.isCached(nested));
+    assertFalse(internalCache.isCached(dropped));
+    assertFalse(internalCache.isCached(dependent));
+    assertFalse(internalCache.isCached(unused));
+    assertThat(cache.getStats().getEvictionCount().get(), Matchers.equalTo(3L));
+  }
+
   @Test
   public void testHitMissStats() {
     TrackedRuleKeyCache<String> cache =
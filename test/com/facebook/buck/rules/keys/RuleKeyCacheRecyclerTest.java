@@ -23,6 +23,8 @@ import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.actiongraph.ActionGraph;
 import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -188,4 +190,34 @@ public class RuleKeyCacheRecyclerTest {
         c -> {});
     assertFalse(cache.isCached(appendable));
   }
+
+  @Test
+  public void getCacheWithDifferentActionGraphInstanceKeepsReusedRules() {
+    DefaultRuleKeyCache<String> cache = new DefaultRuleKeyCache<>();
+    RuleKeyCacheRecycler<String> recycler =
+        RuleKeyCacheRecycler.createAndRegister(EVENT_BUS, cache, ImmutableSet.of(FILESYSTEM));
+    AddsToRuleKey appendable = new AddsToRuleKey() {};
+    BuildRule reusedRule = new FakeBuildRule("//:reused");
+    BuildRule oldRule = new FakeBuildRule("//:changed");
+    recycler.withRecycledCache(
+        BUCK_EVENT_BUS,
+        SETTINGS,
+        c -> {
+          c.get(
+              reusedRule,
+              r -> new RuleKeyResult<>("", ImmutableList.of(appendable), ImmutableList.of()));
+          c.get(oldRule, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+        });
+    assertTrue(cache.isCached(reusedRule));
+    assertTrue(cache.isCached(oldRule));
+    recycler.withRecycledCache(
+        BUCK_EVENT_BUS,
+        new RuleKeyCacheRecycler.SettingsAffectingCache(
+            RULE_KEY_SEED,
+            new ActionGraph(ImmutableList.of(reusedRule, new FakeBuildRule("//:changed")))),
+        c -> {});
+    assertTrue(cache.isCached(reusedRule));
+    assertTrue(cache.isCached(appendable));
+    assertFalse(cache.isCached(oldRule));
+  }
 }
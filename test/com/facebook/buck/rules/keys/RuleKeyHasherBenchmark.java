@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.filesystems.BuckUnixPathUtils;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.RuleType;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.sourcepath.DefaultBuildTargetSourcePath;
+import com.facebook.buck.rules.keys.hasher.GuavaRuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher.Container;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher.Wrapper;
+import com.facebook.buck.rules.keys.hasher.Sha1RuleKeyHasher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Hashes the fields of a typical build rule, a few strings, targets, numbers and many source paths,
+ * with each {@link RuleKeyHasher} which computes default rule keys. Run with {@code -prof gc} to
+ * compare the allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RuleKeyHasherBenchmark {
+
+  /** The hashers to compare. */
+  public enum HasherType {
+    GUAVA(() -> new GuavaRuleKeyHasher(Hashing.sha1().newHasher())),
+    SHA1(Sha1RuleKeyHasher::new),
+    ;
+
+    private final Supplier<RuleKeyHasher<HashCode>> factory;
+
+    HasherType(Supplier<RuleKeyHasher<HashCode>> factory) {
+      this.factory = factory;
+    }
+  }
+
+  @Param({"GUAVA", "SHA1"})
+  private HasherType hasherType = HasherType.SHA1;
+
+  @Param({"100"})
+  private int sourceCount = 100;
+
+  private final RuleType ruleType = RuleType.of("java_library", RuleType.Kind.BUILD);
+  private final RuleKey depRuleKey = new RuleKey("a002b39af204cdfaa5fdb67816b13867c32ac52c");
+  private BuildTarget target;
+  private ImmutableList<Path> sources;
+  private HashCode sourceHash;
+
+  @Setup
+  public void setUp() {
+    target = BuildTargetFactory.newInstance("//java/com/example/project/module:module#flavor");
+    ImmutableList.Builder<Path> sources = ImmutableList.builder();
+    for (int i = 0; i < sourceCount; i++) {
+      sources.add(
+          BuckUnixPathUtils.createPath("java/com/example/project/module/Source" + i + ".java"));
+    }
+    this.sources = sources.build();
+    sourceHash = HashCode.fromString("b67816b13867c32ac52ca002b39af204cdfaa5fd");
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public HashCode hashRule() {
+    RuleKeyHasher<HashCode> hasher = hasherType.factory.get();
+    hasher.putKey(".rule_key_type").putString("default");
+    hasher.putKey(".build_rule_type").putRuleType(ruleType);
+    hasher.putKey(".target_name").putBuildTarget(target);
+    hasher.putKey("buck.deps").putContainer(Container.LIST, 1);
+    hasher.putWrapper(Wrapper.BUILD_RULE).putRuleKey(depRuleKey);
+    hasher.putKey("output").putBuildTargetSourcePath(DefaultBuildTargetSourcePath.of(target));
+    hasher.putKey("sourceLevel").putString("8").putKey("targetLevel").putString("8");
+    hasher.putKey("debug").putBoolean(true).putKey("maxErrors").putNumber(100);
+    hasher.putKey("srcs").putContainer(Container.LIST, sources.size());
+    for (Path source : sources) {
+      hasher.putPath(source, sourceHash);
+    }
+    return hasher.hash();
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {RuleKeyHasherBenchmark.class.getName()});
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.rules.keys.hasher.GuavaRuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.Sha1RuleKeyHasher;
+import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.Test;
+import org.junit.experimental.runners.Enclosed;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@SuppressWarnings("PMD.TestClassWithoutTestCases")
+@RunWith(Enclosed.class)
+public class Sha1RuleKeyHasherTest {
+
+  @RunWith(Parameterized.class)
+  public static class UniquenessTest extends CommonRuleKeyHasherTest.UniquenessTest<HashCode> {
+    @Parameters(name = "{0} != {2}")
+    public static Iterable<Object[]> cases() {
+      return CommonRuleKeyHasherTest.uniquenessTestCases(Sha1RuleKeyHasher::new);
+    }
+  }
+
+  public static class ConsistencyTest extends CommonRuleKeyHasherTest.ConsistencyTest<HashCode> {
+
+    @Override
+    protected Sha1RuleKeyHasher newHasher() {
+      return new Sha1RuleKeyHasher();
+    }
+  }
+
+  public static class CompatibilityTest {
+
+    @Test
+    public void hashesAreTheSameAsTheGuavaHasher() {
+      List<Object[]> expected =
+          CommonRuleKeyHasherTest.uniquenessTestCases(
+              () -> new GuavaRuleKeyHasher(Hashing.sha1().newHasher()));
+      List<Object[]> actual = CommonRuleKeyHasherTest.uniquenessTestCases(Sha1RuleKeyHasher::new);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals((String) expected.get(i)[0], expected.get(i)[1], actual.get(i)[1]);
+      }
+    }
+
+    @Test
+    public void stringsAreEncodedTheSameWayAsTheGuavaHasher() {
+      assertSameHash(h -> h.putString("caf\u00e9 \u20ac \ud83d\ude00"));
+      assertSameHash(h -> h.putString("unpaired \ud83d surrogates \ude00\ud83d"));
+      assertSameHash(h -> h.putKey(Strings.repeat("long \u20ac key ", 1000)));
+    }
+
+    @Test
+    public void dataLargerThanTheBufferIsHashedTheSameWayAsTheGuavaHasher() {
+      byte[] bytes = new byte[10000];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) i;
+      }
+      assertSameHash(h -> h.putNumber(42).putBytes(bytes).putNumber(42L));
+      assertSameHash(
+          h -> {
+            for (int i = 0; i < 1000; i++) {
+              h.putKey("field").putNumber(i).putNonHashingPath(Paths.get("some/path/" + i));
+            }
+            return h;
+          });
+    }
+
+    @Test
+    public void buildTargetSourcePathsAreHashedTheSameWayAsTheGuavaHasher() {
+      assertSameHash(
+          h ->
+              h.putBuildTargetSourcePath(
+                  ExplicitBuildTargetSourcePath.of(
+                      BuildTargetFactory.newInstance("//a/b:c#d"), Paths.get("/out/c.jar"))));
+    }
+
+    @Test
+    public void nestedHashersAreIndependent() {
+      RuleKeyHasher<HashCode> outer = new Sha1RuleKeyHasher().putKey("outer");
+      HashCode inner = new Sha1RuleKeyHasher().putKey("inner").hash();
+      assertEquals(
+          new GuavaRuleKeyHasher(Hashing.sha1().newHasher()).putKey("inner").hash(), inner);
+      assertEquals(
+          new GuavaRuleKeyHasher(Hashing.sha1().newHasher()).putKey("outer").putKey("x").hash(),
+          outer.putKey("x").hash());
+    }
+
+    private static void assertSameHash(
+        Function<RuleKeyHasher<HashCode>, RuleKeyHasher<HashCode>> addToHash) {
+      assertEquals(
+          addToHash.apply(new GuavaRuleKeyHasher(Hashing.sha1().newHasher())).hash(),
+          addToHash.apply(new Sha1RuleKeyHasher()).hash());
+    }
+  }
+}
@@ -17,6 +17,8 @@
 package com.facebook.buck.rules.modern.builders;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.remoteexecution.UploadDataSupplier;
@@ -42,6 +44,7 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -101,6 +104,46 @@ public class LocalContentAddressedStorageTest {
                     }))));
   }
 
+  @Test
+  public void leastRecentlyUsedDataIsEvicted() throws IOException {
+    storage =
+        new LocalContentAddressedStorage(
+            storageDir, protocol, BuckEventBusForTests.newInstance(), 30, 1);
+    Digest first = addData("first data!!");
+    Digest second = addData("second data!");
+    // Reading the first makes the second the least recently used.
+    assertDataEquals("first data!!".getBytes(Charsets.UTF_8), getBytes(first));
+    Digest third = addData("third data!!");
+
+    assertEquals(
+        ImmutableList.of(second),
+        storage.findMissing(ImmutableList.of(first, second, third)).collect(Collectors.toList()));
+    assertFalse(storage.containsDigest(second));
+    assertTrue(storage.containsDigest(third));
+    assertEquals(24, storage.getTotalSize());
+    assertFalse(Files.exists(storageDir.resolve("se").resolve("co").resolve("second")));
+  }
+
+  @Test
+  public void indexIsReloadedFromDisk() throws IOException {
+    Digest digest = addData("hello world!");
+    storage =
+        new LocalContentAddressedStorage(storageDir, protocol, BuckEventBusForTests.newInstance());
+    assertEquals(0, storage.findMissing(ImmutableList.of(digest)).count());
+    assertTrue(storage.containsDigest(digest));
+    assertEquals(12, storage.getTotalSize());
+  }
+
+  private Digest addData(String hash) throws IOException {
+    byte[] data = hash.getBytes(Charsets.UTF_8);
+    Digest digest = protocol.newDigest(hash.replace(' ', '_'), data.length);
+    Futures.getUnchecked(
+        storage.addMissing(
+            ImmutableList.of(
+                UploadDataSupplier.of(hash, digest, () -> new ByteArrayInputStream(data)))));
+    return digest;
+  }
+
   @Test
   public void addingAndMaterializingFullInputsWorks() throws IOException {
     Map<Path, FileNode> files = new HashMap<>();
@@ -145,6 +188,40 @@ public class LocalContentAddressedStorageTest {
     assertDataEquals(otherData, Files.readAllBytes(inputsDir.resolve(otherPath)));
   }
 
+  @Test
+  public void executableCopiesAreAccountedOnce() throws IOException {
+    byte[] data = "hello world!".getBytes(Charsets.UTF_8);
+    Path plainPath = Paths.get("dir/plain");
+    Path exePath = Paths.get("dir/exe");
+    Map<Path, FileNode> files = new HashMap<>();
+    files.put(plainPath, newFileNode(data, plainPath, false));
+    files.put(exePath, newFileNode(data, exePath, true));
+
+    MerkleTreeNodeCache nodeCache = new MerkleTreeNodeCache(protocol);
+    MerkleTreeNode node = nodeCache.createNode(files, ImmutableMap.of(), ImmutableMap.of());
+    ImmutableList.Builder<UploadDataSupplier> requiredData = ImmutableList.builder();
+    requiredData.add(
+        UploadDataSupplier.of(
+            "data", protocol.computeDigest(data), () -> new ByteArrayInputStream(data)));
+    nodeCache.forAllData(
+        node,
+        nodeData ->
+            requiredData.add(
+                UploadDataSupplier.of(
+                    "data",
+                    nodeData.getDigest(),
+                    () ->
+                        new ByteArrayInputStream(protocol.toByteArray(nodeData.getDirectory())))));
+    Futures.getUnchecked(storage.addMissing(requiredData.build()));
+    long uploadedSize = storage.getTotalSize();
+
+    Digest rootDigest = nodeCache.getData(node).getDigest();
+    storage.materializeInputs(tmp.getRoot().resolve("first"), rootDigest, Optional.empty());
+    assertEquals(uploadedSize + data.length, storage.getTotalSize());
+    storage.materializeInputs(tmp.getRoot().resolve("second"), rootDigest, Optional.empty());
+    assertEquals(uploadedSize + data.length, storage.getTotalSize());
+  }
+
   private FileNode newFileNode(byte[] bytes, Path path, boolean isExecutable) {
     return protocol.newFileNode(
         protocol.computeDigest(bytes), path.getFileName().toString(), isExecutable);
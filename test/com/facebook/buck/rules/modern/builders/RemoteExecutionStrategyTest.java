@@ -16,6 +16,7 @@
 
 package com.facebook.buck.rules.modern.builders;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -67,6 +68,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
@@ -277,6 +279,45 @@ public class RemoteExecutionStrategyTest {
     strategyBuildResult.getBuildResult().get(2, TimeUnit.SECONDS);
   }
 
+  @Test
+  public void testUpToDateOutputsAreNotDeletedOrMaterialized() throws Exception {
+    Path output = tmp.getRoot().resolve("output");
+    Files.write(output, missingData);
+    SettableFuture<List<OutputFile>> materializedFiles = SettableFuture.create();
+
+    clients =
+        new SimpleRemoteExecutionClients() {
+          @Override
+          public ListenableFuture<Unit> materializeOutputs(List<OutputFile> outputFiles) {
+            materializedFiles.set(outputFiles);
+            return Futures.immediateFuture(null);
+          }
+        };
+    beginBuild().getBuildResult().get(2, TimeUnit.SECONDS);
+
+    assertTrue(materializedFiles.get().isEmpty());
+    assertArrayEquals(missingData, Files.readAllBytes(output));
+  }
+
+  @Test
+  public void testChangedOutputsAreMaterialized() throws Exception {
+    Path output = tmp.getRoot().resolve("output");
+    Files.write(output, "stale".getBytes(Charsets.UTF_8));
+    SettableFuture<List<OutputFile>> materializedFiles = SettableFuture.create();
+
+    clients =
+        new SimpleRemoteExecutionClients() {
+          @Override
+          public ListenableFuture<Unit> materializeOutputs(List<OutputFile> outputFiles) {
+            materializedFiles.set(outputFiles);
+            return Futures.immediateFuture(null);
+          }
+        };
+    beginBuild().getBuildResult().get(2, TimeUnit.SECONDS);
+
+    assertEquals(1, materializedFiles.get().size());
+  }
+
   private static class TestRemoteExecutionConfig implements RemoteExecutionStrategyConfig {
 
     @Override
@@ -445,6 +486,10 @@ public class RemoteExecutionStrategyTest {
       return Futures.immediateFuture(null);
     }
 
+    public ListenableFuture<Unit> materializeOutputs(List<OutputFile> outputFiles) {
+      return materializeOutputs();
+    }
+
     public boolean containsDigest(Digest digest) {
       return false;
     }
@@ -468,7 +513,7 @@ public class RemoteExecutionStrategyTest {
             List<OutputDirectory> outputDirectories,
             List<OutputFile> outputFiles,
             FileMaterializer materializer) {
-          return SimpleRemoteExecutionClients.this.materializeOutputs();
+          return SimpleRemoteExecutionClients.this.materializeOutputs(outputFiles);
         }
 
         @Override
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class LineHandlingOutputStreamTest {
+
+  @Test
+  public void testUnterminatedLineIsHandledOnClose() {
+    assertEquals(ImmutableList.of("Test1"), handleLines("Test1"));
+  }
+
+  @Test
+  public void testLineEndings() {
+    assertEquals(ImmutableList.of("a", "b", "c", "d"), handleLines("a\nb\rc\r\nd\n"));
+  }
+
+  @Test
+  public void testEmptyLinesArePreserved() {
+    assertEquals(ImmutableList.of("a", "", "", "b"), handleLines("a\n\n\rb"));
+  }
+
+  @Test
+  public void testLinesSplitAcrossWrites() {
+    assertEquals(ImmutableList.of("Test1", "Test2"), handleLines("Te", "st1\r", "\nTe", "st2"));
+  }
+
+  @Test
+  public void testMultiByteCharactersSplitAcrossWrites() {
+    List<String> lines = new ArrayList<>();
+    LineHandlingOutputStream stream = new LineHandlingOutputStream(UTF_8, lines::add);
+    for (byte b : "h\u00e9llo\nw\u00f6rld".getBytes(UTF_8)) {
+      stream.write(b);
+    }
+    stream.close();
+    assertEquals(ImmutableList.of("h\u00e9llo", "w\u00f6rld"), lines);
+  }
+
+  private static List<String> handleLines(String... writes) {
+    List<String> lines = new ArrayList<>();
+    LineHandlingOutputStream stream = new LineHandlingOutputStream(UTF_8, lines::add);
+    for (String write : writes) {
+      byte[] bytes = write.getBytes(UTF_8);
+      stream.write(bytes, 0, bytes.length);
+    }
+    stream.close();
+    return lines;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.facebook.buck.testutil.TestConsole;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures the overhead {@link DefaultProcessExecutor} adds to running a child process and
+ * capturing its output, with many steps running processes at the same time.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@Threads(16)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProcessExecutorBenchmark {
+
+  /** Number of lines written to stdout by every process. */
+  @Param({"0", "10000"})
+  private int outputLines = 0;
+
+  private ProcessExecutor executor;
+  private ProcessExecutorParams params;
+
+  @Setup
+  public void setUp() {
+    executor = new DefaultProcessExecutor(new TestConsole(Verbosity.ALL));
+    params =
+        outputLines == 0
+            ? ProcessExecutorParams.ofCommand("true")
+            : ProcessExecutorParams.ofCommand("seq", "1", String.valueOf(outputLines));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Object runProcess() throws IOException, InterruptedException {
+    return executor.launchAndExecute(
+        params,
+        EnumSet.of(ProcessExecutor.Option.EXPECTING_STD_OUT),
+        /* stdin */ Optional.empty(),
+        /* timeOutMs */ Optional.empty(),
+        /* timeOutHandler */ Optional.empty());
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {ProcessExecutorBenchmark.class.getName()});
+  }
+}
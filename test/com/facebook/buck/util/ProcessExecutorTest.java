@@ -19,15 +19,22 @@ package com.facebook.buck.util;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeThat;
 
 import com.facebook.buck.testutil.TestConsole;
 import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.Optional;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.hamcrest.Matchers;
 import org.junit.Test;
 
 public class ProcessExecutorTest {
@@ -119,6 +126,80 @@ public class ProcessExecutorTest {
     assertTrue("process was reported as timed out", result.isTimedOut());
   }
 
+  @Test
+  public void testLargeOutputIsCapturedCompletely() throws IOException, InterruptedException {
+    assumeThat(Platform.detect(), Matchers.not(Platform.WINDOWS));
+    ProcessExecutor executor = new DefaultProcessExecutor(new TestConsole(Verbosity.ALL));
+    int lines = 100_000;
+    ProcessExecutor.Result result =
+        executor.launchAndExecute(
+            ProcessExecutorParams.ofCommand("seq", "1", String.valueOf(lines)),
+            EnumSet.of(ProcessExecutor.Option.EXPECTING_STD_OUT),
+            /* stdin */ Optional.empty(),
+            /* timeOutMs */ Optional.empty(),
+            /* timeOutHandler */ Optional.empty());
+
+    String stdout = result.getStdout().get();
+    assertTrue(
+        "output is larger than what's kept in memory",
+        stdout.length() > SpillingCapturingPrintStream.DEFAULT_IN_MEMORY_LIMIT);
+    String[] outputLines = stdout.split(System.lineSeparator());
+    assertEquals(lines, outputLines.length);
+    for (int i = 0; i < lines; i++) {
+      assertEquals(String.valueOf(i + 1), outputLines[i]);
+    }
+  }
+
+  @Test
+  public void testConcurrentProcessesShareASingleOutputThread() throws Exception {
+    assumeThat(Platform.detect(), Matchers.not(Platform.WINDOWS));
+    ProcessExecutor executor = new DefaultProcessExecutor(new TestConsole(Verbosity.ALL));
+    int processes = 16;
+    ExecutorService callers = Executors.newFixedThreadPool(processes);
+    try {
+      ImmutableList.Builder<Future<ProcessExecutor.Result>> results = ImmutableList.builder();
+      for (int i = 0; i < processes; i++) {
+        String command = String.format("echo start %d; sleep 1; echo end %d >&2", i, i);
+        results.add(
+            callers.submit(
+                () ->
+                    executor.launchAndExecute(
+                        ProcessExecutorParams.ofCommand("sh", "-c", command),
+                        EnumSet.of(
+                            ProcessExecutor.Option.EXPECTING_STD_OUT,
+                            ProcessExecutor.Option.EXPECTING_STD_ERR),
+                        /* stdin */ Optional.empty(),
+                        /* timeOutMs */ Optional.empty(),
+                        /* timeOutHandler */ Optional.empty())));
+      }
+
+      // Give all processes time to start, and the old implementation time to spawn two threads
+      // per process.
+      Thread.sleep(500);
+      long outputThreads =
+          Thread.getAllStackTraces().keySet().stream()
+              .map(Thread::getName)
+              .filter(
+                  name ->
+                      name.startsWith("ProcessExecutor")
+                          || name.equals(ProcessOutputReactor.THREAD_NAME))
+              .count();
+      assertEquals(1, outputThreads);
+
+      ImmutableList<Future<ProcessExecutor.Result>> futures = results.build();
+      for (int i = 0; i < processes; i++) {
+        ProcessExecutor.Result result = futures.get(i).get();
+        assertEquals(0, result.getExitCode());
+        assertEquals("start " + i + System.lineSeparator(), result.getStdout().get());
+        assertEquals("end " + i + System.lineSeparator(), result.getStderr().get());
+      }
+      assertEquals(0, ProcessOutputReactor.getInstance().getRegistrationCount());
+    } finally {
+      callers.shutdownNow();
+      callers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
   private static String[] makeCommandArray(String command) {
     StringTokenizer st = new StringTokenizer(command);
     String[] cmdarray = new String[st.countTokens()];
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ProcessOutputReactorTest {
+
+  @Test
+  public void slowSinkDoesNotStallOtherStreams() throws Exception {
+    ProcessOutputReactor reactor = new ProcessOutputReactor();
+    CountDownLatch releaseSlowSink = new CountDownLatch(1);
+    ByteArrayOutputStream slowSink =
+        new ByteArrayOutputStream() {
+          @Override
+          public void write(byte[] b, int off, int len) {
+            try {
+              releaseSlowSink.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            super.write(b, off, len);
+          }
+        };
+    CountDownLatch fastSinkWritten = new CountDownLatch(1);
+    ByteArrayOutputStream fastSink =
+        new ByteArrayOutputStream() {
+          @Override
+          public void write(byte[] b, int off, int len) {
+            super.write(b, off, len);
+            fastSinkWritten.countDown();
+          }
+        };
+
+    ProcessOutputReactor.Registration slow = reactor.register(stream("slow"), slowSink);
+    ProcessOutputReactor.Registration fast = reactor.register(stream("fast"), fastSink);
+
+    assertTrue(fastSinkWritten.await(10, TimeUnit.SECONDS));
+    fast.finish();
+    assertEquals("fast", fastSink.toString(StandardCharsets.UTF_8.name()));
+
+    releaseSlowSink.countDown();
+    slow.finish();
+    assertEquals("slow", slowSink.toString(StandardCharsets.UTF_8.name()));
+    assertEquals(0, reactor.getRegistrationCount());
+  }
+
+  @Test(expected = IOException.class)
+  public void writeFailuresAreRethrownByFinish() throws Exception {
+    ProcessOutputReactor reactor = new ProcessOutputReactor();
+    CountDownLatch failed = new CountDownLatch(1);
+    ByteArrayOutputStream failingSink =
+        new ByteArrayOutputStream() {
+          @Override
+          public void write(byte[] b) throws IOException {
+            failed.countDown();
+            throw new IOException("Broken pipe");
+          }
+        };
+
+    ProcessOutputReactor.Registration registration =
+        reactor.register(stream("output"), failingSink);
+    assertTrue(failed.await(10, TimeUnit.SECONDS));
+    registration.finish();
+  }
+
+  private static ByteArrayInputStream stream(String contents) {
+    return new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8));
+  }
+}
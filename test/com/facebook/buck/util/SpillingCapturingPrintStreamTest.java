@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+import java.io.IOException;
+import org.junit.Test;
+
+public class SpillingCapturingPrintStreamTest {
+
+  @Test
+  public void testSmallOutputIsKeptInMemory() throws IOException {
+    SpillingCapturingPrintStream stream = new SpillingCapturingPrintStream(16);
+    stream.print("0123456789");
+    stream.print("abcdef");
+    assertFalse(stream.hasSpilled());
+    assertEquals("0123456789abcdef", stream.getContentsAsString(UTF_8));
+  }
+
+  @Test
+  public void testLargeOutputIsSpilled() throws IOException {
+    SpillingCapturingPrintStream stream = new SpillingCapturingPrintStream(16);
+    String expected = "";
+    for (int i = 0; i < 100; i++) {
+      String chunk = Strings.repeat(String.valueOf(i % 10), i);
+      stream.print(chunk);
+      expected += chunk;
+    }
+    assertTrue(stream.hasSpilled());
+    assertEquals(expected, stream.getContentsAsString(UTF_8));
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.util.sha1;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
@@ -25,6 +26,8 @@ import com.google.common.base.Strings;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import org.junit.Test;
 
 public class Sha1HashCodeTest {
@@ -89,6 +92,19 @@ public class Sha1HashCodeTest {
     assertEquals(expectedHash, observedHash);
   }
 
+  @Test
+  public void testUpdateByteBuffer() {
+    Sha1HashCode sha1 = Sha1HashCode.of("a002b39af204cdfaa5fdb67816b13867c32ac52c");
+    ByteBuffer buffer = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+    assertSame(buffer, sha1.update(buffer));
+    assertArrayEquals(sha1.asHashCode().asBytes(), buffer.array());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUpdateBigEndianByteBufferIsRejected() {
+    Sha1HashCode.of("a002b39af204cdfaa5fdb67816b13867c32ac52c").update(ByteBuffer.allocate(20));
+  }
+
   @Test
   public void testAsHashCode() {
     Sha1HashCode sha1HashCode = Sha1HashCode.of("a002b39af204cdfaa5fdb67816b13867c32ac52c");
@@ -38,6 +38,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
 import java.lang.reflect.Field;
 import java.util.Map;
+import java.util.Optional;
 import org.hamcrest.Matchers;
 import org.junit.After;
 import org.junit.Before;
@@ -63,6 +64,7 @@ public class VersionedTargetGraphBuilderTest {
                 executor,
                 versionSelector,
                 unversionedTargetGraphAndBuildTargets,
+                Optional.empty(),
                 typeCoercerFactory,
                 unconfiguredBuildTargetFactory,
                 20,
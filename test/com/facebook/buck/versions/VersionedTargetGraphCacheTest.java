@@ -17,6 +17,7 @@
 package com.facebook.buck.versions;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -217,6 +218,94 @@ public class VersionedTargetGraphCacheTest {
     assertTimingsNotEmpty(stats);
   }
 
+  @Test
+  public void testGraphChangeOnlyRetranslatesChangedSubGraphs() throws Exception {
+    VersionedTargetGraphCache cache = new VersionedTargetGraphCache();
+    TargetNode<ExportFileDescriptionArg> v1 =
+        new ExportFileBuilder(BuildTargetFactory.newInstance("//:v1")).build();
+    TargetNode<ExportFileDescriptionArg> v2 =
+        new ExportFileBuilder(BuildTargetFactory.newInstance("//:v2")).build();
+    TargetNode<ExportFileDescriptionArg> extra =
+        new ExportFileBuilder(BuildTargetFactory.newInstance("//:extra")).build();
+    TargetNode<VersionedAliasDescriptionArg> alias =
+        new VersionedAliasBuilder(versionedAlias)
+            .setVersions(
+                ImmutableMap.of(
+                    version1, v1.getBuildTarget(),
+                    version2, v2.getBuildTarget()))
+            .build();
+    TargetNode<PythonTestDescriptionArg> unchangedTest =
+        PythonTestBuilder.create(BuildTargetFactory.newInstance("//:unchanged"))
+            .setDeps(ImmutableSortedSet.of(alias.getBuildTarget()))
+            .build();
+    TargetNode<PythonTestDescriptionArg> changedTest =
+        PythonTestBuilder.create(BuildTargetFactory.newInstance("//:changed"))
+            .setDeps(ImmutableSortedSet.of(alias.getBuildTarget()))
+            .build();
+    TargetGraphCreationResult firstGraph =
+        TargetGraphCreationResult.of(
+            TargetGraphFactory.newInstance(unchangedTest, changedTest, alias, v1, v2),
+            ImmutableSet.of(unchangedTest.getBuildTarget(), changedTest.getBuildTarget()));
+    VersionedTargetGraphCache.VersionedTargetGraphCacheResult firstResult =
+        cache.toVersionedTargetGraph(
+            depsAwareExecutor.get(),
+            ImmutableMap.of(),
+            new DefaultTypeCoercerFactory(),
+            unconfiguredBuildTargetFactory,
+            firstGraph,
+            new InstrumentingCacheStatsTracker(),
+            new TestCellBuilder().build());
+    assertEmpty(firstResult);
+
+    TargetNode<PythonTestDescriptionArg> newChangedTest =
+        PythonTestBuilder.create(changedTest.getBuildTarget())
+            .setDeps(ImmutableSortedSet.of(alias.getBuildTarget(), extra.getBuildTarget()))
+            .build();
+    TargetGraphCreationResult secondGraph =
+        TargetGraphCreationResult.of(
+            TargetGraphFactory.newInstance(unchangedTest, newChangedTest, alias, v1, v2, extra),
+            ImmutableSet.of(unchangedTest.getBuildTarget(), newChangedTest.getBuildTarget()));
+    VersionedTargetGraphCache.VersionedTargetGraphCacheResult secondResult =
+        cache.toVersionedTargetGraph(
+            depsAwareExecutor.get(),
+            ImmutableMap.of(),
+            new DefaultTypeCoercerFactory(),
+            unconfiguredBuildTargetFactory,
+            secondGraph,
+            new InstrumentingCacheStatsTracker(),
+            new TestCellBuilder().build());
+    assertMismatch(secondResult, firstResult.getTargetGraphCreationResult());
+
+    TargetGraph first = firstResult.getTargetGraphCreationResult().getTargetGraph();
+    TargetGraph second = secondResult.getTargetGraphCreationResult().getTargetGraph();
+
+    // The translation of the unchanged sub-graph is carried over as is.
+    assertSame(
+        getNode(first, unchangedTest.getBuildTarget()),
+        getNode(second, unchangedTest.getBuildTarget()));
+    assertThat(
+        second.get(newChangedTest.getBuildTarget()).getDeclaredDeps(),
+        Matchers.hasItem(extra.getBuildTarget()));
+
+    // And the result is the same as translating the new graph from scratch.
+    TargetGraph expected =
+        new VersionedTargetGraphCache()
+            .toVersionedTargetGraph(
+                depsAwareExecutor.get(),
+                ImmutableMap.of(),
+                new DefaultTypeCoercerFactory(),
+                unconfiguredBuildTargetFactory,
+                secondGraph,
+                new InstrumentingCacheStatsTracker(),
+                new TestCellBuilder().build())
+            .getTargetGraphCreationResult()
+            .getTargetGraph();
+    assertEquals(expected, second);
+    for (TargetNode<?> node : expected.getNodes()) {
+      assertEquals(expected.getOutgoingNodesFor(node), second.getOutgoingNodesFor(node));
+    }
+  }
+
   @Test
   public void testDifferentInstrumentedCacheDoesNotInterfere() throws Exception {
     VersionedTargetGraphCache baseCache = new VersionedTargetGraphCache();
@@ -286,6 +375,13 @@ public class VersionedTargetGraphCacheTest {
             v2.getBuildTarget()));
   }
 
+  private static TargetNode<?> getNode(TargetGraph graph, BuildTarget target) {
+    return graph.getNodes().stream()
+        .filter(node -> node.getBuildTarget().equals(target))
+        .findFirst()
+        .get();
+  }
+
   private void assertHit(
       VersionedTargetGraphCache.VersionedTargetGraphCacheResult result,
       TargetGraphCreationResult previousGraph) {
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.worker;
 
+import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 
 public class FakeWorkerProcessProtocol {
@@ -25,7 +26,9 @@ public class FakeWorkerProcessProtocol {
     private boolean isClosed = false;
 
     @Override
-    public void handshake(int messageId) {}
+    public ImmutableSet<String> handshake(int messageId) {
+      return ImmutableSet.of();
+    }
 
     @Override
     public void send(int messageId, WorkerProcessCommand command) {}
@@ -35,6 +38,11 @@ public class FakeWorkerProcessProtocol {
       return 0;
     }
 
+    @Override
+    public WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public void close() {
       isClosed = true;
@@ -125,6 +125,38 @@ public class WorkerProcessPoolTest {
     assertThat(createdWorkers.size(), equalTo(numConcurrentConsumers));
   }
 
+  @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
+  public void testSharesMultiplexingWorkerProcessUpToCapacity() throws Exception {
+    int maxWorkers = 3;
+    Set<WorkerProcess> usedWorkers = new HashSet<>();
+    AtomicInteger startedWorkers = new AtomicInteger();
+    WorkerProcessPool pool =
+        createPool(
+            maxWorkers,
+            () -> {
+              startedWorkers.incrementAndGet();
+              return new FakeWorkerProcess(ImmutableMap.of()) {
+                @Override
+                public boolean supportsMultiplexing() {
+                  return true;
+                }
+              };
+            });
+
+    AtomicReference<BorrowedWorkerProcess> extraWorkerProcess = new AtomicReference<>();
+    acquireWorkersThenRunActionThenRelease(
+        pool,
+        maxWorkers,
+        usedWorkers::add,
+        () ->
+            pool.borrowWorkerProcess(1, TimeUnit.MILLISECONDS).ifPresent(extraWorkerProcess::set));
+
+    // all jobs in flight share a single process, and the pool still bounds the number of jobs
+    assertThat(startedWorkers.get(), is(1));
+    assertThat(usedWorkers.size(), is(1));
+    assertThat(extraWorkerProcess.get(), is(nullValue()));
+  }
+
   @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
   public void destroysProcessOnFailure() throws Exception {
     Set<WorkerProcess> createdWorkers = new HashSet<>();
@@ -441,14 +473,23 @@ public class WorkerProcessPoolTest {
 
   private static void acquireWorkersThenRunActionThenRelease(
       WorkerProcessPool pool, int numWorkers, UnsafeRunnable action) throws Exception {
+    acquireWorkersThenRunActionThenRelease(pool, numWorkers, x -> {}, action);
+  }
+
+  private static void acquireWorkersThenRunActionThenRelease(
+      WorkerProcessPool pool,
+      int numWorkers,
+      Consumer<WorkerProcess> onWorkerUsed,
+      UnsafeRunnable action)
+      throws Exception {
     if (numWorkers < 1) {
       action.run();
       return;
     }
     try (BorrowedWorkerProcess worker = pool.borrowWorkerProcess()) {
       // use worker
-      worker.get();
-      acquireWorkersThenRunActionThenRelease(pool, numWorkers - 1, action);
+      onWorkerUsed.accept(worker.get());
+      acquireWorkersThenRunActionThenRelease(pool, numWorkers - 1, onWorkerUsed, action);
     }
   }
 
@@ -16,12 +16,14 @@
 
 package com.facebook.buck.worker;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableSet;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -110,6 +112,45 @@ public class WorkerProcessProtocolZeroTest {
     protocol.handshake(handshakeID);
   }
 
+  @Test
+  public void testReceiveHandshakeWithMultiplexCapability() throws IOException {
+    int handshakeID = 123;
+    InputStream jsonReader =
+        inputStream(
+            String.format(
+                "[{\"id\":%d,\"type\":\"handshake\",\"protocol_version\":\"0\","
+                    + "\"capabilities\":[\"multiplex\"]}",
+                handshakeID));
+
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolZero.CommandSender(
+            dummyOutputStream, jsonReader, newTempFile(), () -> {}, () -> true);
+
+    assertEquals(
+        ImmutableSet.of(WorkerProcessProtocol.CAPABILITY_MULTIPLEX),
+        protocol.handshake(handshakeID));
+  }
+
+  @Test
+  public void testReceiveHandshakeWithUnsupportedCapability() throws IOException {
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage("Unsupported capability \"telepathy\"");
+
+    int handshakeID = 123;
+    InputStream jsonReader =
+        inputStream(
+            String.format(
+                "[{\"id\":%d,\"type\":\"handshake\",\"protocol_version\":\"0\","
+                    + "\"capabilities\":[\"telepathy\"]}",
+                handshakeID));
+
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolZero.CommandSender(
+            dummyOutputStream, jsonReader, newTempFile(), () -> {}, () -> true);
+
+    protocol.handshake(handshakeID);
+  }
+
   private InputStream createMockJsonReaderForReceiveCommandResponse(
       int messageID, String type, int exitCode) {
     String jsonToBeRead =
@@ -129,6 +170,20 @@ public class WorkerProcessProtocolZeroTest {
     protocol.receiveCommandResponse(messageID);
   }
 
+  @Test
+  public void testReceiveNextCommandResponseAcceptsAnyMessageID() throws IOException {
+    InputStream jsonReader =
+        inputStream(
+            "{\"id\":2,\"type\":\"result\",\"exit_code\":0}"
+                + ",{\"id\":1,\"type\":\"result\",\"exit_code\":3}");
+
+    WorkerProcessProtocol.CommandSender protocol =
+        new WorkerProcessProtocolZero.CommandSender(
+            dummyOutputStream, jsonReader, newTempFile(), () -> {}, () -> true);
+
+    assertEquals(WorkerProcessCommandResponse.of(2, 0), protocol.receiveNextCommandResponse());
+  }
+
   @Test
   public void testReceiveCommandResponseWithMalformedJSON() throws IOException {
     expectedException.expect(HumanReadableException.class);
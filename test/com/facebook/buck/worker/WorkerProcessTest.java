@@ -42,7 +42,14 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -89,6 +96,57 @@ public class WorkerProcessTest {
     }
   }
 
+  @Test(timeout = 20 * 1000)
+  public void testMultiplexedJobsReceiveTheirOwnResponses() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path tmpPath = Files.createTempDirectory("tmp").toAbsolutePath().normalize();
+    Path workerStdErr = Paths.get(tmpPath.toString(), "stderr");
+    BlockingQueue<WorkerProcessCommandResponse> sentCommands = new LinkedBlockingQueue<>();
+    Deque<WorkerProcessCommandResponse> pendingResponses = new ArrayDeque<>();
+
+    try (WorkerProcess process =
+        new WorkerProcess(
+            new FakeProcessExecutor(), createDummyParams(), filesystem, workerStdErr, tmpPath)) {
+      process.setProtocol(
+          new FakeWorkerProcessProtocol.FakeCommandSender() {
+            @Override
+            public void send(int messageId, WorkerProcessCommand command) {
+              int exitCode =
+                  filesystem.readFileIfItExists(command.getArgsPath()).get().equals("first")
+                      ? 1
+                      : 2;
+              sentCommands.add(WorkerProcessCommandResponse.of(messageId, exitCode));
+            }
+
+            @Override
+            public WorkerProcessCommandResponse receiveNextCommandResponse() throws IOException {
+              if (pendingResponses.isEmpty()) {
+                // Wait for both jobs to be submitted, then respond in reverse order.
+                try {
+                  pendingResponses.push(sentCommands.take());
+                  pendingResponses.push(sentCommands.take());
+                } catch (InterruptedException e) {
+                  throw new RuntimeException(e);
+                }
+              }
+              return pendingResponses.pop();
+            }
+          },
+          true);
+
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+        Future<WorkerJobResult> first = executor.submit(() -> process.submitAndWaitForJob("first"));
+        Future<WorkerJobResult> second =
+            executor.submit(() -> process.submitAndWaitForJob("second"));
+        assertThat(first.get().getExitCode(), is(1));
+        assertThat(second.get().getExitCode(), is(2));
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
   @Test
   public void testClose() {
     FakeWorkerProcessProtocol.FakeCommandSender protocol =